@@ -0,0 +1,151 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.format;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.dnikulin.codon.format.except.ObjectCorruptException;
+import org.dnikulin.codon.format.primitive.DoubleObjectFormat;
+import org.dnikulin.codon.format.primitive.FloatObjectFormat;
+import org.dnikulin.codon.format.primitive.IntegerObjectFormat;
+import org.dnikulin.codon.format.primitive.LongObjectFormat;
+import org.dnikulin.codon.format.primitive.StringObjectFormat;
+import org.dnikulin.codon.format.tools.ListObjectFormat;
+import org.dnikulin.codon.netpipe.hello.HelloObjectFormat;
+import org.dnikulin.codon.netpipe.hello.NetPipeHello;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encode and decode throughput of every base format registered by the kernel,
+ * plus the list and netpipe hello formats, for small, typical and large
+ * values. Run with the gc profiler (the ant default) for bytes per op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectFormatBench {
+    @Param( { "string-utf8", "i32", "i64", "f32", "f64", "list(string-utf8)",
+            "netpipe-hello" })
+    public String format;
+
+    @Param( { "small", "typical", "large" })
+    public String size;
+
+    private ObjectFormat objectFormat;
+    private Object value;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        int scale = size.equals("small") ? 0 : size.equals("typical") ? 1
+                : 2;
+
+        if (format.equals("string-utf8")) {
+            objectFormat = StringObjectFormat.INSTANCE;
+            value = makeString(scale);
+        } else if (format.equals("i32")) {
+            objectFormat = IntegerObjectFormat.INSTANCE;
+            value = new int[] { 0, 123456, Integer.MAX_VALUE }[scale];
+        } else if (format.equals("i64")) {
+            objectFormat = LongObjectFormat.INSTANCE;
+            value = new long[] { 0, 1234567890123L, Long.MAX_VALUE }[scale];
+        } else if (format.equals("f32")) {
+            objectFormat = FloatObjectFormat.INSTANCE;
+            value = new float[] { 0, 3.14159f, Float.MAX_VALUE }[scale];
+        } else if (format.equals("f64")) {
+            objectFormat = DoubleObjectFormat.INSTANCE;
+            value = new double[] { 0, Math.PI, Double.MAX_VALUE }[scale];
+        } else if (format.equals("list(string-utf8)")) {
+            objectFormat = new ListObjectFormat(StringObjectFormat.INSTANCE);
+            value = makeList(new int[] { 1, 16, 4096 }[scale]);
+        } else if (format.equals("netpipe-hello")) {
+            objectFormat = HelloObjectFormat.INSTANCE;
+            value = makeHello(scale);
+        } else {
+            throw new IllegalArgumentException("Unknown format " + format);
+        }
+
+        bytes = objectFormat.encode(value);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return objectFormat.encode(value);
+    }
+
+    @Benchmark
+    public Object decode() throws ObjectCorruptException {
+        return objectFormat.decode(bytes);
+    }
+
+    private static String makeString(int scale) {
+        if (scale == 0)
+            return "a";
+        if (scale == 1)
+            return "The quick brown fox jumps over the lazy dog";
+
+        // Mixed ASCII and multi-byte characters
+        StringBuilder out = new StringBuilder();
+        while (out.length() < 65536)
+            out.append("codon \u043a\u043e\u0434\u043e\u043d \u20ac ");
+        return out.toString();
+    }
+
+    private static List<String> makeList(int count) {
+        List<String> list = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+            list.add("element " + i);
+        return list;
+    }
+
+    private static NetPipeHello makeHello(int scale) {
+        if (scale == 0)
+            return new NetPipeHello("a", true, false, false);
+        if (scale == 1)
+            return new NetPipeHello("sensor-readings", true, true, false,
+                    true, true, "workers", 1, 123456789L);
+
+        StringBuilder name = new StringBuilder();
+        while (name.length() < 1024)
+            name.append("channel-");
+        return new NetPipeHello(name.toString(), true, true, true, true,
+                true, name.toString(), 1, Long.MAX_VALUE);
+    }
+}
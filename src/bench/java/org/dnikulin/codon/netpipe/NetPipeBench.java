@@ -0,0 +1,550 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.netpipe;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import org.dnikulin.codon.misc.Arguments;
+import org.dnikulin.codon.misc.LatencyHistogram;
+import org.dnikulin.codon.misc.StatusToken;
+import org.dnikulin.codon.misc.TimeTools;
+import org.dnikulin.codon.net.SelectorThread;
+import org.dnikulin.codon.net.util.ConnectStatus;
+import org.dnikulin.codon.netpipe.packet.FlushPolicy;
+import org.dnikulin.codon.netpipe.packet.ObjectListener;
+
+/**
+ * Loopback load and latency benchmark for netpipe channels. Publishers send
+ * objects to one server channel at a fixed rate and every subscriber receives
+ * all of them, each on its own connection and selector thread. Reports
+ * delivered objects/s and end-to-end latency percentiles, optionally also as
+ * JSON.
+ * 
+ * Each object starts with the time it was scheduled to be sent, so a stall in
+ * a publisher, the server or a subscriber shows up as latency for everything
+ * queued behind it, rather than hiding it (coordinated omission). Objects
+ * stamped during the warmup are not measured.
+ * 
+ * Arguments (all optional): -role&lt;all|server|publish|subscribe&gt;,
+ * -host&lt;name&gt;, -port&lt;port&gt;, -channel&lt;name&gt;,
+ * -publishers&lt;count&gt;, -subscribers&lt;list&gt;, -sizes&lt;list&gt;,
+ * -rate&lt;objects/s per publisher&gt;, -warmup&lt;seconds&gt;,
+ * -seconds&lt;seconds&gt;, -immediate, -json&lt;path&gt;. Lists are comma
+ * separated.
+ * 
+ * Role "all" (the default) runs the server, publishers and subscribers in one
+ * JVM for every size and subscriber count. The other roles run one part each,
+ * using the first size and subscriber count, so that they can be started as
+ * separate JVMs on one host: start the server, then subscribers, then
+ * publishers with the same -warmup and -seconds. Latency across JVMs relies on
+ * System.nanoTime() sharing a clock between processes, as it does on Linux.
+ */
+public class NetPipeBench {
+    /** Bytes of timestamp and publisher number at the start of each object. */
+    public static final int HEADER = 12;
+
+    private static final long SECOND = 1000000000L;
+    private static final long DRAIN_MILLIS = 2000;
+
+    private final String host;
+    private final int port;
+    private final String channel;
+    private final int publishers;
+    private final int rate;
+    private final long warmup;
+    private final long seconds;
+    private final FlushPolicy policy;
+    private final List<Result> results;
+
+    public NetPipeBench(Arguments arguments) {
+        host = or(arguments.get("host"), "127.0.0.1");
+        port = arguments.getInt("port", 7770);
+        channel = or(arguments.get("channel"), "bench");
+        publishers = arguments.getInt("publishers", 1);
+        rate = arguments.getInt("rate", 10000);
+        warmup = arguments.getInt("warmup", 1) * SECOND;
+        seconds = arguments.getInt("seconds", 5) * SECOND;
+        policy = arguments.flag("immediate") ? FlushPolicy.IMMEDIATE
+                : FlushPolicy.DEFAULT;
+        results = new ArrayList<Result>();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Arguments arguments = new Arguments(args);
+        NetPipeBench bench = new NetPipeBench(arguments);
+
+        String role = or(arguments.get("role"), "all");
+        int[] sizes = parseInts(arguments.get("sizes"), "16,256,4096");
+        int[] subscribers = parseInts(arguments.get("subscribers"), "1,4,16");
+        String jsonName = arguments.get("json");
+
+        if (role.equals("server")) {
+            bench.serve();
+            return;
+        } else if (role.equals("publish")) {
+            bench.publish(sizes[0]);
+            return;
+        } else if (role.equals("subscribe")) {
+            bench.subscribe(sizes[0], subscribers[0]);
+        } else if (role.equals("all")) {
+            bench.runAll(sizes, subscribers);
+        } else {
+            System.err.println("Unknown role " + role);
+            System.exit(1);
+        }
+
+        if (jsonName != null)
+            bench.writeJson(new File(jsonName));
+    }
+
+    /** Run a server until the process is killed. */
+    public void serve() throws IOException {
+        new NetPipes().serve(port);
+        System.out.println("Serving on port " + port);
+    }
+
+    /**
+     * Run the server, publishers and subscribers in this JVM for every
+     * combination of size and subscriber count, printing each result.
+     * 
+     * @param sizes
+     *            Object sizes in bytes
+     * @param subscribers
+     *            Subscriber counts
+     */
+    public void runAll(int[] sizes, int[] subscribers) throws IOException {
+        NetPipes server = new NetPipes();
+        server.serve(port);
+
+        try {
+            System.out.println(Result.TITLE);
+
+            for (int size : sizes) {
+                for (int count : subscribers) {
+                    // Each step uses a fresh channel
+                    String name = channel + "-" + size + "-" + count;
+                    Result result = runStep(name, size, count);
+                    results.add(result);
+                    System.out.println(result);
+                }
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Publish objects of one size for the warmup and measured time, then
+     * print the publish rate.
+     * 
+     * @param size
+     *            Object size in bytes
+     */
+    public void publish(int size) throws IOException {
+        List<SelectorThread> selectors = new ArrayList<SelectorThread>();
+
+        try {
+            List<Publisher> pubs = startPublishers(selectors, channel, size,
+                    System.nanoTime());
+
+            long sent = 0;
+            for (Publisher pub : pubs)
+                sent += pub.finish();
+
+            // Let queued objects reach the server
+            TimeTools.sleepFor(DRAIN_MILLIS);
+
+            System.out.printf("Published %d objects of %d bytes (%.0f/s)%n",
+                    sent, size, (double) sent * SECOND / seconds);
+        } finally {
+            cancelAll(selectors);
+        }
+    }
+
+    /**
+     * Subscribe with a number of connections, measuring from the first object
+     * received plus the warmup, for the measured time.
+     * 
+     * @param size
+     *            Object size in bytes, for reporting
+     * @param count
+     *            Number of subscribers
+     */
+    public void subscribe(int size, int count) throws IOException {
+        List<SelectorThread> selectors = new ArrayList<SelectorThread>();
+
+        try {
+            List<Subscriber> subs = startSubscribers(selectors, channel,
+                    count);
+            System.out.println("Subscribed " + count + " to " + channel);
+
+            long first = subs.get(0).waitForFirst();
+            for (Subscriber sub : subs)
+                sub.measure(first + warmup, first + warmup + seconds);
+
+            TimeTools.sleepFor((warmup + seconds) / 1000000 + DRAIN_MILLIS);
+
+            Result result = new Result(size, 0, count);
+            result.collect(null, subs, seconds);
+            results.add(result);
+
+            System.out.println(Result.TITLE);
+            System.out.println(result);
+        } finally {
+            cancelAll(selectors);
+        }
+    }
+
+    private Result runStep(String name, int size, int count)
+            throws IOException {
+
+        List<SelectorThread> selectors = new ArrayList<SelectorThread>();
+
+        try {
+            List<Subscriber> subs = startSubscribers(selectors, name, count);
+
+            long start = System.nanoTime();
+            for (Subscriber sub : subs)
+                sub.measure(start + warmup, start + warmup + seconds);
+
+            List<Publisher> pubs = startPublishers(selectors, name, size,
+                    start);
+
+            long expected = 0;
+            for (Publisher pub : pubs)
+                expected += pub.finish() * count;
+
+            // Wait for objects in flight, or give up after the drain time
+            long deadline = System.currentTimeMillis() + DRAIN_MILLIS;
+            while ((countMeasured(subs) < expected)
+                    && (System.currentTimeMillis() < deadline))
+                TimeTools.sleepFor(10);
+
+            Result result = new Result(size, publishers, count);
+            result.collect(pubs, subs, seconds);
+            result.expected = expected;
+            return result;
+        } finally {
+            cancelAll(selectors);
+        }
+    }
+
+    private List<Subscriber> startSubscribers(List<SelectorThread> selectors,
+            String name, int count) throws IOException {
+
+        List<Subscriber> subs = new ArrayList<Subscriber>();
+
+        for (int i = 0; i < count; i++) {
+            Subscriber sub = new Subscriber();
+            PipeMultiplexLink link = connect(selectors);
+            link.openChannel(name, false, true, sub);
+            subs.add(sub);
+        }
+
+        // Let the server bind every subscription
+        TimeTools.sleepFor(100);
+        return subs;
+    }
+
+    private List<Publisher> startPublishers(List<SelectorThread> selectors,
+            String name, int size, long start) throws IOException {
+
+        List<Publisher> pubs = new ArrayList<Publisher>();
+        long interval = (rate > 0) ? (SECOND / rate) : 0;
+
+        for (int i = 0; i < publishers; i++) {
+            PipeMultiplexLink link = connect(selectors);
+            int number = link.openChannel(name);
+
+            // Stagger publishers across one interval
+            long offset = (interval * i) / publishers;
+            Publisher pub = new Publisher(link, number, i, size, interval,
+                    start + offset, start + warmup, start + warmup + seconds);
+            pubs.add(pub);
+            pub.start();
+        }
+
+        return pubs;
+    }
+
+    private PipeMultiplexLink connect(List<SelectorThread> selectors)
+            throws IOException {
+
+        SelectorThread selector = new SelectorThread();
+        selectors.add(selector);
+
+        PipeMultiplexLink link = new PipeMultiplexLink(policy);
+        StatusToken<ConnectStatus> status = ConnectStatus.make();
+        selector.connect(host, port, link, status);
+
+        ConnectStatus reached = status.waitForAny(ConnectStatus.CONNECTED,
+                ConnectStatus.FAILED);
+
+        if (reached != ConnectStatus.CONNECTED)
+            throw new IOException("Could not connect to " + host + ":" + port);
+        return link;
+    }
+
+    private void writeJson(File file) throws IOException {
+        PrintStream out = new PrintStream(new FileOutputStream(file), false,
+                "UTF-8");
+
+        try {
+            out.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                out.print("  " + results.get(i).toJson());
+                out.println((i + 1 < results.size()) ? "," : "");
+            }
+            out.println("]");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static long countMeasured(List<Subscriber> subs) {
+        long total = 0;
+        for (Subscriber sub : subs)
+            total += sub.histogram.getCount();
+        return total;
+    }
+
+    private static void cancelAll(List<SelectorThread> selectors) {
+        for (SelectorThread selector : selectors)
+            selector.cancel();
+    }
+
+    private static String or(String value, String def) {
+        return (value == null) ? def : value;
+    }
+
+    private static int[] parseInts(String value, String def) {
+        String[] parts = ((value == null) ? def : value).split(",");
+        int[] out = new int[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            out[i] = Integer.parseInt(parts[i].trim());
+        return out;
+    }
+
+    /** Sends stamped objects on one connection from its own thread. */
+    private static class Publisher extends Thread {
+        private final PipeMultiplexLink link;
+        private final int number;
+        private final int id;
+        private final int size;
+        private final long interval;
+        private final long start;
+        private final long from;
+        private final long until;
+        private long sent;
+
+        public Publisher(PipeMultiplexLink link, int number, int id, int size,
+                long interval, long start, long from, long until) {
+            super("bench-publisher-" + id);
+            this.link = link;
+            this.number = number;
+            this.id = id;
+            this.size = Math.max(size, HEADER);
+            this.interval = interval;
+            this.start = start;
+            this.from = from;
+            this.until = until;
+            this.sent = 0;
+        }
+
+        @Override
+        public void run() {
+            long next = start;
+
+            while (true) {
+                long now = System.nanoTime();
+
+                // Without a rate, send as fast as possible
+                if (interval == 0)
+                    next = now;
+                if (next >= until)
+                    break;
+
+                if (now < next) {
+                    LockSupport.parkNanos(next - now);
+                    continue;
+                }
+
+                // Stamp with the scheduled time, even if it has passed
+                byte[] body = new byte[size];
+                ByteBuffer.wrap(body).putLong(next).putInt(id);
+                link.sendObject(number, body);
+
+                if (next >= from)
+                    sent++;
+                next += interval;
+            }
+        }
+
+        /**
+         * Wait for the publisher to stop.
+         * 
+         * @return Number of objects sent after the warmup
+         */
+        public long finish() {
+            while (true) {
+                try {
+                    join();
+                    return sent;
+                } catch (InterruptedException ex) {
+                    // Keep waiting
+                }
+            }
+        }
+
+        public long getSent() {
+            return sent;
+        }
+    }
+
+    /** Records latency of objects received on one connection. */
+    private static class Subscriber implements ObjectListener {
+        public final LatencyHistogram histogram;
+        private volatile long first;
+        private volatile long from;
+        private volatile long until;
+
+        public Subscriber() {
+            histogram = new LatencyHistogram();
+            first = 0;
+            from = Long.MAX_VALUE;
+            until = Long.MIN_VALUE;
+        }
+
+        public void measure(long from, long until) {
+            this.from = from;
+            this.until = until;
+        }
+
+        public synchronized long waitForFirst() {
+            while (first == 0) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    // Keep waiting
+                }
+            }
+            return first;
+        }
+
+        @Override
+        public void takeObject(byte[] body) {
+            long now = System.nanoTime();
+            if (body.length < HEADER)
+                return;
+
+            long stamp = ByteBuffer.wrap(body).getLong();
+
+            if (first == 0) {
+                synchronized (this) {
+                    first = stamp;
+                    notifyAll();
+                }
+            }
+
+            if ((stamp >= from) && (stamp < until))
+                histogram.record(now - stamp);
+        }
+    }
+
+    /** Measurements of one combination of size and subscriber count. */
+    private static class Result {
+        public static final String TITLE = "size\tpubs\tsubs\tsent/s\t"
+                + "delivered/s\tlost\tp50 us\tp90 us\tp99 us\tp99.9 us\t"
+                + "max us";
+
+        public final int size;
+        public final int publishers;
+        public final int subscribers;
+        public final LatencyHistogram latency;
+
+        public long sent;
+        public long delivered;
+        public long expected;
+        public long nanos;
+
+        public Result(int size, int publishers, int subscribers) {
+            this.size = size;
+            this.publishers = publishers;
+            this.subscribers = subscribers;
+            this.latency = new LatencyHistogram();
+            this.expected = -1;
+        }
+
+        public void collect(List<Publisher> pubs, List<Subscriber> subs,
+                long nanos) {
+            if (pubs != null) {
+                for (Publisher pub : pubs)
+                    sent += pub.getSent();
+            }
+
+            for (Subscriber sub : subs)
+                latency.add(sub.histogram);
+
+            this.delivered = latency.getCount();
+            this.nanos = nanos;
+        }
+
+        public long getLost() {
+            return (expected < 0) ? 0 : Math.max(0, expected - delivered);
+        }
+
+        private double micros(double percentile) {
+            return latency.getPercentile(percentile) / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d\t%d\t%d\t%.0f\t%.0f\t%d\t%.1f\t%.1f\t"
+                    + "%.1f\t%.1f\t%.1f", size, publishers, subscribers,
+                    (double) sent * SECOND / nanos,
+                    (double) delivered * SECOND / nanos, getLost(),
+                    micros(50), micros(90), micros(99), micros(99.9),
+                    latency.getMax() / 1000.0);
+        }
+
+        public String toJson() {
+            return String.format("{\"size\": %d, \"publishers\": %d, "
+                    + "\"subscribers\": %d, \"sent\": %d, \"delivered\": %d, "
+                    + "\"lost\": %d, \"nanos\": %d, \"p50\": %d, "
+                    + "\"p90\": %d, \"p99\": %d, \"p999\": %d, "
+                    + "\"max\": %d}", size, publishers, subscribers, sent,
+                    delivered, getLost(), nanos, latency.getPercentile(50),
+                    latency.getPercentile(90), latency.getPercentile(99),
+                    latency.getPercentile(99.9), latency.getMax());
+        }
+    }
+}
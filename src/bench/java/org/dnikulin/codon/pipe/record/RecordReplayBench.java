@@ -0,0 +1,298 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.record;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dnikulin.codon.daemon.StepDaemon;
+import org.dnikulin.codon.format.ObjectFormat;
+import org.dnikulin.codon.format.primitive.DoubleObjectFormat;
+import org.dnikulin.codon.format.primitive.FloatObjectFormat;
+import org.dnikulin.codon.format.primitive.IntegerObjectFormat;
+import org.dnikulin.codon.format.primitive.LongObjectFormat;
+import org.dnikulin.codon.format.primitive.StringObjectFormat;
+import org.dnikulin.codon.log.NullLogger;
+import org.dnikulin.codon.misc.Arguments;
+import org.dnikulin.codon.pipe.Consumer;
+
+/**
+ * Records a number of objects of each primitive format through RecordPipe
+ * into a temporary directory, then replays them through ReplayDaemon into a
+ * counting consumer, for each buffer size and compression level given.
+ * Reports objects/s, MB/s before compression, file size and CPU time per
+ * object, optionally also as JSON.
+ * 
+ * Arguments (all optional): -count&lt;objects&gt;, -buffers&lt;list&gt;,
+ * -levels&lt;list&gt; (0 is raw, -1 the gzip default), -dir&lt;path&gt;,
+ * -json&lt;path&gt;. Lists are comma separated.
+ * 
+ * CPU time is that of the benchmark thread, so recording includes creating
+ * each value.
+ */
+public class RecordReplayBench {
+    private static final ObjectFormat[] FORMATS = {
+            IntegerObjectFormat.INSTANCE, LongObjectFormat.INSTANCE,
+            FloatObjectFormat.INSTANCE, DoubleObjectFormat.INSTANCE,
+            StringObjectFormat.INSTANCE };
+
+    private static final int STEP_LIMIT = 1024;
+
+    private final ThreadMXBean mx;
+    private final List<Result> results;
+
+    public RecordReplayBench() {
+        mx = ManagementFactory.getThreadMXBean();
+        results = new ArrayList<Result>();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Arguments arguments = new Arguments(args);
+
+        int count = parseInt(arguments.get("count"), 1000000);
+        int[] buffers = parseInts(arguments.get("buffers"), "8192,65536");
+        int[] levels = parseInts(arguments.get("levels"), "0,1,-1");
+        String dirName = arguments.get("dir");
+        String jsonName = arguments.get("json");
+
+        File dir = (dirName == null) ? null : new File(dirName);
+        RecordReplayBench bench = new RecordReplayBench();
+
+        System.out.println("format\tbuffer\tlevel\tphase\tobjects/s\t"
+                + "raw MB/s\tfile MB\tCPU ns/object");
+
+        for (ObjectFormat format : FORMATS) {
+            for (int buffer : buffers) {
+                for (int level : levels)
+                    bench.run(format, count, buffer, level, dir);
+            }
+        }
+
+        if (jsonName != null)
+            bench.writeJson(new File(jsonName));
+    }
+
+    /**
+     * Record and replay one configuration, printing both results.
+     * 
+     * @param format
+     *            Object format
+     * @param count
+     *            Number of objects
+     * @param buffer
+     *            Stream buffer size
+     * @param level
+     *            Compression level
+     * @param dir
+     *            Temporary directory (null for the default)
+     */
+    public void run(ObjectFormat format, int count, int buffer, int level,
+            File dir) throws IOException {
+
+        File file = File.createTempFile("codon-bench-", ".rec", dir);
+
+        try {
+            Result record = record(format, count, buffer, level, file);
+            Result replay = replay(format, buffer, level, file);
+            replay.rawBytes = record.rawBytes;
+
+            for (Result result : new Result[] { record, replay }) {
+                result.fileBytes = file.length();
+                results.add(result);
+                System.out.println(result);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private Result record(ObjectFormat format, int count, int buffer,
+            int level, File file) throws IOException {
+
+        Result result = new Result(format, buffer, level, "record");
+        FileOutputStream output = new FileOutputStream(file);
+
+        long cpu0 = mx.getCurrentThreadCpuTime();
+        long time0 = System.nanoTime();
+
+        RecordPipe pipe = new RecordPipe(NullLogger.INSTANCE, format, output,
+                buffer, level);
+        for (int i = 0; i < count; i++)
+            pipe.consume(makeValue(format, i));
+        pipe.reset();
+
+        result.nanos = System.nanoTime() - time0;
+        result.cpuNanos = mx.getCurrentThreadCpuTime() - cpu0;
+        result.objects = count;
+        result.rawBytes = pipe.getRecordedBytes();
+        return result;
+    }
+
+    private Result replay(ObjectFormat format, int buffer, int level, File file)
+            throws IOException {
+
+        Result result = new Result(format, buffer, level, "replay");
+        CountingConsumer counter = new CountingConsumer();
+
+        long cpu0 = mx.getCurrentThreadCpuTime();
+        long time0 = System.nanoTime();
+
+        ReplayDaemon daemon = new ReplayDaemon(counter, NullLogger.INSTANCE,
+                format, new FileInputStream(file), file.getPath(), null, 0,
+                buffer);
+
+        int status;
+        do {
+            status = daemon.step(STEP_LIMIT);
+        } while (status == StepDaemon.CONTINUE);
+
+        if (status != StepDaemon.DONE)
+            throw new IOException("Replay failed with status " + status);
+
+        result.nanos = System.nanoTime() - time0;
+        result.cpuNanos = mx.getCurrentThreadCpuTime() - cpu0;
+        result.objects = counter.count;
+        return result;
+    }
+
+    private void writeJson(File file) throws IOException {
+        PrintStream out = new PrintStream(new FileOutputStream(file), false,
+                "UTF-8");
+
+        try {
+            out.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                out.print("  " + results.get(i).toJson());
+                out.println((i + 1 < results.size()) ? "," : "");
+            }
+            out.println("]");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Object makeValue(ObjectFormat format, int i) {
+        Class<?> type = format.getObjectClass();
+
+        if (type == Integer.class)
+            return i;
+        if (type == Long.class)
+            return i * 1000003L;
+        if (type == Float.class)
+            return i * 0.5f;
+        if (type == Double.class)
+            return i * 0.25;
+        return "object-" + i;
+    }
+
+    private static int parseInt(String value, int def) {
+        return (value == null) ? def : Arguments.parseIntOr(value, def);
+    }
+
+    private static int[] parseInts(String value, String def) {
+        String[] parts = ((value == null) ? def : value).split(",");
+        int[] out = new int[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            out[i] = Integer.parseInt(parts[i].trim());
+        return out;
+    }
+
+    /** Measurements of one phase of one configuration. */
+    private static class Result {
+        public final String format;
+        public final int buffer;
+        public final int level;
+        public final String phase;
+
+        public long objects;
+        public long nanos;
+        public long cpuNanos;
+        public long rawBytes;
+        public long fileBytes;
+
+        public Result(ObjectFormat format, int buffer, int level,
+                String phase) {
+            this.format = format.getFormatName();
+            this.buffer = buffer;
+            this.level = level;
+            this.phase = phase;
+        }
+
+        public double getObjectsPerSecond() {
+            return objects * 1e9 / nanos;
+        }
+
+        public double getMegabytesPerSecond() {
+            return rawBytes * 1e9 / nanos / (1024 * 1024);
+        }
+
+        public double getCpuNanosPerObject() {
+            return (double) cpuNanos / objects;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s\t%d\t%d\t%s\t%.0f\t%.1f\t%.1f\t%.1f",
+                    format, buffer, level, phase, getObjectsPerSecond(),
+                    getMegabytesPerSecond(), fileBytes / (1024.0 * 1024),
+                    getCpuNanosPerObject());
+        }
+
+        public String toJson() {
+            return String.format("{\"format\": \"%s\", \"buffer\": %d, "
+                    + "\"level\": %d, \"phase\": \"%s\", \"objects\": %d, "
+                    + "\"nanos\": %d, \"cpuNanos\": %d, \"rawBytes\": %d, "
+                    + "\"fileBytes\": %d}", format, buffer, level, phase,
+                    objects, nanos, cpuNanos, rawBytes, fileBytes);
+        }
+    }
+
+    /** A consumer that only counts objects. */
+    private static class CountingConsumer implements Consumer {
+        public long count;
+
+        @Override
+        public Class<?> getInputType() {
+            return Object.class;
+        }
+
+        @Override
+        public void consume(Object value) {
+            count++;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.simple;
+
+import org.dnikulin.codon.pipe.Consumer;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Minimal pipes and consumers shared by pipe benchmarks. */
+public final class BenchPipes {
+    /** A pipe that produces every object it consumes. */
+    public static class PassPipe extends TypedPipe<Object> {
+        @Override
+        public Class<?> getInputType() {
+            return Object.class;
+        }
+
+        @Override
+        public Class<?> getOutputType() {
+            return Object.class;
+        }
+
+        @Override
+        public void consumeValue(Object value) {
+            produce(value);
+        }
+    }
+
+    /** A consumer that hands every object to a JMH black hole. */
+    public static class SinkConsumer implements Consumer {
+        private final Blackhole hole;
+
+        /**
+         * Construct a sink consumer.
+         * 
+         * @param hole
+         *            Black hole
+         */
+        public SinkConsumer(Blackhole hole) {
+            this.hole = hole;
+        }
+
+        @Override
+        public Class<?> getInputType() {
+            return Object.class;
+        }
+
+        @Override
+        public void consume(Object value) {
+            hole.consume(value);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    }
+
+    private BenchPipes() {
+    }
+}
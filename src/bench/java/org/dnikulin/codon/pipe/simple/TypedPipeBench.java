@@ -0,0 +1,116 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.simple;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dnikulin.codon.pipe.Consumer;
+import org.dnikulin.codon.pipe.simple.BenchPipes.SinkConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of TypedPipe dispatch (consume casting to consumeValue) against a
+ * SimplePipe consuming Object directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypedPipeBench {
+    private Consumer typed;
+    private Consumer untyped;
+    private Object value;
+
+    @Setup
+    public void setup(Blackhole hole) {
+        LengthPipe typedPipe = new LengthPipe();
+        typedPipe.addConsumer(new SinkConsumer(hole));
+        typed = typedPipe;
+
+        UntypedLengthPipe untypedPipe = new UntypedLengthPipe();
+        untypedPipe.addConsumer(new SinkConsumer(hole));
+        untyped = untypedPipe;
+
+        value = "value";
+    }
+
+    @Benchmark
+    public void typed() {
+        typed.consume(value);
+    }
+
+    @Benchmark
+    public void untyped() {
+        untyped.consume(value);
+    }
+
+    /** Produces the length of each string through TypedPipe. */
+    public static class LengthPipe extends TypedPipe<String> {
+        @Override
+        public Class<?> getInputType() {
+            return String.class;
+        }
+
+        @Override
+        public Class<?> getOutputType() {
+            return Integer.class;
+        }
+
+        @Override
+        public void consumeValue(String value) {
+            produce(value.length());
+        }
+    }
+
+    /** Produces the length of each string, casting by hand. */
+    public static class UntypedLengthPipe extends SimplePipe {
+        @Override
+        public Class<?> getInputType() {
+            return String.class;
+        }
+
+        @Override
+        public Class<?> getOutputType() {
+            return Integer.class;
+        }
+
+        @Override
+        public void consume(Object value) {
+            produce(((String) value).length());
+        }
+    }
+}
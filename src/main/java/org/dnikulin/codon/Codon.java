@@ -25,22 +25,65 @@
 package org.dnikulin.codon;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
-import org.dnikulin.codon.log.PrintLogger;
+import org.dnikulin.codon.log.AsyncLogger;
 
 /** Batch execution program entry point. */
 public class Codon {
     public static void main(String[] args) {
+        AsyncLogger log = new AsyncLogger(System.out);
+
         CodonKernel kern = new CodonKernel();
-        kern.setLineLogger(PrintLogger.SYSOUT);
+        kern.setLineLogger(log);
+
+        // Scripts may depend on each other's pipes, so run in order by default
+        if (System.getProperty("codon.scripts", "serial").equals("parallel"))
+            runParallel(kern, args);
+        else
+            runSerial(kern, args);
+
+        kern.joinDaemons();
+        log.close();
+    }
 
+    private static void runSerial(CodonKernel kern, String[] scripts) {
         try {
-            for (String script : args)
+            for (String script : scripts)
                 kern.runCommandFile(script);
         } catch (IOException ex) {
             ex.printStackTrace();
         }
+    }
+
+    private static void runParallel(final CodonKernel kern, String[] scripts) {
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (final String script : scripts) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        kern.runCommandFile(script);
+                    } catch (IOException ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            }, "codon-script-" + threads.size());
+
+            threads.add(thread);
+            thread.start();
+        }
 
-        kern.joinDaemons();
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException ex) {
+                    // Keep waiting
+                }
+            }
+        }
     }
 }
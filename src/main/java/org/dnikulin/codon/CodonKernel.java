@@ -27,14 +27,25 @@ package org.dnikulin.codon;
 import java.io.File;
 import java.io.IOException;
 
+import org.dnikulin.codon.commands.bench.BenchCommand;
+import org.dnikulin.codon.commands.bench.GenerateCommand;
 import org.dnikulin.codon.commands.core.BatchCommand;
+import org.dnikulin.codon.commands.core.ExplainCommand;
 import org.dnikulin.codon.commands.core.PluginCommand;
 import org.dnikulin.codon.commands.core.SleepCommand;
+import org.dnikulin.codon.commands.daemon.KillCommand;
+import org.dnikulin.codon.commands.daemon.PsCommand;
 import org.dnikulin.codon.commands.help.ListFormatsCommand;
+import org.dnikulin.codon.commands.limit.FilterCommand;
+import org.dnikulin.codon.commands.limit.HeadCommand;
+import org.dnikulin.codon.commands.limit.TakeWhileCommand;
+import org.dnikulin.codon.commands.netpipe.NetReceiveCommand;
+import org.dnikulin.codon.commands.netpipe.NetSendCommand;
+import org.dnikulin.codon.commands.netpipe.NetServeCommand;
 import org.dnikulin.codon.commands.record.RecordCommand;
 import org.dnikulin.codon.commands.record.ReplayCommand;
 import org.dnikulin.codon.daemon.test.TestDaemonCommand;
-import org.dnikulin.codon.daemon.thread.DaemonThread;
+import org.dnikulin.codon.daemon.DaemonWatchdog;
 import org.dnikulin.codon.daemon.thread.DaemonThreads;
 import org.dnikulin.codon.format.primitive.DoubleObjectFormat;
 import org.dnikulin.codon.format.primitive.FloatObjectFormat;
@@ -46,16 +57,20 @@ import org.dnikulin.codon.format.registry.ObjectFormatsPluginSlot;
 import org.dnikulin.codon.log.IndirectLogger;
 import org.dnikulin.codon.log.LineLogger;
 import org.dnikulin.codon.log.LogSource;
+import org.dnikulin.codon.netpipe.NetPipes;
+import org.dnikulin.codon.pipe.bench.ValueStamps;
+import org.dnikulin.codon.pipe.command.PipeCommand;
 import org.dnikulin.codon.pipe.command.registry.PipeCommands;
 import org.dnikulin.codon.pipe.command.registry.PipeCommandsPluginSlot;
-import org.dnikulin.codon.pipe.compiler.EarlyPipeShellCompiler;
 import org.dnikulin.codon.pipe.compiler.PipeLinker;
-import org.dnikulin.codon.pipe.compiler.PipeShellCompiler;
-import org.dnikulin.codon.pipe.compiler.PipeShellParser;
+import org.dnikulin.codon.pipe.compiler.PipeShellCompilerFactory;
 import org.dnikulin.codon.pipe.except.PipeException;
+import org.dnikulin.codon.plugin.PluginImports;
+import org.dnikulin.codon.plugin.PluginIndex;
 import org.dnikulin.codon.plugin.PluginLinker;
 import org.dnikulin.codon.plugin.PluginLinkerPluginSlot;
 import org.dnikulin.codon.plugin.PluginLoader;
+import org.dnikulin.codon.timer.TimerWheel;
 
 /** High-level class integrating Codon subsystems. */
 public class CodonKernel implements LogSource {
@@ -63,17 +78,20 @@ public class CodonKernel implements LogSource {
 
     private final PluginLinker pluginLinker;
     private final PluginLoader pluginLoader;
+    private final PluginImports pluginImports;
 
     private final PipeLinker pipeLinker;
     private final PipeCommands commands;
 
-    private final PipeShellCompiler compiler;
-    private final PipeShellParser parser;
-
     private final ObjectFormats formats;
 
+    private final TimerWheel timerWheel;
     private final DaemonThreads daemonThreads;
 
+    private final NetPipes netPipes;
+    private final ValueStamps valueStamps;
+
+    private final PipeShellCompilerFactory compilers;
     private final BatchCommand batchCommand;
 
     /** Construct a Codon kernel. */
@@ -82,42 +100,59 @@ public class CodonKernel implements LogSource {
 
         pluginLinker = new PluginLinker(logger);
         pluginLoader = new PluginLoader(logger);
+        pluginLoader.setPluginIndex(PluginIndex.fromProperty());
+        pluginImports = new PluginImports(pluginLoader, pluginLinker);
 
         pipeLinker = new PipeLinker();
         commands = new PipeCommands();
 
-        compiler = new EarlyPipeShellCompiler(logger, commands, pipeLinker);
-        parser = new PipeShellParser(compiler);
-
         formats = new ObjectFormats();
 
-        daemonThreads = new DaemonThreads();
+        timerWheel = new TimerWheel();
+        daemonThreads = new DaemonThreads(getDaemonMode(), timerWheel);
+
+        netPipes = new NetPipes();
+        valueStamps = new ValueStamps();
 
-        batchCommand = new BatchCommand(parser);
+        compilers = new PipeShellCompilerFactory(getCompilerMode(), commands,
+                pipeLinker, daemonThreads);
+        batchCommand = new BatchCommand(compilers);
 
+        startWatchdog();
         addBaseFormats();
         addBaseCommands();
         addBaseSlots();
     }
 
     /**
-     * Execute a single command.
+     * Open a new command session, logging to the kernel's line logger. Each
+     * session has its own parser and compiler, so sessions may run commands
+     * concurrently.
+     * 
+     * @return New session
+     */
+    public CodonSession openSession() {
+        return new CodonSession(logger, compilers);
+    }
+
+    /**
+     * Execute a single command in a new session.
      * 
      * @param line
      *            Command line
      */
-    public synchronized void runCommand(String line) {
-        batchCommand.runCommand(line, logger);
+    public void runCommand(String line) {
+        openSession().runCommand(line);
     }
 
     /**
-     * Execute all commands in the given batch script file.
+     * Execute all commands in the given batch script file, in a new session.
      * 
      * @param file
      *            Batch script file
      */
-    public synchronized void runCommandFile(File file) throws IOException {
-        batchCommand.runFile(file, logger);
+    public void runCommandFile(File file) throws IOException {
+        openSession().runCommandFile(file);
     }
 
     /**
@@ -138,6 +173,10 @@ public class CodonKernel implements LogSource {
         return pluginLoader;
     }
 
+    public PluginImports getPluginImports() {
+        return pluginImports;
+    }
+
     public PipeLinker getPipeLinker() {
         return pipeLinker;
     }
@@ -150,10 +189,18 @@ public class CodonKernel implements LogSource {
         return formats;
     }
 
+    public TimerWheel getTimerWheel() {
+        return timerWheel;
+    }
+
     public DaemonThreads getDaemonThreads() {
         return daemonThreads;
     }
 
+    public NetPipes getNetPipes() {
+        return netPipes;
+    }
+
     @Override
     public LineLogger getLineLogger() {
         return logger.getLineLogger();
@@ -165,8 +212,30 @@ public class CodonKernel implements LogSource {
     }
 
     public void joinDaemons() {
-        for (DaemonThread thread : daemonThreads.get())
-            thread.waitForJoin();
+        daemonThreads.joinAll();
+    }
+
+    private static int getDaemonMode() {
+        // Per-thread scheduling remains available for debugging
+        String mode = System.getProperty("codon.daemons", "pool");
+        if (mode.equals("thread"))
+            return DaemonThreads.THREAD_MODE;
+        return DaemonThreads.POOL_MODE;
+    }
+
+    private static int getCompilerMode() {
+        // Early compilation remains the default until graphs see more use
+        String mode = System.getProperty("codon.compiler", "early");
+        if (mode.equals("graph"))
+            return PipeShellCompilerFactory.GRAPH;
+        return PipeShellCompilerFactory.EARLY;
+    }
+
+    private void startWatchdog() {
+        long threshold = DaemonWatchdog.DEFAULT_THRESHOLD_MILLIS;
+        Runnable watchdog = new DaemonWatchdog(daemonThreads, logger,
+                threshold);
+        timerWheel.scheduleRepeating(watchdog, threshold / 2);
     }
 
     private void addBaseFormats() {
@@ -179,15 +248,31 @@ public class CodonKernel implements LogSource {
 
     private void addBaseCommands() {
         try {
-            commands.add(new PluginCommand(pluginLinker, pluginLoader));
+            commands.add(new PluginCommand(pluginImports));
             commands.add(batchCommand);
             commands.add(new ListFormatsCommand(formats));
             commands.add(new SleepCommand());
+            commands.add(new ExplainCommand(pipeLinker));
+
+            commands.add(new HeadCommand(formats));
+            commands.add(new TakeWhileCommand(formats));
+            commands.add(new FilterCommand(formats));
 
             commands.add(new TestDaemonCommand(daemonThreads));
+            commands.add(new PsCommand(daemonThreads));
+            commands.add(new KillCommand(daemonThreads));
 
             commands.add(new RecordCommand(formats));
             commands.add(new ReplayCommand(formats, daemonThreads));
+
+            commands.add(new NetServeCommand(netPipes));
+            commands.add(new NetSendCommand(netPipes, formats));
+            commands.add(new NetReceiveCommand(netPipes, formats));
+
+            // Generate is also a producer command, but types its own pipes
+            PipeCommand generate = new GenerateCommand(formats, valueStamps);
+            commands.add(generate);
+            commands.add(new BenchCommand(timerWheel, valueStamps));
         } catch (PipeException ex) {
             ex.printStackTrace();
         }
@@ -0,0 +1,142 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.dnikulin.codon.commands.core.BatchCommand;
+import org.dnikulin.codon.daemon.thread.DaemonThreads;
+import org.dnikulin.codon.log.IndirectLogger;
+import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.log.LogSource;
+import org.dnikulin.codon.pipe.command.registry.PipeCommands;
+import org.dnikulin.codon.pipe.compiler.PipeLinker;
+import org.dnikulin.codon.pipe.compiler.PipeShellCompilerFactory;
+import org.dnikulin.codon.pipe.compiler.PipeShellParser;
+
+/**
+ * A command session on a Codon kernel. Each session has its own parser and
+ * compiler, sharing the kernel's pipe linker and registries, so that several
+ * sessions may build pipelines at the same time. A single session must only
+ * be used by one thread at a time.
+ */
+public class CodonSession implements LogSource {
+    private final IndirectLogger logger;
+    private final BatchCommand batch;
+
+    /**
+     * Construct a session.
+     * 
+     * @param logger
+     *            Initial line logger
+     * @param commands
+     *            Pipe command registry
+     * @param linker
+     *            Pipe linker
+     */
+    public CodonSession(LineLogger logger, PipeCommands commands,
+            PipeLinker linker) {
+
+        this(logger, new PipeShellCompilerFactory(
+                PipeShellCompilerFactory.EARLY, commands, linker, null));
+    }
+
+    /**
+     * Construct a session that compiles each line as a whole graph, with
+     * GraphPipeShellCompiler.
+     * 
+     * @param logger
+     *            Initial line logger
+     * @param commands
+     *            Pipe command registry
+     * @param linker
+     *            Pipe linker
+     * @param threads
+     *            Daemon threads for async pipes
+     */
+    public CodonSession(LineLogger logger, PipeCommands commands,
+            PipeLinker linker, DaemonThreads threads) {
+
+        this(logger, new PipeShellCompilerFactory(
+                PipeShellCompilerFactory.GRAPH, commands, linker, threads));
+    }
+
+    /**
+     * Construct a session with a compiler from the given factory.
+     * 
+     * @param logger
+     *            Initial line logger
+     * @param compilers
+     *            Factory for the session's compiler
+     */
+    public CodonSession(LineLogger logger, PipeShellCompilerFactory compilers) {
+        this.logger = new IndirectLogger(logger);
+
+        PipeShellParser parser = new PipeShellParser(compilers
+                .makeCompiler(this.logger));
+        this.batch = new BatchCommand(parser);
+    }
+
+    /**
+     * Execute a single command.
+     * 
+     * @param line
+     *            Command line
+     */
+    public void runCommand(String line) {
+        batch.runCommand(line, logger);
+    }
+
+    /**
+     * Execute all commands in the given batch script file.
+     * 
+     * @param file
+     *            Batch script file
+     */
+    public void runCommandFile(File file) throws IOException {
+        batch.runFile(file, logger);
+    }
+
+    /**
+     * Execute all commands in the given batch script file.
+     * 
+     * @param file
+     *            Batch script file path
+     */
+    public void runCommandFile(String file) throws IOException {
+        runCommandFile(new File(file));
+    }
+
+    @Override
+    public LineLogger getLineLogger() {
+        return logger.getLineLogger();
+    }
+
+    @Override
+    public void setLineLogger(LineLogger logger) {
+        this.logger.setLineLogger(logger);
+    }
+}
@@ -0,0 +1,84 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.commands.bench;
+
+import static org.dnikulin.codon.command.CommandTools.printPipeUsage;
+
+import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.misc.Arguments;
+import org.dnikulin.codon.pipe.Pipe;
+import org.dnikulin.codon.pipe.bench.BenchPipe;
+import org.dnikulin.codon.pipe.bench.ValueStamps;
+import org.dnikulin.codon.pipe.command.PipeCommand;
+import org.dnikulin.codon.pipe.except.PipeFactoryException;
+import org.dnikulin.codon.timer.TimerWheel;
+
+public class BenchCommand implements PipeCommand {
+    /** Default report interval in milliseconds. */
+    public static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+    private final TimerWheel timer;
+    private final ValueStamps stamps;
+
+    public BenchCommand(TimerWheel timer, ValueStamps stamps) {
+        this.timer = timer;
+        this.stamps = stamps;
+    }
+
+    @Override
+    public Pipe makePipe(String[] args, LineLogger log)
+            throws PipeFactoryException {
+
+        Arguments arguments = new Arguments(args);
+        if (arguments.args > 1)
+            return printPipeUsage(log, this);
+
+        long interval = DEFAULT_INTERVAL_MILLIS;
+        if (arguments.args == 1)
+            interval = Arguments.parseIntOr(arguments.get(0), -1);
+
+        if (interval <= 0)
+            return printPipeUsage(log, this);
+
+        BenchPipe pipe = new BenchPipe(timer, stamps, interval);
+        pipe.setLineLogger(log);
+        return pipe;
+    }
+
+    @Override
+    public String getCommandTopic() {
+        return "bench";
+    }
+
+    @Override
+    public String getCommandName() {
+        return "bench";
+    }
+
+    @Override
+    public String getCommandUsage() {
+        return "[interval millis]";
+    }
+}
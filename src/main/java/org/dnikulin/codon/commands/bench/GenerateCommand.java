@@ -0,0 +1,245 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.commands.bench;
+
+import static org.dnikulin.codon.command.CommandTools.printPipeUsage;
+import static org.dnikulin.codon.command.CommandTools.printUsage;
+
+import java.util.concurrent.locks.LockSupport;
+
+import org.dnikulin.codon.format.except.ObjectFormatNotFoundException;
+import org.dnikulin.codon.format.registry.ObjectFormats;
+import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.misc.Arguments;
+import org.dnikulin.codon.pipe.Consumer;
+import org.dnikulin.codon.pipe.Pipe;
+import org.dnikulin.codon.pipe.bench.ValueStamps;
+import org.dnikulin.codon.pipe.command.PipeCommand;
+import org.dnikulin.codon.pipe.command.ProducerCommand;
+import org.dnikulin.codon.pipe.command.wrap.ProducerCommandPipe;
+import org.dnikulin.codon.pipe.except.PipeFactoryException;
+
+/**
+ * A producer command that generates synthetic values of a primitive or string
+ * format, either as fast as possible or paced to a given rate. Each value is
+ * stamped with the time it was scheduled, so that a bench pipe downstream can
+ * measure latency including any time the generator fell behind.
+ */
+public class GenerateCommand implements PipeCommand, ProducerCommand {
+    private static final long SECOND = 1000000000L;
+
+    // Park for waits longer than this, then spin
+    private static final long SPIN_NANOS = 100000L;
+
+    // Values produced between checks for cancellation
+    private static final int CANCEL_CHECK = 64;
+
+    private final ObjectFormats formats;
+    private final ValueStamps stamps;
+
+    /**
+     * Construct a generate command.
+     * 
+     * @param formats
+     *            Object format registry
+     * @param stamps
+     *            Value stamp table shared with bench pipes
+     */
+    public GenerateCommand(ObjectFormats formats, ValueStamps stamps) {
+        this.formats = formats;
+        this.stamps = stamps;
+    }
+
+    @Override
+    public Pipe makePipe(String[] args, LineLogger log)
+            throws PipeFactoryException {
+
+        Plan plan = parse(args, log);
+        if (plan == null)
+            return printPipeUsage(log, this);
+
+        return new ProducerCommandPipe(this, args, log, plan.type);
+    }
+
+    @Override
+    public void produce(String[] args, LineLogger log, Consumer consumer) {
+        try {
+            Plan plan = parse(args, log);
+            if (plan == null)
+                printUsage(log, this);
+            else
+                generate(plan, log, consumer);
+        } catch (PipeFactoryException ex) {
+            // Already logged
+        }
+    }
+
+    @Override
+    public Class<?> getOutputType() {
+        // The actual type depends on the format
+        return Object.class;
+    }
+
+    @Override
+    public String getCommandTopic() {
+        return "bench";
+    }
+
+    @Override
+    public String getCommandName() {
+        return "generate";
+    }
+
+    @Override
+    public String getCommandUsage() {
+        return "<format> <rate|max> <count>";
+    }
+
+    /**
+     * Query whether values of a type can be generated.
+     * 
+     * @param type
+     *            Object class of a format
+     * @return true iff makeValue() supports the type
+     */
+    public static boolean canGenerate(Class<?> type) {
+        return (type == Integer.class) || (type == Long.class)
+                || (type == Float.class) || (type == Double.class)
+                || (type == String.class);
+    }
+
+    /**
+     * Make the synthetic value with a given index.
+     * 
+     * @param type
+     *            Type accepted by canGenerate()
+     * @param index
+     *            Value index
+     * @return Value of the given type
+     */
+    public static Object makeValue(Class<?> type, long index) {
+        if (type == Integer.class)
+            return Integer.valueOf((int) index);
+        if (type == Long.class)
+            return Long.valueOf(index);
+        if (type == Float.class)
+            return Float.valueOf(index);
+        if (type == Double.class)
+            return Double.valueOf(index);
+        return "value-" + index;
+    }
+
+    private void generate(Plan plan, LineLogger log, Consumer consumer) {
+        double period = (plan.rate > 0) ? ((double) SECOND / plan.rate) : 0;
+        long start = System.nanoTime();
+        long maxLag = 0;
+        long index;
+
+        for (index = 0; index < plan.count; index++) {
+            if (((index % CANCEL_CHECK) == 0) && consumer.isCancelled())
+                break;
+
+            long due;
+            if (period > 0) {
+                // Schedule from the start, so that delays do not accumulate
+                due = start + (long) (index * period);
+                maxLag = Math.max(maxLag, waitUntil(due));
+            } else {
+                due = System.nanoTime();
+            }
+
+            Object value = makeValue(plan.type, index);
+            stamps.put(value, due);
+            consumer.consume(value);
+        }
+
+        long nanos = Math.max(1, System.nanoTime() - start);
+        log.print(String.format("Generated %d values in %.2f s (%.0f/s), "
+                + "max lag %.1f us", index, nanos / 1e9, index * 1e9 / nanos,
+                maxLag / 1e3));
+    }
+
+    private Plan parse(String[] args, LineLogger log)
+            throws PipeFactoryException {
+
+        Arguments arguments = new Arguments(args);
+        if (arguments.args != 3)
+            return null;
+
+        String formatName = arguments.get(0);
+        Plan plan = new Plan();
+
+        try {
+            plan.type = formats.getByName(formatName).getObjectClass();
+        } catch (ObjectFormatNotFoundException ex) {
+            log.print("Unknown format '" + formatName + "'");
+            throw new PipeFactoryException(ex);
+        }
+
+        if (!canGenerate(plan.type)) {
+            log.print("Cannot generate values of format '" + formatName + "'");
+            throw new PipeFactoryException("Unsupported format");
+        }
+
+        try {
+            String rate = arguments.get(1);
+            plan.rate = rate.equals("max") ? 0 : Long.parseLong(rate);
+            plan.count = Long.parseLong(arguments.get(2));
+        } catch (NumberFormatException ex) {
+            log.print("Rate and count must be integers");
+            throw new PipeFactoryException(ex);
+        }
+
+        if ((plan.rate < 0) || (plan.count < 0))
+            return null;
+        return plan;
+    }
+
+    /**
+     * Wait until a System.nanoTime() deadline, parking for most of the wait
+     * and spinning for the rest.
+     * 
+     * @return Nanoseconds by which the deadline was missed
+     */
+    private static long waitUntil(long deadline) {
+        while (true) {
+            long left = deadline - System.nanoTime();
+
+            if (left <= 0)
+                return -left;
+            else if (left > SPIN_NANOS)
+                LockSupport.parkNanos(left - SPIN_NANOS);
+            else
+                Thread.yield();
+        }
+    }
+
+    /** Parsed command arguments. */
+    private static class Plan {
+        public Class<?> type;
+        public long rate;
+        public long count;
+    }
+}
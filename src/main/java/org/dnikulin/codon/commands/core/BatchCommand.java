@@ -33,12 +33,16 @@ import java.io.IOException;
 
 import org.dnikulin.codon.command.EffectCommand;
 import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.pipe.command.registry.PipeCommands;
+import org.dnikulin.codon.pipe.compiler.PipeLinker;
+import org.dnikulin.codon.pipe.compiler.PipeShellCompilerFactory;
 import org.dnikulin.codon.pipe.compiler.PipeShellParser;
 import org.dnikulin.codon.pipe.except.PipeException;
 
 /** Command to execute all commands in a batch script. */
 public class BatchCommand implements EffectCommand {
     private final PipeShellParser parser;
+    private final PipeShellCompilerFactory compilers;
 
     /**
      * Construct a batch command to feed the given parser.
@@ -48,6 +52,33 @@ public class BatchCommand implements EffectCommand {
      */
     public BatchCommand(PipeShellParser parser) {
         this.parser = parser;
+        this.compilers = null;
+    }
+
+    /**
+     * Construct a batch command that feeds each script to a new parser, so
+     * that scripts may run concurrently.
+     * 
+     * @param compilers
+     *            Factory for each parser's compiler
+     */
+    public BatchCommand(PipeShellCompilerFactory compilers) {
+        this.parser = null;
+        this.compilers = compilers;
+    }
+
+    /**
+     * Construct a batch command that feeds each script to a new parser with
+     * an early compiler.
+     * 
+     * @param commands
+     *            Pipe command registry
+     * @param linker
+     *            Pipe linker
+     */
+    public BatchCommand(PipeCommands commands, PipeLinker linker) {
+        this(new PipeShellCompilerFactory(PipeShellCompilerFactory.EARLY,
+                commands, linker, null));
     }
 
     @Override
@@ -82,11 +113,12 @@ public class BatchCommand implements EffectCommand {
      */
     public void runFile(File file, LineLogger log) throws IOException {
         BufferedReader in = new BufferedReader(new FileReader(file));
+        PipeShellParser fileParser = getParser(log);
 
         try {
             String line;
             while ((line = in.readLine()) != null)
-                runCommand(line, log);
+                runCommand(fileParser, line, log);
         } finally {
             in.close();
         }
@@ -101,6 +133,18 @@ public class BatchCommand implements EffectCommand {
      *            Line logger
      */
     public void runCommand(String line, LineLogger log) {
+        runCommand(getParser(log), line, log);
+    }
+
+    private PipeShellParser getParser(LineLogger log) {
+        if (parser != null)
+            return parser;
+        return new PipeShellParser(compilers.makeCompiler(log));
+    }
+
+    private static void runCommand(PipeShellParser parser, String line,
+            LineLogger log) {
+
         log.print("\n> " + line);
 
         try {
@@ -0,0 +1,340 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.commands.core;
+
+import static org.dnikulin.codon.command.CommandTools.printUsage;
+import static org.dnikulin.codon.misc.TimeTools.sleepFor;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.dnikulin.codon.command.EffectCommand;
+import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.misc.Arguments;
+import org.dnikulin.codon.pipe.Consumer;
+import org.dnikulin.codon.pipe.Pipe;
+import org.dnikulin.codon.pipe.Producer;
+import org.dnikulin.codon.pipe.compiler.PipeLinker;
+import org.dnikulin.codon.pipe.except.PipeNotFoundException;
+import org.dnikulin.codon.pipe.simple.AsyncPipe;
+import org.dnikulin.codon.pipe.simple.CompoundPipe;
+import org.dnikulin.codon.pipe.simple.FusedPipe;
+import org.dnikulin.codon.pipe.simple.PipeEdge;
+import org.dnikulin.codon.pipe.simple.SimplePipe;
+
+/**
+ * Command to print the graph of pipes reachable from named pipes, as text or
+ * as Graphviz DOT. Edges from simple pipes show the objects given to each
+ * consumer, the rate over a short window and the sampled time per object.
+ * Reading the counters only briefly holds each pipe's consumer lock.
+ */
+public class ExplainCommand implements EffectCommand {
+    /** Default rate window in milliseconds. */
+    public static final int DEFAULT_WINDOW_MILLIS = 1000;
+
+    private final PipeLinker linker;
+
+    /**
+     * Construct an explain command.
+     * 
+     * @param linker
+     *            Pipe linker holding named pipes
+     */
+    public ExplainCommand(PipeLinker linker) {
+        this.linker = linker;
+    }
+
+    @Override
+    public void execute(String[] args, LineLogger log) {
+        Arguments arguments = new Arguments(args);
+        int window = arguments.getInt("window", DEFAULT_WINDOW_MILLIS);
+
+        if ((arguments.args > 1) || (window < 0)) {
+            printUsage(log, this);
+            return;
+        }
+
+        Map<String, Pipe> named = new TreeMap<String, Pipe>();
+        Map<String, Pipe> roots = named;
+        try {
+            for (String name : linker.getPipeNames())
+                named.put(name, linker.getPipe(name));
+
+            if (arguments.args == 1) {
+                String name = arguments.get(0);
+                roots = new TreeMap<String, Pipe>();
+                roots.put(name, linker.getPipe(name));
+            }
+        } catch (PipeNotFoundException ex) {
+            log.print(ex.getMessage());
+            return;
+        }
+
+        Map<Object, List<PipeEdge>> before = null;
+        if (window > 0) {
+            before = countEdges(walk(roots, named));
+            sleepFor(window);
+        }
+
+        List<Node> nodes = walk(roots, named);
+        Map<Object, List<PipeEdge>> after = countEdges(nodes);
+
+        if (arguments.flag("dot"))
+            printDot(log, nodes, before, after, window);
+        else
+            printText(log, nodes, before, after, window);
+    }
+
+    private static void printText(LineLogger log, List<Node> nodes,
+            Map<Object, List<PipeEdge>> before,
+            Map<Object, List<PipeEdge>> after, int window) {
+
+        for (Node node : nodes) {
+            log.print(node.getLabel() + " " + node.describe(", "));
+
+            for (Node next : node.next) {
+                String line = "    -> " + next.getLabel();
+                PipeEdge edge = findEdge(after, node, next);
+                if (edge != null)
+                    line += ": " + describeEdge(edge,
+                            findEdge(before, node, next), window, ", ");
+                log.print(line);
+            }
+        }
+    }
+
+    private static void printDot(LineLogger log, List<Node> nodes,
+            Map<Object, List<PipeEdge>> before,
+            Map<Object, List<PipeEdge>> after, int window) {
+
+        log.print("digraph pipes {");
+
+        for (Node node : nodes) {
+            log.print("    n" + node.id + " [label=\"" + node.getLabel()
+                    + "\\n" + node.describe("\\n") + "\"];");
+        }
+
+        for (Node node : nodes) {
+            for (Node next : node.next) {
+                String line = "    n" + node.id + " -> n" + next.id;
+                PipeEdge edge = findEdge(after, node, next);
+                if (edge != null)
+                    line += " [label=\"" + describeEdge(edge,
+                            findEdge(before, node, next), window, "\\n")
+                            + "\"]";
+                log.print(line + ";");
+            }
+        }
+
+        log.print("}");
+    }
+
+    private static String describeEdge(PipeEdge edge, PipeEdge start,
+            int window, String separator) {
+
+        StringBuilder out = new StringBuilder();
+        out.append(edge.getCount()).append(" objects");
+
+        long count = edge.getCount();
+        long samples = edge.getSamples();
+        long nanos = edge.getSampledNanos();
+
+        if ((window > 0) && (start != null)) {
+            count -= start.getCount();
+            samples -= start.getSamples();
+            nanos -= start.getSampledNanos();
+        }
+
+        if (window > 0) {
+            double rate = count * 1000.0 / window;
+            out.append(separator).append(String.format("%.1f/s", rate));
+        }
+
+        // Fall back to the lifetime mean when the window saw no samples
+        double perObject = edge.getNanosPerObject();
+        if (samples > 0)
+            perObject = (double) nanos / samples;
+
+        if (edge.getSamples() > 0) {
+            out.append(separator).append(
+                    String.format("%.2f us/object", perObject / 1000));
+        }
+
+        return out.toString();
+    }
+
+    private static PipeEdge findEdge(Map<Object, List<PipeEdge>> counts,
+            Node node, Node next) {
+
+        if (counts == null)
+            return null;
+
+        List<PipeEdge> edges = counts.get(node.target);
+        if (edges == null)
+            return null;
+
+        for (PipeEdge edge : edges) {
+            if (unwrap(edge.getConsumer()) == next.target)
+                return edge;
+        }
+        return null;
+    }
+
+    private static Map<Object, List<PipeEdge>> countEdges(List<Node> nodes) {
+        Map<Object, List<PipeEdge>> counts =
+                new IdentityHashMap<Object, List<PipeEdge>>();
+
+        for (Node node : nodes) {
+            if (node.target instanceof SimplePipe)
+                counts.put(node.target, ((SimplePipe) node.target).getEdges());
+        }
+
+        return counts;
+    }
+
+    /**
+     * Find every pipe and consumer reachable from the given pipes. Compound
+     * pipes are replaced by the pipes they link.
+     * 
+     * @param roots
+     *            Pipes to start from
+     * @param named
+     *            Pipes to label by name where reached
+     * @return Nodes in depth-first order
+     */
+    private static List<Node> walk(Map<String, Pipe> roots,
+            Map<String, Pipe> named) {
+
+        Map<Object, Node> seen = new IdentityHashMap<Object, Node>();
+        List<Node> nodes = new ArrayList<Node>();
+
+        for (Pipe root : roots.values())
+            visit(root, seen, nodes);
+
+        for (Map.Entry<String, Pipe> entry : named.entrySet()) {
+            Node node = seen.get(unwrap(entry.getValue()));
+            if (node != null)
+                node.names.add(entry.getKey());
+        }
+
+        return nodes;
+    }
+
+    private static Node visit(Object target, Map<Object, Node> seen,
+            List<Node> nodes) {
+
+        target = unwrap(target);
+
+        Node node = seen.get(target);
+        if (node != null)
+            return node;
+
+        node = new Node(nodes.size() + 1, target);
+        seen.put(target, node);
+        nodes.add(node);
+
+        if (target instanceof Producer) {
+            for (Consumer consumer : ((Producer) target).getConsumers())
+                node.next.add(visit(consumer, seen, nodes));
+        }
+
+        return node;
+    }
+
+    private static Object unwrap(Object target) {
+        while (target instanceof CompoundPipe)
+            target = ((CompoundPipe) target).getPipes().get(0);
+        return target;
+    }
+
+    @Override
+    public String getCommandTopic() {
+        return "core";
+    }
+
+    @Override
+    public String getCommandName() {
+        return "explain";
+    }
+
+    @Override
+    public String getCommandUsage() {
+        return "[-dot] [-window<millis>] [pipe]";
+    }
+
+    /** A pipe or consumer in the graph. */
+    private static final class Node {
+        final int id;
+        final Object target;
+        final List<String> names;
+        final List<Node> next;
+
+        Node(int id, Object target) {
+            this.id = id;
+            this.target = target;
+            this.names = new ArrayList<String>();
+            this.next = new ArrayList<Node>();
+        }
+
+        String getLabel() {
+            if (names.isEmpty())
+                return "#" + id;
+
+            StringBuilder out = new StringBuilder();
+            for (String name : names) {
+                if (out.length() > 0)
+                    out.append(',');
+                out.append('~').append(name);
+            }
+            return out.toString();
+        }
+
+        String describe(String separator) {
+            StringBuilder out = new StringBuilder();
+            out.append(target.getClass().getSimpleName()).append(separator);
+
+            if (target instanceof Consumer)
+                out.append(((Consumer) target).getInputType().getSimpleName());
+            out.append(" -> ");
+            if (target instanceof Producer)
+                out.append(((Producer) target).getOutputType().getSimpleName());
+
+            if (target instanceof FusedPipe) {
+                int stages = ((FusedPipe) target).getStageCount();
+                out.append(separator).append(stages).append(" stages");
+            }
+
+            if (target instanceof AsyncPipe) {
+                int queued = ((AsyncPipe) target).getQueued();
+                out.append(separator).append(queued).append(" queued");
+            }
+
+            return out.toString();
+        }
+    }
+}
@@ -30,45 +30,68 @@ import java.io.File;
 
 import org.dnikulin.codon.command.EffectCommand;
 import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.plugin.PluginImports;
 import org.dnikulin.codon.plugin.PluginLinker;
 import org.dnikulin.codon.plugin.PluginLoader;
 
-/** Command to import and install plugins. */
+/** Command to import, unload and reload plugins. */
 public class PluginCommand implements EffectCommand {
-    private final PluginLinker linker;
-    private final PluginLoader loader;
+    private final PluginImports imports;
 
     /**
-     * Construct a plugin command with the given plugin linker and loader.
+     * Construct a plugin command with the given plugin import registry.
+     * 
+     * @param imports
+     *            Plugin import registry
+     */
+    public PluginCommand(PluginImports imports) {
+        this.imports = imports;
+    }
+
+    /**
+     * Construct a plugin command importing through child loaders of the given
+     * loader.
      * 
      * @param linker
      *            Plugin Linker
      * @param loader
-     *            Plugin loader
+     *            Parent plugin loader
      */
     public PluginCommand(PluginLinker linker, PluginLoader loader) {
-        this.linker = linker;
-        this.loader = loader;
+        this(new PluginImports(loader, linker));
     }
 
     @Override
     public void execute(String[] args, LineLogger log) {
-        if (args.length != 1) {
+        if ((args.length < 1) || (args.length > 2)) {
             printUsage(log, this);
             return;
         }
 
-        String path = args[0];
+        String action = (args.length == 2) ? args[0] : "import";
+        String path = args[args.length - 1];
         File file = new File(path);
 
+        if (action.equals("unload")) {
+            if (!imports.unload(file))
+                log.print("Path '" + path + "' is not imported");
+            return;
+        }
+
+        if (!action.equals("import") && !action.equals("reload")) {
+            printUsage(log, this);
+            return;
+        }
+
         if (!file.exists()) {
             log.print("Path '" + path + "' does not exist");
             return;
         }
 
-        // importTree performs importJar automatically
-        loader.importTree(file);
-        loader.givePluginLinkerNodes(linker);
+        if (action.equals("reload"))
+            imports.reload(file);
+        else if (!imports.importPlugin(file))
+            log.print("Path '" + path + "' is already imported");
     }
 
     @Override
@@ -83,6 +106,6 @@ public class PluginCommand implements EffectCommand {
 
     @Override
     public String getCommandUsage() {
-        return "<jar or directory>";
+        return "[unload|reload] <jar or directory>";
     }
 }
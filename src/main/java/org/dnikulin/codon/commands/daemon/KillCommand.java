@@ -0,0 +1,85 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.commands.daemon;
+
+import static org.dnikulin.codon.command.CommandTools.printUsage;
+
+import org.dnikulin.codon.command.EffectCommand;
+import org.dnikulin.codon.daemon.DaemonProcess;
+import org.dnikulin.codon.daemon.thread.DaemonThreads;
+import org.dnikulin.codon.log.LineLogger;
+
+/** Command to cancel a daemon process by its PID. */
+public class KillCommand implements EffectCommand {
+    private final DaemonThreads threads;
+
+    /**
+     * Construct a kill command.
+     * 
+     * @param threads
+     *            Daemon registry
+     */
+    public KillCommand(DaemonThreads threads) {
+        this.threads = threads;
+    }
+
+    @Override
+    public void execute(String[] args, LineLogger log) {
+        if (args.length != 1) {
+            printUsage(log, this);
+            return;
+        }
+
+        try {
+            int pid = Integer.parseInt(args[0]);
+            DaemonProcess process = threads.get(pid);
+
+            if (process == null) {
+                log.print("No daemon with ID " + pid);
+                return;
+            }
+
+            process.cancel();
+            log.print("Cancelled daemon " + pid);
+        } catch (NumberFormatException ex) {
+            log.print("Argument is not an integer");
+        }
+    }
+
+    @Override
+    public String getCommandTopic() {
+        return "daemon";
+    }
+
+    @Override
+    public String getCommandName() {
+        return "kill";
+    }
+
+    @Override
+    public String getCommandUsage() {
+        return "<pid>";
+    }
+}
@@ -0,0 +1,121 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.commands.daemon;
+
+import static org.dnikulin.codon.command.CommandTools.printUsage;
+
+import org.dnikulin.codon.command.EffectCommand;
+import org.dnikulin.codon.daemon.DaemonProcess;
+import org.dnikulin.codon.daemon.DaemonStats;
+import org.dnikulin.codon.daemon.thread.DaemonThreads;
+import org.dnikulin.codon.log.LineLogger;
+
+/**
+ * Command to list daemon processes with their counters. Terminated processes
+ * are listed once more, then reaped.
+ */
+public class PsCommand implements EffectCommand {
+    private final DaemonThreads threads;
+
+    /**
+     * Construct a ps command.
+     * 
+     * @param threads
+     *            Daemon registry
+     */
+    public PsCommand(DaemonThreads threads) {
+        this.threads = threads;
+    }
+
+    @Override
+    public void execute(String[] args, LineLogger log) {
+        if (args.length != 0) {
+            printUsage(log, this);
+            return;
+        }
+
+        log.print("PID\tSTATE\tRESUMES\tEMITTED\tCPU\tIDLE\tNAME");
+
+        for (DaemonProcess process : threads.get()) {
+            DaemonStats stats = process.getStats();
+
+            log.print(process.getPID() + "\t"
+                    + getStateName(process.getDaemonState()) + "\t"
+                    + stats.getResumes() + "\t" + stats.getEmitted() + "\t"
+                    + toMillis(stats.getCpuNanos()) + "ms\t"
+                    + toMillis(stats.getIdleNanos()) + "ms\t"
+                    + process.getDaemonName());
+
+            Throwable error = process.getError();
+            if (error != null)
+                log.print("\t" + error);
+        }
+
+        threads.reap();
+    }
+
+    /**
+     * Query the display name of a daemon state.
+     * 
+     * @param state
+     *            Daemon state
+     * @return State name
+     */
+    public static String getStateName(int state) {
+        switch (state) {
+        case DaemonProcess.WAITING:
+            return "waiting";
+        case DaemonProcess.RUNNING:
+            return "running";
+        case DaemonProcess.COMPLETED:
+            return "done";
+        case DaemonProcess.ABORTED:
+            return "aborted";
+        case DaemonProcess.ERROR:
+            return "error";
+        default:
+            return "unknown";
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / (1000 * 1000);
+    }
+
+    @Override
+    public String getCommandTopic() {
+        return "daemon";
+    }
+
+    @Override
+    public String getCommandName() {
+        return "ps";
+    }
+
+    @Override
+    public String getCommandUsage() {
+        return "";
+    }
+}
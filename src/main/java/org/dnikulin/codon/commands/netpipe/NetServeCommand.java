@@ -0,0 +1,80 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.commands.netpipe;
+
+import static org.dnikulin.codon.command.CommandTools.printUsage;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.dnikulin.codon.command.EffectCommand;
+import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.misc.Arguments;
+import org.dnikulin.codon.netpipe.NetPipes;
+
+public class NetServeCommand implements EffectCommand {
+    private final NetPipes netPipes;
+
+    public NetServeCommand(NetPipes netPipes) {
+        this.netPipes = netPipes;
+    }
+
+    @Override
+    public void execute(String[] args, LineLogger log) {
+        Arguments arguments = new Arguments(args);
+        if (arguments.args != 1) {
+            printUsage(log, this);
+            return;
+        }
+
+        String logPath = arguments.get("log");
+        File logDirectory = (logPath == null) ? null : new File(logPath);
+
+        try {
+            int port = Integer.parseInt(arguments.get(0));
+            netPipes.serve(port, logDirectory, log);
+            log.print("Serving on port " + port);
+        } catch (NumberFormatException ex) {
+            log.print("Port is not an integer");
+        } catch (IOException ex) {
+            log.print(ex.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public String getCommandTopic() {
+        return "netpipe";
+    }
+
+    @Override
+    public String getCommandName() {
+        return "netserve";
+    }
+
+    @Override
+    public String getCommandUsage() {
+        return "[-log<dir>] <port>";
+    }
+}
@@ -26,14 +26,13 @@ package org.dnikulin.codon.commands.record;
 
 import static org.dnikulin.codon.command.CommandTools.printPipeUsage;
 
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.io.File;
 
 import org.dnikulin.codon.format.ObjectFormat;
 import org.dnikulin.codon.format.except.ObjectFormatNotFoundException;
 import org.dnikulin.codon.format.registry.ObjectFormats;
 import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.misc.Arguments;
 import org.dnikulin.codon.pipe.Pipe;
 import org.dnikulin.codon.pipe.command.PipeCommand;
 import org.dnikulin.codon.pipe.except.PipeFactoryException;
@@ -50,23 +49,48 @@ public class RecordCommand implements PipeCommand {
     public Pipe makePipe(String[] args, LineLogger log)
             throws PipeFactoryException {
 
-        if (args.length != 2)
+        Arguments arguments = new Arguments(args);
+        if (arguments.args != 2)
             return printPipeUsage(log, this);
 
-        String formatName = args[0];
-        String path = args[1];
+        String formatName = arguments.get(0);
+        String path = arguments.get(1);
 
+        int compression = RecordPipe.DEFAULT_COMPRESSION;
+        if (arguments.flag("raw"))
+            compression = RecordPipe.NO_COMPRESSION;
+        else if (arguments.get("level") != null)
+            compression = Arguments.parseIntOr(arguments.get("level"),
+                    compression);
+
+        if ((compression < RecordPipe.DEFAULT_COMPRESSION) || (compression > 9))
+            return printPipeUsage(log, this);
+
+        ObjectFormat format;
         try {
-            ObjectFormat format = formats.getByName(formatName);
-            OutputStream output = new FileOutputStream(path);
-            return new RecordPipe(log, format, output);
+            format = formats.getByName(formatName);
         } catch (ObjectFormatNotFoundException ex) {
             log.print("Unknown format '" + formatName + "'");
             throw new PipeFactoryException(ex);
-        } catch (IOException ex) {
+        }
+
+        // The file is only opened once the pipe is linked and used
+        File file = new File(path);
+        if (!isWritable(file)) {
             log.print("Could not open '" + path + "' for writing");
-            throw new PipeFactoryException(ex);
+            throw new PipeFactoryException("Cannot write " + path);
         }
+
+        return new RecordPipe(log, format, file,
+                RecordPipe.DEFAULT_BUFFER_SIZE, compression);
+    }
+
+    private static boolean isWritable(File file) {
+        if (file.exists())
+            return file.isFile() && file.canWrite();
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        return (parent != null) && parent.isDirectory() && parent.canWrite();
     }
 
     @Override
@@ -81,6 +105,6 @@ public class RecordCommand implements PipeCommand {
 
     @Override
     public String getCommandUsage() {
-        return "<format> <path>";
+        return "[-raw|-level<1-9>] <format> <path>";
     }
 }
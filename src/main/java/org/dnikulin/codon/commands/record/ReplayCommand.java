@@ -31,6 +31,7 @@ import org.dnikulin.codon.format.ObjectFormat;
 import org.dnikulin.codon.format.except.ObjectFormatNotFoundException;
 import org.dnikulin.codon.format.registry.ObjectFormats;
 import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.misc.Arguments;
 import org.dnikulin.codon.pipe.Pipe;
 import org.dnikulin.codon.pipe.command.PipeCommand;
 import org.dnikulin.codon.pipe.except.PipeFactoryException;
@@ -48,15 +49,23 @@ public class ReplayCommand implements PipeCommand {
     public Pipe makePipe(String[] args, LineLogger log)
             throws PipeFactoryException {
 
-        if (args.length != 2)
+        Arguments arguments = new Arguments(args);
+        if (arguments.args != 2)
             return printPipeUsage(log, this);
 
-        String formatName = args[0];
-        String path = args[1];
+        String formatName = arguments.get(0);
+        String path = arguments.get(1);
+
+        int checkpointMode = ReplayDaemonPipe.NO_CHECKPOINT;
+        if (arguments.flag("resume"))
+            checkpointMode = ReplayDaemonPipe.RESUME;
+        else if (arguments.flag("checkpoint"))
+            checkpointMode = ReplayDaemonPipe.CHECKPOINT;
 
         try {
             ObjectFormat format = formats.getByName(formatName);
-            return new ReplayDaemonPipe(threads, log, format, path);
+            return new ReplayDaemonPipe(threads, log, format, path,
+                    checkpointMode);
         } catch (ObjectFormatNotFoundException ex) {
             log.print("Unknown format '" + formatName + "'");
             throw new PipeFactoryException(ex);
@@ -75,6 +84,6 @@ public class ReplayCommand implements PipeCommand {
 
     @Override
     public String getCommandUsage() {
-        return "<format> <path>";
+        return "[-checkpoint|-resume] <format> <path>";
     }
 }
@@ -24,25 +24,42 @@
 
 package org.dnikulin.codon.commands.record;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import org.dnikulin.codon.daemon.Daemon;
+import org.dnikulin.codon.daemon.DaemonStats;
+import org.dnikulin.codon.daemon.StepDaemon;
 import org.dnikulin.codon.daemon.thread.DaemonThreads;
 import org.dnikulin.codon.format.ObjectFormat;
 import org.dnikulin.codon.log.IndirectLogger;
 import org.dnikulin.codon.log.LineLogger;
 import org.dnikulin.codon.pipe.Consumer;
 import org.dnikulin.codon.pipe.nulled.NullPipe;
+import org.dnikulin.codon.pipe.record.ReplayCheckpoint;
 import org.dnikulin.codon.pipe.record.ReplayDaemon;
 
-/** A pipe that creates a replay daemon for every consumer added. */
+/**
+ * A pipe that creates a replay daemon for every consumer added. Only the
+ * first consumer may replay with a checkpoint, since every daemon would
+ * otherwise save over the same checkpoint file.
+ */
 public class ReplayDaemonPipe extends NullPipe {
+    /** Replay without a checkpoint. */
+    public static final int NO_CHECKPOINT = 0;
+    /** Replay from the start, saving checkpoints. */
+    public static final int CHECKPOINT = 1;
+    /** Replay from the last checkpoint, saving checkpoints. */
+    public static final int RESUME = 2;
+
     private final DaemonThreads threads;
     private final IndirectLogger log;
     private final ObjectFormat format;
     private final String path;
+    private final int checkpointMode;
+
+    private boolean checkpointed;
 
     /**
      * Construct a replay daemon pipe.
@@ -58,10 +75,31 @@ public class ReplayDaemonPipe extends NullPipe {
      */
     public ReplayDaemonPipe(DaemonThreads threads, LineLogger log,
             ObjectFormat format, String path) {
+        this(threads, log, format, path, NO_CHECKPOINT);
+    }
+
+    /**
+     * Construct a replay daemon pipe with checkpointing.
+     * 
+     * @param threads
+     *            Daemon thread registry
+     * @param log
+     *            Line logger
+     * @param format
+     *            Object format
+     * @param path
+     *            File path
+     * @param checkpointMode
+     *            NO_CHECKPOINT, CHECKPOINT or RESUME
+     */
+    public ReplayDaemonPipe(DaemonThreads threads, LineLogger log,
+            ObjectFormat format, String path, int checkpointMode) {
         this.threads = threads;
         this.log = new IndirectLogger(log);
         this.format = format;
         this.path = path;
+        this.checkpointMode = checkpointMode;
+        this.checkpointed = false;
     }
 
     @Override
@@ -70,11 +108,35 @@ public class ReplayDaemonPipe extends NullPipe {
     }
 
     @Override
-    public boolean addConsumer(Consumer consumer) {
+    public synchronized boolean addConsumer(Consumer consumer) {
         try {
+            ReplayCheckpoint checkpoint = null;
+            long skip = 0;
+
+            if (checkpointMode != NO_CHECKPOINT) {
+                if (checkpointed) {
+                    log.print("Replay of '" + path
+                            + "' already has a checkpointing consumer");
+                    return false;
+                }
+
+                checkpoint = new ReplayCheckpoint(new File(path));
+                if (checkpointMode == RESUME)
+                    skip = checkpoint.load();
+                if (skip > 0)
+                    log.print("Resuming replay after " + skip + " objects");
+            }
+
             InputStream input = new FileInputStream(path);
-            Daemon daemon = new ReplayDaemon(consumer, log, format, input, path);
-            threads.start(daemon);
+            DaemonStats stats = new DaemonStats();
+            Consumer counted = stats.countEmitted(consumer);
+
+            StepDaemon daemon = new ReplayDaemon(counted, log, format, input,
+                    path, checkpoint, skip);
+            threads.start(daemon, stats);
+
+            if (checkpoint != null)
+                checkpointed = true;
             return true;
         } catch (IOException ex) {
             log.print("Could not start replay: " + ex.getLocalizedMessage());
@@ -0,0 +1,90 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.daemon;
+
+import org.dnikulin.codon.misc.Cancellable;
+
+/** A daemon being executed, however it is scheduled. */
+public interface DaemonProcess extends Cancellable {
+    /** Daemon logic has not been started. */
+    public static final int WAITING = 0;
+    /** Daemon logic is executing normally. */
+    public static final int RUNNING = 1;
+    /** Daemon logic has completed normally. */
+    public static final int COMPLETED = 2;
+    /** Daemon thread or logic was aborted. */
+    public static final int ABORTED = 3;
+    /** Daemon logic threw an exception. */
+    public static final int ERROR = 4;
+
+    /**
+     * Query daemon process identifier (PID).
+     * 
+     * @return Daemon PID
+     */
+    public int getPID();
+
+    /**
+     * Query daemon name.
+     * 
+     * @return Daemon name
+     */
+    public String getDaemonName();
+
+    /**
+     * Query daemon state.
+     * 
+     * @return Daemon state
+     */
+    public int getDaemonState();
+
+    /**
+     * Query daemon performance counters.
+     * 
+     * @return Daemon statistics
+     */
+    public DaemonStats getStats();
+
+    /**
+     * Query daemon termination state. A daemon is "running" if it has not
+     * exited, been aborted or thrown an error.
+     * 
+     * @return true iff the daemon logic is waiting or running.
+     */
+    public boolean isRunning();
+
+    /**
+     * Query what the daemon logic threw, if it terminated in the ERROR state.
+     * 
+     * @return Exception or error thrown, or null if none
+     */
+    public Throwable getError();
+
+    /**
+     * Suspend execution of the current thread until the daemon has terminated
+     * in some way. Note that daemon logic may block indefinitely.
+     */
+    public void waitForJoin();
+}
@@ -0,0 +1,214 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.daemon;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dnikulin.codon.pipe.Consumer;
+
+/**
+ * Performance counters for one daemon process. The executor brackets each
+ * call into daemon logic with beginResume() and endResume(); emitted objects
+ * are counted by a consumer wrapper.
+ */
+public class DaemonStats {
+    private static final ThreadMXBean THREADS = ManagementFactory
+            .getThreadMXBean();
+
+    private static final boolean CPU_TIME = hasCpuTime();
+
+    private final AtomicLong resumes;
+    private final AtomicLong emitted;
+    private final AtomicLong cpuNanos;
+
+    private final long startTime;
+    private volatile long lastProgress;
+    private volatile long resumeStarted;
+    private volatile boolean stallReported;
+
+    // Only touched by the thread inside a resume
+    private long cpuStarted;
+
+    /** Construct empty daemon statistics. */
+    public DaemonStats() {
+        resumes = new AtomicLong();
+        emitted = new AtomicLong();
+        cpuNanos = new AtomicLong();
+
+        startTime = System.nanoTime();
+        lastProgress = startTime;
+        resumeStarted = 0;
+        stallReported = false;
+        cpuStarted = -1;
+    }
+
+    /**
+     * Wrap a consumer to count objects emitted by the daemon.
+     * 
+     * @param consumer
+     *            Daemon output consumer
+     * @return Counting consumer
+     */
+    public Consumer countEmitted(final Consumer consumer) {
+        return new Consumer() {
+            @Override
+            public Class<?> getInputType() {
+                return consumer.getInputType();
+            }
+
+            @Override
+            public void consume(Object value) {
+                emitted.incrementAndGet();
+                lastProgress = System.nanoTime();
+                consumer.consume(value);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return consumer.isCancelled();
+            }
+        };
+    }
+
+    /** Record that daemon logic is about to be resumed. */
+    public void beginResume() {
+        cpuStarted = CPU_TIME ? THREADS.getCurrentThreadCpuTime() : -1;
+        resumeStarted = System.nanoTime();
+    }
+
+    /**
+     * Record that daemon logic has returned.
+     * 
+     * @param progress
+     *            true if the resume did any work
+     */
+    public void endResume(boolean progress) {
+        long now = System.nanoTime();
+
+        if (cpuStarted >= 0) {
+            long cpu = THREADS.getCurrentThreadCpuTime();
+            if (cpu >= cpuStarted)
+                cpuNanos.addAndGet(cpu - cpuStarted);
+        }
+
+        resumes.incrementAndGet();
+        resumeStarted = 0;
+        stallReported = false;
+
+        if (progress)
+            lastProgress = now;
+    }
+
+    /**
+     * Query number of completed resumes.
+     * 
+     * @return Resume count
+     */
+    public long getResumes() {
+        return resumes.get();
+    }
+
+    /**
+     * Query number of objects emitted through countEmitted().
+     * 
+     * @return Emitted object count
+     */
+    public long getEmitted() {
+        return emitted.get();
+    }
+
+    /**
+     * Query CPU time spent in completed resumes. Zero where the runtime does
+     * not measure thread CPU time.
+     * 
+     * @return CPU time in nanoseconds
+     */
+    public long getCpuNanos() {
+        return cpuNanos.get();
+    }
+
+    /**
+     * Query time since the daemon was started.
+     * 
+     * @return Age in nanoseconds
+     */
+    public long getAgeNanos() {
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * Query time since the daemon last made progress.
+     * 
+     * @return Time in nanoseconds
+     */
+    public long getIdleNanos() {
+        return System.nanoTime() - lastProgress;
+    }
+
+    /**
+     * Query how long the current resume has been running.
+     * 
+     * @return Time in nanoseconds, or 0 if not inside a resume
+     */
+    public long getResumeNanos() {
+        long started = resumeStarted;
+        if (started == 0)
+            return 0;
+        return System.nanoTime() - started;
+    }
+
+    /**
+     * Check whether the current resume has run past a threshold. Each stall
+     * is only reported once.
+     * 
+     * @param thresholdNanos
+     *            Stall threshold in nanoseconds
+     * @return Time in the current resume in nanoseconds if a new stall was
+     *         detected, otherwise -1
+     */
+    public long checkStall(long thresholdNanos) {
+        long started = resumeStarted;
+        if (stallReported || (started == 0))
+            return -1;
+
+        long nanos = System.nanoTime() - started;
+        if (nanos < thresholdNanos)
+            return -1;
+
+        stallReported = true;
+        return nanos;
+    }
+
+    private static boolean hasCpuTime() {
+        try {
+            return THREADS.isCurrentThreadCpuTimeSupported()
+                    && THREADS.isThreadCpuTimeEnabled();
+        } catch (UnsupportedOperationException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.daemon;
+
+import org.dnikulin.codon.daemon.except.DaemonAbortException;
+import org.dnikulin.codon.daemon.except.DaemonException;
+import org.dnikulin.codon.daemon.except.DaemonExitException;
+
+/**
+ * Adapts a Daemon to the StepDaemon contract. Each step resumes the daemon up
+ * to the given number of times, translating its exit and abort exceptions
+ * into DONE and ABORT.
+ */
+public class DaemonStepAdapter implements StepDaemon {
+    private final Daemon daemon;
+
+    /**
+     * Construct a step adapter.
+     * 
+     * @param daemon
+     *            Daemon logic
+     */
+    public DaemonStepAdapter(Daemon daemon) {
+        this.daemon = daemon;
+    }
+
+    /**
+     * Query adapted daemon.
+     * 
+     * @return Daemon logic
+     */
+    public Daemon getDaemon() {
+        return daemon;
+    }
+
+    @Override
+    public String getDaemonName() {
+        return daemon.getDaemonName();
+    }
+
+    @Override
+    public int step(int limit) throws DaemonException {
+        try {
+            for (int i = 0; i < limit; i++)
+                daemon.resumeDaemon();
+            return CONTINUE;
+        } catch (DaemonExitException ex) {
+            return DONE;
+        } catch (DaemonAbortException ex) {
+            return ABORT;
+        }
+    }
+
+    @Override
+    public long getIdleUntil() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void cancel() {
+        daemon.cancel();
+    }
+}
@@ -0,0 +1,74 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.daemon;
+
+import org.dnikulin.codon.daemon.thread.DaemonThreads;
+import org.dnikulin.codon.log.LineLogger;
+
+/**
+ * Logs daemons that have spent longer than a threshold inside a single resume.
+ * Intended to run periodically, such as on a timer wheel.
+ */
+public class DaemonWatchdog implements Runnable {
+    /** Default stall threshold in milliseconds. */
+    public static final long DEFAULT_THRESHOLD_MILLIS = 5000;
+
+    private final DaemonThreads threads;
+    private final LineLogger log;
+    private final long thresholdNanos;
+
+    /**
+     * Construct a daemon watchdog.
+     * 
+     * @param threads
+     *            Daemon registry to inspect
+     * @param log
+     *            Line logger for stall reports
+     * @param thresholdMillis
+     *            Stall threshold in milliseconds
+     */
+    public DaemonWatchdog(DaemonThreads threads, LineLogger log,
+            long thresholdMillis) {
+
+        this.threads = threads;
+        this.log = log;
+        this.thresholdNanos = thresholdMillis * 1000 * 1000;
+    }
+
+    @Override
+    public void run() {
+        for (DaemonProcess process : threads.get()) {
+            DaemonStats stats = process.getStats();
+
+            long nanos = stats.checkStall(thresholdNanos);
+            if (nanos >= 0) {
+                long millis = nanos / (1000 * 1000);
+                log.print("Daemon " + process.getPID() + " ("
+                        + process.getDaemonName() + ") stuck in resume for "
+                        + millis + " ms");
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.daemon;
+
+import org.dnikulin.codon.daemon.except.DaemonException;
+import org.dnikulin.codon.misc.Cancellable;
+
+/**
+ * An iterative procedure expected to run asynchronously, which reports its
+ * progress with a status code instead of exceptions. Each call to step() may
+ * perform a bounded batch of work.
+ */
+public interface StepDaemon extends Cancellable {
+    /** More work is ready; the executor may call step() again immediately. */
+    public static final int CONTINUE = 0;
+    /** Other daemons should be given a turn before step() is called again. */
+    public static final int YIELD = 1;
+    /** No work is ready until the time returned by getIdleUntil(). */
+    public static final int IDLE = 2;
+    /** Daemon logic has completed normally. */
+    public static final int DONE = 3;
+    /** Daemon logic has aborted. */
+    public static final int ABORT = 4;
+
+    /**
+     * Query daemon name.
+     * 
+     * @return Daemon name.
+     */
+    public String getDaemonName();
+
+    /**
+     * Execute up to a given number of units of daemon logic. A daemon executor
+     * is expected to call this method repeatedly until it returns DONE or
+     * ABORT, or throws a DaemonException.
+     * 
+     * @param limit
+     *            Maximum number of units of work to perform
+     * @return CONTINUE, YIELD, IDLE, DONE or ABORT
+     */
+    public int step(int limit) throws DaemonException;
+
+    /**
+     * Query when an idle daemon next has work. Only meaningful after step()
+     * returned IDLE.
+     * 
+     * @return Deadline in System.nanoTime() units
+     */
+    public long getIdleUntil();
+}
@@ -0,0 +1,226 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.daemon.pool;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.dnikulin.codon.daemon.BlockingDaemon;
+import org.dnikulin.codon.daemon.Daemon;
+import org.dnikulin.codon.daemon.DaemonStats;
+import org.dnikulin.codon.daemon.DaemonStepAdapter;
+import org.dnikulin.codon.daemon.StepDaemon;
+import org.dnikulin.codon.timer.TimerWheel;
+
+/**
+ * Executes daemons in slices on a shared work-stealing pool. Slices wait in a
+ * single FIFO queue and each pool task runs whichever slice is at its head, so
+ * daemons take turns even when a worker would otherwise prefer its own local
+ * queue. Idle daemons are held by a timer wheel until their deadline instead
+ * of occupying a worker. Blocking daemons each get their own thread instead,
+ * which is a virtual thread where the runtime supports them.
+ */
+public class DaemonPool {
+    private static final Method START_VIRTUAL = findStartVirtual();
+
+    private final ForkJoinPool pool;
+    private final Queue<Runnable> slices;
+    private final Runnable runner;
+    private final TimerWheel timer;
+    private final boolean ownTimer;
+
+    /**
+     * Construct a daemon pool.
+     * 
+     * @param threads
+     *            Number of worker threads
+     * @param timer
+     *            Timer wheel for idle daemons, or null to create one
+     */
+    public DaemonPool(int threads, TimerWheel timer) {
+        pool = new ForkJoinPool(threads,
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+        slices = new ConcurrentLinkedQueue<Runnable>();
+
+        runner = new Runnable() {
+            @Override
+            public void run() {
+                Runnable slice = slices.poll();
+                if (slice != null)
+                    slice.run();
+            }
+        };
+
+        this.ownTimer = (timer == null);
+        this.timer = ownTimer ? new TimerWheel() : timer;
+    }
+
+    /**
+     * Construct a daemon pool with its own timer wheel.
+     * 
+     * @param threads
+     *            Number of worker threads
+     */
+    public DaemonPool(int threads) {
+        this(threads, null);
+    }
+
+    /** Construct a daemon pool with one worker thread per processor. */
+    public DaemonPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Query whether blocking daemons run on virtual threads.
+     * 
+     * @return true if virtual threads are available
+     */
+    public static boolean hasVirtualThreads() {
+        return START_VIRTUAL != null;
+    }
+
+    /**
+     * Start executing a daemon.
+     * 
+     * @param daemon
+     *            Daemon logic
+     * @param pid
+     *            Process identifier
+     * @return Daemon task
+     */
+    public DaemonTask start(Daemon daemon, int pid) {
+        StepDaemon steps = new DaemonStepAdapter(daemon);
+
+        if (daemon instanceof BlockingDaemon) {
+            DaemonTask task = new DaemonTask(steps, pid, null);
+            startThread(task, pid);
+            return task;
+        }
+
+        return start(steps, pid);
+    }
+
+    /**
+     * Start executing a step daemon.
+     * 
+     * @param daemon
+     *            Daemon logic
+     * @param pid
+     *            Process identifier
+     * @return Daemon task
+     */
+    public DaemonTask start(StepDaemon daemon, int pid) {
+        return start(daemon, pid, new DaemonStats());
+    }
+
+    /**
+     * Start executing a step daemon with existing statistics.
+     * 
+     * @param daemon
+     *            Daemon logic
+     * @param pid
+     *            Process identifier
+     * @param stats
+     *            Daemon statistics to update
+     * @return Daemon task
+     */
+    public DaemonTask start(StepDaemon daemon, int pid, DaemonStats stats) {
+        DaemonTask task = new DaemonTask(daemon, pid, this, stats);
+        submit(task);
+        return task;
+    }
+
+    /** Stop accepting new slices. Running daemons stop at their next slice. */
+    public void shutdown() {
+        pool.shutdown();
+
+        // Idle daemons are woken so that they abort, or abort when their
+        // wakeup finds the pool shut down
+        if (ownTimer) {
+            for (Runnable wakeup : timer.stop())
+                wakeup.run();
+        }
+    }
+
+    // Package-private
+    void submit(DaemonTask task) {
+        slices.add(task);
+        pool.execute(runner);
+    }
+
+    // Package-private
+    void submitAt(final DaemonTask task, long deadline) {
+        long delay = deadline - System.nanoTime();
+        if (delay <= 0) {
+            submit(task);
+            return;
+        }
+
+        Runnable wakeup = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    submit(task);
+                } catch (RejectedExecutionException ex) {
+                    task.reject();
+                }
+            }
+        };
+
+        try {
+            task.setWakeup(timer.scheduleAt(wakeup, deadline));
+        } catch (IllegalStateException ex) {
+            // Timer wheel was stopped
+            task.reject();
+        }
+    }
+
+    private static void startThread(Runnable task, int pid) {
+        if (START_VIRTUAL != null) {
+            try {
+                START_VIRTUAL.invoke(null, task);
+                return;
+            } catch (Exception ex) {
+                // Fall back to a platform thread
+            }
+        }
+
+        Thread thread = new Thread(task, "codon-daemon-" + pid);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static Method findStartVirtual() {
+        try {
+            return Thread.class.getMethod("startVirtualThread", Runnable.class);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+}
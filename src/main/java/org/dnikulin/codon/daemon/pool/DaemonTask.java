@@ -0,0 +1,292 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.daemon.pool;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.dnikulin.codon.daemon.DaemonProcess;
+import org.dnikulin.codon.daemon.DaemonStats;
+import org.dnikulin.codon.daemon.StepDaemon;
+import org.dnikulin.codon.timer.Timeout;
+
+/**
+ * A daemon executed in slices. Each run() steps the daemon a bounded number of
+ * times, then resubmits the task to its pool behind any other queued daemons.
+ * An idle daemon is resubmitted once its idle deadline passes. Without a pool,
+ * run() loops until the daemon terminates, parking while it is idle.
+ */
+public class DaemonTask implements DaemonProcess, Runnable {
+    /** Maximum number of units of work per slice. */
+    public static final int SLICE_RESUMES = 64;
+
+    /** Number of units of work requested per step() call. */
+    public static final int STEP_LIMIT = 16;
+
+    /** Maximum duration of a slice in nanoseconds. */
+    public static final long SLICE_NANOS = 1000 * 1000;
+
+    private static final int CANCELLED = -1;
+
+    private final StepDaemon daemon;
+    private final int pid;
+    private final DaemonPool pool;
+    private final DaemonStats stats;
+    private final AtomicBoolean running;
+    private final AtomicInteger state;
+    private final CountDownLatch done;
+
+    private volatile Thread owner;
+    private volatile Timeout wakeup;
+    private volatile Throwable error;
+
+    /**
+     * Construct a daemon task.
+     * 
+     * @param daemon
+     *            Daemon logic
+     * @param pid
+     *            Process identifier
+     * @param pool
+     *            Pool to resubmit slices to, or null to run in one call
+     * @param stats
+     *            Daemon statistics to update
+     */
+    public DaemonTask(StepDaemon daemon, int pid, DaemonPool pool,
+            DaemonStats stats) {
+
+        this.daemon = daemon;
+        this.pid = pid;
+        this.pool = pool;
+        this.stats = stats;
+        this.running = new AtomicBoolean(true);
+        this.state = new AtomicInteger(WAITING);
+        this.done = new CountDownLatch(1);
+        this.owner = null;
+        this.wakeup = null;
+        this.error = null;
+    }
+
+    /**
+     * Construct a daemon task with its own statistics.
+     * 
+     * @param daemon
+     *            Daemon logic
+     * @param pid
+     *            Process identifier
+     * @param pool
+     *            Pool to resubmit slices to, or null to run in one call
+     */
+    public DaemonTask(StepDaemon daemon, int pid, DaemonPool pool) {
+        this(daemon, pid, pool, new DaemonStats());
+    }
+
+    @Override
+    public int getPID() {
+        return pid;
+    }
+
+    @Override
+    public String getDaemonName() {
+        return daemon.getDaemonName();
+    }
+
+    @Override
+    public int getDaemonState() {
+        return state.get();
+    }
+
+    @Override
+    public DaemonStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    @Override
+    public Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public void cancel() {
+        running.set(false);
+
+        // Wake an idle daemon so that it observes cancellation
+        Thread thread = owner;
+        if (thread != null)
+            LockSupport.unpark(thread);
+
+        Timeout timeout = wakeup;
+        if ((timeout != null) && timeout.cancel()) {
+            try {
+                pool.submit(this);
+            } catch (RejectedExecutionException ex) {
+                reject();
+            }
+        }
+    }
+
+    @Override
+    public void waitForJoin() {
+        while (true) {
+            try {
+                done.await();
+                return;
+            } catch (InterruptedException ex) {
+                // Ignore
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        // Only transition here once
+        state.compareAndSet(WAITING, RUNNING);
+        if (state.get() != RUNNING)
+            return;
+
+        wakeup = null;
+
+        try {
+            if (pool == null)
+                runAlone();
+            else
+                runShared();
+        } catch (RejectedExecutionException ex) {
+            reject();
+        } catch (Throwable ex) {
+            // Errors must also finish the task, or joins never return
+            error = ex;
+            finish(ERROR);
+        }
+    }
+
+    // Package-private
+    void setWakeup(Timeout timeout) {
+        wakeup = timeout;
+    }
+
+    // Package-private
+    void reject() {
+        state.compareAndSet(WAITING, RUNNING);
+        daemon.cancel();
+        finish(ABORTED);
+    }
+
+    private void runShared() throws Exception {
+        int status = runSlice();
+
+        if (status == StepDaemon.IDLE)
+            pool.submitAt(this, daemon.getIdleUntil());
+        else if ((status == StepDaemon.CONTINUE)
+                || (status == StepDaemon.YIELD))
+            pool.submit(this);
+        else
+            complete(status);
+    }
+
+    private void runAlone() throws Exception {
+        owner = Thread.currentThread();
+
+        try {
+            while (true) {
+                int status = runSlice();
+
+                if (status == StepDaemon.IDLE) {
+                    park(daemon.getIdleUntil());
+                } else if (status == StepDaemon.YIELD) {
+                    Thread.yield();
+                } else if (status != StepDaemon.CONTINUE) {
+                    complete(status);
+                    return;
+                }
+            }
+        } finally {
+            owner = null;
+        }
+    }
+
+    private int runSlice() throws Exception {
+        long start = System.nanoTime();
+
+        for (int steps = 0; steps < SLICE_RESUMES; steps += STEP_LIMIT) {
+            if (isRunning() == false)
+                return CANCELLED;
+
+            // An idle or failed step made no progress
+            stats.beginResume();
+            int status = StepDaemon.IDLE;
+            try {
+                status = daemon.step(STEP_LIMIT);
+            } finally {
+                stats.endResume(status != StepDaemon.IDLE);
+            }
+
+            if (status != StepDaemon.CONTINUE)
+                return status;
+
+            if ((System.nanoTime() - start) >= SLICE_NANOS)
+                break;
+        }
+
+        return StepDaemon.CONTINUE;
+    }
+
+    private void park(long deadline) {
+        while (isRunning()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return;
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private void complete(int status) {
+        if (status == StepDaemon.DONE) {
+            finish(COMPLETED);
+        } else if (status == StepDaemon.ABORT) {
+            finish(ABORTED);
+        } else if (status == CANCELLED) {
+            // To reach here, must have been cancel()ed
+            daemon.cancel();
+            finish(ABORTED);
+        } else {
+            finish(ERROR);
+        }
+    }
+
+    private void finish(int end) {
+        state.compareAndSet(RUNNING, end);
+        running.set(false);
+        done.countDown();
+    }
+}
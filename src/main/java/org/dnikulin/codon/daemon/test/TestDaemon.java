@@ -24,25 +24,24 @@
 
 package org.dnikulin.codon.daemon.test;
 
-import static org.dnikulin.codon.misc.TimeTools.sleepFor;
-
-import org.dnikulin.codon.daemon.Daemon;
-import org.dnikulin.codon.daemon.except.DaemonAbortException;
-import org.dnikulin.codon.daemon.except.DaemonException;
-import org.dnikulin.codon.daemon.except.DaemonExitException;
+import org.dnikulin.codon.daemon.StepDaemon;
 import org.dnikulin.codon.log.LineLogger;
 import org.dnikulin.codon.pipe.Consumer;
 
-/** A daemon for testing purposes. */
-public class TestDaemon implements Daemon {
+/**
+ * A daemon for testing purposes. Rather than sleeping between ticks, it
+ * reports itself idle until the next tick is due.
+ */
+public class TestDaemon implements StepDaemon {
     private final LineLogger log;
     private final Consumer consumer;
 
     private final int ticks;
     private final int sleep;
 
-    private boolean running;
-    private int tick;
+    private volatile boolean running;
+    private volatile int tick;
+    private long nextTick;
 
     /**
      * Construct a test daemon.
@@ -54,7 +53,7 @@ public class TestDaemon implements Daemon {
      * @param ticks
      *            Number of times to resume
      * @param sleep
-     *            Number of milliseconds to sleep in each resume
+     *            Number of milliseconds to wait before each tick
      */
     public TestDaemon(LineLogger log, Consumer consumer, int ticks, int sleep) {
         this.log = log;
@@ -65,6 +64,7 @@ public class TestDaemon implements Daemon {
 
         this.running = true;
         this.tick = 0;
+        this.nextTick = 0;
     }
 
     /**
@@ -82,23 +82,44 @@ public class TestDaemon implements Daemon {
     }
 
     @Override
-    public void resumeDaemon() throws DaemonException {
+    public int step(int limit) {
         if (running == false) {
             log.print("Aborted");
-            throw new DaemonAbortException();
+            return ABORT;
         }
 
         if (tick >= ticks) {
             log.print("All ticks completed");
-            throw new DaemonExitException();
+            return DONE;
+        }
+
+        if (consumer.isCancelled()) {
+            log.print("Cancelled by consumer");
+            return DONE;
+        }
+
+        long now = System.nanoTime();
+
+        if (nextTick == 0) {
+            nextTick = now + (sleep * 1000000L);
+            return IDLE;
         }
 
-        sleepFor(sleep);
+        if (now - nextTick < 0)
+            return IDLE;
+
         tick++;
+        nextTick = now + (sleep * 1000000L);
 
         String line = "Completed " + tick + " ticks";
         log.print(line);
         consumer.consume(line);
+        return (tick >= ticks) ? CONTINUE : IDLE;
+    }
+
+    @Override
+    public long getIdleUntil() {
+        return nextTick;
     }
 
     @Override
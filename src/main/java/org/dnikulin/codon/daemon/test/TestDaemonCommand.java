@@ -26,8 +26,9 @@ package org.dnikulin.codon.daemon.test;
 
 import static org.dnikulin.codon.command.CommandTools.printUsage;
 
-import org.dnikulin.codon.daemon.Daemon;
-import org.dnikulin.codon.daemon.thread.DaemonThread;
+import org.dnikulin.codon.daemon.DaemonProcess;
+import org.dnikulin.codon.daemon.DaemonStats;
+import org.dnikulin.codon.daemon.StepDaemon;
 import org.dnikulin.codon.daemon.thread.DaemonThreads;
 import org.dnikulin.codon.log.LineLogger;
 import org.dnikulin.codon.pipe.Consumer;
@@ -57,10 +58,13 @@ public class TestDaemonCommand implements ProducerCommand {
         int ticks = Integer.parseInt(args[0]);
         int sleep = Integer.parseInt(args[1]);
 
-        Daemon daemon = new TestDaemon(log, consumer, ticks, sleep);
-        DaemonThread thread = threads.start(daemon);
+        DaemonStats stats = new DaemonStats();
+        Consumer counted = stats.countEmitted(consumer);
 
-        log.print("Started test daemon in ID " + thread.getPID());
+        StepDaemon daemon = new TestDaemon(log, counted, ticks, sleep);
+        DaemonProcess process = threads.start(daemon, stats);
+
+        log.print("Started test daemon in ID " + process.getPID());
     }
 
     @Override
@@ -24,31 +24,16 @@
 
 package org.dnikulin.codon.daemon.thread;
 
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-
 import org.dnikulin.codon.daemon.Daemon;
-import org.dnikulin.codon.daemon.except.DaemonAbortException;
-import org.dnikulin.codon.daemon.except.DaemonExitException;
-import org.dnikulin.codon.misc.Cancellable;
+import org.dnikulin.codon.daemon.DaemonProcess;
+import org.dnikulin.codon.daemon.DaemonStats;
+import org.dnikulin.codon.daemon.DaemonStepAdapter;
+import org.dnikulin.codon.daemon.StepDaemon;
+import org.dnikulin.codon.daemon.pool.DaemonTask;
 
 /** A single thread executing a single daemon. */
-public class DaemonThread extends Thread implements Cancellable {
-    /** Daemon logic has not been started. */
-    public static final int WAITING = 0;
-    /** Daemon logic is executing normally. */
-    public static final int RUNNING = 1;
-    /** Daemon logic has completed normally. */
-    public static final int COMPLETED = 2;
-    /** Daemon thread or logic was aborted. */
-    public static final int ABORTED = 3;
-    /** Daemon logic threw an exception. */
-    public static final int ERROR = 4;
-
-    private final Daemon daemon;
-    private final int pid;
-    private final AtomicBoolean running;
-    private final AtomicInteger state;
+public class DaemonThread extends Thread implements DaemonProcess {
+    private final DaemonTask task;
 
     /**
      * Construct a daemon thread.
@@ -59,13 +44,36 @@ public class DaemonThread extends Thread implements Cancellable {
      *            Process identifier
      */
     public DaemonThread(Daemon daemon, int pid) {
+        this(new DaemonStepAdapter(daemon), pid);
+    }
+
+    /**
+     * Construct a daemon thread for a step daemon.
+     * 
+     * @param daemon
+     *            Daemon logic
+     * @param pid
+     *            Process identifier
+     */
+    public DaemonThread(StepDaemon daemon, int pid) {
+        this(daemon, pid, new DaemonStats());
+    }
+
+    /**
+     * Construct a daemon thread for a step daemon with existing statistics.
+     * 
+     * @param daemon
+     *            Daemon logic
+     * @param pid
+     *            Process identifier
+     * @param stats
+     *            Daemon statistics to update
+     */
+    public DaemonThread(StepDaemon daemon, int pid, DaemonStats stats) {
         super("codon-daemon-" + pid);
         setDaemon(true);
 
-        this.daemon = daemon;
-        this.pid = pid;
-        this.running = new AtomicBoolean(true);
-        this.state = new AtomicInteger(WAITING);
+        this.task = new DaemonTask(daemon, pid, null, stats);
     }
 
     /**
@@ -73,8 +81,9 @@ public class DaemonThread extends Thread implements Cancellable {
      * 
      * @return Daemon thread PID
      */
+    @Override
     public int getPID() {
-        return pid;
+        return task.getPID();
     }
 
     /**
@@ -82,8 +91,9 @@ public class DaemonThread extends Thread implements Cancellable {
      * 
      * @return Daemon name
      */
+    @Override
     public String getDaemonName() {
-        return daemon.getDaemonName();
+        return task.getDaemonName();
     }
 
     /**
@@ -91,8 +101,14 @@ public class DaemonThread extends Thread implements Cancellable {
      * 
      * @return Daemon thread state
      */
+    @Override
     public int getDaemonState() {
-        return state.get();
+        return task.getDaemonState();
+    }
+
+    @Override
+    public DaemonStats getStats() {
+        return task.getStats();
     }
 
     /**
@@ -101,8 +117,14 @@ public class DaemonThread extends Thread implements Cancellable {
      * 
      * @return true iff the daemon logic is waiting or running.
      */
+    @Override
     public boolean isRunning() {
-        return running.get();
+        return task.isRunning();
+    }
+
+    @Override
+    public Throwable getError() {
+        return task.getError();
     }
 
     /**
@@ -111,13 +133,14 @@ public class DaemonThread extends Thread implements Cancellable {
      */
     @Override
     public void cancel() {
-        running.set(false);
+        task.cancel();
     }
 
     /**
      * Suspend execution of the current thread until the daemon thread has
      * terminated in some way. Note that daemon logic may block indefinitely.
      */
+    @Override
     public void waitForJoin() {
         while (true) {
             try {
@@ -131,26 +154,6 @@ public class DaemonThread extends Thread implements Cancellable {
 
     @Override
     public void run() {
-        try {
-            // Only transition here once
-            if (state.compareAndSet(WAITING, RUNNING) == false)
-                return;
-
-            // Loop until cancel or exception
-            while (isRunning())
-                daemon.resumeDaemon();
-
-            // To reach here, must have been cancel()ed
-            daemon.cancel();
-            state.compareAndSet(RUNNING, ABORTED);
-        } catch (DaemonExitException ex) {
-            state.compareAndSet(RUNNING, COMPLETED);
-        } catch (DaemonAbortException ex) {
-            state.compareAndSet(RUNNING, ABORTED);
-        } catch (Exception ex) {
-            state.compareAndSet(RUNNING, ERROR);
-        } finally {
-            running.set(false);
-        }
+        task.run();
     }
 }
@@ -25,50 +25,217 @@
 package org.dnikulin.codon.daemon.thread;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.dnikulin.codon.daemon.Daemon;
+import org.dnikulin.codon.daemon.DaemonProcess;
+import org.dnikulin.codon.daemon.DaemonStats;
+import org.dnikulin.codon.daemon.ServiceDaemon;
+import org.dnikulin.codon.daemon.StepDaemon;
+import org.dnikulin.codon.daemon.pool.DaemonPool;
+import org.dnikulin.codon.timer.TimerWheel;
 
-/** PID-based registry of daemon threads. */
+/**
+ * PID-based registry of daemon processes. Terminated processes stay listed
+ * until they are reaped, which happens whenever a new daemon starts.
+ */
 public class DaemonThreads {
-    private final List<DaemonThread> threads;
+    /** Execute each daemon in its own platform thread. */
+    public static final int THREAD_MODE = 0;
 
-    /** Construct new registry. */
+    /** Execute daemons in slices on a shared pool. */
+    public static final int POOL_MODE = 1;
+
+    private final Map<Integer, DaemonProcess> processes;
+    private final Map<Integer, ServiceDaemon> services;
+    private final int mode;
+    private final TimerWheel timer;
+    private DaemonPool pool;
+    private int nextPID;
+
+    /**
+     * Construct new registry.
+     * 
+     * @param mode
+     *            THREAD_MODE or POOL_MODE
+     * @param timer
+     *            Timer wheel for idle pooled daemons, or null for a private one
+     */
+    public DaemonThreads(int mode, TimerWheel timer) {
+        this.processes = new TreeMap<Integer, DaemonProcess>();
+        this.services = new TreeMap<Integer, ServiceDaemon>();
+        this.mode = mode;
+        this.timer = timer;
+        this.pool = null;
+        this.nextPID = 0;
+    }
+
+    /**
+     * Construct new registry.
+     * 
+     * @param mode
+     *            THREAD_MODE or POOL_MODE
+     */
+    public DaemonThreads(int mode) {
+        this(mode, null);
+    }
+
+    /** Construct new registry in thread mode. */
     public DaemonThreads() {
-        threads = new ArrayList<DaemonThread>();
+        this(THREAD_MODE);
+    }
+
+    /**
+     * Query scheduling mode.
+     * 
+     * @return THREAD_MODE or POOL_MODE
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Start a daemon.
+     * 
+     * @param daemon
+     *            Daemon logic
+     * @return Daemon process
+     */
+    public synchronized DaemonProcess start(Daemon daemon) {
+        int pid = nextPID();
+
+        DaemonProcess process;
+        if (mode == POOL_MODE) {
+            process = getPool().start(daemon, pid);
+        } else {
+            DaemonThread thread = new DaemonThread(daemon, pid);
+            thread.start();
+            process = thread;
+        }
+
+        processes.put(pid, process);
+        if (daemon instanceof ServiceDaemon)
+            services.put(pid, (ServiceDaemon) daemon);
+        return process;
+    }
+
+    /**
+     * Start a step daemon.
+     * 
+     * @param daemon
+     *            Daemon logic
+     * @return Daemon process
+     */
+    public DaemonProcess start(StepDaemon daemon) {
+        return start(daemon, new DaemonStats());
     }
 
     /**
-     * Start a daemon thread.
+     * Start a step daemon with existing statistics, such as one whose output
+     * is counted through DaemonStats.countEmitted().
      * 
      * @param daemon
      *            Daemon logic
-     * @return Daemon thread
+     * @param stats
+     *            Daemon statistics to update
+     * @return Daemon process
      */
-    public synchronized DaemonThread start(Daemon daemon) {
-        DaemonThread thread = new DaemonThread(daemon, threads.size());
-        threads.add(thread);
-        thread.start();
-        return thread;
+    public synchronized DaemonProcess start(StepDaemon daemon,
+            DaemonStats stats) {
+
+        int pid = nextPID();
+
+        DaemonProcess process;
+        if (mode == POOL_MODE) {
+            process = getPool().start(daemon, pid, stats);
+        } else {
+            DaemonThread thread = new DaemonThread(daemon, pid, stats);
+            thread.start();
+            process = thread;
+        }
+
+        processes.put(pid, process);
+        return process;
     }
 
     /**
-     * List all daemon threads.
+     * List all daemon processes that have not been reaped, in PID order.
      * 
-     * @return List of daemon threads
+     * @return List of daemon processes
      */
-    public synchronized List<DaemonThread> get() {
-        return new ArrayList<DaemonThread>(threads);
+    public synchronized List<DaemonProcess> get() {
+        return new ArrayList<DaemonProcess>(processes.values());
+    }
+
+    /**
+     * Wait for every daemon to terminate. Service daemons are then told to
+     * finish in PID order, so that each drains what the others produced.
+     */
+    public void joinAll() {
+        for (DaemonProcess process : get()) {
+            if (getService(process.getPID()) == null)
+                process.waitForJoin();
+        }
+
+        for (DaemonProcess process : get()) {
+            ServiceDaemon service = getService(process.getPID());
+            if (service != null) {
+                service.finish();
+                process.waitForJoin();
+            }
+        }
     }
 
     /**
-     * Find a daemon thread by its PID.
+     * Find a daemon process by its PID.
      * 
      * @param pid
-     *            Daemon thread PID
-     * @return Daemon thread
+     *            Daemon PID
+     * @return Daemon process, or null if there is none or it was reaped
      */
-    public synchronized DaemonThread get(int pid) {
-        return threads.get(pid);
+    public synchronized DaemonProcess get(int pid) {
+        return processes.get(pid);
+    }
+
+    /**
+     * Remove every daemon process that has terminated.
+     * 
+     * @return Number of processes removed
+     */
+    public synchronized int reap() {
+        int reaped = 0;
+
+        Iterator<DaemonProcess> it = processes.values().iterator();
+        while (it.hasNext()) {
+            DaemonProcess process = it.next();
+            if (process.isRunning() == false) {
+                services.remove(process.getPID());
+                it.remove();
+                reaped++;
+            }
+        }
+
+        return reaped;
+    }
+
+    private synchronized ServiceDaemon getService(int pid) {
+        return services.get(pid);
+    }
+
+    private int nextPID() {
+        // Terminated processes are reaped before new ones are added
+        reap();
+        return nextPID++;
+    }
+
+    private DaemonPool getPool() {
+        if (pool == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            pool = new DaemonPool(threads, timer);
+        }
+        return pool;
     }
 }
@@ -28,6 +28,8 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import org.dnikulin.codon.format.except.ObjectCorruptException;
+import org.dnikulin.codon.format.tools.PrimitiveBytes;
 import org.dnikulin.codon.format.tools.StreamObjectFormat;
 
 /** Object format supporting java.lang.Double */
@@ -45,6 +47,17 @@ public class DoubleObjectFormat extends StreamObjectFormat<Double> {
         return Double.class;
     }
 
+    @Override
+    public byte[] encode(Object object) {
+        return PrimitiveBytes.fromLong(Double
+                .doubleToLongBits((Double) object));
+    }
+
+    @Override
+    public Object decode(byte[] bytes) throws ObjectCorruptException {
+        return Double.longBitsToDouble(PrimitiveBytes.toLong(bytes));
+    }
+
     @Override
     public Double read(DataInputStream in) throws IOException {
         return in.readDouble();
@@ -28,6 +28,8 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import org.dnikulin.codon.format.except.ObjectCorruptException;
+import org.dnikulin.codon.format.tools.PrimitiveBytes;
 import org.dnikulin.codon.format.tools.StreamObjectFormat;
 
 /** Object format supporting java.lang.Float */
@@ -45,6 +47,16 @@ public class FloatObjectFormat extends StreamObjectFormat<Float> {
         return Float.class;
     }
 
+    @Override
+    public byte[] encode(Object object) {
+        return PrimitiveBytes.fromInt(Float.floatToIntBits((Float) object));
+    }
+
+    @Override
+    public Object decode(byte[] bytes) throws ObjectCorruptException {
+        return Float.intBitsToFloat(PrimitiveBytes.toInt(bytes));
+    }
+
     @Override
     public Float read(DataInputStream in) throws IOException {
         return in.readFloat();
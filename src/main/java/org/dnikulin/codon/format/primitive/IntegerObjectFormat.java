@@ -28,6 +28,8 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import org.dnikulin.codon.format.except.ObjectCorruptException;
+import org.dnikulin.codon.format.tools.PrimitiveBytes;
 import org.dnikulin.codon.format.tools.StreamObjectFormat;
 
 /** Object format supporting java.lang.Integer */
@@ -45,6 +47,16 @@ public class IntegerObjectFormat extends StreamObjectFormat<Integer> {
         return Integer.class;
     }
 
+    @Override
+    public byte[] encode(Object object) {
+        return PrimitiveBytes.fromInt((Integer) object);
+    }
+
+    @Override
+    public Object decode(byte[] bytes) throws ObjectCorruptException {
+        return PrimitiveBytes.toInt(bytes);
+    }
+
     @Override
     public Integer read(DataInputStream in) throws IOException {
         return in.readInt();
@@ -28,6 +28,8 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+import org.dnikulin.codon.format.except.ObjectCorruptException;
+import org.dnikulin.codon.format.tools.PrimitiveBytes;
 import org.dnikulin.codon.format.tools.StreamObjectFormat;
 
 /** Object format supporting java.lang.Long */
@@ -45,6 +47,16 @@ public class LongObjectFormat extends StreamObjectFormat<Long> {
         return Long.class;
     }
 
+    @Override
+    public byte[] encode(Object object) {
+        return PrimitiveBytes.fromLong((Long) object);
+    }
+
+    @Override
+    public Object decode(byte[] bytes) throws ObjectCorruptException {
+        return PrimitiveBytes.toLong(bytes);
+    }
+
     @Override
     public Long read(DataInputStream in) throws IOException {
         return in.readLong();
@@ -25,6 +25,9 @@
 package org.dnikulin.codon.format.registry;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -32,28 +35,34 @@ import java.util.TreeMap;
 import org.dnikulin.codon.format.ObjectFormat;
 import org.dnikulin.codon.format.except.ObjectFormatNotFoundException;
 
-/** Object format registry. */
+/**
+ * Object format registry. Lookups read an immutable snapshot without locking;
+ * changes copy the snapshot, which is cheap for the few formats registered.
+ * Each format name is given a numeric ID, in order of registration, so that
+ * code handling many objects can find a format by array index.
+ */
 public class ObjectFormats {
-    private final Map<String, ObjectFormat> byName;
-    private final Map<String, ObjectFormat> byClass;
+    private volatile Snapshot snapshot;
 
     /** Construct empty object format registry. */
     public ObjectFormats() {
-        byName = new TreeMap<String, ObjectFormat>();
-        byClass = new TreeMap<String, ObjectFormat>();
+        snapshot = new Snapshot();
     }
 
     /**
      * Query registered object formats.
      * 
-     * @return List of object formats
+     * @return List of object formats, in class name order
      */
-    public synchronized List<ObjectFormat> getFormats() {
-        return new ArrayList<ObjectFormat>(byClass.values());
+    public List<ObjectFormat> getFormats() {
+        Map<String, ObjectFormat> sorted = new TreeMap<String, ObjectFormat>(
+                snapshot.byClass);
+        return new ArrayList<ObjectFormat>(sorted.values());
     }
 
     /**
-     * Register an object format.
+     * Register an object format. A format replacing another of the same name
+     * keeps its numeric ID.
      * 
      * @param format
      *            Object format
@@ -62,8 +71,56 @@ public class ObjectFormats {
         String formatName = format.getFormatName();
         String className = format.getObjectClass().getName();
 
-        byName.put(formatName, format);
-        byClass.put(className, format);
+        Snapshot next = new Snapshot(snapshot);
+
+        Integer id = next.ids.get(formatName);
+        if (id == null) {
+            id = next.byId.length;
+            next.ids.put(formatName, id);
+            next.byId = Arrays.copyOf(next.byId, id + 1);
+        }
+
+        next.byId[id] = format;
+        next.byName.put(formatName, format);
+        next.byClass.put(className, format);
+
+        snapshot = next;
+    }
+
+    /**
+     * Remove every object format defined by a class loader, or describing a
+     * class defined by it. Numeric IDs of removed formats are not reused for
+     * other format names.
+     * 
+     * @param loader
+     *            Class loader
+     * @return Number of formats removed
+     */
+    public synchronized int removeLoadedBy(ClassLoader loader) {
+        Snapshot next = new Snapshot(snapshot);
+        int removed = 0;
+
+        Iterator<ObjectFormat> it = next.byClass.values().iterator();
+        while (it.hasNext()) {
+            if (isLoadedBy(it.next(), loader)) {
+                it.remove();
+                removed++;
+            }
+        }
+
+        it = next.byName.values().iterator();
+        while (it.hasNext()) {
+            if (isLoadedBy(it.next(), loader))
+                it.remove();
+        }
+
+        for (int id = 0; id < next.byId.length; id++) {
+            if ((next.byId[id] != null) && isLoadedBy(next.byId[id], loader))
+                next.byId[id] = null;
+        }
+
+        snapshot = next;
+        return removed;
     }
 
     /**
@@ -75,9 +132,9 @@ public class ObjectFormats {
      * @exception ObjectFormatNotFoundException
      *                If the format was not found
      */
-    public synchronized ObjectFormat getByName(String formatName)
+    public ObjectFormat getByName(String formatName)
             throws ObjectFormatNotFoundException {
-        return find(byName, formatName);
+        return find(snapshot.byName, formatName);
     }
 
     /**
@@ -89,9 +146,9 @@ public class ObjectFormats {
      * @exception ObjectFormatNotFoundException
      *                If the format was not found
      */
-    public synchronized ObjectFormat getByClass(String className)
+    public ObjectFormat getByClass(String className)
             throws ObjectFormatNotFoundException {
-        return find(byClass, className);
+        return find(snapshot.byClass, className);
     }
 
     /**
@@ -108,6 +165,46 @@ public class ObjectFormats {
         return getByClass(klass.getName());
     }
 
+    /**
+     * Find the numeric ID of a format name.
+     * 
+     * @param formatName
+     *            Format name
+     * @return Format ID, for getById()
+     * @exception ObjectFormatNotFoundException
+     *                If the format was not found
+     */
+    public int getId(String formatName) throws ObjectFormatNotFoundException {
+        Snapshot current = snapshot;
+
+        Integer id = current.ids.get(formatName);
+        if ((id == null) || (current.byId[id] == null))
+            throw new ObjectFormatNotFoundException();
+        return id;
+    }
+
+    /**
+     * Find object format by numeric ID.
+     * 
+     * @param id
+     *            Format ID, from getId()
+     * @return Object format
+     * @exception ObjectFormatNotFoundException
+     *                If the format was not found
+     */
+    public ObjectFormat getById(int id) throws ObjectFormatNotFoundException {
+        ObjectFormat[] byId = snapshot.byId;
+
+        if ((id < 0) || (id >= byId.length) || (byId[id] == null))
+            throw new ObjectFormatNotFoundException();
+        return byId[id];
+    }
+
+    private static boolean isLoadedBy(ObjectFormat format, ClassLoader loader) {
+        return (format.getClass().getClassLoader() == loader)
+                || (format.getObjectClass().getClassLoader() == loader);
+    }
+
     private static ObjectFormat find(Map<String, ObjectFormat> map, String key)
             throws ObjectFormatNotFoundException {
         ObjectFormat format = map.get(key);
@@ -115,4 +212,26 @@ public class ObjectFormats {
             throw new ObjectFormatNotFoundException();
         return format;
     }
+
+    /** Registry contents, never changed once published. */
+    private static final class Snapshot {
+        final Map<String, ObjectFormat> byName;
+        final Map<String, ObjectFormat> byClass;
+        final Map<String, Integer> ids;
+        ObjectFormat[] byId;
+
+        Snapshot() {
+            byName = new HashMap<String, ObjectFormat>();
+            byClass = new HashMap<String, ObjectFormat>();
+            ids = new HashMap<String, Integer>();
+            byId = new ObjectFormat[0];
+        }
+
+        Snapshot(Snapshot copy) {
+            byName = new HashMap<String, ObjectFormat>(copy.byName);
+            byClass = new HashMap<String, ObjectFormat>(copy.byClass);
+            ids = new HashMap<String, Integer>(copy.ids);
+            byId = copy.byId.clone();
+        }
+    }
 }
@@ -24,11 +24,12 @@
 
 package org.dnikulin.codon.format.registry;
 
+import org.dnikulin.codon.plugin.PluginLoader;
 import org.dnikulin.codon.plugin.PluginNode;
-import org.dnikulin.codon.plugin.PluginSlot;
+import org.dnikulin.codon.plugin.RemovablePluginSlot;
 
 /** A plugin slot allowing object formats to be added to a registry. */
-public class ObjectFormatsPluginSlot implements PluginSlot {
+public class ObjectFormatsPluginSlot implements RemovablePluginSlot {
     private final ObjectFormats formats;
 
     /**
@@ -55,4 +56,12 @@ public class ObjectFormatsPluginSlot implements PluginSlot {
     public void installPlugin(PluginNode plugin) {
         ((ObjectFormatsPluginNode) plugin).addObjectFormats(formats);
     }
+
+    @Override
+    public void removePlugin(PluginNode plugin) {
+        // Never remove formats of the core class loaders
+        ClassLoader loader = plugin.getClass().getClassLoader();
+        if (loader instanceof PluginLoader)
+            formats.removeLoadedBy(loader);
+    }
 }
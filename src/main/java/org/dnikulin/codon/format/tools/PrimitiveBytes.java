@@ -0,0 +1,101 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.format.tools;
+
+import org.dnikulin.codon.format.except.ObjectCorruptException;
+
+/**
+ * Utility class converting primitives to and from big-endian byte arrays,
+ * exactly as DataOutputStream and DataInputStream would, but without creating
+ * streams.
+ */
+public final class PrimitiveBytes {
+    /**
+     * Encode a 32-bit integer.
+     * 
+     * @param value
+     *            Integer
+     * @return 4 bytes
+     */
+    public static byte[] fromInt(int value) {
+        return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16),
+                (byte) (value >>> 8), (byte) value };
+    }
+
+    /**
+     * Encode a 64-bit integer.
+     * 
+     * @param value
+     *            Integer
+     * @return 8 bytes
+     */
+    public static byte[] fromLong(long value) {
+        byte[] bytes = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+        return bytes;
+    }
+
+    /**
+     * Decode a 32-bit integer from the start of an array.
+     * 
+     * @param bytes
+     *            At least 4 bytes
+     * @return Integer
+     */
+    public static int toInt(byte[] bytes) throws ObjectCorruptException {
+        checkLength(bytes, 4);
+        return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16)
+                | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+    }
+
+    /**
+     * Decode a 64-bit integer from the start of an array.
+     * 
+     * @param bytes
+     *            At least 8 bytes
+     * @return Integer
+     */
+    public static long toLong(byte[] bytes) throws ObjectCorruptException {
+        checkLength(bytes, 8);
+
+        long value = 0;
+        for (int i = 0; i < 8; i++)
+            value = (value << 8) | (bytes[i] & 0xFF);
+        return value;
+    }
+
+    private static void checkLength(byte[] bytes, int length)
+            throws ObjectCorruptException {
+        if (bytes.length < length)
+            throw new ObjectCorruptException("Expected " + length
+                    + " bytes, found " + bytes.length);
+    }
+
+    private PrimitiveBytes() {
+    }
+}
@@ -0,0 +1,394 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A FormatLogger that hands messages to a background writer through a ring of
+ * preallocated events. Parameterized messages are formatted by the writer,
+ * and only if they pass level gating, so logging threads mostly copy a few
+ * references. The writer encodes lines into one buffer and writes it to a
+ * channel whenever the ring runs empty.
+ * 
+ * Messages with a source are limited to a rate per source per second, and are
+ * dropped rather than waited for when the ring is full. Plain lines and
+ * messages without a source wait for space instead, so command output is never
+ * lost. Plain lines are also written at any level. Arguments are formatted
+ * when written, so they should not be mutated after logging.
+ */
+public class AsyncLogger implements FormatLogger {
+    /** Default number of events in the ring. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /** Default messages per source per second. */
+    public static final int DEFAULT_RATE = 1000;
+
+    private static final long IDLE_NANOS = 1000000L;
+    private static final long RATE_WINDOW_NANOS = 1000000000L;
+
+    private final WritableByteChannel channel;
+    private final Event[] ring;
+    private final int mask;
+
+    private final AtomicLong claimed;
+    private final AtomicLong dropped;
+    private volatile long drained;
+    private volatile long flushed;
+
+    private final Map<String, RateLimit> limits;
+    private volatile int level;
+    private volatile int rate;
+    private volatile boolean closed;
+
+    // Writer thread only
+    private final StringBuilder line;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes;
+    private final Thread writer;
+
+    /**
+     * Construct an asynchronous logger writing to a stream.
+     * 
+     * @param stream
+     *            Output stream
+     */
+    public AsyncLogger(OutputStream stream) {
+        this(Channels.newChannel(stream), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct an asynchronous logger writing to a channel.
+     * 
+     * @param channel
+     *            Output channel
+     * @param capacity
+     *            Minimum number of events in the ring (rounded up to a power
+     *            of two)
+     */
+    public AsyncLogger(WritableByteChannel channel, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+
+        this.channel = channel;
+        this.ring = new Event[size];
+        this.mask = size - 1;
+
+        // Each slot starts one lap behind its first sequence
+        for (int i = 0; i < size; i++)
+            ring[i] = new Event(i - size);
+
+        claimed = new AtomicLong(0);
+        dropped = new AtomicLong(0);
+        drained = 0;
+        flushed = 0;
+
+        limits = new ConcurrentHashMap<String, RateLimit>();
+        level = INFO;
+        rate = DEFAULT_RATE;
+        closed = false;
+
+        line = new StringBuilder(256);
+        encoder = Charset.defaultCharset().newEncoder();
+        bytes = ByteBuffer.allocate(8192);
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "codon-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Set the lowest level logged.
+     * 
+     * @param level
+     *            Lowest level logged
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Query the lowest level logged.
+     * 
+     * @return Lowest level logged
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Set the number of messages accepted per source per second.
+     * 
+     * @param rate
+     *            Messages per source per second
+     */
+    public void setRate(int rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * Query number of messages dropped because the ring was full, the source
+     * exceeded its rate, or the logger was closed.
+     * 
+     * @return Number of messages dropped
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public boolean isLoggable(int level) {
+        return level >= this.level;
+    }
+
+    @Override
+    public void print(String line) {
+        publish(null, line, 0, null, null);
+    }
+
+    @Override
+    public void print(int level, String source, String pattern, Object arg) {
+        if (isLoggable(level) && admit(source))
+            publish(source, pattern, 1, arg, null);
+    }
+
+    @Override
+    public void print(int level, String source, String pattern, Object arg0,
+            Object arg1) {
+        if (isLoggable(level) && admit(source))
+            publish(source, pattern, 2, arg0, arg1);
+    }
+
+    /** Wait until every message logged so far has been written. */
+    public void flush() {
+        long target = claimed.get();
+        while ((flushed < target) && writer.isAlive())
+            LockSupport.parkNanos(IDLE_NANOS);
+    }
+
+    /**
+     * Write every message logged so far and stop the writer. Messages logged
+     * afterwards are dropped.
+     */
+    public void close() {
+        flush();
+        closed = true;
+        LockSupport.unpark(writer);
+
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean admit(String source) {
+        if (source == null)
+            return true;
+
+        RateLimit limit = limits.get(source);
+        if (limit == null) {
+            limits.putIfAbsent(source, new RateLimit(System.nanoTime()));
+            limit = limits.get(source);
+        }
+
+        int suppressed = limit.admit(System.nanoTime(), rate);
+        if (suppressed < 0) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        if (suppressed > 0)
+            publish(null, "Suppressed {} messages from {}", 2, suppressed,
+                    source);
+        return true;
+    }
+
+    private void publish(String source, String pattern, int nargs,
+            Object arg0, Object arg1) {
+
+        long seq;
+        while (true) {
+            if (closed) {
+                dropped.incrementAndGet();
+                return;
+            }
+
+            seq = claimed.get();
+            if ((seq - drained) >= ring.length) {
+                // Rate-limited sources give way; others wait for space
+                if (source != null) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+
+                LockSupport.parkNanos(IDLE_NANOS / 16);
+                continue;
+            }
+
+            if (claimed.compareAndSet(seq, seq + 1))
+                break;
+        }
+
+        Event event = ring[(int) seq & mask];
+        event.pattern = pattern;
+        event.nargs = nargs;
+        event.arg0 = arg0;
+        event.arg1 = arg1;
+        event.published = seq;
+    }
+
+    private void drain() {
+        long seq = drained;
+
+        while (true) {
+            Event event = ring[(int) seq & mask];
+
+            if (event.published != seq) {
+                // Ring is empty, or the next event is still being filled
+                writeBytes();
+                flushed = seq;
+
+                if (closed && (seq == claimed.get()))
+                    break;
+
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+
+            line.setLength(0);
+            if (event.nargs == 0)
+                line.append(event.pattern);
+            else
+                LogTools.format(line, event.pattern, event.nargs,
+                        event.arg0, event.arg1);
+            line.append('\n');
+
+            // Release references before releasing the slot
+            event.pattern = null;
+            event.arg0 = null;
+            event.arg1 = null;
+
+            seq++;
+            drained = seq;
+
+            encode();
+        }
+
+        writeBytes();
+    }
+
+    private void encode() {
+        CharBuffer chars = CharBuffer.wrap(line);
+
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, true);
+            if (result.isOverflow())
+                writeBytes();
+            else
+                break;
+        }
+
+        encoder.reset();
+    }
+
+    private void writeBytes() {
+        bytes.flip();
+
+        try {
+            while (bytes.hasRemaining())
+                channel.write(bytes);
+        } catch (IOException ex) {
+            // Nowhere left to report it
+        }
+
+        bytes.clear();
+    }
+
+    /** A preallocated ring slot. */
+    private static class Event {
+        public volatile long published;
+        public String pattern;
+        public int nargs;
+        public Object arg0;
+        public Object arg1;
+
+        public Event(long published) {
+            this.published = published;
+        }
+    }
+
+    /** Per-source message count over a fixed window. */
+    private static class RateLimit {
+        private long windowStart;
+        private int count;
+        private int suppressed;
+
+        public RateLimit(long now) {
+            this.windowStart = now;
+        }
+
+        /**
+         * Count a message.
+         * 
+         * @return -1 to drop the message, otherwise the number of messages
+         *         suppressed in the previous window
+         */
+        public synchronized int admit(long now, int rate) {
+            int report = 0;
+
+            if ((now - windowStart) >= RATE_WINDOW_NANOS) {
+                report = suppressed;
+                windowStart = now;
+                count = 0;
+                suppressed = 0;
+            }
+
+            if (count >= rate) {
+                suppressed++;
+                return -1;
+            }
+
+            count++;
+            return report;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.log;
+
+/**
+ * A line logger accepting parameterized messages, which it may format later
+ * or not at all. Each "{}" in a pattern is replaced by the next argument.
+ */
+public interface FormatLogger extends LineLogger {
+    /** Level of detailed diagnostics. */
+    public static final int DEBUG = 0;
+    /** Level of ordinary output, including plain print(). */
+    public static final int INFO = 1;
+    /** Level of recoverable problems. */
+    public static final int WARN = 2;
+    /** Level of failures. */
+    public static final int ERROR = 3;
+
+    /**
+     * Query whether messages of a level would be logged at all.
+     * 
+     * @param level
+     *            Message level
+     * @return true iff messages of this level are logged
+     */
+    public boolean isLoggable(int level);
+
+    /**
+     * Log a parameterized message with one argument.
+     * 
+     * @param level
+     *            Message level
+     * @param source
+     *            Source name used for rate limiting (may be null)
+     * @param pattern
+     *            Message pattern
+     * @param arg
+     *            Argument
+     */
+    public void print(int level, String source, String pattern, Object arg);
+
+    /**
+     * Log a parameterized message with two arguments.
+     * 
+     * @param level
+     *            Message level
+     * @param source
+     *            Source name used for rate limiting (may be null)
+     * @param pattern
+     *            Message pattern
+     * @param arg0
+     *            First argument
+     * @param arg1
+     *            Second argument
+     */
+    public void print(int level, String source, String pattern, Object arg0,
+            Object arg1);
+}
@@ -26,8 +26,11 @@ package org.dnikulin.codon.log;
 
 import java.util.concurrent.atomic.AtomicReference;
 
-/** A trivial thread-safe LineLogger wrapper. */
-public class IndirectLogger implements LineLogger, LogSource {
+/**
+ * A trivial thread-safe LineLogger wrapper. Parameterized messages are passed
+ * on unformatted if the wrapped logger is a FormatLogger.
+ */
+public class IndirectLogger implements FormatLogger, LogSource {
     private final AtomicReference<LineLogger> logger;
 
     /**
@@ -50,6 +53,22 @@ public class IndirectLogger implements LineLogger, LogSource {
         logger.get().print(line);
     }
 
+    @Override
+    public boolean isLoggable(int level) {
+        return LogTools.isLoggable(logger.get(), level);
+    }
+
+    @Override
+    public void print(int level, String source, String pattern, Object arg) {
+        LogTools.print(logger.get(), level, source, pattern, arg);
+    }
+
+    @Override
+    public void print(int level, String source, String pattern, Object arg0,
+            Object arg1) {
+        LogTools.print(logger.get(), level, source, pattern, arg0, arg1);
+    }
+
     @Override
     public LineLogger getLineLogger() {
         return logger.get();
@@ -0,0 +1,86 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dnikulin.codon.misc.Resettable;
+
+/** A LineLogger that keeps every line printed. */
+public class ListLogger implements LineLogger, Resettable {
+    private final List<String> lines;
+
+    /** Construct a LineLogger with no lines. */
+    public ListLogger() {
+        lines = new ArrayList<String>();
+    }
+
+    /** Discard all lines. */
+    @Override
+    public synchronized void reset() {
+        lines.clear();
+    }
+
+    /**
+     * Query number of lines printed.
+     * 
+     * @return Line count
+     */
+    public synchronized int size() {
+        return lines.size();
+    }
+
+    /**
+     * Query a line by its index.
+     * 
+     * @param index
+     *            Line index, from 0
+     * @return Line printed
+     */
+    public synchronized String get(int index) {
+        return lines.get(index);
+    }
+
+    /**
+     * Query all lines, as a copy that has no effect on this logger.
+     * 
+     * @return Lines in the order printed
+     */
+    public synchronized List<String> getLines() {
+        return new ArrayList<String>(lines);
+    }
+
+    /**
+     * Keep a line.
+     * 
+     * @param line
+     *            Print line
+     */
+    @Override
+    public synchronized void print(String line) {
+        lines.add(line);
+    }
+}
@@ -0,0 +1,186 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.log;
+
+/** Utility methods for parameterized logging. */
+public final class LogTools {
+    private static final String ANCHOR = "{}";
+
+    /**
+     * Log a parameterized message with one argument. A FormatLogger receives
+     * it unformatted; any other logger receives the formatted line, unless
+     * the level is DEBUG or the logger is the null logger.
+     * 
+     * @param log
+     *            Line logger
+     * @param level
+     *            Message level
+     * @param source
+     *            Source name used for rate limiting (may be null)
+     * @param pattern
+     *            Message pattern
+     * @param arg
+     *            Argument
+     */
+    public static void print(LineLogger log, int level, String source,
+            String pattern, Object arg) {
+
+        if (log instanceof FormatLogger)
+            ((FormatLogger) log).print(level, source, pattern, arg);
+        else if (isLoggable(log, level))
+            log.print(format(pattern, arg));
+    }
+
+    /**
+     * Log a parameterized message with two arguments. A FormatLogger receives
+     * it unformatted; any other logger receives the formatted line, unless
+     * the level is DEBUG or the logger is the null logger.
+     * 
+     * @param log
+     *            Line logger
+     * @param level
+     *            Message level
+     * @param source
+     *            Source name used for rate limiting (may be null)
+     * @param pattern
+     *            Message pattern
+     * @param arg0
+     *            First argument
+     * @param arg1
+     *            Second argument
+     */
+    public static void print(LineLogger log, int level, String source,
+            String pattern, Object arg0, Object arg1) {
+
+        if (log instanceof FormatLogger)
+            ((FormatLogger) log).print(level, source, pattern, arg0, arg1);
+        else if (isLoggable(log, level))
+            log.print(format(pattern, arg0, arg1));
+    }
+
+    /**
+     * Query whether a logger would log messages of a level.
+     * 
+     * @param log
+     *            Line logger
+     * @param level
+     *            Message level
+     * @return true iff messages of this level would be logged
+     */
+    public static boolean isLoggable(LineLogger log, int level) {
+        if (log instanceof FormatLogger)
+            return ((FormatLogger) log).isLoggable(level);
+        return (log != NullLogger.INSTANCE) && (level > FormatLogger.DEBUG);
+    }
+
+    /**
+     * Format a message with one argument.
+     * 
+     * @param pattern
+     *            Message pattern
+     * @param arg
+     *            Argument
+     * @return Formatted message
+     */
+    public static String format(String pattern, Object arg) {
+        StringBuilder out = new StringBuilder(pattern.length() + 16);
+        format(out, pattern, 1, arg, null);
+        return out.toString();
+    }
+
+    /**
+     * Format a message with two arguments.
+     * 
+     * @param pattern
+     *            Message pattern
+     * @param arg0
+     *            First argument
+     * @param arg1
+     *            Second argument
+     * @return Formatted message
+     */
+    public static String format(String pattern, Object arg0, Object arg1) {
+        StringBuilder out = new StringBuilder(pattern.length() + 32);
+        format(out, pattern, 2, arg0, arg1);
+        return out.toString();
+    }
+
+    /**
+     * Append a formatted message to a builder. Anchors beyond the given
+     * arguments are kept as they are.
+     * 
+     * @param out
+     *            Output builder
+     * @param pattern
+     *            Message pattern
+     * @param nargs
+     *            Number of arguments given (0 to 2)
+     * @param arg0
+     *            First argument
+     * @param arg1
+     *            Second argument
+     */
+    public static void format(StringBuilder out, String pattern, int nargs,
+            Object arg0, Object arg1) {
+
+        int start = 0;
+        for (int i = 0; i < nargs; i++) {
+            int anchor = pattern.indexOf(ANCHOR, start);
+            if (anchor < 0)
+                break;
+
+            out.append(pattern, start, anchor);
+            out.append((i == 0) ? arg0 : arg1);
+            start = anchor + ANCHOR.length();
+        }
+
+        out.append(pattern, start, pattern.length());
+    }
+
+    /**
+     * Query the name of a level.
+     * 
+     * @param level
+     *            Message level
+     * @return Level name
+     */
+    public static String getLevelName(int level) {
+        switch (level) {
+        case FormatLogger.DEBUG:
+            return "debug";
+        case FormatLogger.INFO:
+            return "info";
+        case FormatLogger.WARN:
+            return "warn";
+        case FormatLogger.ERROR:
+            return "error";
+        default:
+            return "level " + level;
+        }
+    }
+
+    private LogTools() {
+    }
+}
@@ -0,0 +1,72 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.misc;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/** Utility class containing file-related methods. */
+public final class FileTools {
+    /** Suffix appended to a file path to name its temporary copy. */
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Replace the contents of a file. The bytes are written and forced to a
+     * temporary file, which is then atomically moved over the old one, so a
+     * crash leaves either the old or the new contents intact. Throws if the
+     * file system cannot move atomically.
+     * 
+     * @param file
+     *            File to replace
+     * @param bytes
+     *            New contents
+     */
+    public static void replaceFile(File file, byte[] bytes)
+            throws IOException {
+
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(bytes);
+
+            // The rename must never become durable before the contents
+            out.getChannel().force(true);
+        } finally {
+            out.close();
+        }
+
+        Files.move(temp.toPath(), file.toPath(), ATOMIC_MOVE,
+                REPLACE_EXISTING);
+    }
+
+    private FileTools() {
+    }
+}
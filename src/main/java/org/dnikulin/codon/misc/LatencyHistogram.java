@@ -0,0 +1,202 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.misc;
+
+/**
+ * A histogram of non-negative durations (usually nanoseconds) with bounded
+ * relative error. Values below 128 are counted exactly; above that, each
+ * power of two is split into 64 buckets, so a reported value is within 1/64
+ * of a recorded one. Memory use is fixed at about 30 kilobytes. All of its
+ * methods are thread-safe.
+ * 
+ * To measure latency without coordinated omission, record the time from
+ * when an event was meant to happen rather than when it actually started.
+ */
+public class LatencyHistogram implements Resettable {
+    /** Values below this are counted exactly. */
+    public static final int LINEAR_BUCKETS = 128;
+
+    /** Buckets per power of two above LINEAR_BUCKETS. */
+    public static final int SUB_BUCKETS = LINEAR_BUCKETS / 2;
+
+    private static final int SUB_BITS = 6;
+    private static final int MAX_SHIFT = 62 - SUB_BITS;
+    private static final int BUCKETS = LINEAR_BUCKETS + MAX_SHIFT
+            * SUB_BUCKETS;
+
+    private final long[] counts;
+    private long count;
+    private long total;
+    private long min;
+    private long max;
+
+    /** Construct an empty histogram. */
+    public LatencyHistogram() {
+        counts = new long[BUCKETS];
+        reset();
+    }
+
+    /**
+     * Record one value. Negative values are recorded as zero.
+     * 
+     * @param value
+     *            Value to record
+     */
+    public synchronized void record(long value) {
+        if (value < 0)
+            value = 0;
+
+        counts[indexOf(value)]++;
+        count++;
+        total += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Add every value recorded in another histogram to this one.
+     * 
+     * @param other
+     *            Histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        long[] ocounts;
+        long ocount, ototal, omin, omax;
+
+        synchronized (other) {
+            ocounts = other.counts.clone();
+            ocount = other.count;
+            ototal = other.total;
+            omin = other.min;
+            omax = other.max;
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < BUCKETS; i++)
+                counts[i] += ocounts[i];
+
+            count += ocount;
+            total += ototal;
+            min = Math.min(min, omin);
+            max = Math.max(max, omax);
+        }
+    }
+
+    /**
+     * Query the number of values recorded.
+     * 
+     * @return Value count
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Query the smallest value recorded.
+     * 
+     * @return Smallest value, or 0 if none were recorded
+     */
+    public synchronized long getMin() {
+        return (count == 0) ? 0 : min;
+    }
+
+    /**
+     * Query the largest value recorded.
+     * 
+     * @return Largest value, or 0 if none were recorded
+     */
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * Query the exact mean of values recorded.
+     * 
+     * @return Mean value, or 0 if none were recorded
+     */
+    public synchronized double getMean() {
+        return (count == 0) ? 0 : ((double) total / count);
+    }
+
+    /**
+     * Query the value at a given percentile. The result is the highest value
+     * that would share a bucket with the value at that rank, but never more
+     * than the largest value recorded.
+     * 
+     * @param percentile
+     *            Percentile from 0 to 100
+     * @return Value at percentile, or 0 if none were recorded
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0)
+            return 0;
+
+        double fraction = Math.min(Math.max(percentile, 0), 100) / 100;
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highestOf(i), max);
+        }
+
+        return max;
+    }
+
+    // From Resettable
+
+    @Override
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] = 0;
+
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    // Package-private
+    static int indexOf(long value) {
+        if (value < LINEAR_BUCKETS)
+            return (int) value;
+
+        // Keep the top SUB_BITS + 1 bits, of which the first is always set
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + ((shift - 1) * SUB_BUCKETS) + sub;
+    }
+
+    // Package-private
+    static long highestOf(int index) {
+        if (index < LINEAR_BUCKETS)
+            return index;
+
+        int shift = ((index - LINEAR_BUCKETS) / SUB_BUCKETS) + 1;
+        long sub = ((index - LINEAR_BUCKETS) % SUB_BUCKETS) + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
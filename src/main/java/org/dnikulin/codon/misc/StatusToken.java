@@ -44,6 +44,31 @@ public class StatusToken<StatusEnum> {
         return exception;
     }
 
+    /**
+     * Wait until either of the given statuses is reached.
+     * 
+     * @param first
+     *            First status to wait for
+     * @param second
+     *            Second status to wait for
+     * @return Status reached
+     */
+    public synchronized StatusEnum waitForAny(StatusEnum first,
+            StatusEnum second) {
+        while ((current != first) && (current != second)) {
+            try {
+                wait();
+            } catch (Exception ignored) {
+            }
+        }
+
+        return current;
+    }
+
+    public Exception getException() {
+        return exception;
+    }
+
     public synchronized void setStatus(StatusEnum status, Exception ex) {
         current = status;
         exception = ex;
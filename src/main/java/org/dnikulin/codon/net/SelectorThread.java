@@ -34,6 +34,7 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.LinkedList;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Executor;
@@ -53,12 +54,14 @@ public class SelectorThread implements Executor, Cancellable {
 
     private final AtomicBoolean running;
     private final Queue<Runnable> queue;
+    private final PriorityQueue<DelayedWork> delayed;
     private final Thread thread;
 
     public SelectorThread(Selector selector) {
         this.selector = selector;
         this.running = new AtomicBoolean(true);
         this.queue = new LinkedList<Runnable>();
+        this.delayed = new PriorityQueue<DelayedWork>();
 
         this.thread = new Thread(new Runnable() {
             @Override
@@ -87,9 +90,33 @@ public class SelectorThread implements Executor, Cancellable {
         selector.wakeup();
     }
 
+    /**
+     * Execute a task on the selector thread after a delay. Used to flush
+     * objects that linger in a link's write queue.
+     * 
+     * @param runnable
+     *            Task to run
+     * @param millis
+     *            Delay in milliseconds
+     */
+    public void executeLater(Runnable runnable, long millis) {
+        if (millis <= 0) {
+            execute(runnable);
+            return;
+        }
+
+        long deadline = System.nanoTime() + (millis * 1000000L);
+
+        synchronized (queue) {
+            delayed.add(new DelayedWork(deadline, runnable));
+        }
+        selector.wakeup();
+    }
+
     @Override
     public void cancel() {
         running.set(false);
+        selector.wakeup();
     }
 
     public void listen(final int port, final LinkFactory factory,
@@ -121,12 +148,15 @@ public class SelectorThread implements Executor, Cancellable {
                 try {
                     SocketChannel channel = link.getChannel();
                     ClientBind binding = new ClientBind(link, status);
+                    link.setSelectorThread(SelectorThread.this);
                     tuneChannel(channel);
 
                     register(channel, SelectionKey.OP_CONNECT, binding);
-                    channel.connect(new InetSocketAddress(host, port));
-
                     status.setStatus(ConnectStatus.CONNECTING);
+
+                    // Local connections may complete immediately
+                    if (channel.connect(new InetSocketAddress(host, port)))
+                        connected(channel.keyFor(selector), binding);
                 } catch (IOException ex) {
                     status.setStatus(ConnectStatus.FAILED, ex);
                 }
@@ -140,15 +170,10 @@ public class SelectorThread implements Executor, Cancellable {
         execute(new Runnable() {
             public void run() {
                 try {
-                    final int ops;
+                    int ops = SelectionKey.OP_READ;
 
-                    if (link.wantsWrite()) {
-                        ops = SelectionKey.OP_WRITE;
-                        System.err.println("setting " + link + " for write");
-                    } else {
-                        ops = SelectionKey.OP_READ;
-                        System.err.println("setting " + link + " for read");
-                    }
+                    if (link.wantsWrite())
+                        ops |= SelectionKey.OP_WRITE;
 
                     register(link.getChannel(), ops, link);
                 } catch (IOException ex) {
@@ -175,27 +200,60 @@ public class SelectorThread implements Executor, Cancellable {
     protected void runLoop() {
         try {
             while (running.get() == true) {
-                runQueue();
+                long timeout = runQueue();
 
                 // Blocks here - may be interrupted
-                int selected = selector.select();
+                int selected = selector.select(timeout);
 
                 if (selected > 0)
                     handleKeys();
             }
         } catch (IOException ex) {
             ex.printStackTrace();
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException ex) {
+                // Ignored
+            }
+        }
+
+        try {
+            selector.close();
+        } catch (IOException ex) {
+            // Ignored
         }
     }
 
-    private void runQueue() {
+    /**
+     * Run queued and expired delayed tasks.
+     * 
+     * @return Milliseconds until the next delayed task, or 0 if none
+     */
+    private long runQueue() {
         Runnable work;
 
         while (true) {
             synchronized (queue) {
                 work = queue.poll();
-                if (work == null)
-                    return;
+
+                if (work == null) {
+                    DelayedWork next = delayed.peek();
+                    if (next == null)
+                        return 0;
+
+                    long wait = next.deadline - System.nanoTime();
+                    if (wait > 0)
+                        return Math.max(1, wait / 1000000L);
+
+                    work = delayed.poll().work;
+                }
             }
 
             work.run();
@@ -213,18 +271,32 @@ public class SelectorThread implements Executor, Cancellable {
                 handleKey(key);
             } catch (IOException ex) {
                 try {
-                    ex.printStackTrace();
                     key.channel().close();
                     key.cancel();
                 } catch (IOException ex2) {
                     // Ignored
                 }
+
+                Object attachment = key.attachment();
+                if (attachment instanceof SocketLink)
+                    ((SocketLink) attachment).connectionLost();
             }
         }
 
         selectedKeys.clear();
     }
 
+    private void connected(SelectionKey key, ClientBind binding) {
+        SocketLink link = binding.link;
+        SocketChannel channel = link.getChannel();
+
+        link.connectionMade(channel.socket().getInetAddress());
+        key.attach(link);
+        updateKey(link);
+
+        binding.status.setStatus(ConnectStatus.CONNECTED);
+    }
+
     private void handleKey(SelectionKey key) throws IOException {
         // Handle server socket ready to accept
         if (key.isAcceptable()) {
@@ -237,6 +309,7 @@ public class SelectorThread implements Executor, Cancellable {
             SelectorThread.tuneChannel(channel);
 
             SocketLink link = binding.factory.makeLink(channel);
+            link.setSelectorThread(this);
             link.connectionMade(channel.socket().getInetAddress());
             updateKey(link);
             return;
@@ -245,16 +318,16 @@ public class SelectorThread implements Executor, Cancellable {
         // Handle client socket ready to connect
         if (key.isConnectable()) {
             ClientBind binding = (ClientBind) key.attachment();
-            SocketLink link = binding.link;
+            SocketChannel channel = binding.link.getChannel();
 
-            SocketChannel channel = link.getChannel();
-            channel.finishConnect();
-
-            link.connectionMade(channel.socket().getInetAddress());
-            key.attach(link);
-            updateKey(link);
+            try {
+                channel.finishConnect();
+            } catch (IOException ex) {
+                binding.status.setStatus(ConnectStatus.FAILED, ex);
+                throw ex;
+            }
 
-            binding.status.setStatus(ConnectStatus.CONNECTED);
+            connected(key, binding);
             return;
         }
 
@@ -274,4 +347,20 @@ public class SelectorThread implements Executor, Cancellable {
             return;
         }
     }
+
+    private static final class DelayedWork implements Comparable<DelayedWork> {
+        public final long deadline;
+        public final Runnable work;
+
+        public DelayedWork(long deadline, Runnable work) {
+            this.deadline = deadline;
+            this.work = work;
+        }
+
+        @Override
+        public int compareTo(DelayedWork other) {
+            long diff = deadline - other.deadline;
+            return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+        }
+    }
 }
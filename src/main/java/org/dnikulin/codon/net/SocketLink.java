@@ -31,6 +31,8 @@ import java.nio.channels.SocketChannel;
 public interface SocketLink {
     public SocketChannel getChannel();
 
+    public void setSelectorThread(SelectorThread selector);
+
     public boolean wantsWrite();
 
     public void canWrite() throws IOException;
@@ -0,0 +1,174 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.netpipe;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dnikulin.codon.netpipe.packet.ObjectListener;
+
+/**
+ * A named set of listeners sharing the objects of one channel. Each object is
+ * delivered to exactly one member, chosen either in turn or by hashing the
+ * object bytes. Hashing uses rendezvous (highest random weight) selection, so
+ * when a member joins or leaves, only the objects it gains or loses move.
+ */
+public class ConsumerGroup implements ObjectListener {
+    /** Deliver objects to members in turn. */
+    public static final int ROUND_ROBIN = 0;
+
+    /** Deliver equal objects to the same member. */
+    public static final int HASH = 1;
+
+    private final String name;
+    private final int mode;
+    private final AtomicInteger turn;
+
+    private volatile Member[] members;
+    private int nextId;
+
+    /**
+     * Construct an empty consumer group.
+     * 
+     * @param name
+     *            Group name
+     * @param mode
+     *            ROUND_ROBIN or HASH
+     */
+    public ConsumerGroup(String name, int mode) {
+        this.name = name;
+        this.mode = mode;
+        this.turn = new AtomicInteger(0);
+        this.members = new Member[0];
+        this.nextId = 0;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Query the number of members.
+     * 
+     * @return Number of members
+     */
+    public int size() {
+        return members.length;
+    }
+
+    /**
+     * Add a member. Objects are rebalanced to include it immediately.
+     * 
+     * @param listener
+     *            Member listener
+     */
+    public synchronized void join(ObjectListener listener) {
+        Member[] old = members;
+        Member[] next = Arrays.copyOf(old, old.length + 1);
+        next[old.length] = new Member(listener, mix(nextId++));
+        members = next;
+    }
+
+    /**
+     * Remove a member. Its share of objects moves to the others.
+     * 
+     * @param listener
+     *            Member listener
+     * @return true if the member was found
+     */
+    public synchronized boolean leave(ObjectListener listener) {
+        Member[] old = members;
+
+        for (int i = 0; i < old.length; i++) {
+            if (old[i].listener != listener)
+                continue;
+
+            Member[] next = new Member[old.length - 1];
+            System.arraycopy(old, 0, next, 0, i);
+            System.arraycopy(old, i + 1, next, i, next.length - i);
+            members = next;
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void takeObject(byte[] body) {
+        Member[] current = members;
+        if (current.length == 0)
+            return;
+
+        Member member;
+
+        if (mode == HASH)
+            member = pick(current, mix(Arrays.hashCode(body)));
+        else
+            member = current[(turn.getAndIncrement() & 0x7FFFFFFF)
+                    % current.length];
+
+        member.listener.takeObject(body);
+    }
+
+    private static Member pick(Member[] current, int hash) {
+        Member best = current[0];
+        int bestScore = mix(hash ^ best.seed);
+
+        for (int i = 1; i < current.length; i++) {
+            int score = mix(hash ^ current[i].seed);
+            if (score > bestScore) {
+                best = current[i];
+                bestScore = score;
+            }
+        }
+
+        return best;
+    }
+
+    // Package-private
+    static int mix(int x) {
+        // Murmur3 finaliser
+        x ^= x >>> 16;
+        x *= 0x85EBCA6B;
+        x ^= x >>> 13;
+        x *= 0xC2B2AE35;
+        x ^= x >>> 16;
+        return x;
+    }
+
+    private static final class Member {
+        public final ObjectListener listener;
+        public final int seed;
+
+        public Member(ObjectListener listener, int seed) {
+            this.listener = listener;
+            this.seed = seed;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.netpipe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.log.NullLogger;
+import org.dnikulin.codon.netpipe.packet.ChannelObjectWriter;
+import org.dnikulin.codon.netpipe.packet.ObjectListener;
+
+/**
+ * An object channel that appends every object to a log file before
+ * broadcasting it. Records use the record pipe framing without compression (a
+ * 4-byte length, then the object bytes), which is also the netpipe object
+ * framing, so a log region can be sent to a socket unchanged. The offset of a
+ * record is the byte offset of its header. The offset of every
+ * INDEX_INTERVAL-th record is kept, so that a requested offset can be checked
+ * against record boundaries without reading the whole log.
+ */
+public class DurableObjectChannel extends ObjectChannel {
+    /** Number of records per indexed record offset. */
+    public static final int INDEX_INTERVAL = 1024;
+
+    private final File file;
+    private final FileChannel log;
+    private final LineLogger logger;
+    private final ByteBuffer header;
+    private long end;
+
+    private long[] index;
+    private int indexed;
+    private long records;
+
+    /**
+     * Open a durable channel, appending to any existing log. A record left
+     * incomplete by a crash is discarded.
+     * 
+     * @param file
+     *            Log file
+     * @param logger
+     *            Line logger for I/O errors
+     */
+    public DurableObjectChannel(File file, LineLogger logger)
+            throws IOException {
+
+        this.file = file;
+        this.log = new RandomAccessFile(file, "rw").getChannel();
+        this.logger = NullLogger.or(logger);
+        this.header = ByteBuffer.allocate(4);
+        this.index = new long[16];
+        this.indexed = 0;
+        this.records = 0;
+        this.end = recover();
+    }
+
+    /**
+     * Open a durable channel without logging I/O errors.
+     * 
+     * @param file
+     *            Log file
+     */
+    public DurableObjectChannel(File file) throws IOException {
+        this(file, NullLogger.INSTANCE);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Query the offset of the next record to be appended.
+     * 
+     * @return Log end offset
+     */
+    public synchronized long getEndOffset() {
+        return end;
+    }
+
+    @Override
+    public synchronized void takeObject(byte[] body) {
+        header.clear();
+        header.putInt(body.length);
+        header.flip();
+
+        try {
+            ByteBuffer[] record = { header, ByteBuffer.wrap(body) };
+            long size = header.remaining() + body.length;
+
+            log.position(end);
+            while (log.position() < end + size)
+                log.write(record);
+
+            addRecord(end);
+            end += size;
+        } catch (IOException ex) {
+            logger.print("Could not append to " + file + ": " + ex);
+        }
+
+        super.takeObject(body);
+    }
+
+    /**
+     * Add a listener that first receives every record from the given offset,
+     * then every new object. Records already logged are copied from the log
+     * file by the writer, and new objects are queued behind them.
+     * 
+     * @param listener
+     *            Listener for new objects
+     * @param writer
+     *            Writer to copy logged records to
+     * @param offset
+     *            Offset of the first record to send, as for getStartOffset()
+     */
+    public synchronized void addListener(ObjectListener listener,
+            ChannelObjectWriter writer, long offset) {
+
+        long start = getStartOffset(offset);
+        if ((start >= 0) && (start < end))
+            writer.takeRegion(log, start, end);
+
+        // Objects appended after this point reach the listener
+        addListener(listener);
+    }
+
+    /**
+     * Find the offset from which addListener() will send records, which the
+     * subscriber must count offsets from. This is the record containing the
+     * requested offset, since part of a record would corrupt the framing, or
+     * the log end if the offset is past the end or the log could not be read.
+     * 
+     * @param offset
+     *            Requested offset, or -1 for live objects only
+     * @return Offset of the first record to send, or -1 for live objects only
+     */
+    public synchronized long getStartOffset(long offset) {
+        if (offset < 0)
+            return -1;
+        if (offset >= end)
+            return end;
+
+        long start = alignOffset(offset);
+        if (start < 0) {
+            logger.print("Could not read " + file);
+            return end;
+        }
+
+        if (start != offset) {
+            logger.print("Offset " + offset + " in " + file
+                    + " is not a record boundary, starting from " + start);
+        }
+        return start;
+    }
+
+    /**
+     * Find the offset of the record containing the given offset.
+     * 
+     * @param offset
+     *            Offset within the log, before the end
+     * @return Offset of the record header at or before the given offset, or
+     *         -1 if the log could not be read
+     */
+    public synchronized long alignOffset(long offset) {
+        // Walk headers from the nearest indexed record
+        int slot = Arrays.binarySearch(index, 0, indexed, offset);
+        if (slot < 0)
+            slot = -slot - 2;
+
+        long record = (slot < 0) ? 0 : index[slot];
+
+        try {
+            while (true) {
+                long next = nextRecord(record, end);
+                if ((next < 0) || (next > offset))
+                    return record;
+                record = next;
+            }
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
+    /** Close the log file. */
+    public synchronized void close() {
+        try {
+            log.close();
+        } catch (IOException ex) {
+            // Ignore
+        }
+    }
+
+    private long recover() throws IOException {
+        long size = log.size();
+        long offset = 0;
+
+        // Walk record headers to find the last complete record
+        while (true) {
+            long next = nextRecord(offset, size);
+            if (next < 0)
+                break;
+
+            addRecord(offset);
+            offset = next;
+        }
+
+        if (offset < size)
+            log.truncate(offset);
+
+        return offset;
+    }
+
+    private long nextRecord(long offset, long size) throws IOException {
+        if (offset + 4 > size)
+            return -1;
+
+        header.clear();
+        while (header.hasRemaining()) {
+            if (log.read(header, offset + header.position()) < 0)
+                return -1;
+        }
+
+        header.flip();
+        long next = offset + 4 + header.getInt();
+
+        if ((next < offset + 4) || (next > size))
+            return -1;
+        return next;
+    }
+
+    private void addRecord(long offset) {
+        if ((records++ % INDEX_INTERVAL) != 0)
+            return;
+
+        if (indexed == index.length)
+            index = Arrays.copyOf(index, indexed * 2);
+        index[indexed++] = offset;
+    }
+}
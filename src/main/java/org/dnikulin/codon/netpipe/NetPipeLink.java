@@ -27,13 +27,17 @@ package org.dnikulin.codon.netpipe;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.dnikulin.codon.net.SelectorThread;
 import org.dnikulin.codon.net.SocketLink;
 import org.dnikulin.codon.netpipe.packet.ChannelObjectReader;
 import org.dnikulin.codon.netpipe.packet.ChannelObjectWriter;
+import org.dnikulin.codon.netpipe.packet.FrameListener;
 import org.dnikulin.codon.netpipe.packet.ObjectListener;
 
-public abstract class NetPipeLink implements SocketLink, ObjectListener {
+public abstract class NetPipeLink implements SocketLink, ObjectListener,
+        FrameListener {
     protected final SocketChannel channel;
 
     protected final ChannelObjectReader reader;
@@ -42,6 +46,11 @@ public abstract class NetPipeLink implements SocketLink, ObjectListener {
     protected boolean willSend;
     protected boolean willReceive;
 
+    private volatile SelectorThread selector;
+    private final AtomicBoolean wakePending;
+    private final AtomicBoolean lingerPending;
+    private final Runnable lingerTask;
+
     public NetPipeLink(SocketChannel channel) throws IOException {
         this.channel = channel;
 
@@ -50,12 +59,24 @@ public abstract class NetPipeLink implements SocketLink, ObjectListener {
             public void takeObject(byte[] body) {
                 receivedObject(body);
             }
-        });
+        }, this);
 
         this.writer = new ChannelObjectWriter(channel);
 
         this.willSend = false;
         this.willReceive = false;
+
+        this.selector = null;
+        this.wakePending = new AtomicBoolean(false);
+        this.lingerPending = new AtomicBoolean(false);
+
+        this.lingerTask = new Runnable() {
+            @Override
+            public void run() {
+                lingerPending.set(false);
+                requestWrite();
+            }
+        };
     }
 
     @Override
@@ -64,14 +85,63 @@ public abstract class NetPipeLink implements SocketLink, ObjectListener {
     }
 
     @Override
-    public synchronized void takeObject(byte[] body) {
-        if (willSend)
+    public void setSelectorThread(SelectorThread selector) {
+        this.selector = selector;
+    }
+
+    @Override
+    public void takeObject(byte[] body) {
+        synchronized (this) {
+            if (!willSend)
+                return;
+
             writer.takeObject(body);
+        }
+
+        requestWrite();
     }
 
     @Override
-    public synchronized boolean wantsWrite() {
-        return writer.wantsWrite();
+    public void takeFrame(int type, byte[] frame, int offset, int length) {
+        // Ignore unknown frames
+    }
+
+    @Override
+    public void takeChannelObject(int channel, byte[] body) {
+        // Ignore unless multiplexing
+    }
+
+    /**
+     * Ask the selector thread to write queued objects once they are due. Only
+     * one wakeup or linger timer is scheduled at a time, so bursts of objects
+     * do not each cost a selector wakeup.
+     */
+    protected void requestWrite() {
+        SelectorThread thread = selector;
+        if (thread == null)
+            return;
+
+        long delay = writer.getWriteDelay();
+
+        if (delay == 0) {
+            if (wakePending.compareAndSet(false, true))
+                thread.updateKey(this);
+        } else if (delay > 0) {
+            if (lingerPending.compareAndSet(false, true))
+                thread.executeLater(lingerTask, delay);
+        }
+    }
+
+    @Override
+    public boolean wantsWrite() {
+        wakePending.set(false);
+
+        if (writer.wantsWrite())
+            return true;
+
+        // Objects still lingering need a timer
+        requestWrite();
+        return false;
     }
 
     @Override
@@ -0,0 +1,164 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.netpipe;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.misc.StatusToken;
+import org.dnikulin.codon.net.SelectorThread;
+import org.dnikulin.codon.net.util.ConnectStatus;
+import org.dnikulin.codon.net.util.ListenStatus;
+
+/**
+ * Registry of netpipe servers and client connections sharing one selector
+ * thread. Clients to the same host and port share one multiplexed connection.
+ */
+public class NetPipes {
+    private final Map<Integer, PipeServer> servers;
+    private final Map<String, PipeMultiplexLink> clients;
+    private SelectorThread selector;
+
+    /** Construct an empty registry. The selector thread starts on first use. */
+    public NetPipes() {
+        this.servers = new TreeMap<Integer, PipeServer>();
+        this.clients = new TreeMap<String, PipeMultiplexLink>();
+        this.selector = null;
+    }
+
+    /**
+     * Query the selector thread, starting it if necessary.
+     * 
+     * @return Selector thread
+     */
+    public synchronized SelectorThread getSelectorThread() throws IOException {
+        if (selector == null)
+            selector = new SelectorThread();
+        return selector;
+    }
+
+    /**
+     * Start a server on the given port, or return the server already running
+     * on that port.
+     * 
+     * @param port
+     *            TCP port
+     * @param logDirectory
+     *            Directory for durable channel logs, or null for none
+     * @param logger
+     *            Line logger for channel log errors, or null for none
+     * @return Pipe server
+     */
+    public synchronized PipeServer serve(int port, File logDirectory,
+            LineLogger logger) throws IOException {
+
+        PipeServer server = servers.get(port);
+        if (server != null)
+            return server;
+
+        if ((logDirectory != null) && !logDirectory.isDirectory()
+                && !logDirectory.mkdirs())
+            throw new IOException("Could not create " + logDirectory);
+
+        server = new PipeServer(logDirectory, logger);
+
+        StatusToken<ListenStatus> status = new StatusToken<ListenStatus>(
+                ListenStatus.CREATED);
+        getSelectorThread().listen(port, server, status);
+
+        ListenStatus reached = status.waitForAny(ListenStatus.LISTENING,
+                ListenStatus.FAILED);
+
+        if (reached != ListenStatus.LISTENING)
+            throw failure("Could not listen on port " + port, status
+                    .getException());
+
+        servers.put(port, server);
+        return server;
+    }
+
+    /**
+     * Start a server without durable channels on the given port, or return the
+     * server already running on that port.
+     * 
+     * @param port
+     *            TCP port
+     * @return Pipe server
+     */
+    public PipeServer serve(int port) throws IOException {
+        return serve(port, null, null);
+    }
+
+    /**
+     * Connect to a server, or return the connection already made to it.
+     * 
+     * @param host
+     *            Server host
+     * @param port
+     *            Server port
+     * @return Multiplexed client link
+     */
+    public synchronized PipeMultiplexLink connect(String host, int port)
+            throws IOException {
+
+        String key = host + ":" + port;
+        PipeMultiplexLink link = clients.get(key);
+        if ((link != null) && link.isConnected())
+            return link;
+
+        link = new PipeMultiplexLink();
+
+        StatusToken<ConnectStatus> status = ConnectStatus.make();
+        getSelectorThread().connect(host, port, link, status);
+
+        ConnectStatus reached = status.waitForAny(ConnectStatus.CONNECTED,
+                ConnectStatus.FAILED);
+
+        if (reached != ConnectStatus.CONNECTED)
+            throw failure("Could not connect to " + key, status.getException());
+
+        clients.put(key, link);
+        return link;
+    }
+
+    /** Stop the selector thread, closing all servers and connections. */
+    public synchronized void shutdown() {
+        if (selector != null)
+            selector.cancel();
+
+        selector = null;
+        servers.clear();
+        clients.clear();
+    }
+
+    private static IOException failure(String message, Exception cause) {
+        IOException ex = new IOException(message);
+        ex.initCause(cause);
+        return ex;
+    }
+}
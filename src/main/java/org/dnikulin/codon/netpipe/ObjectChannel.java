@@ -24,16 +24,45 @@
 
 package org.dnikulin.codon.netpipe;
 
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.dnikulin.codon.netpipe.packet.FlushPolicy;
 import org.dnikulin.codon.netpipe.packet.ObjectListener;
 
 public class ObjectChannel implements ObjectListener {
     private final List<ObjectListener> listeners;
+    private final Map<String, ConsumerGroup> groups;
+    private volatile ConsumerGroup[] groupArray;
+    private volatile FlushPolicy policy;
 
     public ObjectChannel() {
-        listeners = new LinkedList<ObjectListener>();
+        listeners = new CopyOnWriteArrayList<ObjectListener>();
+        groups = new TreeMap<String, ConsumerGroup>();
+        groupArray = new ConsumerGroup[0];
+        policy = FlushPolicy.DEFAULT;
+    }
+
+    /**
+     * Query the flush policy used by links sending this channel to clients.
+     * 
+     * @return Flush policy
+     */
+    public FlushPolicy getFlushPolicy() {
+        return policy;
+    }
+
+    /**
+     * Change the flush policy used by links sending this channel to clients.
+     * Takes effect for clients that connect afterwards.
+     * 
+     * @param policy
+     *            Flush policy
+     */
+    public void setFlushPolicy(FlushPolicy policy) {
+        this.policy = policy;
     }
 
     public void addListener(ObjectListener listener) {
@@ -44,9 +73,65 @@ public class ObjectChannel implements ObjectListener {
         listeners.remove(listener);
     }
 
+    /**
+     * Add a listener to a consumer group, creating the group if necessary.
+     * Each object is delivered to only one member of each group.
+     * 
+     * @param groupName
+     *            Group name
+     * @param mode
+     *            ConsumerGroup.ROUND_ROBIN or ConsumerGroup.HASH, used only
+     *            when creating the group
+     * @param listener
+     *            Member listener
+     * @return Consumer group joined
+     */
+    public synchronized ConsumerGroup joinGroup(String groupName, int mode,
+            ObjectListener listener) {
+
+        ConsumerGroup group = groups.get(groupName);
+
+        if (group == null) {
+            group = new ConsumerGroup(groupName, mode);
+            groups.put(groupName, group);
+            updateGroups();
+        }
+
+        group.join(listener);
+        return group;
+    }
+
+    /**
+     * Remove a listener from a consumer group. Empty groups are removed.
+     * 
+     * @param groupName
+     *            Group name
+     * @param listener
+     *            Member listener
+     */
+    public synchronized void leaveGroup(String groupName,
+            ObjectListener listener) {
+
+        ConsumerGroup group = groups.get(groupName);
+        if ((group == null) || !group.leave(listener))
+            return;
+
+        if (group.size() == 0) {
+            groups.remove(groupName);
+            updateGroups();
+        }
+    }
+
     @Override
     public void takeObject(byte[] body) {
         for (ObjectListener listener : listeners)
             listener.takeObject(body);
+
+        for (ConsumerGroup group : groupArray)
+            group.takeObject(body);
+    }
+
+    private void updateGroups() {
+        groupArray = groups.values().toArray(new ConsumerGroup[groups.size()]);
     }
 }
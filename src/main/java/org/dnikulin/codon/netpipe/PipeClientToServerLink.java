@@ -26,10 +26,13 @@ package org.dnikulin.codon.netpipe;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 
 import org.dnikulin.codon.netpipe.hello.HelloObjectFormat;
 import org.dnikulin.codon.netpipe.hello.NetPipeHello;
+import org.dnikulin.codon.netpipe.packet.FlushPolicy;
+import org.dnikulin.codon.netpipe.packet.Frames;
 import org.dnikulin.codon.netpipe.packet.NullObjectListener;
 import org.dnikulin.codon.netpipe.packet.ObjectListener;
 
@@ -37,25 +40,104 @@ public class PipeClientToServerLink extends NetPipeLink {
     private final String channelName;
 
     private ObjectListener listener;
+    private String groupName;
+    private int groupMode;
+    private long offset;
 
     public PipeClientToServerLink(String channelName, boolean willSend,
-            boolean willReceive) throws IOException {
+            boolean willReceive, FlushPolicy policy) throws IOException {
         super(SocketChannel.open());
 
         this.channelName = channelName;
         this.listener = NullObjectListener.INSTANCE;
+        this.groupName = "";
+        this.groupMode = ConsumerGroup.ROUND_ROBIN;
+        this.offset = -1;
 
         this.willSend = willSend;
         this.willReceive = willReceive;
+
+        writer.setPolicy(policy);
+    }
+
+    public PipeClientToServerLink(String channelName, boolean willSend,
+            boolean willReceive) throws IOException {
+        this(channelName, willSend, willReceive, FlushPolicy.DEFAULT);
     }
 
     public synchronized void setListener(ObjectListener listener) {
         this.listener = listener;
     }
 
+    /**
+     * Receive as a member of a consumer group. Must be called before
+     * connecting.
+     * 
+     * @param groupName
+     *            Consumer group name, or empty for none
+     * @param groupMode
+     *            ConsumerGroup.ROUND_ROBIN or ConsumerGroup.HASH
+     */
+    public synchronized void setGroup(String groupName, int groupMode) {
+        this.groupName = groupName;
+        this.groupMode = groupMode;
+    }
+
+    /**
+     * Ask a durable channel to first send every record from the given offset.
+     * Must be called before connecting. To resume after a disconnect, pass the
+     * offset returned by getOffset() on the old link. The server starts from
+     * the record containing the offset, and getOffset() counts from there.
+     * 
+     * @param offset
+     *            Log offset of the first record, or -1 for live objects only
+     */
+    public synchronized void setStartOffset(long offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * Query the log offset following the last object received, if a start
+     * offset was given.
+     * 
+     * @return Log offset, or -1 if not tracked
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
     @Override
     protected void receivedObject(byte[] body) {
-        listener.takeObject(body);
+        ObjectListener target;
+
+        synchronized (this) {
+            // Log records are a 4-byte header and the body
+            if (offset >= 0)
+                offset += 4 + body.length;
+
+            target = listener;
+        }
+
+        target.takeObject(body);
+    }
+
+    @Override
+    public void takeFrame(int type, byte[] frame, int offset, int length) {
+        if ((type != Frames.ACCEPT) || (length < 1))
+            return;
+
+        // Server agreed to receive batch frames
+        int features = frame[offset];
+        if ((features & Frames.FEATURE_BATCH) != 0)
+            writer.setBatching(true);
+
+        // Server may start from an earlier record than requested
+        if (((features & Frames.FEATURE_OFFSET) != 0) && (length >= 9)) {
+            long start = ByteBuffer.wrap(frame, offset + 1, 8).getLong();
+            synchronized (this) {
+                this.offset = start;
+            }
+        }
     }
 
     @Override
@@ -66,11 +148,14 @@ public class PipeClientToServerLink extends NetPipeLink {
     }
 
     protected synchronized void sendHello() {
+        boolean batch = writer.getPolicy().isBatching();
         NetPipeHello hello = new NetPipeHello(channelName, willReceive,
-                willSend);
+                willSend, false, batch, false, groupName, groupMode, offset);
         byte[] bytes = HelloObjectFormat.INSTANCE.encode(hello);
 
-        writer.takeObject(bytes);
+        // Hello must precede any objects queued before connecting
+        writer.takePriorityObject(bytes);
+        requestWrite();
 
         System.err.println("Scheduled hello");
     }
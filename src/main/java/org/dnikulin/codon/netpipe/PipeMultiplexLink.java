@@ -0,0 +1,307 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.netpipe;
+
+import static org.dnikulin.codon.misc.FlagTools.setFlag;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.dnikulin.codon.netpipe.hello.HelloObjectFormat;
+import org.dnikulin.codon.netpipe.hello.NetPipeHello;
+import org.dnikulin.codon.netpipe.packet.FlushPolicy;
+import org.dnikulin.codon.netpipe.packet.Frames;
+import org.dnikulin.codon.netpipe.packet.NullObjectListener;
+import org.dnikulin.codon.netpipe.packet.ObjectListener;
+
+/**
+ * Client link carrying any number of channels over one connection. Each open
+ * channel is bound to a number with a SUBSCRIBE frame, and objects are sent in
+ * channel frames tagged with that number. The server must support
+ * multiplexing; isMultiplexRefused() reports a server that does not.
+ */
+public class PipeMultiplexLink extends NetPipeLink {
+    private final Map<Integer, Subscription> subscriptions;
+    private boolean connected;
+    private int nextNumber;
+
+    private volatile boolean multiplexRefused;
+
+    public PipeMultiplexLink(FlushPolicy policy) throws IOException {
+        super(SocketChannel.open());
+
+        this.subscriptions = new TreeMap<Integer, Subscription>();
+        this.connected = false;
+        this.nextNumber = 0;
+        this.multiplexRefused = false;
+
+        writer.setPolicy(policy);
+    }
+
+    public PipeMultiplexLink() throws IOException {
+        this(FlushPolicy.DEFAULT);
+    }
+
+    /**
+     * Open a channel on this connection. May be called before or after the
+     * connection is made.
+     * 
+     * @param channelName
+     *            Server channel name
+     * @param willSend
+     *            true to send objects to the channel
+     * @param willReceive
+     *            true to receive objects from the channel
+     * @param listener
+     *            Listener for received objects
+     * @return Channel number, for use with sendObject() and closeChannel()
+     */
+    public int openChannel(String channelName, boolean willSend,
+            boolean willReceive, ObjectListener listener) {
+        return openChannel(channelName, willSend, willReceive, listener, "",
+                ConsumerGroup.ROUND_ROBIN);
+    }
+
+    /**
+     * Open a channel on this connection, receiving as a member of a consumer
+     * group. Each object is received by only one member of the group.
+     * 
+     * @param channelName
+     *            Server channel name
+     * @param willSend
+     *            true to send objects to the channel
+     * @param willReceive
+     *            true to receive objects from the channel
+     * @param listener
+     *            Listener for received objects
+     * @param groupName
+     *            Consumer group name, or empty for none
+     * @param groupMode
+     *            ConsumerGroup.ROUND_ROBIN or ConsumerGroup.HASH
+     * @return Channel number, for use with sendObject() and closeChannel()
+     */
+    public synchronized int openChannel(String channelName, boolean willSend,
+            boolean willReceive, ObjectListener listener, String groupName,
+            int groupMode) {
+
+        int number = allocateNumber();
+
+        Subscription sub = new Subscription(channelName, willSend,
+                willReceive, listener, groupName, groupMode);
+        subscriptions.put(number, sub);
+
+        if (connected)
+            sendSubscribe(number, sub);
+
+        return number;
+    }
+
+    /**
+     * Open a channel on this connection for sending only.
+     * 
+     * @param channelName
+     *            Server channel name
+     * @return Channel number
+     */
+    public int openChannel(String channelName) {
+        return openChannel(channelName, true, false,
+                NullObjectListener.INSTANCE);
+    }
+
+    /**
+     * Close a channel opened by openChannel(). Objects still queued for it are
+     * discarded.
+     * 
+     * @param number
+     *            Channel number
+     */
+    public synchronized void closeChannel(int number) {
+        if (subscriptions.remove(number) == null)
+            return;
+
+        writer.removeChannel(number);
+
+        if (connected) {
+            writer.takeFrame(Frames.makeUnsubscribe(number));
+            requestWrite();
+        }
+    }
+
+    /**
+     * Send an object on an open channel.
+     * 
+     * @param number
+     *            Channel number
+     * @param body
+     *            Object bytes
+     */
+    public void sendObject(int number, byte[] body) {
+        synchronized (this) {
+            Subscription sub = subscriptions.get(number);
+            if ((sub == null) || !sub.send)
+                return;
+
+            writer.takeChannelObject(number, body);
+        }
+
+        requestWrite();
+    }
+
+    /**
+     * Make a listener that sends objects on an open channel.
+     * 
+     * @param number
+     *            Channel number
+     * @return Object listener
+     */
+    public ObjectListener getChannelSender(final int number) {
+        return new ObjectListener() {
+            @Override
+            public void takeObject(byte[] body) {
+                sendObject(number, body);
+            }
+        };
+    }
+
+    @Override
+    protected void receivedObject(byte[] body) {
+        // Only channel objects are expected
+    }
+
+    @Override
+    public void takeFrame(int type, byte[] frame, int offset, int length) {
+        if ((type != Frames.ACCEPT) || (length < 1))
+            return;
+
+        int features = frame[offset];
+        if ((features & Frames.FEATURE_BATCH) != 0)
+            writer.setBatching(true);
+
+        multiplexRefused = ((features & Frames.FEATURE_MULTIPLEX) == 0);
+    }
+
+    /**
+     * Query whether the server accepted the connection without support for
+     * multiplexing. Channels opened on such a connection carry no objects.
+     * 
+     * @return true if the server refused multiplexing
+     */
+    public boolean isMultiplexRefused() {
+        return multiplexRefused;
+    }
+
+    @Override
+    public void takeChannelObject(int channel, byte[] body) {
+        Subscription sub;
+
+        synchronized (this) {
+            sub = subscriptions.get(channel);
+        }
+
+        if ((sub != null) && sub.receive)
+            sub.listener.takeObject(body);
+    }
+
+    @Override
+    public synchronized void connectionMade(InetAddress address) {
+        super.connectionMade(address);
+
+        boolean batch = writer.getPolicy().isBatching();
+        NetPipeHello hello = new NetPipeHello("", false, false, false, batch,
+                true);
+        byte[] bytes = HelloObjectFormat.INSTANCE.encode(hello);
+
+        // Hello and subscriptions must precede any channel objects
+        writer.takeFrame(Frames.makeObjectFrame(bytes));
+        for (Map.Entry<Integer, Subscription> entry : subscriptions.entrySet())
+            sendSubscribe(entry.getKey(), entry.getValue());
+
+        connected = true;
+        requestWrite();
+    }
+
+    /**
+     * Query whether the connection is established and not yet lost.
+     * 
+     * @return true if connected
+     */
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public synchronized void connectionLost() {
+        connected = false;
+        super.connectionLost();
+    }
+
+    private void sendSubscribe(int number, Subscription sub) {
+        int fs = setFlag(Frames.SUBSCRIBE_SEND, sub.receive);
+        int fr = setFlag(Frames.SUBSCRIBE_RECEIVE, sub.send);
+        int fh = setFlag(Frames.SUBSCRIBE_HASH,
+                sub.groupMode == ConsumerGroup.HASH);
+
+        byte[] frame = Frames.makeSubscribe(number, fs | fr | fh, sub.name,
+                sub.groupName);
+        writer.takeFrame(frame);
+        requestWrite();
+    }
+
+    private int allocateNumber() {
+        for (int i = 0; i <= Frames.MAX_CHANNEL; i++) {
+            int number = (nextNumber + i) & Frames.MAX_CHANNEL;
+
+            if (!subscriptions.containsKey(number)) {
+                nextNumber = (number + 1) & Frames.MAX_CHANNEL;
+                return number;
+            }
+        }
+
+        throw new IllegalStateException("No free channel numbers");
+    }
+
+    /** Client side of a channel binding. */
+    private static final class Subscription {
+        public final String name;
+        public final boolean send;
+        public final boolean receive;
+        public final ObjectListener listener;
+        public final String groupName;
+        public final int groupMode;
+
+        public Subscription(String name, boolean send, boolean receive,
+                ObjectListener listener, String groupName, int groupMode) {
+            this.name = name;
+            this.send = send;
+            this.receive = receive;
+            this.listener = listener;
+            this.groupName = groupName;
+            this.groupMode = groupMode;
+        }
+    }
+}
@@ -24,32 +24,112 @@
 
 package org.dnikulin.codon.netpipe;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.channels.SocketChannel;
 import java.util.Map;
 import java.util.TreeMap;
 
+import org.dnikulin.codon.log.IndirectLogger;
+import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.log.LogSource;
+import org.dnikulin.codon.log.NullLogger;
 import org.dnikulin.codon.net.LinkFactory;
 import org.dnikulin.codon.net.SocketLink;
 
-public class PipeServer implements LinkFactory {
+public class PipeServer implements LinkFactory, LogSource {
     private final Map<String, ObjectChannel> channels;
+    private final File logDirectory;
+    private final IndirectLogger logger;
 
-    public PipeServer() {
+    /**
+     * Construct a pipe server with durable channels.
+     * 
+     * @param logDirectory
+     *            Directory for channel logs, or null for no logs
+     * @param logger
+     *            Line logger for channel log errors, or null for none
+     */
+    public PipeServer(File logDirectory, LineLogger logger) {
         this.channels = new TreeMap<String, ObjectChannel>();
+        this.logDirectory = logDirectory;
+        this.logger = new IndirectLogger(NullLogger.or(logger));
+    }
+
+    /**
+     * Construct a pipe server with durable channels and a null logger.
+     * 
+     * @param logDirectory
+     *            Directory for channel logs, or null for no logs
+     */
+    public PipeServer(File logDirectory) {
+        this(logDirectory, null);
+    }
+
+    public PipeServer() {
+        this(null);
     }
 
-    public ObjectChannel makeChannel(String name) {
+    public File getLogDirectory() {
+        return logDirectory;
+    }
+
+    public synchronized ObjectChannel makeChannel(String name) {
         ObjectChannel chan = channels.get(name);
 
         if (chan == null) {
-            chan = new ObjectChannel();
+            chan = openChannel(name);
             channels.put(name, chan);
         }
 
         return chan;
     }
 
+    private ObjectChannel openChannel(String name) {
+        if (logDirectory == null)
+            return new ObjectChannel();
+
+        File file = new File(logDirectory, getLogName(name));
+
+        try {
+            return new DurableObjectChannel(file, logger);
+        } catch (IOException ex) {
+            logger.print("Could not open " + file + ": " + ex);
+            return new ObjectChannel();
+        }
+    }
+
+    /**
+     * Derive a safe log file name from a channel name.
+     * 
+     * @param name
+     *            Channel name
+     * @return Log file name
+     */
+    public static String getLogName(String name) {
+        StringBuilder out = new StringBuilder(name.length() + 4);
+
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            boolean safe = Character.isLetterOrDigit(ch) || (ch == '-')
+                    || (ch == '_') || ((ch == '.') && (i > 0));
+            out.append(safe ? ch : '_');
+        }
+
+        out.append(".log");
+        return out.toString();
+    }
+
+    @Override
+    public LineLogger getLineLogger() {
+        return logger.getLineLogger();
+    }
+
+    @Override
+    public void setLineLogger(LineLogger logger) {
+        this.logger.setLineLogger(logger);
+    }
+
     @Override
     public SocketLink makeLink(SocketChannel channel) throws IOException {
         return new PipeServerToClientLink(this, channel);
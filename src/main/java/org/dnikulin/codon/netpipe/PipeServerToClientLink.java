@@ -24,35 +24,52 @@
 
 package org.dnikulin.codon.netpipe;
 
+import static org.dnikulin.codon.misc.FlagTools.getFlag;
+import static org.dnikulin.codon.misc.FlagTools.setFlag;
+
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.dnikulin.codon.format.except.ObjectCorruptException;
+import org.dnikulin.codon.format.primitive.StringObjectFormat;
 import org.dnikulin.codon.netpipe.hello.HelloObjectFormat;
 import org.dnikulin.codon.netpipe.hello.NetPipeHello;
+import org.dnikulin.codon.netpipe.packet.Frames;
+import org.dnikulin.codon.netpipe.packet.ObjectListener;
 
 public class PipeServerToClientLink extends NetPipeLink {
     private final PipeServer server;
+    private final Map<Integer, Subscription> subscriptions;
     private ObjectChannel pipeChannel;
+    private String groupName;
+    private boolean helloed;
+    private boolean multiplex;
 
     public PipeServerToClientLink(PipeServer server, SocketChannel channel)
             throws IOException {
         super(channel);
 
         this.server = server;
+        this.subscriptions = new HashMap<Integer, Subscription>();
         this.pipeChannel = null;
+        this.groupName = "";
+        this.helloed = false;
+        this.multiplex = false;
     }
 
     @Override
     protected synchronized void receivedObject(byte[] body) {
-        if (pipeChannel == null) {
+        if (!helloed) {
             try {
                 readHello(body);
             } catch (ObjectCorruptException ex) {
                 // Disconnect
             }
-        } else if (willReceive) {
+        } else if (willReceive && (pipeChannel != null)) {
             pipeChannel.takeObject(body);
         }
     }
@@ -60,13 +77,132 @@ public class PipeServerToClientLink extends NetPipeLink {
     protected synchronized void readHello(byte[] body) throws ObjectCorruptException {
         NetPipeHello hello = (NetPipeHello) HelloObjectFormat.INSTANCE
                 .decode(body);
-        pipeChannel = server.makeChannel(hello.channelName);
+        helloed = true;
+
+        // A multiplexing client subscribes to channels by number instead
+        multiplex = hello.multiplex;
+        if (!multiplex)
+            pipeChannel = server.makeChannel(hello.channelName);
 
         willSend = hello.sendToClient;
         willReceive = hello.receiveFromClient;
 
-        if (willSend)
-            pipeChannel.addListener(this);
+        if (pipeChannel != null)
+            writer.setPolicy(pipeChannel.getFlushPolicy());
+
+        // Catch up from the log, starting from a whole record
+        long start = -1;
+        if (willSend && (hello.groupName.length() == 0)
+                && (pipeChannel instanceof DurableObjectChannel)) {
+            DurableObjectChannel durable;
+            durable = (DurableObjectChannel) pipeChannel;
+            start = durable.getStartOffset(hello.startOffset);
+        }
+
+        if (hello.acceptBatch || hello.multiplex || (start >= 0)) {
+            // Client reads batch frames, and may write them once accepted
+            int fb = setFlag(Frames.FEATURE_BATCH, hello.acceptBatch);
+            int fm = setFlag(Frames.FEATURE_MULTIPLEX, hello.multiplex);
+            int fo = setFlag(Frames.FEATURE_OFFSET, start >= 0);
+
+            // Client counts log offsets from the start actually used
+            ByteBuffer features = ByteBuffer.allocate((start >= 0) ? 9 : 1);
+            features.put((byte) (fb | fm | fo));
+            if (start >= 0)
+                features.putLong(start);
+
+            writer.takeFrame(Frames.makeFrame(Frames.ACCEPT, features
+                    .array()));
+            writer.setBatching(hello.acceptBatch);
+            requestWrite();
+        }
+
+        if (willSend && (pipeChannel != null)) {
+            groupName = hello.groupName;
+
+            if (groupName.length() > 0) {
+                pipeChannel.joinGroup(groupName, hello.groupMode, this);
+            } else if (pipeChannel instanceof DurableObjectChannel) {
+                // Catch up from the log, then continue live
+                DurableObjectChannel durable;
+                durable = (DurableObjectChannel) pipeChannel;
+                durable.addListener(this, writer, start);
+                requestWrite();
+            } else {
+                pipeChannel.addListener(this);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void takeFrame(int type, byte[] frame, int offset,
+            int length) {
+
+        if (!multiplex || (length < 2))
+            return;
+
+        int number = Frames.getChannel(frame, offset);
+
+        if (type == Frames.UNSUBSCRIBE) {
+            unsubscribe(number);
+        } else if ((type == Frames.SUBSCRIBE) && (length >= 5)) {
+            int flags = frame[offset + 2];
+            int nlength = Frames.getChannel(frame, offset + 3);
+            int glength = length - 5 - nlength;
+            if (glength < 0)
+                return;
+
+            String name = new String(frame, offset + 5, nlength,
+                    StringObjectFormat.UTF8);
+            String group = new String(frame, offset + 5 + nlength, glength,
+                    StringObjectFormat.UTF8);
+
+            subscribe(number, name, group, flags);
+        }
+    }
+
+    @Override
+    public synchronized void takeChannelObject(int channel, byte[] body) {
+        Subscription sub = subscriptions.get(channel);
+        if ((sub != null) && sub.receive)
+            sub.channel.takeObject(body);
+    }
+
+    protected synchronized void subscribe(int number, String name,
+            String group, int flags) {
+
+        // Rebinding a number replaces the old subscription
+        unsubscribe(number);
+
+        ObjectChannel target = server.makeChannel(name);
+        boolean send = getFlag(flags, Frames.SUBSCRIBE_SEND);
+        boolean receive = getFlag(flags, Frames.SUBSCRIBE_RECEIVE);
+        boolean hash = getFlag(flags, Frames.SUBSCRIBE_HASH);
+
+        if (!getFlag(flags, Frames.SUBSCRIBE_GROUP))
+            group = "";
+
+        Subscription sub = new Subscription(number, target, group, receive);
+        subscriptions.put(number, sub);
+
+        if (!send)
+            return;
+
+        if (group.length() > 0) {
+            int mode = hash ? ConsumerGroup.HASH : ConsumerGroup.ROUND_ROBIN;
+            target.joinGroup(group, mode, sub);
+        } else {
+            target.addListener(sub);
+        }
+    }
+
+    protected synchronized void unsubscribe(int number) {
+        Subscription sub = subscriptions.remove(number);
+        if (sub == null)
+            return;
+
+        sub.detach();
+        writer.removeChannel(number);
     }
 
     @Override
@@ -77,9 +213,47 @@ public class PipeServerToClientLink extends NetPipeLink {
 
     @Override
     public synchronized void connectionLost() {
-        if (pipeChannel != null)
-            pipeChannel.removeListener(this);
+        if (pipeChannel != null) {
+            // Remaining group members take over this link's share
+            if (groupName.length() > 0)
+                pipeChannel.leaveGroup(groupName, this);
+            else
+                pipeChannel.removeListener(this);
+        }
+
+        for (Subscription sub : subscriptions.values())
+            sub.detach();
+        subscriptions.clear();
 
         super.connectionLost();
     }
+
+    /** Binding of a channel number to an object channel. */
+    private final class Subscription implements ObjectListener {
+        public final int number;
+        public final ObjectChannel channel;
+        public final String group;
+        public final boolean receive;
+
+        public Subscription(int number, ObjectChannel channel, String group,
+                boolean receive) {
+            this.number = number;
+            this.channel = channel;
+            this.group = group;
+            this.receive = receive;
+        }
+
+        public void detach() {
+            if (group.length() > 0)
+                channel.leaveGroup(group, this);
+            else
+                channel.removeListener(this);
+        }
+
+        @Override
+        public void takeObject(byte[] body) {
+            writer.takeChannelObject(number, body);
+            requestWrite();
+        }
+    }
 }
@@ -59,8 +59,23 @@ public class HelloObjectFormat extends StreamObjectFormat<NetPipeHello> {
         boolean fs = getFlag(code, 1);
         boolean fr = getFlag(code, 2);
         boolean fl = getFlag(code, 4);
+        boolean fb = getFlag(code, 8);
+        boolean fm = getFlag(code, 16);
+        boolean fg = getFlag(code, 32);
+        boolean fo = getFlag(code, 64);
 
-        return new NetPipeHello(channelName, fs, fr, fl);
+        String groupName = "";
+        int groupMode = 0;
+
+        if (fg) {
+            groupName = readString(in);
+            groupMode = in.readByte();
+        }
+
+        long startOffset = fo ? in.readLong() : -1;
+
+        return new NetPipeHello(channelName, fs, fr, fl, fb, fm, groupName,
+                groupMode, startOffset);
     }
 
     @Override
@@ -70,8 +85,20 @@ public class HelloObjectFormat extends StreamObjectFormat<NetPipeHello> {
         int fs = setFlag(1, hello.sendToClient);
         int fr = setFlag(2, hello.receiveFromClient);
         int fl = setFlag(4, hello.listToClient);
+        int fb = setFlag(8, hello.acceptBatch);
+        int fm = setFlag(16, hello.multiplex);
+        int fg = setFlag(32, hello.groupName.length() > 0);
+        int fo = setFlag(64, hello.startOffset >= 0);
 
-        out.writeByte(fs | fr | fl);
+        out.writeByte(fs | fr | fl | fb | fm | fg | fo);
         writeString(out, hello.channelName);
+
+        if (fg != 0) {
+            writeString(out, hello.groupName);
+            out.writeByte(hello.groupMode);
+        }
+
+        if (fo != 0)
+            out.writeLong(hello.startOffset);
     }
 }
@@ -29,13 +29,52 @@ public class NetPipeHello {
     public final boolean sendToClient;
     public final boolean receiveFromClient;
     public final boolean listToClient;
+    public final boolean acceptBatch;
+    public final boolean multiplex;
+    public final String groupName;
+    public final int groupMode;
+    public final long startOffset;
 
     public NetPipeHello(String channelName, boolean sendToClient,
-            boolean receiveFromClient, boolean listToClient) {
+            boolean receiveFromClient, boolean listToClient,
+            boolean acceptBatch, boolean multiplex, String groupName,
+            int groupMode, long startOffset) {
         this.channelName = channelName;
         this.sendToClient = sendToClient;
         this.receiveFromClient = receiveFromClient;
         this.listToClient = listToClient;
+        this.acceptBatch = acceptBatch;
+        this.multiplex = multiplex;
+        this.groupName = groupName;
+        this.groupMode = groupMode;
+        this.startOffset = startOffset;
+    }
+
+    public NetPipeHello(String channelName, boolean sendToClient,
+            boolean receiveFromClient, boolean listToClient,
+            boolean acceptBatch, boolean multiplex, String groupName,
+            int groupMode) {
+        this(channelName, sendToClient, receiveFromClient, listToClient,
+                acceptBatch, multiplex, groupName, groupMode, -1);
+    }
+
+    public NetPipeHello(String channelName, boolean sendToClient,
+            boolean receiveFromClient, boolean listToClient,
+            boolean acceptBatch, boolean multiplex) {
+        this(channelName, sendToClient, receiveFromClient, listToClient,
+                acceptBatch, multiplex, "", 0);
+    }
+
+    public NetPipeHello(String channelName, boolean sendToClient,
+            boolean receiveFromClient, boolean listToClient,
+            boolean acceptBatch) {
+        this(channelName, sendToClient, receiveFromClient, listToClient,
+                acceptBatch, false);
+    }
+
+    public NetPipeHello(String channelName, boolean sendToClient,
+            boolean receiveFromClient, boolean listToClient) {
+        this(channelName, sendToClient, receiveFromClient, listToClient, false);
     }
 
     public NetPipeHello(String channelName, boolean sendToClient,
@@ -24,6 +24,7 @@
 
 package org.dnikulin.codon.netpipe.packet;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
@@ -32,76 +33,176 @@ import org.dnikulin.codon.misc.Resettable;
 
 public class ChannelObjectReader implements Resettable {
     public static final int BUFFER_SIZE = ChannelObjectWriter.BUFFER_SIZE;
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
     public static final byte[] EMPTY = new byte[] {};
 
     private final ReadableByteChannel channel;
 
     private final ObjectListener listener;
+    private final FrameListener frameListener;
 
     private final ByteBuffer buffer;
     private byte[] next;
+    private byte[] frame;
+    private int frameLength;
     private int cursor;
 
     public ChannelObjectReader(ReadableByteChannel channel,
-            ObjectListener listener) {
+            ObjectListener listener, FrameListener frameListener) {
 
         this.channel = channel;
         this.listener = listener;
+        this.frameListener = frameListener;
 
         this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
         this.next = null;
+        this.frame = new byte[256];
+        this.frameLength = -1;
         this.cursor = 0;
     }
 
+    public ChannelObjectReader(ReadableByteChannel channel,
+            ObjectListener listener) {
+        this(channel, listener, NullFrameListener.INSTANCE);
+    }
+
     @Override
     public synchronized void reset() {
         buffer.clear();
         next = null;
+        frameLength = -1;
         cursor = 0;
     }
 
     public synchronized void consume() throws IOException {
-        channel.read(buffer);
+        if (channel.read(buffer) < 0)
+            throw new EOFException("Connection closed");
 
         buffer.flip();
 
-        while (true) {
-            if (next == null) {
+        try {
+            while (true) {
+                if (next != null) {
+                    if (fill(next, next.length) == false)
+                        break;
+
+                    byte[] object = next;
+                    next = null;
+                    cursor = 0;
+                    listener.takeObject(object);
+                    continue;
+                }
+
+                if (frameLength >= 0) {
+                    if (fill(frame, frameLength) == false)
+                        break;
+
+                    int length = frameLength;
+                    frameLength = -1;
+                    cursor = 0;
+                    takeFrame(length);
+                    continue;
+                }
+
                 assert (cursor == 0);
 
-                if (buffer.remaining() < 4)
+                if (buffer.remaining() < Frames.OBJECT_HEADER)
                     break;
 
-                int nextSize = buffer.getInt();
+                int header = buffer.getInt();
 
-                if (nextSize == 0) {
+                if (header == 0) {
                     listener.takeObject(EMPTY);
-                    continue;
+                } else if (header > 0) {
+                    next = new byte[header];
+                } else {
+                    int length = -header;
+                    if ((length <= 0) || (length > MAX_FRAME_SIZE))
+                        throw new IOException("Invalid frame length " + length);
+
+                    if (frame.length < length)
+                        frame = new byte[length];
+                    frameLength = length;
                 }
+            }
+        } finally {
+            buffer.compact();
+        }
+    }
 
-                next = new byte[nextSize];
+    private boolean fill(byte[] target, int length) {
+        int count = Math.min(buffer.remaining(), length - cursor);
+        buffer.get(target, cursor, count);
+        cursor += count;
 
-                System.err.println("Reading object of size " + nextSize);
-            }
+        assert (cursor <= length);
+        return cursor == length;
+    }
+
+    private void takeFrame(int length) throws IOException {
+        int type = frame[0] & 0xFF;
 
-            int space = buffer.remaining();
-            if (space < 1)
-                break;
+        switch (type) {
+        case Frames.BATCH:
+            takeBatch(-1, 1, length);
+            return;
 
-            int count = Math.min(space, next.length - cursor);
-            buffer.get(next, cursor, count);
-            cursor += count;
+        case Frames.CHANNEL_OBJECT:
+        case Frames.CHANNEL_BATCH:
+            if (length < 3)
+                throw new IOException("Corrupt channel frame");
 
-            assert (cursor <= next.length);
-            if (cursor == next.length) {
-                System.err.println("Read object of size " + next.length);
+            int channel = Frames.getChannel(frame, 1);
 
-                listener.takeObject(next);
-                next = null;
-                cursor = 0;
+            if (type == Frames.CHANNEL_BATCH) {
+                takeBatch(channel, 3, length);
+            } else {
+                byte[] object = EMPTY;
+                if (length > 3) {
+                    object = new byte[length - 3];
+                    System.arraycopy(frame, 3, object, 0, object.length);
+                }
+                frameListener.takeChannelObject(channel, object);
             }
+            return;
+
+        default:
+            frameListener.takeFrame(type, frame, 1, length - 1);
+            return;
         }
+    }
+
+    private void takeBatch(int channel, int offset, int length)
+            throws IOException {
 
-        buffer.compact();
+        while (offset < length) {
+            int size = 0;
+            int shift = 0;
+            byte part;
+
+            do {
+                if ((offset >= length) || (shift > 28))
+                    throw new IOException("Corrupt batch frame");
+
+                part = frame[offset++];
+                size |= (part & 0x7F) << shift;
+                shift += 7;
+            } while ((part & 0x80) != 0);
+
+            if ((size < 0) || (size > length - offset))
+                throw new IOException("Corrupt batch frame");
+
+            byte[] object = EMPTY;
+            if (size > 0) {
+                object = new byte[size];
+                System.arraycopy(frame, offset, object, 0, size);
+                offset += size;
+            }
+
+            if (channel < 0)
+                listener.takeObject(object);
+            else
+                frameListener.takeChannelObject(channel, object);
+        }
     }
 }
@@ -26,8 +26,11 @@ package org.dnikulin.codon.netpipe.packet;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.dnikulin.codon.misc.Resettable;
 
@@ -36,26 +39,108 @@ public class ChannelObjectWriter implements ObjectListener, Resettable {
 
     private final WritableByteChannel channel;
 
-    private final LinkedList<byte[]> packets;
+    private final PacketQueue frames;
+    private final Lane plain;
+    private final Map<Integer, Lane> lanes;
+    private final ArrayDeque<Lane> active;
     private final ByteBuffer buffer;
+    private byte[] current;
     private int cursor;
 
+    private FileChannel region;
+    private long regionStart;
+    private long regionEnd;
+
+    private FlushPolicy policy;
+    private boolean batching;
+    private long queuedSince;
+    private int queuedCount;
+    private long queuedBytes;
+
     public ChannelObjectWriter(WritableByteChannel channel) {
         this.channel = channel;
 
-        this.packets = new LinkedList<byte[]>();
+        this.frames = new PacketQueue();
+        this.plain = new Lane(-1);
+        this.lanes = new HashMap<Integer, Lane>();
+        this.active = new ArrayDeque<Lane>();
         this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.current = null;
         this.cursor = -1;
+
+        this.region = null;
+        this.regionStart = 0;
+        this.regionEnd = 0;
+
+        this.policy = FlushPolicy.DEFAULT;
+        this.batching = false;
+        this.queuedSince = 0;
+        this.queuedCount = 0;
+        this.queuedBytes = 0;
     }
 
     @Override
     public synchronized void reset() {
         this.buffer.clear();
+        this.frames.clear();
+        this.current = null;
         this.cursor = -1;
+        this.region = null;
+        this.batching = false;
+
+        // Channel numbers do not survive the connection
+        for (Lane lane : lanes.values())
+            dropLane(lane);
+        lanes.clear();
+    }
+
+    public synchronized FlushPolicy getPolicy() {
+        return policy;
+    }
+
+    public synchronized void setPolicy(FlushPolicy policy) {
+        this.policy = policy;
+    }
+
+    public synchronized boolean isBatching() {
+        return batching;
+    }
+
+    /**
+     * Allow or forbid batch frames. Must only be enabled once the peer has
+     * agreed to receive them.
+     * 
+     * @param batching
+     *            true to allow batch frames
+     */
+    public synchronized void setBatching(boolean batching) {
+        this.batching = batching;
     }
 
     public synchronized boolean wantsWrite() {
-        return (buffer.position() > 0) || (packets.isEmpty() == false);
+        return getWriteDelay() == 0;
+    }
+
+    /**
+     * Query how long queued objects may linger before they must be written.
+     * 
+     * @return Milliseconds until a write is due, 0 if due now, -1 if there is
+     *         nothing to write
+     */
+    public synchronized long getWriteDelay() {
+        if ((buffer.position() > 0) || (current != null) || !frames.isEmpty()
+                || (region != null))
+            return 0;
+
+        if (queuedCount == 0)
+            return -1;
+
+        if ((policy.lingerMillis <= 0) || (queuedCount >= policy.maxCount)
+                || (queuedBytes >= policy.maxBytes))
+            return 0;
+
+        long waited = (System.nanoTime() - queuedSince) / 1000000;
+        return Math.max(0, policy.lingerMillis - waited);
     }
 
     public synchronized void flush() throws IOException {
@@ -64,49 +149,284 @@ public class ChannelObjectWriter implements ObjectListener, Resettable {
         buffer.flip();
         channel.write(buffer);
         buffer.compact();
+
+        // Copy a file region only once buffered frames are written
+        if ((region != null) && (buffer.position() == 0))
+            flushRegion();
     }
 
     @Override
     public synchronized void takeObject(byte[] body) {
-        packets.add(body);
+        enqueue(plain, body, false);
     }
 
     public synchronized void takePriorityObject(byte[] body) {
-        packets.addFirst(body);
+        enqueue(plain, body, true);
     }
 
-    private synchronized void prepare() {
-        while (packets.isEmpty() == false) {
-            int space = buffer.remaining();
-            if (space < 1)
-                return;
+    /**
+     * Queue an object for a numbered channel. Channels are written in turn, so
+     * a busy channel cannot starve the others.
+     * 
+     * @param channel
+     *            Channel number
+     * @param body
+     *            Object bytes
+     */
+    public synchronized void takeChannelObject(int channel, byte[] body) {
+        assert ((channel >= 0) && (channel <= Frames.MAX_CHANNEL));
+
+        Lane lane = lanes.get(channel);
+        if (lane == null) {
+            lane = new Lane(channel);
+            lanes.put(channel, lane);
+        }
 
-            byte[] next = packets.peek();
+        enqueue(lane, body, false);
+    }
+
+    /**
+     * Discard objects queued for a numbered channel.
+     * 
+     * @param channel
+     *            Channel number
+     */
+    public synchronized void removeChannel(int channel) {
+        Lane lane = lanes.remove(channel);
+        if (lane != null)
+            dropLane(lane);
+    }
+
+    /**
+     * Queue a region of a file holding complete object frames, to be written
+     * after queued frames but before any queued objects. The region is copied
+     * with FileChannel.transferTo(), so it need not pass through the buffer.
+     * 
+     * @param file
+     *            File channel
+     * @param start
+     *            Start of region (a frame boundary)
+     * @param end
+     *            End of region (a frame boundary)
+     */
+    public synchronized void takeRegion(FileChannel file, long start, long end) {
+        assert (region == null);
+        assert (current == null);
+
+        if (start >= end)
+            return;
+
+        region = file;
+        regionStart = start;
+        regionEnd = end;
+    }
+
+    /**
+     * Query whether a file region is still being written.
+     * 
+     * @return true if a region is pending
+     */
+    public synchronized boolean hasRegion() {
+        return region != null;
+    }
+
+    /**
+     * Queue a complete frame, as built by Frames.makeFrame(). Frames are
+     * written in order, before any queued objects.
+     * 
+     * @param frame
+     *            Frame bytes including header
+     */
+    public synchronized void takeFrame(byte[] frame) {
+        assert (frame.length <= BUFFER_SIZE);
+        frames.addLast(frame);
+    }
 
-            if (cursor == -1) {
-                if (buffer.remaining() < 4)
+    // Package-private
+    synchronized void prepare() {
+        while (true) {
+            // Finish the object in progress first
+            if (current != null) {
+                if (putCurrent() == false)
                     return;
+                continue;
+            }
 
-                buffer.putInt(next.length);
-                cursor = 0;
-                space = buffer.remaining();
+            if (frames.isEmpty() == false) {
+                if (buffer.remaining() < frames.peek().length)
+                    return;
 
-                System.err.println("Writing object of length " + next.length);
+                buffer.put(frames.remove());
+                continue;
             }
 
-            assert (cursor >= 0);
+            // Objects must wait for the file region
+            if (region != null)
+                return;
 
-            int ready = next.length - cursor;
-            int count = Math.min(space, ready);
-            buffer.put(next, cursor, count);
-            cursor += count;
+            // Round-robin between lanes, one frame per turn
+            Lane lane = active.peek();
+            if (lane == null)
+                return;
 
-            assert (cursor <= next.length);
-            if (cursor == next.length) {
-                System.err.println("Wrote object of length " + next.length);
-                packets.remove();
-                cursor = -1;
-            }
+            if (putLane(lane) == false)
+                return;
+
+            active.poll();
+            if (lane.packets.isEmpty())
+                lane.active = false;
+            else
+                active.add(lane);
+        }
+    }
+
+    private void flushRegion() throws IOException {
+        long count = regionEnd - regionStart;
+        long sent = region.transferTo(regionStart, count, channel);
+
+        if ((sent == 0) && (regionStart >= region.size())) {
+            region = null;
+            throw new IOException("File region truncated");
+        }
+
+        regionStart += sent;
+        if (regionStart >= regionEnd)
+            region = null;
+    }
+
+    private void enqueue(Lane lane, byte[] body, boolean first) {
+        if (queuedCount == 0)
+            queuedSince = System.nanoTime();
+
+        if (first)
+            lane.packets.addFirst(body);
+        else
+            lane.packets.addLast(body);
+
+        queuedCount++;
+        queuedBytes += body.length;
+
+        if (lane.active == false) {
+            lane.active = true;
+            active.add(lane);
+        }
+    }
+
+    private byte[] dequeue(Lane lane) {
+        byte[] packet = lane.packets.remove();
+        queuedCount--;
+        queuedBytes -= packet.length;
+        return packet;
+    }
+
+    private void dropLane(Lane lane) {
+        queuedCount -= lane.packets.size();
+        queuedBytes -= lane.packets.bytes();
+        lane.packets.clear();
+
+        if (lane.active) {
+            lane.active = false;
+            active.remove(lane);
+        }
+    }
+
+    private boolean putLane(Lane lane) {
+        if (batching && (lane.packets.size() > 1) && putBatch(lane))
+            return true;
+
+        if (lane.channel < 0) {
+            if (buffer.remaining() < Frames.OBJECT_HEADER)
+                return false;
+
+            current = dequeue(lane);
+            buffer.putInt(current.length);
+        } else {
+            if (buffer.remaining() < Frames.CHANNEL_HEADER)
+                return false;
+
+            current = dequeue(lane);
+            buffer.putInt(Frames.OBJECT_HEADER - Frames.CHANNEL_HEADER
+                    - current.length);
+            buffer.put((byte) Frames.CHANNEL_OBJECT);
+            buffer.putShort((short) lane.channel);
+        }
+
+        cursor = 0;
+        return true;
+    }
+
+    private boolean putCurrent() {
+        int space = buffer.remaining();
+        if (space < 1)
+            return false;
+
+        int ready = current.length - cursor;
+        int count = Math.min(space, ready);
+        buffer.put(current, cursor, count);
+        cursor += count;
+
+        assert (cursor <= current.length);
+        if (cursor < current.length)
+            return false;
+
+        current = null;
+        cursor = -1;
+        return true;
+    }
+
+    private boolean putBatch(Lane lane) {
+        int header = (lane.channel < 0) ? Frames.FRAME_HEADER
+                : Frames.CHANNEL_HEADER;
+
+        int limit = Math.min(buffer.remaining(), header + policy.maxBytes);
+        PacketQueue packets = lane.packets;
+
+        int size = header;
+        int count = 0;
+
+        while ((count < packets.size()) && (count < policy.maxCount)) {
+            int length = packets.get(count).length;
+            int framed = Frames.varIntSize(length) + length;
+
+            if (size + framed > limit)
+                break;
+
+            size += framed;
+            count++;
+        }
+
+        // A single object is cheaper as a plain frame
+        if (count < 2)
+            return false;
+
+        buffer.putInt(Frames.OBJECT_HEADER - size);
+
+        if (lane.channel < 0) {
+            buffer.put((byte) Frames.BATCH);
+        } else {
+            buffer.put((byte) Frames.CHANNEL_BATCH);
+            buffer.putShort((short) lane.channel);
+        }
+
+        for (int i = 0; i < count; i++) {
+            byte[] packet = dequeue(lane);
+            Frames.putVarInt(buffer, packet.length);
+            buffer.put(packet);
+        }
+
+        return true;
+    }
+
+    /** Objects queued for one channel, or for no channel. */
+    private static final class Lane {
+        public final int channel;
+        public final PacketQueue packets;
+        public boolean active;
+
+        public Lane(int channel) {
+            this.channel = channel;
+            this.packets = new PacketQueue();
+            this.active = false;
         }
     }
 }
@@ -0,0 +1,81 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.netpipe.packet;
+
+/**
+ * Thresholds controlling when queued objects are written, and how many may be
+ * coalesced into a single batch frame. Queued objects are written as soon as
+ * either threshold is reached, or once the oldest object has lingered for the
+ * given time.
+ */
+public class FlushPolicy {
+    /** Write every object as soon as possible, never in batch frames. */
+    public static final FlushPolicy IMMEDIATE = new FlushPolicy(0, 1, 0);
+
+    /** Write as soon as possible, batching whatever is already queued. */
+    public static final FlushPolicy DEFAULT = new FlushPolicy(64 * 1024, 1024, 0);
+
+    /** Maximum batch payload in bytes. */
+    public final int maxBytes;
+
+    /** Maximum number of objects per batch. */
+    public final int maxCount;
+
+    /** Maximum time to hold queued objects, in milliseconds. */
+    public final long lingerMillis;
+
+    /**
+     * Construct a flush policy.
+     * 
+     * @param maxBytes
+     *            Maximum batch payload in bytes
+     * @param maxCount
+     *            Maximum number of objects per batch
+     * @param lingerMillis
+     *            Maximum time to hold queued objects, in milliseconds
+     */
+    public FlushPolicy(int maxBytes, int maxCount, long lingerMillis) {
+        int limit = ChannelObjectWriter.BUFFER_SIZE - Frames.FRAME_HEADER;
+
+        this.maxBytes = Math.max(0, Math.min(maxBytes, limit));
+        this.maxCount = Math.max(1, maxCount);
+        this.lingerMillis = Math.max(0, lingerMillis);
+    }
+
+    /**
+     * Query whether objects may be coalesced into batch frames.
+     * 
+     * @return true iff more than one object may share a frame
+     */
+    public boolean isBatching() {
+        return maxCount > 1;
+    }
+
+    @Override
+    public String toString() {
+        return maxBytes + " bytes, " + maxCount + " objects, " + lingerMillis
+                + " ms";
+    }
+}
@@ -0,0 +1,215 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.netpipe.packet;
+
+import java.nio.ByteBuffer;
+
+import org.dnikulin.codon.format.primitive.StringObjectFormat;
+
+/**
+ * Utility class describing the netpipe wire framing. Every frame starts with a
+ * 4-byte header. A non-negative header is the length of a single object that
+ * follows. A negative header is the negated length of a tagged frame, whose
+ * first byte is the frame type.
+ */
+public final class Frames {
+    /** Tagged frame carrying many objects, each with a varint length. */
+    public static final int BATCH = 1;
+
+    /**
+     * Tagged frame accepting a hello, carrying a feature flag byte, then the
+     * 8-byte log start offset if FEATURE_OFFSET is set.
+     */
+    public static final int ACCEPT = 2;
+
+    /** Tagged frame carrying one object for a numbered channel. */
+    public static final int CHANNEL_OBJECT = 3;
+
+    /** Tagged frame carrying many objects for a numbered channel. */
+    public static final int CHANNEL_BATCH = 4;
+
+    /** Tagged frame binding a channel number to a channel name. */
+    public static final int SUBSCRIBE = 5;
+
+    /** Tagged frame releasing a channel number. */
+    public static final int UNSUBSCRIBE = 6;
+
+    /** Feature flag for batch frames. */
+    public static final int FEATURE_BATCH = 1;
+
+    /** Feature flag for channel multiplexing. */
+    public static final int FEATURE_MULTIPLEX = 2;
+
+    /** Feature flag for a durable channel log start offset. */
+    public static final int FEATURE_OFFSET = 4;
+
+    /** Subscribe flag: server sends channel objects to the client. */
+    public static final int SUBSCRIBE_SEND = 1;
+
+    /** Subscribe flag: server receives channel objects from the client. */
+    public static final int SUBSCRIBE_RECEIVE = 2;
+
+    /** Subscribe flag: client joins a consumer group. */
+    public static final int SUBSCRIBE_GROUP = 4;
+
+    /** Subscribe flag: consumer group delivers by hash, not in turn. */
+    public static final int SUBSCRIBE_HASH = 8;
+
+    /** Highest channel number. */
+    public static final int MAX_CHANNEL = 0xFFFF;
+
+    /** Size of an object header in bytes. */
+    public static final int OBJECT_HEADER = 4;
+
+    /** Size of a tagged frame header (including type byte) in bytes. */
+    public static final int FRAME_HEADER = 5;
+
+    /** Size of a channel frame header (including channel number) in bytes. */
+    public static final int CHANNEL_HEADER = FRAME_HEADER + 2;
+
+    /**
+     * Build a complete tagged frame.
+     * 
+     * @param type
+     *            Frame type
+     * @param payload
+     *            Frame payload (following the type byte)
+     * @return Frame bytes including header
+     */
+    public static byte[] makeFrame(int type, byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + payload.length);
+        frame.putInt(-(1 + payload.length));
+        frame.put((byte) type);
+        frame.put(payload);
+        return frame.array();
+    }
+
+    /**
+     * Build a plain object frame, for queueing with other frames.
+     * 
+     * @param body
+     *            Object bytes
+     * @return Frame bytes including header
+     */
+    public static byte[] makeObjectFrame(byte[] body) {
+        ByteBuffer frame = ByteBuffer.allocate(OBJECT_HEADER + body.length);
+        frame.putInt(body.length);
+        frame.put(body);
+        return frame.array();
+    }
+
+    /**
+     * Build a SUBSCRIBE frame. The payload is the channel number, a flag byte,
+     * the channel name length and name, then the group name if any.
+     * 
+     * @param channel
+     *            Channel number
+     * @param flags
+     *            SUBSCRIBE_SEND, SUBSCRIBE_RECEIVE and SUBSCRIBE_HASH
+     * @param name
+     *            Channel name
+     * @param group
+     *            Consumer group name, or empty for none
+     * @return Frame bytes including header
+     */
+    public static byte[] makeSubscribe(int channel, int flags, String name,
+            String group) {
+
+        byte[] nbytes = name.getBytes(StringObjectFormat.UTF8);
+        byte[] gbytes = group.getBytes(StringObjectFormat.UTF8);
+
+        if (gbytes.length > 0)
+            flags |= SUBSCRIBE_GROUP;
+
+        int size = 5 + nbytes.length + gbytes.length;
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        payload.putShort((short) channel);
+        payload.put((byte) flags);
+        payload.putShort((short) nbytes.length);
+        payload.put(nbytes);
+        payload.put(gbytes);
+        return makeFrame(SUBSCRIBE, payload.array());
+    }
+
+    /**
+     * Build an UNSUBSCRIBE frame.
+     * 
+     * @param channel
+     *            Channel number
+     * @return Frame bytes including header
+     */
+    public static byte[] makeUnsubscribe(int channel) {
+        ByteBuffer payload = ByteBuffer.allocate(2);
+        payload.putShort((short) channel);
+        return makeFrame(UNSUBSCRIBE, payload.array());
+    }
+
+    /**
+     * Read an unsigned 16-bit channel number.
+     * 
+     * @param frame
+     *            Frame bytes
+     * @param offset
+     *            Offset of channel number
+     * @return Channel number
+     */
+    public static int getChannel(byte[] frame, int offset) {
+        return ((frame[offset] & 0xFF) << 8) | (frame[offset + 1] & 0xFF);
+    }
+
+    /**
+     * Query the encoded size of a varint.
+     * 
+     * @param value
+     *            Non-negative integer
+     * @return Number of bytes used by putVarInt()
+     */
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0)
+            size++;
+        return size;
+    }
+
+    /**
+     * Write a non-negative integer as a varint (7 bits per byte, high bit set
+     * on all but the last byte).
+     * 
+     * @param buffer
+     *            Output buffer
+     * @param value
+     *            Non-negative integer
+     */
+    public static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private Frames() {
+    }
+}
@@ -0,0 +1,106 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.netpipe.packet;
+
+/** A ring buffer of packets that does not allocate once grown. */
+class PacketQueue {
+    private byte[][] ring;
+    private int head;
+    private int size;
+    private long bytes;
+
+    PacketQueue() {
+        ring = new byte[16][];
+        head = 0;
+        size = 0;
+        bytes = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    byte[] get(int i) {
+        assert (i < size);
+        return ring[(head + i) & (ring.length - 1)];
+    }
+
+    byte[] peek() {
+        return (size == 0) ? null : ring[head];
+    }
+
+    void addLast(byte[] packet) {
+        if (size == ring.length)
+            grow();
+
+        ring[(head + size) & (ring.length - 1)] = packet;
+        size++;
+        bytes += packet.length;
+    }
+
+    void addFirst(byte[] packet) {
+        if (size == ring.length)
+            grow();
+
+        head = (head - 1) & (ring.length - 1);
+        ring[head] = packet;
+        size++;
+        bytes += packet.length;
+    }
+
+    byte[] remove() {
+        if (size == 0)
+            return null;
+
+        byte[] packet = ring[head];
+        ring[head] = null;
+        head = (head + 1) & (ring.length - 1);
+        size--;
+        bytes -= packet.length;
+        return packet;
+    }
+
+    void clear() {
+        while (size > 0)
+            remove();
+        head = 0;
+    }
+
+    private void grow() {
+        byte[][] nring = new byte[ring.length * 2][];
+        for (int i = 0; i < size; i++)
+            nring[i] = get(i);
+        ring = nring;
+        head = 0;
+    }
+}
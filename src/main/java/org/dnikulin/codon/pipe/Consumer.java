@@ -40,4 +40,13 @@ public interface Consumer {
      *            Object to feed
      */
     public void consume(Object value);
+
+    /**
+     * Query whether the consumer wants no further objects. Producers should
+     * poll this between batches of work and stop producing once it returns
+     * true; objects consumed afterwards may be ignored.
+     * 
+     * @return true iff the consumer has been cancelled
+     */
+    public boolean isCancelled();
 }
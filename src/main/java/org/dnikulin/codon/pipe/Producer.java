@@ -24,6 +24,7 @@
 
 package org.dnikulin.codon.pipe;
 
+import java.util.List;
 
 /** An object producing object values of a specific type. */
 public interface Producer {
@@ -51,6 +52,15 @@ public interface Producer {
      */
     public boolean hasConsumer();
 
+    /**
+     * Query consumers added to this producer, as a copy that has no effect on
+     * the producer. A producer that hands each consumer to its own daemon
+     * may list none.
+     * 
+     * @return List of consumers as a copy
+     */
+    public List<Consumer> getConsumers();
+
     /**
      * Remove a specific consumer.
      * 
@@ -0,0 +1,187 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.bench;
+
+import org.dnikulin.codon.misc.Cancellable;
+import org.dnikulin.codon.misc.LatencyHistogram;
+import org.dnikulin.codon.pipe.simple.SimplePipe;
+import org.dnikulin.codon.timer.TimerWheel;
+
+/**
+ * A pipe that counts the objects passing through it and logs their rate and
+ * latency percentiles every interval. Latency is measured from the time each
+ * object was stamped in a shared ValueStamps table, so only objects stamped in
+ * this process are measured. Reporting starts with the first object, and stops
+ * with a summary of the whole run after an interval without any.
+ */
+public class BenchPipe extends SimplePipe {
+    private static final double SECOND = 1e9;
+
+    private final TimerWheel timer;
+    private final ValueStamps stamps;
+    private final long intervalMillis;
+
+    private final LatencyHistogram intervalLatency;
+    private final LatencyHistogram totalLatency;
+    private long intervalCount;
+    private long totalCount;
+    private long intervalStart;
+    private long totalStart;
+    private long lastSeen;
+    private Cancellable reporter;
+
+    /**
+     * Construct a bench pipe.
+     * 
+     * @param timer
+     *            Timer wheel to run reports
+     * @param stamps
+     *            Value stamp table shared with sources
+     * @param intervalMillis
+     *            Report interval in milliseconds
+     */
+    public BenchPipe(TimerWheel timer, ValueStamps stamps,
+            long intervalMillis) {
+        this.timer = timer;
+        this.stamps = stamps;
+        this.intervalMillis = intervalMillis;
+
+        this.intervalLatency = new LatencyHistogram();
+        this.totalLatency = new LatencyHistogram();
+        this.intervalCount = 0;
+        this.totalCount = 0;
+        this.reporter = null;
+    }
+
+    @Override
+    public void consume(Object value) {
+        long now = System.nanoTime();
+        long stamp = stamps.take(value);
+
+        synchronized (this) {
+            if (reporter == null)
+                start(now);
+
+            intervalCount++;
+            lastSeen = now;
+            if (stamp != ValueStamps.NONE)
+                intervalLatency.record(now - stamp);
+        }
+
+        produce(value);
+    }
+
+    /**
+     * Query the number of objects consumed since the last summary.
+     * 
+     * @return Object count
+     */
+    public synchronized long getCount() {
+        return totalCount + intervalCount;
+    }
+
+    /** Log the current interval and a summary, then stop reporting. */
+    @Override
+    public synchronized void reset() {
+        if (intervalCount > 0)
+            reportInterval(System.nanoTime());
+        if (reporter != null)
+            finish();
+    }
+
+    @Override
+    public Class<?> getInputType() {
+        return Object.class;
+    }
+
+    @Override
+    public Class<?> getOutputType() {
+        return Object.class;
+    }
+
+    private void start(long now) {
+        intervalStart = now;
+        totalStart = now;
+
+        reporter = timer.scheduleRepeating(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, intervalMillis);
+    }
+
+    private synchronized void report() {
+        if (reporter == null)
+            return;
+
+        if (intervalCount > 0)
+            reportInterval(System.nanoTime());
+        else
+            finish();
+    }
+
+    private void reportInterval(long now) {
+        log(describe("Interval", intervalCount, now - intervalStart,
+                intervalLatency));
+
+        totalCount += intervalCount;
+        totalLatency.add(intervalLatency);
+        intervalCount = 0;
+        intervalLatency.reset();
+        intervalStart = now;
+    }
+
+    private void finish() {
+        reporter.cancel();
+        reporter = null;
+
+        // Idle time after the last object is not part of the run
+        long nanos = Math.max(1, lastSeen - totalStart);
+        log(describe("Total", totalCount, nanos, totalLatency));
+
+        totalCount = 0;
+        totalLatency.reset();
+    }
+
+    private static String describe(String label, long count, long nanos,
+            LatencyHistogram latency) {
+
+        String line = String.format("%s: %d objects in %.2f s (%.0f/s)",
+                label, count, nanos / SECOND, count * SECOND / nanos);
+
+        if (latency.getCount() == 0)
+            return line + ", no latency stamps";
+
+        return line + String.format(", latency us p50 %.1f p90 %.1f "
+                + "p99 %.1f p99.9 %.1f max %.1f", micros(latency, 50),
+                micros(latency, 90), micros(latency, 99),
+                micros(latency, 99.9), latency.getMax() / 1e3);
+    }
+
+    private static double micros(LatencyHistogram latency, double percentile) {
+        return latency.getPercentile(percentile) / 1e3;
+    }
+}
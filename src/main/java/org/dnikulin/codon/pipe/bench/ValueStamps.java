@@ -0,0 +1,105 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.bench;
+
+/**
+ * A fixed-size table of the times at which values were scheduled, keyed by
+ * value identity. A source stamps each value before producing it, and a sink
+ * further down the same process takes the stamp to measure latency. Values
+ * that were replaced by new objects on the way (for example through a netpipe)
+ * simply have no stamp. Stamps may also be lost when two values in flight
+ * share a slot. All of its methods are thread-safe.
+ */
+public class ValueStamps {
+    /** Default number of slots. */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /** Returned by take() for a value without a stamp. */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private final Object[] values;
+    private final long[] stamps;
+    private final int mask;
+
+    /**
+     * Construct an empty stamp table.
+     * 
+     * @param capacity
+     *            Number of slots, rounded up to a power of two
+     */
+    public ValueStamps(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+        this.values = new Object[size];
+        this.stamps = new long[size];
+        this.mask = size - 1;
+    }
+
+    /** Construct an empty stamp table with the default capacity. */
+    public ValueStamps() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Stamp a value, replacing any stamp in the same slot.
+     * 
+     * @param value
+     *            Value about to be produced
+     * @param stamp
+     *            Time it was scheduled, by System.nanoTime()
+     */
+    public void put(Object value, long stamp) {
+        int slot = slotOf(value);
+
+        synchronized (this) {
+            values[slot] = value;
+            stamps[slot] = stamp;
+        }
+    }
+
+    /**
+     * Remove and return the stamp of a value.
+     * 
+     * @param value
+     *            Value consumed
+     * @return Time it was scheduled, or NONE
+     */
+    public long take(Object value) {
+        int slot = slotOf(value);
+
+        synchronized (this) {
+            if (values[slot] != value)
+                return NONE;
+
+            values[slot] = null;
+            return stamps[slot];
+        }
+    }
+
+    private int slotOf(Object value) {
+        int hash = System.identityHashCode(value);
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -24,8 +24,9 @@
 
 package org.dnikulin.codon.pipe.command.registry;
 
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.dnikulin.codon.command.EffectCommand;
 import org.dnikulin.codon.log.LineLogger;
@@ -40,13 +41,16 @@ import org.dnikulin.codon.pipe.except.PipeNameInUseException;
 import org.dnikulin.codon.pipe.except.PipeNameInvalidException;
 import org.dnikulin.codon.pipe.except.PipeNotFoundException;
 
-/** Pipe command registry, invokes pipe commands by name. */
+/**
+ * Pipe command registry, invokes pipe commands by name. Commands are found
+ * without locking.
+ */
 public class PipeCommands {
-    private final Map<String, PipeCommand> commands;
+    private final ConcurrentMap<String, PipeCommand> commands;
 
     /** Construct empty registry. */
     public PipeCommands() {
-        commands = new TreeMap<String, PipeCommand>();
+        commands = new ConcurrentHashMap<String, PipeCommand>();
     }
 
     /**
@@ -63,10 +67,8 @@ public class PipeCommands {
         if (!PipeLinker.isPipeNameValid(commandName))
             throw new PipeNameInvalidException("Command name is invalid");
 
-        if (commands.containsKey(commandName))
+        if (commands.putIfAbsent(commandName, command) != null)
             throw new PipeNameInUseException("Command name is already in use");
-
-        commands.put(commandName, command);
     }
 
     /**
@@ -112,10 +114,32 @@ public class PipeCommands {
      *            Command name to search
      * @return true iff the command name is in use
      */
-    public synchronized boolean has(String commandName) {
+    public boolean has(String commandName) {
         return commands.containsKey(commandName);
     }
 
+    /**
+     * Remove every pipe command defined by a class loader, including effect
+     * and producer commands wrapped by the registry.
+     * 
+     * @param loader
+     *            Class loader
+     * @return Number of commands removed
+     */
+    public synchronized int removeLoadedBy(ClassLoader loader) {
+        int removed = 0;
+
+        Iterator<PipeCommand> it = commands.values().iterator();
+        while (it.hasNext()) {
+            if (getCommandClass(it.next()).getClassLoader() == loader) {
+                it.remove();
+                removed++;
+            }
+        }
+
+        return removed;
+    }
+
     /**
      * Find a pipe command. Throws PipeNotFoundException if none found.
      * 
@@ -123,7 +147,7 @@ public class PipeCommands {
      *            Command name to search
      * @return Pipe command object
      */
-    public synchronized PipeCommand get(String commandName)
+    public PipeCommand get(String commandName)
             throws PipeNotFoundException {
         PipeCommand command = commands.get(commandName);
         if (command == null)
@@ -146,4 +170,12 @@ public class PipeCommands {
             throws PipeNotFoundException, PipeFactoryException {
         return get(commandName).makePipe(tokens, log);
     }
+
+    private static Class<?> getCommandClass(PipeCommand command) {
+        if (command instanceof EffectPipeCommand)
+            return ((EffectPipeCommand) command).getCommand().getClass();
+        if (command instanceof ProducerPipeCommand)
+            return ((ProducerPipeCommand) command).getCommand().getClass();
+        return command.getClass();
+    }
 }
@@ -25,11 +25,12 @@
 package org.dnikulin.codon.pipe.command.registry;
 
 import org.dnikulin.codon.pipe.except.PipeException;
+import org.dnikulin.codon.plugin.PluginLoader;
 import org.dnikulin.codon.plugin.PluginNode;
-import org.dnikulin.codon.plugin.PluginSlot;
+import org.dnikulin.codon.plugin.RemovablePluginSlot;
 
 /** A plugin slot allowing pipe commands to be added to a registry. */
-public class PipeCommandsPluginSlot implements PluginSlot {
+public class PipeCommandsPluginSlot implements RemovablePluginSlot {
     private final PipeCommands commands;
 
     /**
@@ -60,4 +61,12 @@ public class PipeCommandsPluginSlot implements PluginSlot {
             ex.printStackTrace();
         }
     }
+
+    @Override
+    public void removePlugin(PluginNode plugin) {
+        // Never remove commands of the core class loaders
+        ClassLoader loader = plugin.getClass().getClassLoader();
+        if (loader instanceof PluginLoader)
+            commands.removeLoadedBy(loader);
+    }
 }
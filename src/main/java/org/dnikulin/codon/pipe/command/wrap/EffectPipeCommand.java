@@ -75,4 +75,13 @@ public class EffectPipeCommand implements PipeCommand, EffectCommand {
     public String getCommandUsage() {
         return command.getCommandUsage();
     }
+
+    /**
+     * Query wrapped command.
+     * 
+     * @return Wrapped effect command
+     */
+    public EffectCommand getCommand() {
+        return command;
+    }
 }
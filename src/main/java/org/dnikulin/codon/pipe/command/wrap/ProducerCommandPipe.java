@@ -38,6 +38,7 @@ public class ProducerCommandPipe extends NullPipe {
     private final ProducerCommand command;
     private final String[] arguments;
     private final IndirectLogger logger;
+    private final Class<?> outputType;
 
     /**
      * Create a pipe that executes the given command whenever addConsumer() is
@@ -52,19 +53,40 @@ public class ProducerCommandPipe extends NullPipe {
      */
     public ProducerCommandPipe(ProducerCommand command, String[] arguments,
             LineLogger logger) {
+        this(command, arguments, logger, command.getOutputType());
+    }
+
+    /**
+     * Create a pipe that executes the given command whenever addConsumer() is
+     * called, for a command whose output type depends on its arguments.
+     * 
+     * @param command
+     *            Producer command
+     * @param arguments
+     *            Command arguments
+     * @param logger
+     *            Initial line logger
+     * @param outputType
+     *            Output type for these arguments
+     */
+    public ProducerCommandPipe(ProducerCommand command, String[] arguments,
+            LineLogger logger, Class<?> outputType) {
         this.command = command;
         this.arguments = arguments;
         this.logger = new IndirectLogger(logger);
+        this.outputType = outputType;
     }
 
     @Override
     public Class<?> getOutputType() {
-        return command.getOutputType();
+        return outputType;
     }
 
     @Override
     public boolean addConsumer(Consumer consumer) {
-        command.produce(arguments, logger, consumer);
+        // Nothing to produce for a consumer that is already cancelled
+        if (consumer.isCancelled() == false)
+            command.produce(arguments, logger, consumer);
         return true;
     }
 
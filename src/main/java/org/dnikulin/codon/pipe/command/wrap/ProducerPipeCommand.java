@@ -78,4 +78,13 @@ public class ProducerPipeCommand implements PipeCommand, ProducerCommand {
     public String getCommandUsage() {
         return command.getCommandUsage();
     }
+
+    /**
+     * Query wrapped command.
+     * 
+     * @return Wrapped producer command
+     */
+    public ProducerCommand getCommand() {
+        return command;
+    }
 }
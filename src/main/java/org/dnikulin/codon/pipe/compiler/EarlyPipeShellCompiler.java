@@ -30,6 +30,7 @@ import java.util.Stack;
 
 import org.dnikulin.codon.log.LineLogger;
 import org.dnikulin.codon.log.NullLogger;
+import org.dnikulin.codon.misc.Committable;
 import org.dnikulin.codon.pipe.Pipe;
 import org.dnikulin.codon.pipe.command.registry.PipeCommands;
 import org.dnikulin.codon.pipe.except.PipeException;
@@ -136,6 +137,8 @@ public class EarlyPipeShellCompiler implements PipeShellCompiler {
             throws PipeException {
 
         Pipe pipe = commands.makePipe(command, tokens, logger);
+        if (pipe instanceof Committable)
+            ((Committable) pipe).commit();
 
         List<Pipe> line = lineStack.peek();
         line.add(pipe);
@@ -0,0 +1,497 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+
+import org.dnikulin.codon.daemon.thread.DaemonThreads;
+import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.log.NullLogger;
+import org.dnikulin.codon.misc.Committable;
+import org.dnikulin.codon.pipe.BlockingPipe;
+import org.dnikulin.codon.pipe.Pipe;
+import org.dnikulin.codon.pipe.StatelessPipe;
+import org.dnikulin.codon.pipe.command.PipeCommand;
+import org.dnikulin.codon.pipe.command.registry.PipeCommands;
+import org.dnikulin.codon.pipe.command.wrap.EffectPipeCommand;
+import org.dnikulin.codon.pipe.except.PipeException;
+import org.dnikulin.codon.pipe.except.PipeNameInUseException;
+import org.dnikulin.codon.pipe.except.PipeNameInvalidException;
+import org.dnikulin.codon.pipe.except.PipeSyntaxException;
+import org.dnikulin.codon.pipe.except.PipeTypeException;
+import org.dnikulin.codon.pipe.nulled.NullPipe;
+import org.dnikulin.codon.pipe.simple.AsyncPipe;
+import org.dnikulin.codon.pipe.simple.CompoundPipe;
+import org.dnikulin.codon.pipe.simple.FusedPipe;
+
+/**
+ * A pipe compiler that records a whole line as a graph before acting on it.
+ * When the line is complete, it resolves and checks every name, creates the
+ * pipes, checks the type of every link and reserves every name. Only then
+ * does it commit pipes, run effect commands, link pipes and register names,
+ * so that a line with an error has no effect. Before linking, it:
+ * 
+ * <ul>
+ * <li>drops unnamed stateless pipes at the end of the line, since nothing
+ * can consume their output;</li>
+ * <li>fuses adjacent unnamed stateless pipes into one FusedPipe;</li>
+ * <li>feeds each blocking pipe through an AsyncPipe daemon, if daemon threads
+ * are given.</li>
+ * </ul>
+ */
+public class GraphPipeShellCompiler implements PipeShellCompiler {
+    private final LineLogger logger;
+
+    private final PipeCommands commands;
+    private final PipeLinker linker;
+    private final DaemonThreads threads;
+
+    private final Stack<List<Node>> lineStack;
+    private final Stack<String> nameStack;
+
+    private String pipeName;
+
+    /**
+     * Construct a compiler with the given logger, command registry, pipe
+     * linker and daemon threads.
+     * 
+     * @param logger
+     *            Line logger
+     * @param commands
+     *            Pipe command registry
+     * @param linker
+     *            Pipe linker
+     * @param threads
+     *            Daemon threads for async pipes, or null for none
+     */
+    public GraphPipeShellCompiler(LineLogger logger, PipeCommands commands,
+            PipeLinker linker, DaemonThreads threads) {
+
+        this.logger = logger;
+        this.commands = commands;
+        this.linker = linker;
+        this.threads = threads;
+
+        lineStack = new Stack<List<Node>>();
+        nameStack = new Stack<String>();
+        pipeName = null;
+    }
+
+    /**
+     * Construct a compiler with the given command registry and pipe linker. A
+     * null logger is used, and no async pipes are inserted.
+     * 
+     * @param commands
+     *            Pipe command registry
+     * @param linker
+     *            Pipe linker
+     */
+    public GraphPipeShellCompiler(PipeCommands commands, PipeLinker linker) {
+        this(NullLogger.INSTANCE, commands, linker, null);
+    }
+
+    /**
+     * Query pipe command registry.
+     * 
+     * @return Associated pipe command registry
+     */
+    public PipeCommands getPipeCommands() {
+        return commands;
+    }
+
+    /**
+     * Query pipe linker.
+     * 
+     * @return Associated pipe linker
+     */
+    public PipeLinker getPipeLinker() {
+        return linker;
+    }
+
+    private void reset() {
+        lineStack.clear();
+        nameStack.clear();
+        pipeName = null;
+    }
+
+    @Override
+    public void startCompile() {
+        reset();
+
+        lineStack.push(new ArrayList<Node>());
+    }
+
+    @Override
+    public void stopCompile() throws PipeException {
+        // Count as an implicit link point
+        takePipeLink();
+
+        assert (lineStack.size() >= 1);
+
+        while (lineStack.size() > 1)
+            takeGroupEnd();
+
+        try {
+            List<Node> line = lineStack.peek();
+            if (!line.isEmpty())
+                compileLine(line);
+        } finally {
+            reset();
+        }
+    }
+
+    @Override
+    public void takeCommand(String command, String[] tokens)
+            throws PipeException {
+
+        Node node = new Node(Node.COMMAND, pipeName);
+        node.command = commands.get(command);
+        node.tokens = tokens.clone();
+
+        lineStack.peek().add(node);
+        pipeName = null;
+    }
+
+    @Override
+    public void takePipeName(String name) throws PipeException {
+        if (pipeName != null)
+            throw new PipeSyntaxException("Pipe name following pipe name");
+
+        pipeName = name;
+    }
+
+    @Override
+    public void takePipeLink() throws PipeException {
+        if (pipeName != null) {
+            lineStack.peek().add(new Node(Node.REFERENCE, pipeName));
+            pipeName = null;
+        }
+    }
+
+    @Override
+    public void takeGroupStart() throws PipeException {
+        nameStack.push(pipeName);
+        lineStack.push(new ArrayList<Node>());
+
+        pipeName = null;
+    }
+
+    @Override
+    public void takeGroupEnd() throws PipeException {
+        if (lineStack.size() < 2)
+            throw new PipeSyntaxException("Unmatched pipeline end");
+
+        List<Node> group = lineStack.pop();
+        if (group.isEmpty())
+            throw new PipeSyntaxException("Empty pipeline");
+
+        Node node = new Node(Node.GROUP, nameStack.pop());
+        node.children = group;
+        lineStack.peek().add(node);
+    }
+
+    private void compileLine(List<Node> line) throws PipeException {
+        // Nothing below may have effects until all checks pass
+        Map<String, Node> defined = new HashMap<String, Node>();
+        resolveNames(line, linker.getPipeNames(), defined);
+
+        // Another session may take a name at any point
+        Set<String> names = defined.keySet();
+
+        try {
+            createPipes(line);
+            checkTypes(line);
+            linker.reservePipes(names);
+        } catch (PipeException ex) {
+            // Release whatever the new pipes have acquired
+            resetPipes(line);
+            throw ex;
+        }
+
+        commitPipes(line);
+        runEffects(line);
+
+        dropDeadTail(line);
+        fuseStateless(line);
+
+        List<AsyncPipe> boundaries = new ArrayList<AsyncPipe>();
+        if (threads != null)
+            insertBoundaries(line, boundaries);
+
+        // Boundaries must drain before any producer is linked
+        for (AsyncPipe boundary : boundaries)
+            threads.start(boundary);
+
+        try {
+            if (!line.isEmpty())
+                linkLine(line);
+        } catch (PipeException ex) {
+            linker.releasePipes(names);
+            for (AsyncPipe boundary : boundaries)
+                boundary.cancel();
+            throw ex;
+        }
+    }
+
+    private void resolveNames(List<Node> line, Set<String> existing,
+            Map<String, Node> defined) throws PipeException {
+
+        for (Node node : line) {
+            if (node.kind == Node.REFERENCE) {
+                // Names defined earlier in the line are not registered yet
+                node.target = defined.get(node.name);
+                if (node.target == null)
+                    node.pipe = linker.getPipe(node.name);
+                continue;
+            }
+
+            if (node.kind == Node.GROUP)
+                resolveNames(node.children, existing, defined);
+
+            if (node.name == null)
+                continue;
+
+            if (!PipeLinker.isPipeNameValid(node.name))
+                throw new PipeNameInvalidException("Pipe name is invalid");
+
+            if (existing.contains(node.name) || defined.containsKey(node.name))
+                throw new PipeNameInUseException("Pipe name is already in use");
+
+            defined.put(node.name, node);
+        }
+    }
+
+    private void createPipes(List<Node> line) throws PipeException {
+        for (Node node : line) {
+            if (node.kind == Node.GROUP) {
+                createPipes(node.children);
+            } else if (node.kind == Node.COMMAND) {
+                // Effects are deferred until the line is known to be valid
+                if (node.command instanceof EffectPipeCommand)
+                    node.pipe = NullPipe.INSTANCE;
+                else
+                    node.pipe = node.command.makePipe(node.tokens, logger);
+            }
+        }
+    }
+
+    private static void resetPipes(List<Node> line) {
+        for (Node node : line) {
+            if (node.kind == Node.GROUP)
+                resetPipes(node.children);
+            else if ((node.kind == Node.COMMAND) && (node.pipe != null))
+                node.pipe.reset();
+        }
+    }
+
+    private static void checkTypes(List<Node> line) throws PipeTypeException {
+        Node prev = null;
+
+        for (Node node : line) {
+            if (node.kind == Node.GROUP)
+                checkTypes(node.children);
+
+            if (prev != null) {
+                Class<?> producerType = prev.getOutputType();
+                Class<?> consumerType = node.getInputType();
+
+                if (!consumerType.isAssignableFrom(producerType)) {
+                    String pname = producerType.getSimpleName();
+                    String cname = consumerType.getSimpleName();
+                    throw new PipeTypeException("Type " + pname
+                            + " is not assignable to " + cname);
+                }
+            }
+
+            prev = node;
+        }
+    }
+
+    private static void commitPipes(List<Node> line) {
+        for (Node node : line) {
+            if (node.kind == Node.GROUP)
+                commitPipes(node.children);
+            else if ((node.kind == Node.COMMAND)
+                    && (node.pipe instanceof Committable))
+                ((Committable) node.pipe).commit();
+        }
+    }
+
+    private void runEffects(List<Node> line) {
+        for (Node node : line) {
+            if (node.kind == Node.GROUP)
+                runEffects(node.children);
+            else if (node.command instanceof EffectPipeCommand)
+                ((EffectPipeCommand) node.command).execute(node.tokens, logger);
+        }
+    }
+
+    private static void dropDeadTail(List<Node> line) {
+        while (!line.isEmpty()) {
+            Node last = line.get(line.size() - 1);
+
+            if (last.name != null)
+                return;
+
+            if (last.kind == Node.GROUP) {
+                dropDeadTail(last.children);
+                if (!last.children.isEmpty())
+                    return;
+            } else if (!last.isStateless()) {
+                return;
+            }
+
+            line.remove(line.size() - 1);
+        }
+    }
+
+    private static void fuseStateless(List<Node> line) {
+        List<Node> out = new ArrayList<Node>(line.size());
+        List<StatelessPipe> run = new ArrayList<StatelessPipe>();
+
+        for (Node node : line) {
+            if (node.kind == Node.GROUP)
+                fuseStateless(node.children);
+
+            if ((node.name == null) && node.isStateless()) {
+                run.add((StatelessPipe) node.pipe);
+                continue;
+            }
+
+            finishRun(out, run);
+            out.add(node);
+        }
+
+        finishRun(out, run);
+
+        line.clear();
+        line.addAll(out);
+    }
+
+    private static void finishRun(List<Node> out, List<StatelessPipe> run) {
+        if (run.isEmpty())
+            return;
+
+        Node node = new Node(Node.COMMAND, null);
+        if (run.size() == 1)
+            node.pipe = run.get(0);
+        else
+            node.pipe = new FusedPipe(run);
+
+        out.add(node);
+        run.clear();
+    }
+
+    private static void insertBoundaries(List<Node> line,
+            List<AsyncPipe> boundaries) {
+
+        for (int i = 0; i < line.size(); i++) {
+            Node node = line.get(i);
+
+            if (node.kind == Node.GROUP)
+                insertBoundaries(node.children, boundaries);
+
+            if ((i == 0) || (node.kind != Node.COMMAND)
+                    || !(node.pipe instanceof BlockingPipe))
+                continue;
+
+            String name = "Async " + node.pipe.getClass().getSimpleName();
+            AsyncPipe boundary = new AsyncPipe(node.getInputType(), name);
+            boundaries.add(boundary);
+
+            Node async = new Node(Node.COMMAND, null);
+            async.pipe = boundary;
+            line.add(i, async);
+            i++;
+        }
+    }
+
+    private Pipe linkLine(List<Node> line) throws PipeException {
+        List<Pipe> pipes = new ArrayList<Pipe>(line.size());
+
+        for (Node node : line) {
+            if (node.kind == Node.GROUP)
+                node.pipe = linkLine(node.children);
+            else if ((node.kind == Node.REFERENCE) && (node.target != null))
+                node.pipe = node.target.pipe;
+
+            pipes.add(node.pipe);
+
+            if ((node.kind != Node.REFERENCE) && (node.name != null))
+                linker.fillPipe(node.name, node.pipe);
+        }
+
+        if (pipes.size() == 1)
+            return pipes.get(0);
+
+        return new CompoundPipe(pipes);
+    }
+
+    /** A command, pipe name reference or group in a line being compiled. */
+    private static final class Node {
+        public static final int COMMAND = 0;
+        public static final int REFERENCE = 1;
+        public static final int GROUP = 2;
+
+        final int kind;
+        final String name;
+
+        PipeCommand command;
+        String[] tokens;
+        List<Node> children;
+        Node target;
+        Pipe pipe;
+
+        Node(int kind, String name) {
+            this.kind = kind;
+            this.name = name;
+        }
+
+        boolean isStateless() {
+            return (kind == COMMAND) && (pipe instanceof StatelessPipe);
+        }
+
+        Class<?> getInputType() {
+            if (kind == GROUP)
+                return children.get(0).getInputType();
+            if (target != null)
+                return target.getInputType();
+            return pipe.getInputType();
+        }
+
+        Class<?> getOutputType() {
+            if (kind == GROUP)
+                return children.get(children.size() - 1).getOutputType();
+            if (target != null)
+                return target.getOutputType();
+            return pipe.getOutputType();
+        }
+    }
+}
@@ -24,10 +24,14 @@
 
 package org.dnikulin.codon.pipe.compiler;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 import org.dnikulin.codon.pipe.Consumer;
@@ -37,8 +41,12 @@ import org.dnikulin.codon.pipe.except.PipeNameInUseException;
 import org.dnikulin.codon.pipe.except.PipeNameInvalidException;
 import org.dnikulin.codon.pipe.except.PipeNotFoundException;
 import org.dnikulin.codon.pipe.except.PipeTypeException;
+import org.dnikulin.codon.pipe.nulled.NullPipe;
 
-/** A named pipe registry. Allows pipe lookup and connection by name. */
+/**
+ * A named pipe registry. Allows pipe lookup and connection by name. Lookups
+ * do not lock, so that many sessions may compile pipelines at once.
+ */
 public class PipeLinker {
     /** Valid pipe name regular expression. */
     public static final String PIPE_NAME_EX = "[a-zA-Z][a-zA-Z0-9_\\-]*";
@@ -46,11 +54,14 @@ public class PipeLinker {
     /** Valid pipe name regular expression as Pattern. */
     public static final Pattern PIPE_NAME_RE = Pattern.compile(PIPE_NAME_EX);
 
-    private final Map<String, Pipe> pipes;
+    // Stands in for a pipe whose name is reserved but not yet filled
+    private static final Pipe RESERVED = new NullPipe();
+
+    private final ConcurrentMap<String, Pipe> pipes;
 
     /** Construct a pipe linker with an empty pipe registry. */
     public PipeLinker() {
-        pipes = new TreeMap<String, Pipe>();
+        pipes = new ConcurrentHashMap<String, Pipe>();
     }
 
     /**
@@ -61,16 +72,66 @@ public class PipeLinker {
      * @param pipe
      *            Pipe to register
      */
-    public synchronized void addPipe(String name, Pipe pipe)
+    public void addPipe(String name, Pipe pipe)
             throws PipeNameInvalidException, PipeNameInUseException {
 
         if (!isPipeNameValid(name))
             throw new PipeNameInvalidException("Pipe name is invalid");
 
-        if (pipes.containsKey(name))
+        if (pipes.putIfAbsent(name, pipe) != null)
             throw new PipeNameInUseException("Pipe name is already in use");
+    }
+
+    /**
+     * Reserve all of the given names, or none of them. A reserved name is in
+     * use, but is not found until it is filled with a pipe.
+     * 
+     * @param names
+     *            Names to reserve
+     */
+    public void reservePipes(Collection<String> names)
+            throws PipeNameInvalidException, PipeNameInUseException {
+
+        for (String name : names) {
+            if (!isPipeNameValid(name))
+                throw new PipeNameInvalidException("Pipe name is invalid");
+        }
+
+        List<String> reserved = new ArrayList<String>(names.size());
+        for (String name : names) {
+            if (pipes.putIfAbsent(name, RESERVED) != null) {
+                releasePipes(reserved);
+                throw new PipeNameInUseException("Pipe name is already in use");
+            }
+
+            reserved.add(name);
+        }
+    }
 
-        pipes.put(name, pipe);
+    /**
+     * Register a pipe under a name reserved with reservePipes().
+     * 
+     * @param name
+     *            Reserved name
+     * @param pipe
+     *            Pipe to register
+     */
+    public void fillPipe(String name, Pipe pipe)
+            throws PipeNameInUseException {
+
+        if (!pipes.replace(name, RESERVED, pipe))
+            throw new PipeNameInUseException("Pipe name is not reserved");
+    }
+
+    /**
+     * Remove the given names, whether they are reserved or filled.
+     * 
+     * @param names
+     *            Names to remove
+     */
+    public void releasePipes(Collection<String> names) {
+        for (String name : names)
+            pipes.remove(name);
     }
 
     /**
@@ -79,18 +140,23 @@ public class PipeLinker {
      * @param name
      *            Pipe to remove
      */
-    public synchronized void removePipe(String name) {
+    public void removePipe(String name) {
         pipes.remove(name);
     }
 
     /**
-     * Query pipe name set. Returns a copy that has no effect on the internal
-     * set.
+     * Query pipe name set. Returns a sorted copy that has no effect on the
+     * internal set. Reserved names are not included.
      * 
      * @return Set of pipe names as a copy
      */
-    public synchronized Set<String> getPipeNames() {
-        return new TreeSet<String>(pipes.keySet());
+    public Set<String> getPipeNames() {
+        Set<String> names = new TreeSet<String>();
+        for (Map.Entry<String, Pipe> entry : pipes.entrySet()) {
+            if (entry.getValue() != RESERVED)
+                names.add(entry.getKey());
+        }
+        return names;
     }
 
     /**
@@ -100,9 +166,9 @@ public class PipeLinker {
      *            Pipe name
      * @return Pipe by this name
      */
-    public synchronized Pipe getPipe(String name) throws PipeNotFoundException {
+    public Pipe getPipe(String name) throws PipeNotFoundException {
         Pipe pipe = pipes.get(name);
-        if (pipe == null)
+        if ((pipe == null) || (pipe == RESERVED))
             throw new PipeNotFoundException("Pipe '" + name + "' not found");
         return pipe;
     }
@@ -115,7 +181,7 @@ public class PipeLinker {
      * @param consumerName
      *            Name of consumer pipe
      */
-    public synchronized void linkPipes(String producerName, String consumerName)
+    public void linkPipes(String producerName, String consumerName)
             throws PipeNotFoundException, PipeTypeException {
 
         Producer producer = getPipe(producerName);
@@ -0,0 +1,90 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.compiler;
+
+import org.dnikulin.codon.daemon.thread.DaemonThreads;
+import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.pipe.command.registry.PipeCommands;
+
+/**
+ * Makes a pipe compiler of one kind for each parser, so that every parser
+ * shares the same registries and compiles lines the same way.
+ */
+public class PipeShellCompilerFactory {
+    /** Make EarlyPipeShellCompiler instances. */
+    public static final int EARLY = 0;
+
+    /** Make GraphPipeShellCompiler instances. */
+    public static final int GRAPH = 1;
+
+    private final int mode;
+    private final PipeCommands commands;
+    private final PipeLinker linker;
+    private final DaemonThreads threads;
+
+    /**
+     * Construct a compiler factory.
+     * 
+     * @param mode
+     *            EARLY or GRAPH
+     * @param commands
+     *            Pipe command registry
+     * @param linker
+     *            Pipe linker
+     * @param threads
+     *            Daemon threads for async pipes, or null for none
+     */
+    public PipeShellCompilerFactory(int mode, PipeCommands commands,
+            PipeLinker linker, DaemonThreads threads) {
+
+        this.mode = mode;
+        this.commands = commands;
+        this.linker = linker;
+        this.threads = threads;
+    }
+
+    /**
+     * Query compiler kind.
+     * 
+     * @return EARLY or GRAPH
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * Make a new compiler.
+     * 
+     * @param logger
+     *            Line logger
+     * @return New compiler
+     */
+    public PipeShellCompiler makeCompiler(LineLogger logger) {
+        if (mode == GRAPH)
+            return new GraphPipeShellCompiler(logger, commands, linker,
+                    threads);
+        return new EarlyPipeShellCompiler(logger, commands, linker);
+    }
+}
@@ -0,0 +1,69 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.limit;
+
+import org.dnikulin.codon.pipe.StatelessPipe;
+import org.dnikulin.codon.pipe.predicate.ValuePredicate;
+import org.dnikulin.codon.pipe.simple.SimplePipe;
+
+/** A pipe that passes only objects satisfying a predicate. */
+public class FilterPipe extends SimplePipe implements StatelessPipe {
+    private final Class<?> type;
+    private final ValuePredicate predicate;
+
+    /**
+     * Construct a filter pipe.
+     * 
+     * @param type
+     *            Input and output type
+     * @param predicate
+     *            Condition for objects to pass
+     */
+    public FilterPipe(Class<?> type, ValuePredicate predicate) {
+        this.type = type;
+        this.predicate = predicate;
+    }
+
+    @Override
+    public Object transform(Object value) {
+        return predicate.accept(value) ? value : null;
+    }
+
+    @Override
+    public void consume(Object value) {
+        if (predicate.accept(value))
+            produce(value);
+    }
+
+    @Override
+    public Class<?> getInputType() {
+        return type;
+    }
+
+    @Override
+    public Class<?> getOutputType() {
+        return type;
+    }
+}
@@ -0,0 +1,80 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dnikulin.codon.pipe.simple.SimplePipe;
+
+/**
+ * A pipe that passes only the first objects it consumes, then reports itself
+ * cancelled so that producers upstream can stop.
+ */
+public class HeadPipe extends SimplePipe {
+    private final Class<?> type;
+    private final long limit;
+    private final AtomicLong seen;
+
+    /**
+     * Construct a head pipe.
+     * 
+     * @param type
+     *            Input and output type
+     * @param limit
+     *            Number of objects to pass
+     */
+    public HeadPipe(Class<?> type, long limit) {
+        this.type = type;
+        this.limit = limit;
+        this.seen = new AtomicLong(0);
+    }
+
+    @Override
+    public void consume(Object value) {
+        if (seen.incrementAndGet() <= limit)
+            produce(value);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return (seen.get() >= limit) || super.isCancelled();
+    }
+
+    /** Pass the next objects again, up to the limit. */
+    @Override
+    public void reset() {
+        seen.set(0);
+    }
+
+    @Override
+    public Class<?> getInputType() {
+        return type;
+    }
+
+    @Override
+    public Class<?> getOutputType() {
+        return type;
+    }
+}
@@ -0,0 +1,84 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.limit;
+
+import org.dnikulin.codon.pipe.predicate.ValuePredicate;
+import org.dnikulin.codon.pipe.simple.SimplePipe;
+
+/**
+ * A pipe that passes objects until one fails a predicate, then reports itself
+ * cancelled so that producers upstream can stop.
+ */
+public class TakeWhilePipe extends SimplePipe {
+    private final Class<?> type;
+    private final ValuePredicate predicate;
+    private volatile boolean done;
+
+    /**
+     * Construct a take-while pipe.
+     * 
+     * @param type
+     *            Input and output type
+     * @param predicate
+     *            Condition for objects to pass
+     */
+    public TakeWhilePipe(Class<?> type, ValuePredicate predicate) {
+        this.type = type;
+        this.predicate = predicate;
+        this.done = false;
+    }
+
+    @Override
+    public void consume(Object value) {
+        if (done)
+            return;
+
+        if (predicate.accept(value))
+            produce(value);
+        else
+            done = true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return done || super.isCancelled();
+    }
+
+    /** Pass objects again until the predicate next fails. */
+    @Override
+    public void reset() {
+        done = false;
+    }
+
+    @Override
+    public Class<?> getInputType() {
+        return type;
+    }
+
+    @Override
+    public Class<?> getOutputType() {
+        return type;
+    }
+}
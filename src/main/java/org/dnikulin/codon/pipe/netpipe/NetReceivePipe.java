@@ -0,0 +1,190 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.netpipe;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dnikulin.codon.format.ObjectFormat;
+import org.dnikulin.codon.format.except.ObjectCorruptException;
+import org.dnikulin.codon.log.IndirectLogger;
+import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.netpipe.ConsumerGroup;
+import org.dnikulin.codon.netpipe.PipeMultiplexLink;
+import org.dnikulin.codon.netpipe.packet.ObjectListener;
+import org.dnikulin.codon.pipe.Consumer;
+import org.dnikulin.codon.pipe.nulled.NullPipe;
+
+/**
+ * A pipe that subscribes to a netpipe channel for every consumer added.
+ * Objects are decoded and consumed on the selector thread. A consumer's
+ * channel is closed when the consumer is removed or cancelled, or when the
+ * pipe is reset.
+ */
+public class NetReceivePipe extends NullPipe {
+    private final PipeMultiplexLink link;
+    private final String channelName;
+    private final ObjectFormat format;
+    private final IndirectLogger log;
+
+    // Channel number opened for each consumer
+    private final Map<Consumer, Integer> channels;
+
+    private volatile String groupName;
+    private volatile int groupMode;
+
+    /**
+     * Construct a netpipe receive pipe.
+     * 
+     * @param link
+     *            Multiplexed client link
+     * @param channelName
+     *            Server channel name
+     * @param format
+     *            Object format
+     * @param log
+     *            Line logger
+     */
+    public NetReceivePipe(PipeMultiplexLink link, String channelName,
+            ObjectFormat format, LineLogger log) {
+        this.link = link;
+        this.channelName = channelName;
+        this.format = format;
+        this.log = new IndirectLogger(log);
+        this.channels = new LinkedHashMap<Consumer, Integer>();
+
+        this.groupName = "";
+        this.groupMode = ConsumerGroup.ROUND_ROBIN;
+    }
+
+    /**
+     * Receive as a member of a consumer group, so that each object is
+     * consumed by only one member. Applies to consumers added afterwards.
+     * 
+     * @param groupName
+     *            Consumer group name, or empty for none
+     * @param groupMode
+     *            ConsumerGroup.ROUND_ROBIN or ConsumerGroup.HASH
+     */
+    public void setGroup(String groupName, int groupMode) {
+        this.groupName = groupName;
+        this.groupMode = groupMode;
+    }
+
+    @Override
+    public Class<?> getOutputType() {
+        return format.getObjectClass();
+    }
+
+    @Override
+    public boolean addConsumer(final Consumer consumer) {
+        if (!consumer.getInputType().isAssignableFrom(getOutputType()))
+            return false;
+
+        ObjectListener listener = new ObjectListener() {
+            @Override
+            public void takeObject(byte[] body) {
+                // Unsubscribe once the consumer wants no more objects
+                if (consumer.isCancelled()) {
+                    removeConsumer(consumer);
+                    return;
+                }
+
+                try {
+                    consumer.consume(format.decode(body));
+                } catch (ObjectCorruptException ex) {
+                    log.print("Corrupt object on '" + channelName + "'");
+                } catch (Exception ex) {
+                    log.print("Consumer exception: " + ex);
+                }
+            }
+        };
+
+        synchronized (channels) {
+            if (channels.containsKey(consumer))
+                return false;
+
+            channels.put(consumer, link.openChannel(channelName, false, true,
+                    listener, groupName, groupMode));
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean hasConsumer() {
+        synchronized (channels) {
+            return !channels.isEmpty();
+        }
+    }
+
+    @Override
+    public List<Consumer> getConsumers() {
+        synchronized (channels) {
+            return new ArrayList<Consumer>(channels.keySet());
+        }
+    }
+
+    @Override
+    public void removeConsumer(Consumer consumer) {
+        Integer number;
+        synchronized (channels) {
+            number = channels.remove(consumer);
+        }
+
+        if (number != null)
+            link.closeChannel(number);
+    }
+
+    @Override
+    public void removeConsumers() {
+        List<Integer> numbers;
+        synchronized (channels) {
+            numbers = new ArrayList<Integer>(channels.values());
+            channels.clear();
+        }
+
+        for (int number : numbers)
+            link.closeChannel(number);
+    }
+
+    /** Close every channel. The pipe will no longer receive objects. */
+    @Override
+    public void reset() {
+        removeConsumers();
+    }
+
+    @Override
+    public LineLogger getLineLogger() {
+        return log.getLineLogger();
+    }
+
+    @Override
+    public void setLineLogger(LineLogger logger) {
+        this.log.setLineLogger(logger);
+    }
+}
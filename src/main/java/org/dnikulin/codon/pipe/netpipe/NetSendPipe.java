@@ -0,0 +1,85 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.netpipe;
+
+import org.dnikulin.codon.format.ObjectFormat;
+import org.dnikulin.codon.netpipe.PipeMultiplexLink;
+import org.dnikulin.codon.pipe.simple.SimplePipe;
+
+/**
+ * Pipe that publishes objects to a netpipe channel. Objects are also passed
+ * through to local consumers.
+ */
+public class NetSendPipe extends SimplePipe {
+    private final PipeMultiplexLink link;
+    private final int number;
+
+    private final ObjectFormat format;
+    private final Class<?> type;
+
+    /**
+     * Construct a netpipe send pipe.
+     * 
+     * @param link
+     *            Multiplexed client link
+     * @param channelName
+     *            Server channel name
+     * @param format
+     *            Object format
+     */
+    public NetSendPipe(PipeMultiplexLink link, String channelName,
+            ObjectFormat format) {
+
+        this.link = link;
+        this.number = link.openChannel(channelName);
+        this.format = format;
+        this.type = format.getObjectClass();
+    }
+
+    @Override
+    public void consume(Object value) {
+        // Writer coalesces queued objects into batch frames
+        link.sendObject(number, format.encode(value));
+
+        produce(value);
+    }
+
+    /** Close the channel. The pipe will no longer send objects. */
+    @Override
+    public void reset() {
+        super.reset();
+        link.closeChannel(number);
+    }
+
+    @Override
+    public Class<?> getInputType() {
+        return type;
+    }
+
+    @Override
+    public Class<?> getOutputType() {
+        return type;
+    }
+}
@@ -24,6 +24,9 @@
 
 package org.dnikulin.codon.pipe.nulled;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.dnikulin.codon.log.LineLogger;
 import org.dnikulin.codon.log.NullLogger;
 import org.dnikulin.codon.pipe.Consumer;
@@ -46,6 +49,11 @@ public class NullPipe implements Pipe {
         // Do nothing
     }
 
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
     // From Producer
 
     @Override
@@ -63,6 +71,11 @@ public class NullPipe implements Pipe {
         return false;
     }
 
+    @Override
+    public List<Consumer> getConsumers() {
+        return Collections.emptyList();
+    }
+
     @Override
     public void removeConsumer(Consumer consumer) {
         // Do nothing
@@ -0,0 +1,125 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.predicate;
+
+/**
+ * A predicate comparing values against a constant operand. Numbers are
+ * compared numerically; any other value is compared by its string form.
+ */
+public class Comparison implements ValuePredicate {
+    /** Operator: less than. */
+    public static final int LT = 0;
+    /** Operator: less than or equal. */
+    public static final int LE = 1;
+    /** Operator: greater than. */
+    public static final int GT = 2;
+    /** Operator: greater than or equal. */
+    public static final int GE = 3;
+    /** Operator: equal. */
+    public static final int EQ = 4;
+    /** Operator: not equal. */
+    public static final int NE = 5;
+
+    private static final String[] SYMBOLS = { "<", "<=", ">", ">=", "==", "!=" };
+
+    private final int operator;
+    private final String operand;
+    private final double number;
+    private final boolean numeric;
+
+    /**
+     * Construct a comparison.
+     * 
+     * @param operator
+     *            One of LT, LE, GT, GE, EQ or NE
+     * @param operand
+     *            Constant operand
+     */
+    public Comparison(int operator, String operand) {
+        if ((operator < LT) || (operator > NE))
+            throw new IllegalArgumentException("Invalid operator");
+
+        this.operator = operator;
+        this.operand = operand;
+
+        double parsed = 0;
+        boolean isNumber = true;
+        try {
+            parsed = Double.parseDouble(operand);
+        } catch (NumberFormatException ex) {
+            isNumber = false;
+        }
+
+        this.number = parsed;
+        this.numeric = isNumber;
+    }
+
+    /**
+     * Parse a comparison from an operator symbol and operand.
+     * 
+     * @param symbol
+     *            Operator symbol, such as "<" or "!="
+     * @param operand
+     *            Constant operand
+     * @return Comparison, or null if the symbol is not an operator
+     */
+    public static Comparison parse(String symbol, String operand) {
+        for (int i = 0; i < SYMBOLS.length; i++) {
+            if (SYMBOLS[i].equals(symbol))
+                return new Comparison(i, operand);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean accept(Object value) {
+        int order;
+
+        if (numeric && (value instanceof Number))
+            order = Double.compare(((Number) value).doubleValue(), number);
+        else
+            order = String.valueOf(value).compareTo(operand);
+
+        switch (operator) {
+        case LT:
+            return order < 0;
+        case LE:
+            return order <= 0;
+        case GT:
+            return order > 0;
+        case GE:
+            return order >= 0;
+        case EQ:
+            return order == 0;
+        default:
+            return order != 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return SYMBOLS[operator] + " " + operand;
+    }
+}
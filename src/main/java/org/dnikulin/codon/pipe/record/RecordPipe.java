@@ -25,23 +25,52 @@
 package org.dnikulin.codon.pipe.record;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 import org.dnikulin.codon.format.ObjectFormat;
+import org.dnikulin.codon.format.tools.StreamObjectFormat;
 import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.misc.Committable;
+import org.dnikulin.codon.pipe.BlockingPipe;
 import org.dnikulin.codon.pipe.simple.SimplePipe;
 
 /** Pipe that records objects to a stream. */
-public class RecordPipe extends SimplePipe implements Runnable {
+public class RecordPipe extends SimplePipe implements BlockingPipe,
+        Committable, Runnable {
+
+    /** Default size of each stream buffer in bytes. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** Record a raw stream, without gzip. */
+    public static final int NO_COMPRESSION = 0;
+
+    /** Record through gzip at the deflater's default level. */
+    public static final int DEFAULT_COMPRESSION = Deflater.DEFAULT_COMPRESSION;
+
     private final LineLogger log;
 
     private final ObjectFormat format;
     private final Class<?> type;
 
+    // Stream formats are encoded into a reused buffer
+    private final StreamObjectFormat<Object> streamFormat;
+    private final ByteArrayOutputStream scratch;
+    private final DataOutputStream scratchStream;
+
+    private final int bufferSize;
+    private final int compression;
+
+    // Opened on commit or the first object, if the pipe was given a file
+    private File file;
     private DataOutputStream stream;
+    private long recordedBytes;
 
     /**
      * Construct a record pipe.
@@ -56,26 +85,105 @@ public class RecordPipe extends SimplePipe implements Runnable {
     public RecordPipe(LineLogger log, ObjectFormat format, OutputStream output)
             throws IOException {
 
+        this(log, format, output, DEFAULT_BUFFER_SIZE, DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Construct a record pipe with a given buffer size and compression.
+     * 
+     * @param log
+     *            Line logger
+     * @param format
+     *            Object format
+     * @param output
+     *            Output stream
+     * @param bufferSize
+     *            Size of each stream buffer in bytes
+     * @param compression
+     *            NO_COMPRESSION, DEFAULT_COMPRESSION or a gzip level (1-9)
+     */
+    public RecordPipe(LineLogger log, ObjectFormat format,
+            OutputStream output, int bufferSize, int compression)
+            throws IOException {
+
+        this(log, format, (File) null, bufferSize, compression);
+        open(output);
+    }
+
+    /**
+     * Construct a record pipe that creates or truncates the given file when
+     * committed, or when the first object arrives. The file is left untouched
+     * if the pipe is reset or discarded first.
+     * 
+     * @param log
+     *            Line logger
+     * @param format
+     *            Object format
+     * @param file
+     *            File to record to
+     * @param bufferSize
+     *            Size of each stream buffer in bytes
+     * @param compression
+     *            NO_COMPRESSION, DEFAULT_COMPRESSION or a gzip level (1-9)
+     */
+    public RecordPipe(LineLogger log, ObjectFormat format, File file,
+            int bufferSize, int compression) {
+
         this.log = log;
         this.format = format;
         this.type = format.getObjectClass();
+        this.streamFormat = asStreamFormat(format);
+        this.scratch = new ByteArrayOutputStream();
+        this.scratchStream = new DataOutputStream(scratch);
+        this.recordedBytes = 0;
 
-        BufferedOutputStream bos1 = new BufferedOutputStream(output);
-        GZIPOutputStream gos = new GZIPOutputStream(bos1);
-        BufferedOutputStream bos2 = new BufferedOutputStream(gos);
-        this.stream = new DataOutputStream(bos2);
+        this.bufferSize = bufferSize;
+        this.compression = compression;
+        this.file = file;
+        this.stream = null;
+    }
+
+    private void open(OutputStream output) throws IOException {
+        OutputStream body = new BufferedOutputStream(output, bufferSize);
+
+        if (compression != NO_COMPRESSION) {
+            body = new LevelGZIPOutputStream(body, bufferSize, compression);
+            body = new BufferedOutputStream(body, bufferSize);
+        }
+
+        this.stream = new DataOutputStream(body);
 
         Runtime.getRuntime().addShutdownHook(new Thread(this));
     }
 
+    /**
+     * Query number of bytes recorded so far, before compression.
+     * 
+     * @return Bytes recorded
+     */
+    public synchronized long getRecordedBytes() {
+        return recordedBytes;
+    }
+
     @Override
     public synchronized void consume(Object value) {
         try {
-            if (stream != null) {
+            if (file != null)
+                openFile();
+
+            if ((stream != null) && (streamFormat != null)) {
+                scratch.reset();
+                streamFormat.write(scratchStream, value);
+
+                stream.writeInt(scratch.size());
+                scratch.writeTo(stream);
+                recordedBytes += 4 + scratch.size();
+            } else if (stream != null) {
                 byte[] bytes = format.encode(value);
 
                 stream.writeInt(bytes.length);
                 stream.write(bytes);
+                recordedBytes += 4 + bytes.length;
             }
         } catch (IOException ex) {
             log.print("Record error: " + ex.getLocalizedMessage());
@@ -85,7 +193,29 @@ public class RecordPipe extends SimplePipe implements Runnable {
         }
     }
 
+    /** Create or truncate the file now, if it is not yet open. */
+    @Override
+    public synchronized void commit() {
+        if (file == null)
+            return;
+
+        try {
+            openFile();
+        } catch (IOException ex) {
+            log.print("Record error: " + ex.getLocalizedMessage());
+            close();
+        }
+    }
+
+    private void openFile() throws IOException {
+        File target = file;
+        file = null;
+        open(new FileOutputStream(target));
+    }
+
     private synchronized void close() {
+        file = null;
+
         if (stream == null)
             return;
 
@@ -124,4 +254,22 @@ public class RecordPipe extends SimplePipe implements Runnable {
     public Class<?> getOutputType() {
         return type;
     }
+
+    /** Returns the format as a stream format, or null if it is not one. */
+    @SuppressWarnings("unchecked")
+    private static StreamObjectFormat<Object> asStreamFormat(
+            ObjectFormat format) {
+        if (format instanceof StreamObjectFormat<?>)
+            return (StreamObjectFormat<Object>) format;
+        return null;
+    }
+
+    /** A gzip stream with a chosen deflater level. */
+    private static class LevelGZIPOutputStream extends GZIPOutputStream {
+        public LevelGZIPOutputStream(OutputStream out, int size, int level)
+                throws IOException {
+            super(out, size);
+            def.setLevel(level);
+        }
+    }
 }
@@ -0,0 +1,123 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.record;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.dnikulin.codon.misc.FileTools;
+
+/**
+ * Sidecar file recording how many objects of a recording have been replayed.
+ * The recording is one compressed stream, so a resumed replay still
+ * decompresses the skipped prefix, but it no longer decodes it or feeds it
+ * downstream.
+ */
+public class ReplayCheckpoint {
+    /** Suffix appended to the recording path to name its checkpoint. */
+    public static final String SUFFIX = ".ckpt";
+
+    private static final int MAGIC = 0x436b7074;
+
+    private final File file;
+    private final File source;
+
+    /**
+     * Construct a checkpoint for a recording.
+     * 
+     * @param source
+     *            Recording file
+     */
+    public ReplayCheckpoint(File source) {
+        this.source = source;
+        this.file = new File(source.getPath() + SUFFIX);
+    }
+
+    /**
+     * Query checkpoint file.
+     * 
+     * @return Checkpoint file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Load the number of objects already replayed. A missing checkpoint, or
+     * one written for a recording of a different length, counts as zero.
+     * 
+     * @return Number of objects to skip
+     */
+    public long load() throws IOException {
+        if (file.exists() == false)
+            return 0;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a replay checkpoint: " + file);
+
+            long index = in.readLong();
+            long length = in.readLong();
+
+            if (length != source.length())
+                return 0;
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Persist the number of objects replayed. A crash leaves either the old or
+     * the new checkpoint intact.
+     * 
+     * @param index
+     *            Number of objects replayed
+     */
+    public void save(long index) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(MAGIC);
+        out.writeLong(index);
+        out.writeLong(source.length());
+        out.close();
+
+        FileTools.replaceFile(file, bytes.toByteArray());
+    }
+
+    /** Delete the checkpoint, so that the next resume starts from zero. */
+    public void delete() {
+        file.delete();
+    }
+}
@@ -31,16 +31,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
 
-import org.dnikulin.codon.daemon.Daemon;
-import org.dnikulin.codon.daemon.except.DaemonException;
-import org.dnikulin.codon.daemon.except.DaemonExitException;
+import org.dnikulin.codon.daemon.StepDaemon;
 import org.dnikulin.codon.format.ObjectFormat;
 import org.dnikulin.codon.format.except.ObjectCorruptException;
 import org.dnikulin.codon.log.LineLogger;
 import org.dnikulin.codon.pipe.Consumer;
 
-/** A daemon that reads objects recorded by RecordPipe. */
-public class ReplayDaemon implements Daemon {
+/**
+ * A daemon that reads objects recorded by RecordPipe, with or without gzip
+ * compression. With a checkpoint, it periodically saves the number of objects
+ * replayed, and can skip that many objects when resumed.
+ */
+public class ReplayDaemon implements StepDaemon {
+    /** Minimum time between checkpoints in nanoseconds. */
+    public static final long CHECKPOINT_NANOS = 1000L * 1000 * 1000;
+
     private final Consumer consumer;
     private final LineLogger log;
 
@@ -48,7 +53,11 @@ public class ReplayDaemon implements Daemon {
 
     private final String inputName;
     private DataInputStream stream;
-    private boolean done;
+
+    private final ReplayCheckpoint checkpoint;
+    private final long skip;
+    private long index;
+    private long lastSave;
 
     /**
      * Construct replay daemon.
@@ -67,17 +76,89 @@ public class ReplayDaemon implements Daemon {
     public ReplayDaemon(Consumer consumer, LineLogger log, ObjectFormat format,
             InputStream input, String inputName) throws IOException {
 
+        this(consumer, log, format, input, inputName, null, 0);
+    }
+
+    /**
+     * Construct replay daemon that periodically records its position.
+     * 
+     * @param consumer
+     *            Object consumer
+     * @param log
+     *            Line logger
+     * @param format
+     *            Object format
+     * @param input
+     *            Input stream
+     * @param inputName
+     *            Input stream name (filename, etc)
+     * @param checkpoint
+     *            Checkpoint to save to, or null for none
+     * @param skip
+     *            Number of leading objects to skip without decoding
+     */
+    public ReplayDaemon(Consumer consumer, LineLogger log, ObjectFormat format,
+            InputStream input, String inputName, ReplayCheckpoint checkpoint,
+            long skip) throws IOException {
+
+        this(consumer, log, format, input, inputName, checkpoint, skip,
+                RecordPipe.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Construct replay daemon with a given buffer size.
+     * 
+     * @param consumer
+     *            Object consumer
+     * @param log
+     *            Line logger
+     * @param format
+     *            Object format
+     * @param input
+     *            Input stream
+     * @param inputName
+     *            Input stream name (filename, etc)
+     * @param checkpoint
+     *            Checkpoint to save to, or null for none
+     * @param skip
+     *            Number of leading objects to skip without decoding
+     * @param bufferSize
+     *            Size of each stream buffer in bytes
+     */
+    public ReplayDaemon(Consumer consumer, LineLogger log, ObjectFormat format,
+            InputStream input, String inputName, ReplayCheckpoint checkpoint,
+            long skip, int bufferSize) throws IOException {
+
         this.consumer = consumer;
         this.log = log;
         this.format = format;
         this.inputName = inputName;
 
-        BufferedInputStream bis1 = new BufferedInputStream(input);
-        GZIPInputStream gis = new GZIPInputStream(bis1);
-        BufferedInputStream bis2 = new BufferedInputStream(gis);
-        this.stream = new DataInputStream(bis2);
+        this.checkpoint = checkpoint;
+        this.skip = skip;
+        this.index = 0;
+        this.lastSave = System.nanoTime();
+
+        BufferedInputStream bis1 = new BufferedInputStream(input, bufferSize);
+        InputStream body = bis1;
 
-        this.done = false;
+        if (isGzip(bis1)) {
+            body = new GZIPInputStream(bis1, bufferSize);
+            body = new BufferedInputStream(body, bufferSize);
+        }
+
+        this.stream = new DataInputStream(body);
+    }
+
+    private static boolean isGzip(BufferedInputStream input)
+            throws IOException {
+        input.mark(2);
+        int b0 = input.read();
+        int b1 = input.read();
+        input.reset();
+
+        // Raw records start with a big-endian length, never this large
+        return (b0 == 0x1f) && (b1 == 0x8b);
     }
 
     @Override
@@ -85,29 +166,94 @@ public class ReplayDaemon implements Daemon {
         return "Replay from " + inputName;
     }
 
+    /**
+     * Query number of objects read so far, including skipped objects.
+     * 
+     * @return Object index
+     */
+    public synchronized long getIndex() {
+        return index;
+    }
+
     @Override
-    public synchronized void resumeDaemon() throws DaemonException {
-        if (done == true)
-            return;
+    public synchronized int step(int limit) {
+        if (stream == null)
+            return DONE;
 
-        try {
-            int size = stream.readInt();
-            byte[] bytes = new byte[size];
-            stream.read(bytes);
-
-            Object object = format.decode(bytes);
-            consumer.consume(object);
-        } catch (EOFException ex) {
-            done = true;
+        if (consumer.isCancelled()) {
             close();
-            log.print("Replay complete");
+            log.print("Replay cancelled by consumer");
+            return DONE;
+        }
+
+        try {
+            for (int i = 0; i < limit; i++) {
+                // End of stream is only expected between records
+                int first = stream.read();
+                if (first < 0) {
+                    close();
+                    log.print("Replay complete");
+                    return DONE;
+                }
+
+                int size = (first << 24) | (stream.readUnsignedByte() << 16)
+                        | stream.readUnsignedShort();
+
+                if (index < skip) {
+                    skipFully(size);
+                    index++;
+                    continue;
+                }
 
-            throw new DaemonExitException();
+                byte[] bytes = new byte[size];
+                stream.readFully(bytes);
+                index++;
+
+                try {
+                    consumer.consume(format.decode(bytes));
+                } catch (ObjectCorruptException ex) {
+                    log.print("Replay ignoring corrupt object");
+                }
+            }
         } catch (IOException ex) {
             log.print("Replay error: " + ex.getLocalizedMessage());
             close();
-        } catch (ObjectCorruptException ex) {
-            log.print("Replay ignoring corrupt object");
+            return ABORT;
+        }
+
+        if ((checkpoint != null)
+                && ((System.nanoTime() - lastSave) >= CHECKPOINT_NANOS))
+            saveCheckpoint();
+
+        return CONTINUE;
+    }
+
+    @Override
+    public long getIdleUntil() {
+        return System.nanoTime();
+    }
+
+    private void skipFully(int size) throws IOException {
+        int left = size;
+        while (left > 0) {
+            int skipped = stream.skipBytes(left);
+            if (skipped <= 0)
+                throw new EOFException("Truncated record");
+            left -= skipped;
+        }
+    }
+
+    private void saveCheckpoint() {
+        lastSave = System.nanoTime();
+
+        // Never move a checkpoint backwards while still skipping
+        if (index < skip)
+            return;
+
+        try {
+            checkpoint.save(index);
+        } catch (IOException ex) {
+            log.print("Replay checkpoint error: " + ex.getLocalizedMessage());
         }
     }
 
@@ -115,6 +261,9 @@ public class ReplayDaemon implements Daemon {
         if (stream == null)
             return;
 
+        if (checkpoint != null)
+            saveCheckpoint();
+
         try {
             stream.close();
         } catch (IOException ex) {
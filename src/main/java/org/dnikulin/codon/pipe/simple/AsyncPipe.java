@@ -0,0 +1,167 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.simple;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.dnikulin.codon.daemon.BlockingDaemon;
+import org.dnikulin.codon.daemon.ServiceDaemon;
+import org.dnikulin.codon.daemon.except.DaemonException;
+import org.dnikulin.codon.daemon.except.DaemonExitException;
+
+/**
+ * A pipe that queues objects and produces them from its own daemon, so that
+ * a slow consumer does not hold up the producer. The queue is bounded, and
+ * consume() blocks while it is full. Objects are produced in order. Once
+ * finished or reset, the daemon exits as soon as the queue is empty.
+ */
+public class AsyncPipe extends SimplePipe implements BlockingDaemon,
+        ServiceDaemon {
+    /** Default queue capacity in objects. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /** Milliseconds to wait for an object before checking cancellation. */
+    public static final int POLL_MILLIS = 100;
+
+    private final Class<?> type;
+    private final String name;
+    private final BlockingQueue<Object> queue;
+    private volatile boolean stopped;
+    private volatile boolean finishing;
+
+    /**
+     * Construct an async pipe.
+     * 
+     * @param type
+     *            Input and output type
+     * @param name
+     *            Daemon name
+     * @param capacity
+     *            Queue capacity in objects
+     */
+    public AsyncPipe(Class<?> type, String name, int capacity) {
+        this.type = type;
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<Object>(capacity);
+        this.stopped = false;
+        this.finishing = false;
+    }
+
+    /**
+     * Construct an async pipe with the default capacity.
+     * 
+     * @param type
+     *            Input and output type
+     * @param name
+     *            Daemon name
+     */
+    public AsyncPipe(Class<?> type, String name) {
+        this(type, name, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Query number of objects waiting to be produced.
+     * 
+     * @return Queued object count
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    @Override
+    public void consume(Object value) {
+        try {
+            while (!isCancelled()) {
+                if (queue.offer(value, POLL_MILLIS, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return stopped || super.isCancelled();
+    }
+
+    // From Daemon
+
+    @Override
+    public String getDaemonName() {
+        return name;
+    }
+
+    @Override
+    public void resumeDaemon() throws DaemonException {
+        if (isCancelled()) {
+            cancel();
+            throw new DaemonExitException("Async pipe cancelled");
+        }
+
+        try {
+            Object value = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (value != null) {
+                produce(value);
+            } else if (finishing) {
+                // Nothing more may be queued once the daemon is gone
+                stopped = true;
+                throw new DaemonExitException("Async pipe drained");
+            }
+        } catch (InterruptedException ex) {
+            throw new DaemonExitException(ex);
+        }
+    }
+
+    @Override
+    public void finish() {
+        finishing = true;
+    }
+
+    /** Produce the queued objects, then stop. */
+    @Override
+    public void reset() {
+        finish();
+    }
+
+    /** Stop producing, discarding any queued objects. */
+    @Override
+    public void cancel() {
+        stopped = true;
+        queue.clear();
+    }
+
+    @Override
+    public Class<?> getInputType() {
+        return type;
+    }
+
+    @Override
+    public Class<?> getOutputType() {
+        return type;
+    }
+}
@@ -78,6 +78,15 @@ public class CompoundPipe implements Pipe {
         }
     }
 
+    /**
+     * Query the linked pipes, as a copy that has no effect on this pipe.
+     * 
+     * @return List of pipes from first to last
+     */
+    public List<Pipe> getPipes() {
+        return new ArrayList<Pipe>(pipes);
+    }
+
     // From Consumer
 
     @Override
@@ -90,6 +99,12 @@ public class CompoundPipe implements Pipe {
         first.consume(value);
     }
 
+    @Override
+    public boolean isCancelled() {
+        // Cancellation propagates from the last pipe to the first
+        return first.isCancelled();
+    }
+
     // From Producer
 
     @Override
@@ -107,6 +122,11 @@ public class CompoundPipe implements Pipe {
         return last.hasConsumer();
     }
 
+    @Override
+    public List<Consumer> getConsumers() {
+        return last.getConsumers();
+    }
+
     @Override
     public void removeConsumer(Consumer consumer) {
         last.removeConsumer(consumer);
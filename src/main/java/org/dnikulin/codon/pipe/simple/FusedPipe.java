@@ -0,0 +1,81 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.simple;
+
+import java.util.List;
+
+import org.dnikulin.codon.pipe.StatelessPipe;
+
+/**
+ * A pipe that applies a chain of stateless pipes in a single stage, without
+ * linking them to each other. Types must already have been checked between
+ * adjacent stages.
+ */
+public class FusedPipe extends SimplePipe implements StatelessPipe {
+    private final StatelessPipe[] stages;
+
+    /**
+     * Construct a fused pipe.
+     * 
+     * @param stages
+     *            Stateless pipes in order, at least one
+     */
+    public FusedPipe(List<StatelessPipe> stages) {
+        this.stages = stages.toArray(new StatelessPipe[stages.size()]);
+    }
+
+    /**
+     * Query number of fused stages.
+     * 
+     * @return Number of stages
+     */
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    @Override
+    public Object transform(Object value) {
+        for (int i = 0; (i < stages.length) && (value != null); i++)
+            value = stages[i].transform(value);
+        return value;
+    }
+
+    @Override
+    public void consume(Object value) {
+        Object out = transform(value);
+        if (out != null)
+            produce(out);
+    }
+
+    @Override
+    public Class<?> getInputType() {
+        return stages[0].getInputType();
+    }
+
+    @Override
+    public Class<?> getOutputType() {
+        return stages[stages.length - 1].getOutputType();
+    }
+}
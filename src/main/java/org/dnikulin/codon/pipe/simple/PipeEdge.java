@@ -0,0 +1,131 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.simple;
+
+import org.dnikulin.codon.pipe.Consumer;
+
+/**
+ * A link from a simple pipe to one of its consumers, counting the objects
+ * given to it. One object in every SAMPLE_INTERVAL is timed, so that the time
+ * spent in consume() can be estimated without calling System.nanoTime() for
+ * every object. That time includes any pipes downstream that consume in the
+ * same thread.
+ */
+public class PipeEdge {
+    /** Number of objects per timed object, a power of two. */
+    public static final int SAMPLE_INTERVAL = 64;
+
+    private final Consumer consumer;
+
+    private long count;
+    private long samples;
+    private long sampledNanos;
+
+    /**
+     * Construct an edge with zero counters.
+     * 
+     * @param consumer
+     *            Consumer at the end of this edge
+     */
+    public PipeEdge(Consumer consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Construct a copy of an edge's counters.
+     * 
+     * @param edge
+     *            Edge to copy
+     */
+    public PipeEdge(PipeEdge edge) {
+        this.consumer = edge.consumer;
+        this.count = edge.count;
+        this.samples = edge.samples;
+        this.sampledNanos = edge.sampledNanos;
+    }
+
+    // Package-private
+    void consume(Object value) {
+        if ((count++ & (SAMPLE_INTERVAL - 1)) != 0) {
+            consumer.consume(value);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            consumer.consume(value);
+        } finally {
+            sampledNanos += System.nanoTime() - start;
+            samples++;
+        }
+    }
+
+    /**
+     * Query consumer at the end of this edge.
+     * 
+     * @return Consumer
+     */
+    public Consumer getConsumer() {
+        return consumer;
+    }
+
+    /**
+     * Query number of objects given to the consumer.
+     * 
+     * @return Object count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Query number of timed objects.
+     * 
+     * @return Timed object count
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Query total time spent consuming timed objects.
+     * 
+     * @return Nanoseconds
+     */
+    public long getSampledNanos() {
+        return sampledNanos;
+    }
+
+    /**
+     * Estimate time spent consuming each object.
+     * 
+     * @return Mean nanoseconds per timed object, or 0 if none were timed
+     */
+    public double getNanosPerObject() {
+        if (samples == 0)
+            return 0;
+        return (double) sampledNanos / samples;
+    }
+}
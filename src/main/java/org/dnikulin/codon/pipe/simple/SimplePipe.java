@@ -28,7 +28,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.dnikulin.codon.log.FormatLogger;
 import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.log.LogTools;
 import org.dnikulin.codon.log.NullLogger;
 import org.dnikulin.codon.pipe.Consumer;
 import org.dnikulin.codon.pipe.Pipe;
@@ -38,12 +40,12 @@ import org.dnikulin.codon.pipe.Pipe;
  * its methods are thread-safe.
  */
 public abstract class SimplePipe implements Pipe {
-    private final List<Consumer> consumers;
+    private final List<PipeEdge> consumers;
     private final AtomicReference<LineLogger> logger;
 
     /** Construct a simple pipe with an empty consumer list and a null logger. */
     public SimplePipe() {
-        consumers = new ArrayList<Consumer>();
+        consumers = new ArrayList<PipeEdge>();
         logger = new AtomicReference<LineLogger>(NullLogger.INSTANCE);
     }
 
@@ -57,6 +59,21 @@ public abstract class SimplePipe implements Pipe {
         logger.get().print(line);
     }
 
+    /**
+     * Log a parameterized message to the assigned line logger, rate limited
+     * per pipe class. The message is only formatted if it is written.
+     * 
+     * @param level
+     *            Message level (see FormatLogger)
+     * @param pattern
+     *            Message pattern, with "{}" replaced by the argument
+     * @param arg
+     *            Argument
+     */
+    protected void log(int level, String pattern, Object arg) {
+        LogTools.print(logger.get(), level, getClass().getName(), pattern, arg);
+    }
+
     /**
      * Issue each consumer the given object value.
      * 
@@ -65,16 +82,58 @@ public abstract class SimplePipe implements Pipe {
      */
     protected void produce(Object value) {
         synchronized (consumers) {
-            for (Consumer consumer : consumers) {
+            // Indexed to avoid an iterator per value
+            int count = consumers.size();
+            for (int i = 0; i < count; i++) {
+                PipeEdge edge = consumers.get(i);
                 try {
-                    consumer.consume(value);
+                    edge.consume(value);
                 } catch (Exception ex) {
-                    log("Consumer exception: " + ex);
+                    log(FormatLogger.WARN, "Consumer exception: {}", ex);
                 }
             }
         }
     }
 
+    // From Consumer
+
+    /**
+     * Query whether the pipe wants no further objects. By default, a pipe is
+     * cancelled once it has consumers and all of them are cancelled, so that
+     * cancellation propagates upstream through a pipeline.
+     * 
+     * @return true iff the pipe has been cancelled
+     */
+    @Override
+    public boolean isCancelled() {
+        synchronized (consumers) {
+            if (consumers.isEmpty())
+                return false;
+
+            int count = consumers.size();
+            for (int i = 0; i < count; i++) {
+                if (consumers.get(i).getConsumer().isCancelled() == false)
+                    return false;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Query a copy of each consumer's edge, with its counters.
+     * 
+     * @return Edge copies in consumer order
+     */
+    public List<PipeEdge> getEdges() {
+        synchronized (consumers) {
+            List<PipeEdge> edges = new ArrayList<PipeEdge>(consumers.size());
+            for (PipeEdge edge : consumers)
+                edges.add(new PipeEdge(edge));
+            return edges;
+        }
+    }
+
     // From Resettable
 
     @Override
@@ -95,10 +154,10 @@ public abstract class SimplePipe implements Pipe {
 
         synchronized (consumers) {
             // Must not be already registered
-            if (consumers.contains(consumer))
+            if (indexOf(consumer) >= 0)
                 return false;
 
-            consumers.add(consumer);
+            consumers.add(new PipeEdge(consumer));
         }
 
         return true;
@@ -111,10 +170,22 @@ public abstract class SimplePipe implements Pipe {
         }
     }
 
+    @Override
+    public List<Consumer> getConsumers() {
+        synchronized (consumers) {
+            List<Consumer> out = new ArrayList<Consumer>(consumers.size());
+            for (PipeEdge edge : consumers)
+                out.add(edge.getConsumer());
+            return out;
+        }
+    }
+
     @Override
     public void removeConsumer(Consumer consumer) {
         synchronized (consumers) {
-            consumers.remove(consumer);
+            int index = indexOf(consumer);
+            if (index >= 0)
+                consumers.remove(index);
         }
     }
 
@@ -125,6 +196,14 @@ public abstract class SimplePipe implements Pipe {
         }
     }
 
+    private int indexOf(Consumer consumer) {
+        for (int i = 0; i < consumers.size(); i++) {
+            if (consumers.get(i).getConsumer().equals(consumer))
+                return i;
+        }
+        return -1;
+    }
+
     // From LogSource
 
     @Override
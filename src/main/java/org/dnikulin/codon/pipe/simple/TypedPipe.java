@@ -29,7 +29,7 @@ public abstract class TypedPipe<IT> extends SimplePipe {
     @Override
     @SuppressWarnings("unchecked")
     public void consume(Object value) {
-        consume((IT) value);
+        consumeValue((IT) value);
     }
 
     /**
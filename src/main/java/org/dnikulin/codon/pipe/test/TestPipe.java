@@ -28,6 +28,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.dnikulin.codon.log.FormatLogger;
 import org.dnikulin.codon.pipe.simple.SimplePipe;
 
 /** A pipe for test use only. */
@@ -108,7 +109,7 @@ public class TestPipe extends SimplePipe {
 
         if (pass.get() == true) {
             produce(value);
-            log("Passed " + value);
+            log(FormatLogger.INFO, "Passed {}", value);
         }
     }
 
@@ -37,8 +37,11 @@ public class TestProducerCommand implements ProducerCommand {
     public void produce(String[] args, LineLogger log, Consumer consumer) {
         log.print("Producing " + args.length + " values");
 
-        for (String arg : args)
+        for (String arg : args) {
+            if (consumer.isCancelled())
+                break;
             consumer.consume(arg);
+        }
     }
 
     @Override
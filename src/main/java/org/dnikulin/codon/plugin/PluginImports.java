@@ -0,0 +1,139 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Registry of imported plugins. Each jar or tree is imported through its own
+ * child PluginLoader, so that it can later be unloaded, removing its nodes
+ * and slots from the linker, and its classes collected once unreferenced.
+ */
+public class PluginImports {
+    private final PluginLoader parent;
+    private final PluginLinker linker;
+    private final Map<String, PluginLoader> loaders;
+
+    /**
+     * Construct an empty plugin import registry.
+     * 
+     * @param parent
+     *            Parent of every plugin loader, providing the plugin index
+     * @param linker
+     *            Plugin linker
+     */
+    public PluginImports(PluginLoader parent, PluginLinker linker) {
+        this.parent = parent;
+        this.linker = linker;
+        this.loaders = new TreeMap<String, PluginLoader>();
+    }
+
+    /**
+     * Import a jar or tree through a new plugin loader, and give its nodes to
+     * the linker.
+     * 
+     * @param file
+     *            Jar file or tree root
+     * @return false iff the path is already imported
+     */
+    public synchronized boolean importPlugin(File file) {
+        String key = keyOf(file);
+        if (loaders.containsKey(key))
+            return false;
+
+        PluginLoader loader = new PluginLoader(parent, parent.getLineLogger());
+        loader.setPluginIndex(parent.getPluginIndex());
+        loaders.put(key, loader);
+
+        // importTree performs importJar automatically
+        loader.importTree(file);
+        loader.givePluginLinkerNodes(linker);
+        return true;
+    }
+
+    /**
+     * Unload an imported jar or tree. Its nodes and slots are removed from the
+     * linker and its loader is closed and forgotten.
+     * 
+     * @param file
+     *            Jar file or tree root
+     * @return false iff the path was not imported
+     */
+    public synchronized boolean unload(File file) {
+        PluginLoader loader = loaders.remove(keyOf(file));
+        if (loader == null)
+            return false;
+
+        linker.removePlugins(loader);
+        loader.close();
+        return true;
+    }
+
+    /**
+     * Unload a jar or tree if imported, and import it again.
+     * 
+     * @param file
+     *            Jar file or tree root
+     * @return true iff the path was previously imported
+     */
+    public synchronized boolean reload(File file) {
+        boolean unloaded = unload(file);
+        importPlugin(file);
+        return unloaded;
+    }
+
+    /**
+     * Find the loader of an imported jar or tree.
+     * 
+     * @param file
+     *            Jar file or tree root
+     * @return Plugin loader, or null if the path is not imported
+     */
+    public synchronized PluginLoader getLoader(File file) {
+        return loaders.get(keyOf(file));
+    }
+
+    /**
+     * Query imported paths.
+     * 
+     * @return Canonical paths of imported jars and trees
+     */
+    public synchronized List<String> getPaths() {
+        return new ArrayList<String>(loaders.keySet());
+    }
+
+    private static String keyOf(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException ex) {
+            return file.getAbsolutePath();
+        }
+    }
+}
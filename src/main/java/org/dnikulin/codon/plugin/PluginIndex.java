@@ -0,0 +1,258 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.dnikulin.codon.misc.FileTools;
+
+/**
+ * On-disk record of the plugin nodes found in each jar, keyed by the jar's
+ * canonical path, size and modification time. A jar whose record is still
+ * current need not be scanned again; only its node classes are loaded.
+ */
+public class PluginIndex {
+    /** System property naming the index file. */
+    public static final String INDEX_PROPERTY = "codon.plugin.index";
+
+    private static final int MAGIC = 0x506c6978;
+
+    private final File file;
+    private final Map<String, Entry> entries;
+    private boolean dirty;
+
+    /**
+     * Construct an empty plugin index backed by a file. Call load() to read
+     * the file.
+     * 
+     * @param file
+     *            Index file
+     */
+    public PluginIndex(File file) {
+        this.file = file;
+        this.entries = new TreeMap<String, Entry>();
+        this.dirty = false;
+    }
+
+    /**
+     * Construct a plugin index from the file named by the INDEX_PROPERTY
+     * system property, and load it.
+     * 
+     * @return Loaded plugin index, or null if the property is not set
+     */
+    public static PluginIndex fromProperty() {
+        String path = System.getProperty(INDEX_PROPERTY);
+        if ((path == null) || path.isEmpty())
+            return null;
+
+        PluginIndex index = new PluginIndex(new File(path));
+        try {
+            index.load();
+        } catch (IOException ex) {
+            // Start from an empty index
+        }
+        return index;
+    }
+
+    /**
+     * Query index file.
+     * 
+     * @return Index file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Find the current record for a jar.
+     * 
+     * @param jar
+     *            Jar file
+     * @return Record, or null if there is none or the jar has changed since
+     */
+    public synchronized Entry get(File jar) {
+        Entry entry = entries.get(keyOf(jar));
+        if (entry == null)
+            return null;
+
+        if ((entry.size != jar.length())
+                || (entry.modified != jar.lastModified()))
+            return null;
+
+        return entry;
+    }
+
+    /**
+     * Record the plugin nodes found in a jar.
+     * 
+     * @param jar
+     *            Jar file
+     * @param nodes
+     *            Map from node class name to the names of the PluginNode
+     *            interfaces it implements, which decide the slots it fits
+     */
+    public synchronized void put(File jar, Map<String, List<String>> nodes) {
+        Entry entry = new Entry(jar.length(), jar.lastModified());
+        entry.nodes.putAll(nodes);
+        entries.put(keyOf(jar), entry);
+        dirty = true;
+    }
+
+    /**
+     * Query number of jars recorded.
+     * 
+     * @return Number of jars recorded
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Read the index file, replacing any records in memory. A missing file
+     * leaves the index empty.
+     */
+    public synchronized void load() throws IOException {
+        entries.clear();
+        dirty = false;
+
+        if (file.exists() == false)
+            return;
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a plugin index: " + file);
+
+            int jars = in.readInt();
+            for (int i = 0; i < jars; i++) {
+                String key = in.readUTF();
+                Entry entry = new Entry(in.readLong(), in.readLong());
+
+                int nodes = in.readInt();
+                for (int j = 0; j < nodes; j++) {
+                    String node = in.readUTF();
+                    List<String> slots = new ArrayList<String>();
+
+                    int count = in.readInt();
+                    for (int k = 0; k < count; k++)
+                        slots.add(in.readUTF());
+
+                    entry.nodes.put(node, slots);
+                }
+
+                entries.put(key, entry);
+            }
+        } catch (IOException ex) {
+            entries.clear();
+            throw ex;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the index file if any record changed since it was loaded or
+     * saved. The index is written to a temporary file and renamed over the
+     * old one.
+     */
+    public synchronized void save() throws IOException {
+        if (dirty == false)
+            return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.size());
+
+            for (Map.Entry<String, Entry> pair : entries.entrySet()) {
+                Entry entry = pair.getValue();
+                out.writeUTF(pair.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeInt(entry.nodes.size());
+
+                for (Map.Entry<String, List<String>> node : entry.nodes
+                        .entrySet()) {
+                    out.writeUTF(node.getKey());
+                    out.writeInt(node.getValue().size());
+                    for (String slot : node.getValue())
+                        out.writeUTF(slot);
+                }
+            }
+        } finally {
+            out.close();
+        }
+
+        FileTools.replaceFile(file, bytes.toByteArray());
+
+        dirty = false;
+    }
+
+    private static String keyOf(File jar) {
+        try {
+            return jar.getCanonicalPath();
+        } catch (IOException ex) {
+            return jar.getAbsolutePath();
+        }
+    }
+
+    /** Plugin nodes recorded for one version of one jar. */
+    public static class Entry {
+        private final long size;
+        private final long modified;
+        private final Map<String, List<String>> nodes;
+
+        private Entry(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+            this.nodes = new TreeMap<String, List<String>>();
+        }
+
+        /**
+         * Query recorded node classes.
+         * 
+         * @return Unmodifiable map from node class name to the names of the
+         *         PluginNode interfaces it implements
+         */
+        public Map<String, List<String>> getNodes() {
+            return Collections.unmodifiableMap(nodes);
+        }
+    }
+}
@@ -197,6 +197,88 @@ public class PluginLinker {
         }
     }
 
+    /**
+     * Remove every plugin node and slot defined by a class loader. Nodes are
+     * first removed from the remaining slots they were installed into, where
+     * those slots support removal.
+     * 
+     * @param loader
+     *            Class loader
+     * @return Number of nodes removed
+     */
+    public synchronized int removePlugins(ClassLoader loader) {
+        List<PluginSlot> keptSlots = new ArrayList<PluginSlot>();
+        List<PluginNode> keptNodes = new ArrayList<PluginNode>();
+        int[] slotIndex = new int[slots.size()];
+        int[] nodeIndex = new int[nodes.size()];
+
+        for (int islot = 0; islot < slots.size(); islot++) {
+            PluginSlot slot = slots.get(islot);
+            slotIndex[islot] = -1;
+
+            if (slot.getClass().getClassLoader() != loader) {
+                slotIndex[islot] = keptSlots.size();
+                keptSlots.add(slot);
+            } else {
+                String name = slot.getPluginSlotName();
+                logger.print("Unregistered plugin slot '" + name + "'");
+            }
+        }
+
+        for (int inode = 0; inode < nodes.size(); inode++) {
+            PluginNode node = nodes.get(inode);
+            nodeIndex[inode] = -1;
+
+            if (node.getClass().getClassLoader() != loader) {
+                nodeIndex[inode] = keptNodes.size();
+                keptNodes.add(node);
+                continue;
+            }
+
+            for (int islot = 0; islot < slots.size(); islot++) {
+                Set<Integer> installedNodes = installed.get(islot);
+                if ((slotIndex[islot] >= 0) && (installedNodes != null)
+                        && installedNodes.contains(inode))
+                    removePlugin(slots.get(islot), node);
+            }
+
+            String name = node.getPluginName();
+            logger.print("Unregistered plugin node '" + name + "'");
+        }
+
+        // Renumber installations of remaining slots and nodes
+        Map<Integer, Set<Integer>> keptInstalled;
+        keptInstalled = new TreeMap<Integer, Set<Integer>>();
+
+        for (Map.Entry<Integer, Set<Integer>> pair : installed.entrySet()) {
+            int islot = slotIndex[pair.getKey()];
+            if (islot < 0)
+                continue;
+
+            Set<Integer> installedNodes = new TreeSet<Integer>();
+            for (int inode : pair.getValue()) {
+                if (nodeIndex[inode] >= 0)
+                    installedNodes.add(nodeIndex[inode]);
+            }
+            keptInstalled.put(islot, installedNodes);
+        }
+
+        int removed = nodes.size() - keptNodes.size();
+
+        slots.clear();
+        slots.addAll(keptSlots);
+        nodes.clear();
+        nodes.addAll(keptNodes);
+        installed.clear();
+        installed.putAll(keptInstalled);
+
+        nodeClasses.clear();
+        for (PluginNode node : nodes)
+            nodeClasses.add(node.getClass().getName());
+
+        return removed;
+    }
+
     // Package-private
     synchronized boolean installAndRegister(int islot, int inode) {
         PluginSlot slot = slots.get(islot);
@@ -239,6 +321,28 @@ public class PluginLinker {
         }
     }
 
+    // Package-private
+    boolean removePlugin(PluginSlot slot, PluginNode node) {
+        String slotName = slot.getPluginSlotName();
+        String nodeName = node.getPluginName();
+        String combo = "'" + nodeName + "' from '" + slotName + "'";
+
+        if (!(slot instanceof RemovablePluginSlot)) {
+            logger.print("Cannot remove " + combo);
+            return false;
+        }
+
+        try {
+            ((RemovablePluginSlot) slot).removePlugin(node);
+            logger.print("Removed " + combo);
+            return true;
+        } catch (Exception ex) {
+            String msg = ex.getLocalizedMessage();
+            logger.print("Failed to remove " + combo + ": " + msg);
+            return false;
+        }
+    }
+
     /**
      * Determine if a plugin slot is compatible with a plugin node.
      * 
@@ -30,27 +30,48 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
-import java.util.jar.JarInputStream;
+import java.util.jar.JarFile;
 
 import org.dnikulin.codon.log.LineLogger;
 import org.dnikulin.codon.log.NullLogger;
 
 /**
  * A ClassLoader which imports from files and archives, combining many dynamic
- * paths into one tree.
+ * paths into one tree. Files and jar entries are only indexed on import; their
+ * bytes are read on demand, and class bytes are dropped once the class is
+ * defined. The loader is parallel capable, locking per class name.
  */
 public class PluginLoader extends ClassLoader {
     public static final String NODE_SUFFIX = "PluginNode";
 
+    static {
+        registerAsParallelCapable();
+    }
+
     private final LineLogger logger;
-    private final byte[] streamBuffer;
-    private final Map<String, byte[]> bytes;
+    private final Map<String, Resource> resources;
     private final Map<String, Class<?>> classes;
+    private final List<JarFile> jars;
+    private final Set<JarFile> indexedJars;
+    private final Set<String> nodeClassNames;
+    private volatile PluginIndex index;
 
     /**
      * Construct a PluginLoader with the given parent loader and line logger.
@@ -66,9 +87,14 @@ public class PluginLoader extends ClassLoader {
 
         this.logger = NullLogger.or(logger);
 
-        streamBuffer = new byte[8192];
-        bytes = new HashMap<String, byte[]>();
-        classes = new HashMap<String, Class<?>>();
+        resources = new ConcurrentHashMap<String, Resource>();
+        classes = new ConcurrentHashMap<String, Class<?>>();
+        jars = new CopyOnWriteArrayList<JarFile>();
+        indexedJars = Collections
+                .newSetFromMap(new ConcurrentHashMap<JarFile, Boolean>());
+        nodeClassNames = Collections
+                .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        index = null;
     }
 
     /**
@@ -111,7 +137,30 @@ public class PluginLoader extends ClassLoader {
     }
 
     /**
-     * Load a class from stored bytes or parent loader.
+     * Query plugin index.
+     * 
+     * @return Plugin index (may be null)
+     */
+    public PluginIndex getPluginIndex() {
+        return index;
+    }
+
+    /**
+     * Use a plugin index for jars imported by importTree(). Jars recorded in
+     * the index only have their recorded node classes loaded; other jars are
+     * scanned, in parallel, and recorded.
+     * 
+     * @param index
+     *            Plugin index (may be null)
+     */
+    public void setPluginIndex(PluginIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Load a class from stored bytes or parent loader. The parent is asked
+     * first, except for imported classes it has no resource for, which are
+     * defined directly instead of provoking a ClassNotFoundException.
      * 
      * @param className
      *            Name of class to load
@@ -120,47 +169,62 @@ public class PluginLoader extends ClassLoader {
      * @return Loaded class
      */
     @Override
-    public synchronized Class<?> loadClass(String className, boolean resolve)
+    public Class<?> loadClass(String className, boolean resolve)
             throws ClassNotFoundException {
 
-        // Check for class in parent class loader first
-        try {
-            Class<?> klass = getParent().loadClass(className);
-            assert (klass != null);
-            classes.put(className, klass);
-            return klass;
-        } catch (ClassNotFoundException ex) {
-            // Continue
-        }
-
-        // Check for cached class
-        Class<?> klass = classes.get(className);
-        if (klass != null)
-            return klass;
+        synchronized (getClassLoadingLock(className)) {
+            // Check for cached class
+            Class<?> klass = classes.get(className);
+            if (klass != null)
+                return klass;
+
+            String path = classToPath(className);
+            Resource resource = resources.get(path);
+
+            // Check for class in parent class loader first
+            ClassLoader parent = getParent();
+            boolean inParent = (parent != null)
+                    && (parent.getResource(path) != null);
+
+            if ((resource == null) || inParent) {
+                try {
+                    klass = (parent == null) ? findSystemClass(className)
+                            : parent.loadClass(className);
+                    assert (klass != null);
+                    classes.put(className, klass);
+                    return klass;
+                } catch (ClassNotFoundException ex) {
+                    // Continue
+                }
+            }
 
-        // Check for class for which bytes are available
-        byte[] classBytes = bytes.get(classToPath(className));
+            // Check for class for which bytes are available
+            byte[] classBytes = readResource(resource);
 
-        if (classBytes == null) {
-            String msg = "Class " + className + " not found in bytes or parent";
-            logger.print(msg);
-            throw new ClassNotFoundException(msg);
-        }
+            if (classBytes == null) {
+                String msg = "Class " + className
+                        + " not found in bytes or parent";
+                logger.print(msg);
+                throw new ClassNotFoundException(msg);
+            }
 
-        try {
-            // Bytes found, interpret as class
-            klass = defineClass(className, classBytes, 0, classBytes.length);
-            assert (klass != null);
+            try {
+                // Bytes found, interpret as class
+                klass = defineClass(className, classBytes, 0,
+                        classBytes.length);
+                assert (klass != null);
 
-            // Resolve if asked
-            if (resolve)
-                resolveClass(klass);
+                // Resolve if asked
+                if (resolve)
+                    resolveClass(klass);
 
-            classes.put(className, klass);
-            return klass;
-        } catch (ClassFormatError ex) {
-            logger.print(ex.getLocalizedMessage());
-            throw ex;
+                classes.put(className, klass);
+                dropResource(path);
+                return klass;
+            } catch (ClassFormatError ex) {
+                logger.print(ex.getLocalizedMessage());
+                throw ex;
+            }
         }
     }
 
@@ -171,27 +235,31 @@ public class PluginLoader extends ClassLoader {
      *            Class name suffix (e.g. PluginNode to match MyPluginNode and
      *            YourPluginNode), empty string for all classes
      */
-    public synchronized void loadClasses(String suffix) {
+    public void loadClasses(String suffix) {
         String suffixDotClass = suffix + ".class";
 
-        for (String path : bytes.keySet()) {
+        for (Map.Entry<String, Resource> pair : resources.entrySet()) {
+            String path = pair.getKey();
             if (!path.endsWith(suffixDotClass))
                 continue;
 
+            // Indexed jars only provide their recorded node classes
+            Resource resource = pair.getValue();
+            if ((resource instanceof JarResource)
+                    && indexedJars.contains(((JarResource) resource).jar))
+                continue;
+
             String className = pathToClass(path);
             if (classes.containsKey(className))
                 continue;
 
             try {
-                byte[] classBytes = bytes.get(path);
-                assert (classBytes != null);
-
-                Class<?> klass = defineClass(className, classBytes, 0,
-                        classBytes.length);
+                Class<?> klass = loadClass(className, false);
                 assert (klass != null);
 
                 resolveClass(klass);
-                classes.put(className, klass);
+            } catch (ClassNotFoundException ex) {
+                // Bytes disappeared or unreadable, ignore
             } catch (NoClassDefFoundError er) {
                 // Dependency not found, ignore
             } catch (ClassFormatError ex) {
@@ -211,20 +279,22 @@ public class PluginLoader extends ClassLoader {
     }
 
     /**
-     * Import a resource from an InputStream.
+     * Import a resource from an InputStream. The bytes are held in memory
+     * until a class is defined from them.
      * 
      * @param stream
      *            Input stream to read
      * @param path
      *            Original resource path
      */
-    public synchronized void importStream(InputStream stream, String path)
+    public void importStream(InputStream stream, String path)
             throws IOException {
-        bytes.put(path, readStream(stream));
+        resources.put(path, new BytesResource(readStream(stream)));
     }
 
     /**
-     * Import a resource from a file.
+     * Import a resource from a file. Only the file name is recorded; it is read
+     * when first needed.
      * 
      * @param file
      *            File to read
@@ -232,45 +302,50 @@ public class PluginLoader extends ClassLoader {
      *            Leading relative path elements (e.g. "org/test/")
      */
     public void importFile(File file, String pathHead) throws IOException {
-        FileInputStream fis = new FileInputStream(file);
+        if (!file.isFile())
+            throw new IOException("Not a file: " + file);
 
-        try {
-            BufferedInputStream bis = new BufferedInputStream(fis);
-            importStream(bis, pathHead + file.getName());
-            bis.close();
-        } finally {
-            fis.close();
-        }
+        resources.put(pathHead + file.getName(), new FileResource(file));
     }
 
     /**
-     * Import all resources in a Jar.
+     * Import all resources in a Jar. Only the jar directory is read; entries
+     * are read when first needed. The jar stays open until close().
      * 
      * @param file
      *            jar file
      */
     public void importJar(File file) throws IOException {
-        BufferedInputStream buffer = null;
-        JarInputStream stream = null;
+        openJar(file);
+    }
 
-        try {
-            buffer = new BufferedInputStream(new FileInputStream(file));
-            stream = new JarInputStream(buffer);
+    private JarFile openJar(File file) throws IOException {
+        JarFile jar = new JarFile(file);
+        jars.add(jar);
+
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            if (entry.isDirectory())
+                continue;
 
-            JarEntry entry = null;
-            while ((entry = stream.getNextJarEntry()) != null) {
-                if (entry.isDirectory())
-                    continue;
+            resources.put(entry.getName(), new JarResource(jar, entry));
+        }
 
-                importStream(stream, entry.getName());
-            }
-        } finally {
-            if (stream != null)
-                stream.close();
+        return jar;
+    }
 
-            if (buffer != null)
-                buffer.close();
+    /** Close every imported jar. Resources not yet read become unavailable. */
+    public void close() {
+        for (JarFile jar : jars) {
+            try {
+                jar.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
         }
+
+        jars.clear();
     }
 
     /**
@@ -284,19 +359,25 @@ public class PluginLoader extends ClassLoader {
      * @param head
      *            Prefix of resource names
      */
-    public synchronized void importTree(File root, String head) {
+    public void importTree(File root, String head) {
+        List<File> jarFiles = new ArrayList<File>();
+        walkTree(root, head, jarFiles);
+        importJars(jarFiles);
+    }
+
+    private void walkTree(File root, String head, List<File> jarFiles) {
         try {
             if (root.isDirectory()) {
                 for (File child : root.listFiles()) {
                     if (child.isDirectory()) {
-                        importTree(child, head + child.getName() + "/");
+                        walkTree(child, head + child.getName() + "/", jarFiles);
                     } else {
-                        importTree(child, head);
+                        walkTree(child, head, jarFiles);
                     }
                 }
             } else if (root.isFile() && root.canRead()) {
                 if (root.getName().endsWith(".jar"))
-                    importJar(root);
+                    jarFiles.add(root);
 
                 // Keep the jar just in case
                 importFile(root, head);
@@ -306,6 +387,114 @@ public class PluginLoader extends ClassLoader {
         }
     }
 
+    private void importJars(List<File> jarFiles) {
+        PluginIndex index = this.index;
+        List<File> staleFiles = new ArrayList<File>();
+        final List<JarFile> staleJars = new ArrayList<JarFile>();
+
+        for (File file : jarFiles) {
+            JarFile jar;
+            try {
+                jar = openJar(file);
+            } catch (IOException ex) {
+                continue;
+            }
+
+            if (index == null)
+                continue;
+
+            PluginIndex.Entry entry = index.get(file);
+            if (entry == null) {
+                staleFiles.add(file);
+                staleJars.add(jar);
+            } else {
+                nodeClassNames.addAll(entry.getNodes().keySet());
+                indexedJars.add(jar);
+            }
+        }
+
+        if (staleJars.isEmpty())
+            return;
+
+        List<Map<String, List<String>>> scans = scanJars(staleJars);
+        for (int i = 0; i < staleJars.size(); i++) {
+            Map<String, List<String>> nodes = scans.get(i);
+            index.put(staleFiles.get(i), nodes);
+            nodeClassNames.addAll(nodes.keySet());
+            indexedJars.add(staleJars.get(i));
+        }
+
+        try {
+            index.save();
+        } catch (IOException ex) {
+            logger.print("Could not save plugin index: "
+                    + ex.getLocalizedMessage());
+        }
+    }
+
+    private List<Map<String, List<String>>> scanJars(List<JarFile> jarList) {
+        List<Map<String, List<String>>> scans;
+        scans = new ArrayList<Map<String, List<String>>>();
+
+        // Not worth a thread pool for a single jar
+        int nthreads = Math.min(jarList.size(), Runtime.getRuntime()
+                .availableProcessors());
+
+        if (nthreads < 2) {
+            for (JarFile jar : jarList)
+                scans.add(scanJar(jar));
+            return scans;
+        }
+
+        List<JarScan> scanners = new ArrayList<JarScan>();
+        for (JarFile jar : jarList)
+            scanners.add(new JarScan(jar));
+
+        ExecutorService executor = Executors.newFixedThreadPool(nthreads);
+        try {
+            for (Future<Map<String, List<String>>> scan : executor
+                    .invokeAll(scanners))
+                scans.add(scan.get());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            logger.print("Plugin scan failed: " + ex.getLocalizedMessage());
+        } finally {
+            executor.shutdown();
+        }
+
+        // Scan whatever was not completed inline
+        for (int i = scans.size(); i < jarList.size(); i++)
+            scans.add(scanJar(jarList.get(i)));
+        return scans;
+    }
+
+    private Map<String, List<String>> scanJar(JarFile jar) {
+        Map<String, List<String>> nodes = new TreeMap<String, List<String>>();
+        String suffixDotClass = NODE_SUFFIX + ".class";
+
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            String path = entries.nextElement().getName();
+            if (!path.endsWith(suffixDotClass))
+                continue;
+
+            String className = pathToClass(path);
+
+            try {
+                Class<?> klass = loadClass(className, true);
+                if (isNodeClass(klass))
+                    nodes.put(className, getNodeInterfaces(klass));
+            } catch (ClassNotFoundException ex) {
+                // Bytes disappeared or unreadable, ignore
+            } catch (LinkageError er) {
+                // Dependency not found or corrupted class file, ignore
+            }
+        }
+
+        return nodes;
+    }
+
     /**
      * Import all files in a tree (starting with a single file or directory)
      * recursively. For classes, the root should be directly above the first
@@ -329,28 +518,100 @@ public class PluginLoader extends ClassLoader {
         // Load only classes with the node suffix name
         loadClasses(NODE_SUFFIX);
 
+        // Load node classes recorded by the plugin index
+        for (String className : nodeClassNames) {
+            if (classes.containsKey(className))
+                continue;
+
+            try {
+                loadClass(className, true);
+            } catch (ClassNotFoundException ex) {
+                // Already logged
+            } catch (LinkageError er) {
+                logger.print(er.getLocalizedMessage());
+            }
+        }
+
         // Give linker all classes for node construction
         // Use copy of list since installations may modify the original
         linker.makePluginNodes(getLoadedClasses());
     }
 
+    /**
+     * Check if a class can be instantiated as a plugin node.
+     * 
+     * @param klass
+     *            Class to check
+     * @return true iff klass is a concrete PluginNode class
+     */
+    public static boolean isNodeClass(Class<?> klass) {
+        return PluginNode.class.isAssignableFrom(klass)
+                && !klass.isInterface()
+                && !Modifier.isAbstract(klass.getModifiers());
+    }
+
+    /**
+     * List the PluginNode interfaces a class implements, directly or not.
+     * These are the plugin interfaces of the slots it fits.
+     * 
+     * @param klass
+     *            Node class
+     * @return Sorted interface names
+     */
+    public static List<String> getNodeInterfaces(Class<?> klass) {
+        Set<String> names = new TreeSet<String>();
+        addNodeInterfaces(klass, names);
+        return new ArrayList<String>(names);
+    }
+
+    private static void addNodeInterfaces(Class<?> klass, Set<String> names) {
+        if ((klass == null) || !PluginNode.class.isAssignableFrom(klass))
+            return;
+
+        if (klass.isInterface())
+            names.add(klass.getName());
+
+        for (Class<?> iface : klass.getInterfaces())
+            addNodeInterfaces(iface, names);
+        addNodeInterfaces(klass.getSuperclass(), names);
+    }
+
     // Package-private
-    synchronized byte[] getBytes(String path) {
-        return bytes.get(path);
+    byte[] getBytes(String path) {
+        return readResource(resources.get(path));
     }
 
     // Package-private
-    synchronized byte[] readStream(InputStream stream) throws IOException {
+    byte[] readStream(InputStream stream) throws IOException {
         ByteArrayOutputStream nbytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
 
         int didread = 0;
-        while ((didread = stream.read(streamBuffer)) > 0)
-            nbytes.write(streamBuffer, 0, didread);
+        while ((didread = stream.read(buffer)) > 0)
+            nbytes.write(buffer, 0, didread);
 
         nbytes.close();
         return nbytes.toByteArray();
     }
 
+    private byte[] readResource(Resource resource) {
+        if (resource == null)
+            return null;
+
+        try {
+            return resource.read();
+        } catch (IOException ex) {
+            logger.print(ex.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private void dropResource(String path) {
+        // Lazy resources cost nothing to keep
+        if (resources.get(path) instanceof BytesResource)
+            resources.remove(path);
+    }
+
     /**
      * Converts a class path such as org.test.Test to org/test/Test.class
      * 
@@ -373,4 +634,80 @@ public class PluginLoader extends ClassLoader {
         assert (path.endsWith(".class"));
         return path.substring(0, path.length() - 6).replace('/', '.');
     }
+
+    /** An imported resource whose bytes may be read on demand. */
+    private static abstract class Resource {
+        public abstract byte[] read() throws IOException;
+    }
+
+    /** A resource held in memory. */
+    private static class BytesResource extends Resource {
+        private final byte[] bytes;
+
+        public BytesResource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public byte[] read() {
+            return bytes;
+        }
+    }
+
+    /** A resource read from a file on demand. */
+    private class FileResource extends Resource {
+        private final File file;
+
+        public FileResource(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public byte[] read() throws IOException {
+            InputStream stream = new BufferedInputStream(new FileInputStream(
+                    file));
+
+            try {
+                return readStream(stream);
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
+    /** A task scanning one jar for plugin nodes. */
+    private class JarScan implements Callable<Map<String, List<String>>> {
+        private final JarFile jar;
+
+        public JarScan(JarFile jar) {
+            this.jar = jar;
+        }
+
+        @Override
+        public Map<String, List<String>> call() {
+            return scanJar(jar);
+        }
+    }
+
+    /** A jar entry read on demand. */
+    private class JarResource extends Resource {
+        private final JarFile jar;
+        private final JarEntry entry;
+
+        public JarResource(JarFile jar, JarEntry entry) {
+            this.jar = jar;
+            this.entry = entry;
+        }
+
+        @Override
+        public byte[] read() throws IOException {
+            InputStream stream = jar.getInputStream(entry);
+
+            try {
+                return readStream(stream);
+            } finally {
+                stream.close();
+            }
+        }
+    }
 }
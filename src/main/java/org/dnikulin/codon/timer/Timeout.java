@@ -0,0 +1,104 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.timer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A task scheduled on a TimerWheel. */
+public class Timeout {
+    /** Task is waiting for its deadline. */
+    public static final int PENDING = 0;
+    /** Task was cancelled before its deadline. */
+    public static final int CANCELLED = 1;
+    /** Task deadline passed and the task was run. */
+    public static final int EXPIRED = 2;
+
+    private final TimerWheel wheel;
+    private final Runnable task;
+    private final AtomicInteger state;
+
+    // Package-private, owned by the ticker thread
+    final long deadline;
+    long rounds;
+    TimerBucket bucket;
+    Timeout prev;
+    Timeout next;
+
+    // Package-private
+    Timeout(TimerWheel wheel, Runnable task, long deadline) {
+        this.wheel = wheel;
+        this.task = task;
+        this.state = new AtomicInteger(PENDING);
+        this.deadline = deadline;
+        this.rounds = 0;
+        this.bucket = null;
+        this.prev = null;
+        this.next = null;
+    }
+
+    /**
+     * Query scheduled task.
+     * 
+     * @return Task
+     */
+    public Runnable getTask() {
+        return task;
+    }
+
+    /**
+     * Query timeout state.
+     * 
+     * @return PENDING, CANCELLED or EXPIRED
+     */
+    public int getState() {
+        return state.get();
+    }
+
+    /**
+     * Cancel the task if it has not yet run. Takes constant time; the ticker
+     * thread unlinks the timeout on its next tick.
+     * 
+     * @return true iff this call cancelled the task
+     */
+    public boolean cancel() {
+        if (state.compareAndSet(PENDING, CANCELLED) == false)
+            return false;
+
+        wheel.cancelled(this);
+        return true;
+    }
+
+    // Package-private
+    void expire() {
+        if (state.compareAndSet(PENDING, EXPIRED) == false)
+            return;
+
+        try {
+            task.run();
+        } catch (RuntimeException ex) {
+            // Ignore, the ticker must survive faulty tasks
+        }
+    }
+}
@@ -0,0 +1,123 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.timer;
+
+import java.util.List;
+
+/** A doubly-linked list of timeouts in one slot of a TimerWheel. */
+class TimerBucket {
+    private Timeout head;
+    private Timeout tail;
+
+    /** Construct an empty bucket. */
+    public TimerBucket() {
+        head = null;
+        tail = null;
+    }
+
+    /**
+     * Append a timeout.
+     * 
+     * @param timeout
+     *            Timeout to append
+     */
+    public void add(Timeout timeout) {
+        timeout.bucket = this;
+
+        if (tail == null) {
+            head = timeout;
+            tail = timeout;
+        } else {
+            tail.next = timeout;
+            timeout.prev = tail;
+            tail = timeout;
+        }
+    }
+
+    /**
+     * Unlink a timeout in constant time.
+     * 
+     * @param timeout
+     *            Timeout in this bucket
+     */
+    public void remove(Timeout timeout) {
+        Timeout next = timeout.next;
+
+        if (timeout.prev != null)
+            timeout.prev.next = next;
+        if (next != null)
+            next.prev = timeout.prev;
+
+        if (timeout == head)
+            head = next;
+        if (timeout == tail)
+            tail = timeout.prev;
+
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = null;
+    }
+
+    /**
+     * Expire every timeout due in this round, and count down the others.
+     * 
+     * @param now
+     *            Current time relative to the wheel start
+     */
+    public void expire(long now) {
+        Timeout timeout = head;
+
+        while (timeout != null) {
+            Timeout next = timeout.next;
+
+            if (timeout.getState() != Timeout.PENDING) {
+                remove(timeout);
+            } else if ((timeout.rounds <= 0) && (timeout.deadline <= now)) {
+                remove(timeout);
+                timeout.expire();
+            } else {
+                timeout.rounds--;
+            }
+
+            timeout = next;
+        }
+    }
+
+    /**
+     * Remove every pending timeout.
+     * 
+     * @param out
+     *            List to collect pending tasks into
+     */
+    public void clear(List<Runnable> out) {
+        while (head != null) {
+            Timeout timeout = head;
+            remove(timeout);
+
+            if (timeout.getState() == Timeout.PENDING)
+                out.add(timeout.getTask());
+        }
+    }
+}
@@ -0,0 +1,343 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.dnikulin.codon.misc.Cancellable;
+
+/**
+ * A hashed timer wheel driven by one ticker thread. Scheduling and cancelling
+ * take constant time: new timeouts are queued and hashed into a bucket on the
+ * next tick, and cancelled timeouts are unlinked from their bucket. Timeouts
+ * further away than one turn of the wheel wait out a number of rounds.
+ * 
+ * Expired tasks run on the ticker thread, so they must be short; longer work
+ * should be handed to a pool. The ticker thread starts with the first
+ * scheduled task.
+ */
+public class TimerWheel {
+    /** Default tick duration in milliseconds. */
+    public static final long DEFAULT_TICK_MILLIS = 1;
+
+    /** Default number of buckets. */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /** Maximum number of new timeouts to hash per tick. */
+    public static final int MAX_ADDS_PER_TICK = 100000;
+
+    private static final int INIT = 0;
+    private static final int STARTED = 1;
+    private static final int STOPPED = 2;
+
+    private final long tickNanos;
+    private final TimerBucket[] buckets;
+    private final int mask;
+
+    private final Queue<Timeout> added;
+    private final Queue<Timeout> cancelled;
+    private final List<Runnable> unprocessed;
+    private final AtomicInteger state;
+
+    private volatile long startTime;
+    private Thread ticker;
+    private long tick;
+
+    /**
+     * Construct a timer wheel.
+     * 
+     * @param tickMillis
+     *            Tick duration in milliseconds
+     * @param wheelSize
+     *            Number of buckets, rounded up to a power of two
+     */
+    public TimerWheel(long tickMillis, int wheelSize) {
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("Tick must be positive");
+        if ((wheelSize <= 0) || (wheelSize > (1 << 30)))
+            throw new IllegalArgumentException("Invalid wheel size");
+
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize)
+            size <<= 1;
+
+        this.tickNanos = tickMillis * 1000 * 1000;
+        this.buckets = new TimerBucket[size];
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++)
+            buckets[i] = new TimerBucket();
+
+        this.added = new ConcurrentLinkedQueue<Timeout>();
+        this.cancelled = new ConcurrentLinkedQueue<Timeout>();
+        this.unprocessed = new ArrayList<Runnable>();
+        this.state = new AtomicInteger(INIT);
+
+        this.startTime = 0;
+        this.ticker = null;
+        this.tick = 0;
+    }
+
+    /** Construct a timer wheel with default tick and size. */
+    public TimerWheel() {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Run a task once after a delay.
+     * 
+     * @param task
+     *            Task to run on the ticker thread
+     * @param delayMillis
+     *            Delay in milliseconds
+     * @return Timeout handle
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        return scheduleAt(task, System.nanoTime() + (delayMillis * 1000000L));
+    }
+
+    /**
+     * Run a task once at a deadline.
+     * 
+     * @param task
+     *            Task to run on the ticker thread
+     * @param deadline
+     *            Deadline in System.nanoTime() units
+     * @return Timeout handle
+     */
+    public Timeout scheduleAt(Runnable task, long deadline) {
+        start();
+
+        Timeout timeout = new Timeout(this, task, deadline - startTime);
+        added.add(timeout);
+
+        // The ticker may have drained the queue for the last time already
+        if ((state.get() == STOPPED) && added.remove(timeout))
+            throw new IllegalStateException("Timer wheel stopped");
+
+        return timeout;
+    }
+
+    /**
+     * Run a task repeatedly at a fixed rate, starting one period from now.
+     * 
+     * @param task
+     *            Task to run on the ticker thread
+     * @param periodMillis
+     *            Period in milliseconds
+     * @return Handle to stop further repetitions
+     */
+    public Cancellable scheduleRepeating(Runnable task, long periodMillis) {
+        if (periodMillis <= 0)
+            throw new IllegalArgumentException("Period must be positive");
+
+        Repeater repeater = new Repeater(task, periodMillis * 1000000L);
+        repeater.next();
+        return repeater;
+    }
+
+    /**
+     * Stop the ticker thread. Tasks that have not yet run are not run.
+     * 
+     * @return Tasks that were still pending
+     */
+    public List<Runnable> stop() {
+        if (state.getAndSet(STOPPED) != STARTED)
+            return new ArrayList<Runnable>();
+
+        Thread thread;
+        synchronized (this) {
+            thread = ticker;
+        }
+
+        LockSupport.unpark(thread);
+
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException ex) {
+                // Ignore
+            }
+        }
+
+        synchronized (this) {
+            return new ArrayList<Runnable>(unprocessed);
+        }
+    }
+
+    // Package-private
+    void cancelled(Timeout timeout) {
+        cancelled.add(timeout);
+    }
+
+    private void start() {
+        int now = state.get();
+        if (now == STARTED)
+            return;
+        if (now == STOPPED)
+            throw new IllegalStateException("Timer wheel stopped");
+
+        synchronized (this) {
+            if (ticker != null)
+                return;
+
+            startTime = System.nanoTime();
+
+            ticker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runTicker();
+                }
+            }, "codon-timer");
+
+            ticker.setDaemon(true);
+
+            if (state.compareAndSet(INIT, STARTED) == false)
+                throw new IllegalStateException("Timer wheel stopped");
+
+            ticker.start();
+        }
+    }
+
+    private void runTicker() {
+        while (state.get() == STARTED) {
+            long now = waitForTick();
+            if (now < 0)
+                break;
+
+            removeCancelled();
+            addPending();
+            buckets[(int) (tick & mask)].expire(now);
+            tick++;
+        }
+
+        List<Runnable> pending = new ArrayList<Runnable>();
+        for (TimerBucket bucket : buckets)
+            bucket.clear(pending);
+
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.getState() == Timeout.PENDING)
+                pending.add(timeout.getTask());
+        }
+
+        synchronized (this) {
+            unprocessed.addAll(pending);
+        }
+    }
+
+    private long waitForTick() {
+        long target = tickNanos * (tick + 1);
+
+        while (true) {
+            long now = System.nanoTime() - startTime;
+            long sleep = target - now;
+            if (sleep <= 0)
+                return now;
+
+            LockSupport.parkNanos(this, sleep);
+
+            if (state.get() != STARTED)
+                return -1;
+        }
+    }
+
+    private void addPending() {
+        for (int i = 0; i < MAX_ADDS_PER_TICK; i++) {
+            Timeout timeout = added.poll();
+            if (timeout == null)
+                return;
+
+            if (timeout.getState() != Timeout.PENDING)
+                continue;
+
+            long due = timeout.deadline / tickNanos;
+            timeout.rounds = (due - tick) / buckets.length;
+
+            // Never schedule into a bucket that has already passed
+            long slot = Math.max(due, tick);
+            buckets[(int) (slot & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            TimerBucket bucket = timeout.bucket;
+            if (bucket != null)
+                bucket.remove(timeout);
+        }
+    }
+
+    /** Reschedules itself after each run until cancelled. */
+    private class Repeater implements Runnable, Cancellable {
+        private final Runnable task;
+        private final long periodNanos;
+        private long deadline;
+        private volatile boolean stopped;
+        private volatile Timeout current;
+
+        public Repeater(Runnable task, long periodNanos) {
+            this.task = task;
+            this.periodNanos = periodNanos;
+            this.deadline = System.nanoTime();
+            this.stopped = false;
+            this.current = null;
+        }
+
+        @Override
+        public void run() {
+            if (stopped)
+                return;
+
+            try {
+                task.run();
+            } finally {
+                if ((stopped == false) && (state.get() == STARTED))
+                    next();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            stopped = true;
+
+            Timeout timeout = current;
+            if (timeout != null)
+                timeout.cancel();
+        }
+
+        private void next() {
+            deadline += periodNanos;
+            current = scheduleAt(this, deadline);
+        }
+    }
+}
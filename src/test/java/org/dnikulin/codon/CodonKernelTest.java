@@ -30,9 +30,15 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileWriter;
+
 import org.dnikulin.codon.log.CountingLogger;
 import org.dnikulin.codon.log.NullLogger;
+import org.dnikulin.codon.misc.TimeTools;
+import org.dnikulin.codon.pipe.Pipe;
 import org.dnikulin.codon.pipe.command.registry.PipeCommands;
+import org.dnikulin.codon.pipe.record.RecordPipe;
 import org.junit.Test;
 
 public class CodonKernelTest {
@@ -79,4 +85,76 @@ public class CodonKernelTest {
         ck.runCommand("testplug");
         assertTrue(log.count() > 0);
     }
+
+    @Test(timeout = 10000)
+    public void testGraphJoin() throws Exception {
+        String compiler = System.setProperty("codon.compiler", "graph");
+        File file = File.createTempFile("codon-graph", ".rec");
+        File copy = File.createTempFile("codon-graph", ".rec");
+        File script = File.createTempFile("codon-graph", ".txt");
+
+        try {
+            CodonKernel ck = new CodonKernel();
+            ck.runCommand("generate i32 max 1000 | ~out record -raw i32 "
+                    + file.getPath());
+
+            // Must feed the record pipe through an async boundary
+            assertEquals(1, ck.getDaemonThreads().get().size());
+
+            // Must also compile batch scripts as graphs
+            FileWriter writer = new FileWriter(script);
+            writer.write("generate i32 max 10 | record -raw i32 "
+                    + copy.getPath() + "\n");
+            writer.close();
+
+            ck.runCommand("batch " + script.getPath());
+            assertEquals(2, ck.getDaemonThreads().get().size());
+
+            // Must return once the async boundary has drained
+            ck.joinDaemons();
+
+            Pipe out = ck.getPipeLinker().getPipe("out");
+            assertEquals(1000 * 8, ((RecordPipe) out).getRecordedBytes());
+        } finally {
+            if (compiler == null)
+                System.clearProperty("codon.compiler");
+            else
+                System.setProperty("codon.compiler", compiler);
+            file.delete();
+            copy.delete();
+            script.delete();
+        }
+    }
+
+    @Test
+    public void testConcurrentSessions() throws InterruptedException {
+        CodonKernel ck = new CodonKernel();
+        CountingLogger log = new CountingLogger();
+        ck.setLineLogger(log);
+
+        final CodonSession slow = ck.openSession();
+        CodonSession fast = ck.openSession();
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                slow.runCommand("sleep 1000");
+            }
+        });
+
+        thread.start();
+        TimeTools.sleepFor(50);
+
+        // Must not wait for the other session's command
+        long start = System.currentTimeMillis();
+        fast.runCommand("~shared sleep 0");
+        assertTrue(System.currentTimeMillis() - start < 500);
+        assertTrue(thread.isAlive());
+
+        // Sessions must share named pipes
+        assertTrue(ck.getPipeLinker().getPipeNames().contains("shared"));
+
+        thread.join();
+        assertTrue(log.count() >= 2);
+    }
 }
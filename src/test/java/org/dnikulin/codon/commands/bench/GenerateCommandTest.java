@@ -0,0 +1,127 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.commands.bench;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.dnikulin.codon.format.primitive.IntegerObjectFormat;
+import org.dnikulin.codon.format.primitive.StringObjectFormat;
+import org.dnikulin.codon.format.registry.ObjectFormats;
+import org.dnikulin.codon.log.CountingLogger;
+import org.dnikulin.codon.pipe.Pipe;
+import org.dnikulin.codon.pipe.bench.ValueStamps;
+import org.dnikulin.codon.pipe.except.PipeFactoryException;
+import org.dnikulin.codon.pipe.limit.HeadPipe;
+import org.dnikulin.codon.pipe.test.TestPipe;
+import org.junit.Test;
+
+public class GenerateCommandTest {
+    @Test
+    public void testGenerateMax() throws Exception {
+        GenerateCommand command = makeCommand(new ValueStamps());
+        CountingLogger log = new CountingLogger();
+
+        Pipe pipe = command.makePipe(new String[] { "i32", "max", "1000" },
+                log);
+        assertSame(Integer.class, pipe.getOutputType());
+
+        TestPipe sink = new TestPipe();
+        pipe.addConsumer(sink);
+
+        // Must produce every value and log a summary
+        assertEquals(1000, sink.count());
+        assertEquals(999, sink.last());
+        assertEquals(1, log.count());
+    }
+
+    @Test
+    public void testGeneratePaced() throws Exception {
+        ValueStamps stamps = new ValueStamps();
+        GenerateCommand command = makeCommand(stamps);
+        TestPipe sink = new TestPipe();
+
+        // 50 values at 1000/s must take at least 49 ms
+        long start = System.nanoTime();
+        command.produce(new String[] { "string-utf8", "1000", "50" },
+                new CountingLogger(), sink);
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(50, sink.count());
+        assertTrue(millis >= 49);
+
+        // Must have stamped the values with their schedule
+        long stamp = stamps.take(sink.last());
+        assertTrue(stamp != ValueStamps.NONE);
+        assertTrue(stamp >= start + 49000000L);
+    }
+
+    @Test
+    public void testCancelled() throws Exception {
+        GenerateCommand command = makeCommand(new ValueStamps());
+        HeadPipe head = new HeadPipe(Object.class, 10);
+        TestPipe sink = new TestPipe();
+        head.addConsumer(sink);
+
+        // Must stop soon after the consumer is cancelled
+        long start = System.nanoTime();
+        command.produce(new String[] { "string-utf8", "max", "1000000000" },
+                new CountingLogger(), head);
+
+        assertEquals(10, sink.count());
+        assertTrue(System.nanoTime() - start < 10000000000L);
+    }
+
+    @Test
+    public void testBadArguments() {
+        GenerateCommand command = makeCommand(new ValueStamps());
+
+        assertBad(command, "i32", "max");
+        assertBad(command, "nope", "max", "10");
+        assertBad(command, "i32", "fast", "10");
+        assertBad(command, "i32", "-5", "10");
+    }
+
+    private static void assertBad(GenerateCommand command, String... args) {
+        CountingLogger log = new CountingLogger();
+
+        try {
+            command.makePipe(args, log);
+            fail("Must reject arguments");
+        } catch (PipeFactoryException ex) {
+            // Must explain why
+            assertEquals(1, log.count());
+        }
+    }
+
+    private static GenerateCommand makeCommand(ValueStamps stamps) {
+        ObjectFormats formats = new ObjectFormats();
+        formats.add(IntegerObjectFormat.INSTANCE);
+        formats.add(StringObjectFormat.INSTANCE);
+        return new GenerateCommand(formats, stamps);
+    }
+}
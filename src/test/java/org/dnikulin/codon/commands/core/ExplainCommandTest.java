@@ -0,0 +1,107 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.commands.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dnikulin.codon.log.ListLogger;
+import org.dnikulin.codon.pipe.Pipe;
+import org.dnikulin.codon.pipe.compiler.PipeLinker;
+import org.dnikulin.codon.pipe.simple.CompoundPipe;
+import org.dnikulin.codon.pipe.test.TestPipe;
+import org.junit.Test;
+
+public class ExplainCommandTest {
+    @Test
+    public void testExplain() throws Exception {
+        PipeLinker linker = makeGraph();
+        ExplainCommand command = new ExplainCommand(linker);
+        ListLogger log = new ListLogger();
+
+        command.execute(new String[] { "-window0", "src" }, log);
+
+        // Must walk through the compound pipe to the named sink
+        assertEquals(7, log.size());
+        assertEquals("~src TestPipe, Object -> Object", log.get(0));
+        assertTrue(log.get(1).startsWith("    -> ~group: 10 objects, "));
+        assertTrue(log.get(1).endsWith(" us/object"));
+        assertEquals("~group TestPipe, Object -> Object", log.get(2));
+        assertTrue(log.get(3).startsWith("    -> #3: 10 objects, "));
+        assertEquals("#3 TestPipe, Object -> Object", log.get(4));
+        assertTrue(log.get(5).startsWith("    -> ~sink: 10 objects, "));
+        assertEquals("~sink TestPipe, Object -> Object", log.get(6));
+    }
+
+    @Test
+    public void testExplainAll() throws Exception {
+        PipeLinker linker = makeGraph();
+        ExplainCommand command = new ExplainCommand(linker);
+        ListLogger log = new ListLogger();
+
+        command.execute(new String[] { "-dot", "-window10" }, log);
+
+        // Must list each pipe once, under all its names
+        assertEquals("digraph pipes {", log.get(0));
+        assertEquals("}", log.get(log.size() - 1));
+        assertEquals(4 + 3 + 2, log.size());
+        assertTrue(log.get(1).startsWith("    n1 [label=\"~group\\n"));
+        assertTrue(log.get(4).startsWith("    n4 [label=\"~src\\n"));
+        assertTrue(log.get(5).startsWith("    n1 -> n2 [label=\"10 "));
+        assertTrue(log.get(7).startsWith("    n4 -> n1 [label=\"10 "));
+
+        // Must report unknown names
+        log.reset();
+        command.execute(new String[] { "missing" }, log);
+        assertEquals(1, log.size());
+    }
+
+    private static PipeLinker makeGraph() throws Exception {
+        TestPipe src = new TestPipe();
+        TestPipe sink = new TestPipe();
+        List<Pipe> pipes = new ArrayList<Pipe>();
+        pipes.add(new TestPipe());
+        pipes.add(new TestPipe());
+
+        CompoundPipe group = new CompoundPipe(pipes);
+        src.addConsumer(group);
+        group.addConsumer(sink);
+
+        for (Pipe pipe : pipes)
+            ((TestPipe) pipe).setPass(true);
+        src.setPass(true);
+        for (int i = 0; i < 10; i++)
+            src.consume(i);
+
+        PipeLinker linker = new PipeLinker();
+        linker.addPipe("src", src);
+        linker.addPipe("group", group);
+        linker.addPipe("sink", sink);
+        return linker;
+    }
+}
@@ -25,15 +25,27 @@
 package org.dnikulin.codon.commands.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+
 import org.dnikulin.codon.log.CountingLogger;
+import org.dnikulin.codon.pipe.command.registry.PipeCommands;
+import org.dnikulin.codon.pipe.command.registry.PipeCommandsPluginSlot;
+import org.dnikulin.codon.plugin.PluginImports;
 import org.dnikulin.codon.plugin.PluginLinker;
 import org.dnikulin.codon.plugin.PluginLoader;
+import org.dnikulin.codon.plugin.PluginNode;
 import org.junit.Test;
 
 public class PluginCommandTest {
     public static final String NODE_CLASS = "test.TestPluginNode";
+    public static final String NODE_COMMAND = "testplug";
 
     @Test
     public void testImportJar() {
@@ -83,12 +95,72 @@ public class PluginCommandTest {
         // Note that the linker and loader still have null loggers
         assertEquals(0, log.count());
 
-        // Loader must have bytes for the test node class
+        // Parent loader must still not have the test node class
         try {
             loader.loadClass(NODE_CLASS);
-        } catch (ClassNotFoundException ex) {
             fail();
+        } catch (ClassNotFoundException ex) {
+            // Correct
+        }
+
+        // Linker must have the test node from a child loader
+        assertTrue(hasNode(linker));
+    }
+
+    @Test
+    public void testUnloadReload() throws Exception {
+        PluginLinker linker = new PluginLinker();
+        PipeCommands commands = new PipeCommands();
+        linker.addPluginSlot(new PipeCommandsPluginSlot(commands));
+
+        PluginImports imports = new PluginImports(new PluginLoader(), linker);
+        PluginCommand command = new PluginCommand(imports);
+        String path = "bin/codon-testplugin.jar";
+
+        CountingLogger log = new CountingLogger();
+        command.execute(new String[] { path }, log);
+        assertEquals(0, log.count());
+        assertTrue(hasNode(linker));
+        assertTrue(commands.has(NODE_COMMAND));
+
+        PluginLoader first = imports.getLoader(new File(path));
+        assertSame(first, commands.get(NODE_COMMAND).getClass()
+                .getClassLoader());
+
+        // Importing again must be refused
+        command.execute(new String[] { path }, log);
+        assertEquals(1, log.count());
+
+        // Reload must replace node and command with fresh classes
+        command.execute(new String[] { "reload", path }, log);
+        assertEquals(1, log.count());
+        assertTrue(hasNode(linker));
+        assertEquals(1, linker.getPluginNodes().size());
+
+        PluginLoader second = imports.getLoader(new File(path));
+        assertNotSame(first, second);
+        assertSame(second, commands.get(NODE_COMMAND).getClass()
+                .getClassLoader());
+
+        // Unload must remove node and command
+        command.execute(new String[] { "unload", path }, log);
+        assertEquals(1, log.count());
+        assertFalse(hasNode(linker));
+        assertFalse(commands.has(NODE_COMMAND));
+        assertNull(imports.getLoader(new File(path)));
+        assertTrue(imports.getPaths().isEmpty());
+
+        // Unloading again must be reported
+        command.execute(new String[] { "unload", path }, log);
+        assertEquals(2, log.count());
+    }
+
+    private static boolean hasNode(PluginLinker linker) {
+        for (PluginNode node : linker.getPluginNodes()) {
+            if (node.getClass().getName().equals(NODE_CLASS))
+                return true;
         }
+        return false;
     }
 
     public static void testBadImport(String path) {
@@ -0,0 +1,82 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.commands.record;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.dnikulin.codon.daemon.DaemonProcess;
+import org.dnikulin.codon.daemon.thread.DaemonThreads;
+import org.dnikulin.codon.format.primitive.StringObjectFormat;
+import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.log.NullLogger;
+import org.dnikulin.codon.pipe.record.RecordPipe;
+import org.dnikulin.codon.pipe.record.ReplayCheckpoint;
+import org.dnikulin.codon.pipe.test.TestPipe;
+import org.junit.Test;
+
+public class ReplayDaemonPipeTest {
+    @Test
+    public void testSingleCheckpointConsumer() throws IOException {
+        File file = File.createTempFile("codon-replay", ".rec");
+        File checkpoint = new ReplayCheckpoint(file).getFile();
+
+        RecordPipe recorder = new RecordPipe(NullLogger.INSTANCE,
+                StringObjectFormat.INSTANCE, new FileOutputStream(file));
+        recorder.consume("test");
+        recorder.reset();
+
+        DaemonThreads threads = new DaemonThreads();
+        LineLogger log = NullLogger.INSTANCE;
+
+        try {
+            ReplayDaemonPipe pipe = new ReplayDaemonPipe(threads, log,
+                    StringObjectFormat.INSTANCE, file.getPath(),
+                    ReplayDaemonPipe.CHECKPOINT);
+
+            // Must reject a second consumer for the same checkpoint
+            assertTrue(pipe.addConsumer(new TestPipe()));
+            assertFalse(pipe.addConsumer(new TestPipe()));
+            assertEquals(1, threads.get().size());
+
+            // Must still allow consumers without a checkpoint
+            pipe = new ReplayDaemonPipe(threads, log,
+                    StringObjectFormat.INSTANCE, file.getPath());
+            assertTrue(pipe.addConsumer(new TestPipe()));
+            assertTrue(pipe.addConsumer(new TestPipe()));
+        } finally {
+            for (DaemonProcess process : threads.get())
+                process.cancel();
+
+            file.delete();
+            checkpoint.delete();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.daemon;
+
+import static org.dnikulin.codon.misc.TimeTools.sleepFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.dnikulin.codon.daemon.thread.DaemonThreads;
+import org.dnikulin.codon.log.CountingLogger;
+import org.dnikulin.codon.pipe.Consumer;
+import org.dnikulin.codon.pipe.test.TestPipe;
+import org.junit.Test;
+
+public class DaemonStatsTest {
+    @Test
+    public void testEmitted() {
+        DaemonStats stats = new DaemonStats();
+        TestPipe pipe = new TestPipe();
+        Consumer counted = stats.countEmitted(pipe);
+
+        // Must forward and count objects
+        assertEquals(pipe.getInputType(), counted.getInputType());
+        counted.consume("a");
+        counted.consume("b");
+        assertEquals(2, stats.getEmitted());
+        assertEquals(2, pipe.count());
+        assertEquals("b", pipe.last());
+    }
+
+    @Test
+    public void testResumes() {
+        DaemonStats stats = new DaemonStats();
+        assertEquals(0, stats.getResumeNanos());
+
+        stats.beginResume();
+        assertTrue(stats.getResumeNanos() >= 0);
+        stats.endResume(true);
+
+        // Must count resumes and leave the resume
+        assertEquals(1, stats.getResumes());
+        assertEquals(0, stats.getResumeNanos());
+        assertTrue(stats.getCpuNanos() >= 0);
+    }
+
+    @Test
+    public void testStall() {
+        DaemonStats stats = new DaemonStats();
+
+        // Must not report outside a resume
+        assertEquals(-1, stats.checkStall(0));
+
+        stats.beginResume();
+        sleepFor(5);
+
+        // Must report each stall once, with its duration
+        assertTrue(stats.checkStall(1) >= 1);
+        assertEquals(-1, stats.checkStall(1));
+
+        stats.endResume(false);
+        assertEquals(-1, stats.checkStall(0));
+    }
+
+    @Test
+    public void testWatchdog() {
+        DaemonThreads threads = new DaemonThreads();
+        CountingLogger log = new CountingLogger();
+        StallDaemon daemon = new StallDaemon();
+
+        DaemonProcess process = threads.start(daemon);
+        while (daemon.entered == false)
+            sleepFor(1);
+        sleepFor(5);
+
+        // Must log the stalled daemon once
+        DaemonWatchdog watchdog = new DaemonWatchdog(threads, log, 1);
+        watchdog.run();
+        watchdog.run();
+        assertEquals(1, log.count());
+
+        daemon.release = true;
+        process.waitForJoin();
+    }
+
+    private static class StallDaemon implements StepDaemon {
+        public volatile boolean entered;
+        public volatile boolean release;
+
+        @Override
+        public String getDaemonName() {
+            return "Stall daemon";
+        }
+
+        @Override
+        public int step(int limit) {
+            entered = true;
+            while (release == false)
+                sleepFor(1);
+            return DONE;
+        }
+
+        @Override
+        public long getIdleUntil() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void cancel() {
+            release = true;
+        }
+    }
+}
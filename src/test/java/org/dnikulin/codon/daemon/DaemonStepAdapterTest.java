@@ -0,0 +1,102 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.daemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.dnikulin.codon.daemon.except.DaemonAbortException;
+import org.dnikulin.codon.daemon.except.DaemonException;
+import org.dnikulin.codon.daemon.except.DaemonExitException;
+import org.junit.Test;
+
+public class DaemonStepAdapterTest {
+    @Test
+    public void testSteps() throws DaemonException {
+        LimitDaemon daemon = new LimitDaemon(10, false);
+        DaemonStepAdapter adapter = new DaemonStepAdapter(daemon);
+
+        // Must keep name
+        assertEquals(daemon.getDaemonName(), adapter.getDaemonName());
+
+        // Must resume exactly the given number of times
+        assertEquals(StepDaemon.CONTINUE, adapter.step(4));
+        assertEquals(4, daemon.resumes);
+        assertEquals(StepDaemon.CONTINUE, adapter.step(4));
+        assertEquals(8, daemon.resumes);
+
+        // Must translate exit into DONE
+        assertEquals(StepDaemon.DONE, adapter.step(4));
+        assertEquals(10, daemon.resumes);
+    }
+
+    @Test
+    public void testAbort() throws DaemonException {
+        LimitDaemon daemon = new LimitDaemon(3, true);
+        DaemonStepAdapter adapter = new DaemonStepAdapter(daemon);
+
+        // Must translate abort into ABORT
+        assertEquals(StepDaemon.ABORT, adapter.step(100));
+        assertEquals(3, daemon.resumes);
+
+        // Must forward cancel
+        adapter.cancel();
+        assertTrue(daemon.cancelled);
+    }
+
+    private static class LimitDaemon implements Daemon {
+        private final int limit;
+        private final boolean abort;
+
+        public int resumes;
+        public boolean cancelled;
+
+        public LimitDaemon(int limit, boolean abort) {
+            this.limit = limit;
+            this.abort = abort;
+        }
+
+        @Override
+        public String getDaemonName() {
+            return "Limit daemon";
+        }
+
+        @Override
+        public void resumeDaemon() throws DaemonException {
+            if (resumes >= limit) {
+                if (abort)
+                    throw new DaemonAbortException();
+                throw new DaemonExitException();
+            }
+
+            resumes++;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.daemon.pool;
+
+import static org.dnikulin.codon.daemon.DaemonProcess.ABORTED;
+import static org.dnikulin.codon.daemon.DaemonProcess.COMPLETED;
+import static org.dnikulin.codon.daemon.DaemonProcess.ERROR;
+import static org.dnikulin.codon.misc.TimeTools.sleepFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.dnikulin.codon.daemon.Daemon;
+import org.dnikulin.codon.daemon.StepDaemon;
+import org.dnikulin.codon.daemon.except.DaemonException;
+import org.dnikulin.codon.daemon.except.DaemonExitException;
+import org.dnikulin.codon.daemon.test.TestDaemon;
+import org.dnikulin.codon.log.NullLogger;
+import org.dnikulin.codon.pipe.test.TestPipe;
+import org.junit.Test;
+
+public class DaemonPoolTest {
+    private static final NullLogger LOG = NullLogger.INSTANCE;
+
+    @Test
+    public void testExit() {
+        DaemonPool pool = new DaemonPool(2);
+        CountingDaemon daemon = new CountingDaemon(null, 0, 1000);
+
+        DaemonTask task = pool.start(daemon, 3);
+        assertEquals(3, task.getPID());
+        task.waitForJoin();
+
+        // Must have completed all resumes
+        assertEquals(1000, daemon.resumes);
+        assertEquals(COMPLETED, task.getDaemonState());
+        assertFalse(task.isRunning());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testAbort() {
+        DaemonPool pool = new DaemonPool(1);
+        CountingDaemon daemon = new CountingDaemon(null, 0, Integer.MAX_VALUE);
+
+        DaemonTask task = pool.start(daemon, 0);
+        sleepFor(10);
+        task.cancel();
+        task.waitForJoin();
+
+        // Must record aborted state and cancel the daemon
+        assertEquals(ABORTED, task.getDaemonState());
+        assertTrue(daemon.cancelled);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testError() {
+        DaemonPool pool = new DaemonPool(1);
+        DaemonTask task = pool.start(new CountingDaemon(null, 0, -1), 0);
+        task.waitForJoin();
+
+        assertEquals(ERROR, task.getDaemonState());
+        assertTrue(task.getError() instanceof IllegalStateException);
+
+        // Must also finish on an Error, rather than hang joins
+        task = pool.start(new CountingDaemon(null, 0, -2), 1);
+        task.waitForJoin();
+
+        assertEquals(ERROR, task.getDaemonState());
+        assertFalse(task.isRunning());
+        assertTrue(task.getError() instanceof AssertionError);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFairness() {
+        // One worker must still interleave daemons
+        DaemonPool pool = new DaemonPool(1);
+        List<Integer> order = new ArrayList<Integer>();
+
+        // Hold the worker until both daemons are queued
+        CountDownLatch gate = new CountDownLatch(1);
+        pool.start(new GateDaemon(gate), 0);
+
+        int resumes = DaemonTask.SLICE_RESUMES * 10;
+        DaemonTask first = pool.start(new CountingDaemon(order, 1, resumes), 1);
+        DaemonTask second = pool.start(new CountingDaemon(order, 2, resumes), 2);
+        gate.countDown();
+
+        first.waitForJoin();
+        second.waitForJoin();
+
+        // The second daemon must run before the first completes
+        synchronized (order) {
+            assertEquals(resumes * 2, order.size());
+            assertTrue(order.indexOf(2) < order.lastIndexOf(1));
+        }
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void testBlocking() {
+        DaemonPool pool = new DaemonPool(1);
+        TestPipe consumer = new TestPipe();
+        TestDaemon daemon = new TestDaemon(LOG, consumer, 5, 1);
+
+        DaemonTask task = pool.start(daemon, 0);
+        task.waitForJoin();
+
+        assertEquals(5, consumer.count());
+        assertEquals(COMPLETED, task.getDaemonState());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCancelIdle() {
+        DaemonPool pool = new DaemonPool(1);
+        TestPipe consumer = new TestPipe();
+        TestDaemon daemon = new TestDaemon(LOG, consumer, 1, 60 * 1000);
+
+        DaemonTask task = pool.start(daemon, 0);
+        sleepFor(10);
+
+        // Must wake an idle daemon to abort it
+        long start = System.currentTimeMillis();
+        task.cancel();
+        task.waitForJoin();
+        assertTrue(System.currentTimeMillis() - start < 10 * 1000);
+
+        assertEquals(0, consumer.count());
+        assertEquals(ABORTED, task.getDaemonState());
+        pool.shutdown();
+    }
+
+    private static class GateDaemon implements StepDaemon {
+        private final CountDownLatch gate;
+
+        public GateDaemon(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public String getDaemonName() {
+            return "Gate daemon";
+        }
+
+        @Override
+        public int step(int limit) throws DaemonException {
+            try {
+                gate.await();
+            } catch (InterruptedException ex) {
+                // Ignore
+            }
+            return DONE;
+        }
+
+        @Override
+        public long getIdleUntil() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void cancel() {
+            gate.countDown();
+        }
+    }
+
+    private static class CountingDaemon implements Daemon {
+        private final List<Integer> order;
+        private final int id;
+        private final int limit;
+
+        public volatile int resumes;
+        public volatile boolean cancelled;
+
+        public CountingDaemon(List<Integer> order, int id, int limit) {
+            this.order = order;
+            this.id = id;
+            this.limit = limit;
+        }
+
+        @Override
+        public String getDaemonName() {
+            return "Counting daemon";
+        }
+
+        @Override
+        public void resumeDaemon() throws DaemonException {
+            if (limit == -2)
+                throw new AssertionError();
+            if (limit < 0)
+                throw new IllegalStateException();
+
+            if (resumes >= limit)
+                throw new DaemonExitException();
+
+            if (order != null) {
+                synchronized (order) {
+                    order.add(id);
+                }
+            }
+
+            resumes++;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -93,4 +93,23 @@ public class DaemonThreadTest {
         assertEquals(ABORTED, thread.getDaemonState());
         assertFalse(thread.isRunning());
     }
+
+    @Test
+    public void testCancelIdle() {
+        TestPipe consumer = new TestPipe();
+        TestDaemon daemon = new TestDaemon(LOG, consumer, 1, 60 * 1000);
+        DaemonThread thread = new DaemonThread(daemon, ID);
+
+        thread.start();
+        sleepFor(10);
+
+        // Must wake an idle daemon to abort it
+        long start = System.currentTimeMillis();
+        thread.cancel();
+        thread.waitForJoin();
+        assertTrue(System.currentTimeMillis() - start < 10 * 1000);
+
+        assertEquals(0, consumer.count());
+        assertEquals(ABORTED, thread.getDaemonState());
+    }
 }
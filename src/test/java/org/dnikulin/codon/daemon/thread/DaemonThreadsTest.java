@@ -0,0 +1,81 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.daemon.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.dnikulin.codon.daemon.DaemonProcess;
+import org.dnikulin.codon.daemon.DaemonStats;
+import org.dnikulin.codon.daemon.test.TestDaemon;
+import org.dnikulin.codon.log.NullLogger;
+import org.dnikulin.codon.pipe.test.TestPipe;
+import org.junit.Test;
+
+public class DaemonThreadsTest {
+    private static final NullLogger LOG = NullLogger.INSTANCE;
+
+    @Test
+    public void testStats() {
+        DaemonThreads threads = new DaemonThreads(DaemonThreads.POOL_MODE);
+        TestPipe consumer = new TestPipe();
+        DaemonStats stats = new DaemonStats();
+
+        TestDaemon daemon = new TestDaemon(LOG, stats.countEmitted(consumer),
+                5, 1);
+
+        DaemonProcess process = threads.start(daemon, stats);
+        process.waitForJoin();
+
+        // Must record resumes and emitted objects
+        assertTrue(process.getStats() == stats);
+        assertEquals(5, stats.getEmitted());
+        assertTrue(stats.getResumes() >= 5);
+    }
+
+    @Test
+    public void testReap() {
+        DaemonThreads threads = new DaemonThreads();
+
+        DaemonProcess first = threads.start(new TestDaemon(LOG,
+                new TestPipe(), 1, 1));
+        first.waitForJoin();
+
+        // Must keep terminated processes until reaped
+        assertTrue(threads.get(0) == first);
+        assertEquals(1, threads.get().size());
+
+        // Must reap terminated processes on start, but not reuse PIDs
+        DaemonProcess second = threads.start(new TestDaemon(LOG,
+                new TestPipe(), 1, 1));
+        assertEquals(1, second.getPID());
+        assertNull(threads.get(0));
+        second.waitForJoin();
+
+        assertEquals(1, threads.reap());
+        assertEquals(0, threads.get().size());
+    }
+}
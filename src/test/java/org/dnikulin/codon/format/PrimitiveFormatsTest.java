@@ -39,6 +39,7 @@ import org.dnikulin.codon.format.primitive.FloatObjectFormat;
 import org.dnikulin.codon.format.primitive.IntegerObjectFormat;
 import org.dnikulin.codon.format.primitive.LongObjectFormat;
 import org.dnikulin.codon.format.primitive.StringObjectFormat;
+import org.dnikulin.codon.misc.AllocationMeter;
 import org.junit.Test;
 
 public class PrimitiveFormatsTest {
@@ -73,6 +74,45 @@ public class PrimitiveFormatsTest {
                 Double.POSITIVE_INFINITY);
     }
 
+    @Test
+    public void testAllocation() {
+        // Fixed-size formats must allocate only the array or box
+        assertAllocation(IntegerObjectFormat.INSTANCE, 123456, 24);
+        assertAllocation(LongObjectFormat.INSTANCE, 123456L, 24);
+        assertAllocation(FloatObjectFormat.INSTANCE, 0.5f, 24);
+        assertAllocation(DoubleObjectFormat.INSTANCE, 0.25, 24);
+
+        // Strings must allocate only the bytes, or the string and its bytes
+        assertAllocation(StringObjectFormat.INSTANCE, "test-123456", 64);
+    }
+
+    public static void assertAllocation(final ObjectFormat format,
+            final Object object, int bytes) {
+
+        final byte[] encoded = format.encode(object);
+        String name = format.getFormatName();
+
+        AllocationMeter.assertAllocatesAtMost(name + " encode", bytes,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        format.encode(object);
+                    }
+                });
+
+        AllocationMeter.assertAllocatesAtMost(name + " decode", bytes,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            format.decode(encoded);
+                        } catch (ObjectFormatException ex) {
+                            throw new AssertionError(ex);
+                        }
+                    }
+                });
+    }
+
     public static void testFormat(ObjectFormat format, Object... objects) {
         // Test must be called with non-null format
         assertNotNull(format);
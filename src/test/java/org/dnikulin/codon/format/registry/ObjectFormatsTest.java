@@ -24,12 +24,14 @@
 
 package org.dnikulin.codon.format.registry;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import org.dnikulin.codon.format.ObjectFormat;
 import org.dnikulin.codon.format.except.ObjectFormatException;
 import org.dnikulin.codon.format.except.ObjectFormatNotFoundException;
+import org.dnikulin.codon.format.primitive.IntegerObjectFormat;
 import org.dnikulin.codon.format.primitive.StringObjectFormat;
 import org.junit.Test;
 
@@ -49,6 +51,34 @@ public class ObjectFormatsTest {
         assertSame(format1, formats.getByClass(format1.getObjectClass()));
     }
 
+    @Test
+    public void testIds() throws ObjectFormatException {
+        ObjectFormats formats = new ObjectFormats();
+        formats.add(StringObjectFormat.INSTANCE);
+        formats.add(IntegerObjectFormat.INSTANCE);
+
+        // Must number formats in order of registration
+        int string = formats.getId(StringObjectFormat.INSTANCE.getFormatName());
+        int integer = formats.getId(IntegerObjectFormat.INSTANCE
+                .getFormatName());
+        assertEquals(0, string);
+        assertEquals(1, integer);
+        assertSame(IntegerObjectFormat.INSTANCE, formats.getById(integer));
+
+        // Must keep IDs when formats are added again
+        formats.add(StringObjectFormat.INSTANCE);
+        assertSame(StringObjectFormat.INSTANCE, formats.getById(string));
+        assertEquals(2, formats.getFormats().size());
+
+        // Must throw for unassigned IDs
+        try {
+            formats.getById(2);
+            fail();
+        } catch (ObjectFormatNotFoundException ex) {
+            // Correct
+        }
+    }
+
     @Test(expected = ObjectFormatNotFoundException.class)
     public void testBadGet() throws ObjectFormatException {
         ObjectFormat format1 = StringObjectFormat.INSTANCE;
@@ -0,0 +1,132 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.log;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+
+public class AsyncLoggerTest {
+    @Test
+    public void testOrderAndFormat() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncLogger log = new AsyncLogger(out);
+
+        log.print("plain {}");
+        log.print(FormatLogger.INFO, null, "one {}", 1);
+        log.print(FormatLogger.WARN, "src", "two {} {}", "a", 'b');
+        log.flush();
+
+        // Must write in order, formatting only parameterized messages
+        assertEquals("plain {}\none 1\ntwo a b\n", out.toString());
+
+        log.close();
+        assertEquals(0, log.getDropped());
+    }
+
+    @Test
+    public void testLevelGating() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncLogger log = new AsyncLogger(out);
+
+        assertFalse(log.isLoggable(FormatLogger.DEBUG));
+        assertTrue(log.isLoggable(FormatLogger.INFO));
+
+        log.print(FormatLogger.DEBUG, null, "hidden {}", 1);
+        log.setLevel(FormatLogger.ERROR);
+        log.print(FormatLogger.WARN, null, "hidden {}", 2);
+        log.print(FormatLogger.ERROR, null, "shown {}", 3);
+
+        // Must not gate plain lines
+        log.print("plain");
+        log.close();
+
+        assertEquals("shown 3\nplain\n", out.toString());
+    }
+
+    @Test
+    public void testRateLimit() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncLogger log = new AsyncLogger(Channels.newChannel(out), 64);
+        log.setRate(3);
+
+        // A flood from one source must not hold back another
+        for (int i = 0; i < 10; i++)
+            log.print(FormatLogger.INFO, "flood", "f{}", i);
+        log.print(FormatLogger.INFO, "quiet", "q{}", 0);
+        log.close();
+
+        assertEquals("f0\nf1\nf2\nq0\n", out.toString());
+        assertEquals(7, log.getDropped());
+    }
+
+    @Test
+    public void testFullRing() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncLogger log = new AsyncLogger(Channels.newChannel(out), 2);
+
+        // Plain lines must wait for space rather than be dropped
+        StringBuilder expect = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            log.print("line " + i);
+            expect.append("line ").append(i).append('\n');
+        }
+        log.close();
+
+        assertEquals(expect.toString(), out.toString());
+        assertEquals(0, log.getDropped());
+
+        // Must drop once closed
+        log.print("late");
+        assertEquals(1, log.getDropped());
+    }
+
+    @Test
+    public void testLogTools() {
+        assertEquals("a 1 b 2 c", LogTools.format("a {} b {} c", 1, 2));
+        assertEquals("only 5 {}", LogTools.format("only {} {}", 5));
+        assertEquals("none", LogTools.format("none", 5));
+
+        // Plain loggers must receive formatted lines, except DEBUG
+        CountingLogger count = new CountingLogger();
+        LogTools.print(count, FormatLogger.DEBUG, null, "d {}", 1);
+        assertEquals(0, count.count());
+        LogTools.print(count, FormatLogger.INFO, null, "i {}", 1);
+        assertEquals(1, count.count());
+
+        // Indirect loggers must pass messages on unformatted
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AsyncLogger async = new AsyncLogger(out);
+        IndirectLogger indirect = new IndirectLogger(async);
+        indirect.print(FormatLogger.WARN, null, "w {}", "x");
+        async.close();
+        assertEquals("w x\n", out.toString());
+    }
+}
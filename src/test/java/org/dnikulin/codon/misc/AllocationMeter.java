@@ -0,0 +1,156 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.misc;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Test utility measuring the heap bytes allocated per operation by the current
+ * thread, using the HotSpot extension of ThreadMXBean. Operations are run in
+ * rounds, first to let the JIT compiler settle, then to measure; the lowest
+ * round is reported, so that one-off allocations (class loading, compilation,
+ * buffer growth) do not count. Tests are skipped on JVMs without support.
+ */
+public final class AllocationMeter {
+    /** Operations per round. */
+    public static final int ROUND_OPERATIONS = 10000;
+
+    /** Rounds run before measuring. */
+    public static final int WARMUP_ROUNDS = 5;
+
+    /** Rounds measured. */
+    public static final int MEASURED_ROUNDS = 5;
+
+    /** Bytes per operation that still count as no allocation. */
+    public static final double TOLERANCE = 1.0;
+
+    private static final com.sun.management.ThreadMXBean BEAN = findBean();
+
+    /**
+     * Query whether allocation can be measured on this JVM.
+     * 
+     * @return true if supported
+     */
+    public static boolean isSupported() {
+        return BEAN != null;
+    }
+
+    /**
+     * Query the bytes allocated so far by the current thread.
+     * 
+     * @return Allocated bytes, or -1 if not supported
+     */
+    public static long getAllocatedBytes() {
+        if (BEAN == null)
+            return -1;
+        return BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Measure the bytes allocated per run of an operation.
+     * 
+     * @param operation
+     *            Operation to run repeatedly
+     * @return Lowest mean bytes per operation over the measured rounds
+     */
+    public static double bytesPerOperation(Runnable operation) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            runRound(operation);
+
+        long lowest = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++)
+            lowest = Math.min(lowest, runRound(operation));
+
+        return (double) lowest / ROUND_OPERATIONS;
+    }
+
+    /**
+     * Assert that an operation allocates no more than a number of bytes each
+     * time it runs. Skips the calling test if allocation cannot be measured.
+     * 
+     * @param name
+     *            Operation name for the failure message
+     * @param bytes
+     *            Bytes allowed per operation
+     * @param operation
+     *            Operation to run repeatedly
+     */
+    public static void assertAllocatesAtMost(String name, double bytes,
+            Runnable operation) {
+
+        assumeTrue(isSupported());
+
+        double measured = bytesPerOperation(operation);
+        assertTrue(name + " allocated " + measured + " bytes per operation, "
+                + "expected at most " + bytes, measured <= bytes);
+    }
+
+    /**
+     * Assert that an operation allocates nothing in the steady state.
+     * 
+     * @param name
+     *            Operation name for the failure message
+     * @param operation
+     *            Operation to run repeatedly
+     */
+    public static void assertNoAllocation(String name, Runnable operation) {
+        assertAllocatesAtMost(name, TOLERANCE, operation);
+    }
+
+    private static long runRound(Runnable operation) {
+        long before = getAllocatedBytes();
+        for (int i = 0; i < ROUND_OPERATIONS; i++)
+            operation.run();
+        return getAllocatedBytes() - before;
+    }
+
+    private static com.sun.management.ThreadMXBean findBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean))
+                return null;
+
+            com.sun.management.ThreadMXBean sun;
+            sun = (com.sun.management.ThreadMXBean) bean;
+            if (!sun.isThreadAllocatedMemorySupported())
+                return null;
+
+            sun.setThreadAllocatedMemoryEnabled(true);
+            return sun;
+        } catch (LinkageError ex) {
+            // Not a HotSpot-derived JVM
+            return null;
+        } catch (UnsupportedOperationException ex) {
+            return null;
+        }
+    }
+
+    private AllocationMeter() {
+    }
+}
@@ -0,0 +1,66 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.misc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+public class AllocationMeterTest {
+    private static volatile Object sink;
+
+    @Test
+    public void testMeasuresAllocation() {
+        assumeTrue(AllocationMeter.isSupported());
+
+        double bytes = AllocationMeter.bytesPerOperation(new Runnable() {
+            @Override
+            public void run() {
+                sink = new byte[1000];
+            }
+        });
+
+        // Must see the array, plus at most its header and padding
+        assertTrue(bytes >= 1000);
+        assertTrue(bytes <= 1100);
+    }
+
+    @Test
+    public void testMeasuresNothing() {
+        assumeTrue(AllocationMeter.isSupported());
+
+        final int[] counter = new int[1];
+        double bytes = AllocationMeter.bytesPerOperation(new Runnable() {
+            @Override
+            public void run() {
+                counter[0]++;
+            }
+        });
+
+        assertEquals(0.0, bytes, AllocationMeter.TOLERANCE);
+    }
+}
@@ -0,0 +1,116 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.misc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0.0, histogram.getMean(), 0.0);
+    }
+
+    @Test
+    public void testSmallValuesExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(99, histogram.getPercentile(99));
+        assertEquals(100, histogram.getPercentile(100));
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+
+        // Negative values must count as zero
+        histogram.record(-5);
+        assertEquals(0, histogram.getMin());
+    }
+
+    @Test
+    public void testRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000000; i++)
+            histogram.record(i * 1000);
+
+        assertEquals(1000000000L, histogram.getMax());
+        assertNear(500000000L, histogram.getPercentile(50));
+        assertNear(990000000L, histogram.getPercentile(99));
+        assertNear(999000000L, histogram.getPercentile(99.9));
+        assertEquals(1000000000L, histogram.getPercentile(100));
+
+        // Largest values must still fit
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testBuckets() {
+        // Each bucket's highest value must map back to it
+        long last = -1;
+        for (int i = 0; i < LatencyHistogram.indexOf(Long.MAX_VALUE); i++) {
+            long high = LatencyHistogram.highestOf(i);
+            assertTrue(high > last);
+            assertEquals(i, LatencyHistogram.indexOf(high));
+            assertEquals(i + 1, LatencyHistogram.indexOf(high + 1));
+            last = high;
+        }
+    }
+
+    @Test
+    public void testAddReset() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(1000);
+        second.record(20);
+
+        first.add(second);
+        assertEquals(3, first.getCount());
+        assertEquals(10, first.getMin());
+        assertEquals(1000, first.getMax());
+        assertEquals(20, first.getPercentile(50));
+
+        first.reset();
+        assertEquals(0, first.getCount());
+        assertEquals(0, first.getMax());
+        assertEquals(2, second.getCount());
+    }
+
+    private static void assertNear(long expected, long actual) {
+        long error = Math.abs(expected - actual);
+        assertTrue(actual + " not near " + expected, error <= expected / 64);
+    }
+}
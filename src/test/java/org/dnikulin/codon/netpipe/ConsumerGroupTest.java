@@ -0,0 +1,158 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.netpipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dnikulin.codon.netpipe.packet.ObjectListener;
+import org.junit.Test;
+
+public class ConsumerGroupTest {
+    public static final int OBJECTS = 3000;
+
+    @Test
+    public void testRoundRobin() {
+        ConsumerGroup group = new ConsumerGroup("test",
+                ConsumerGroup.ROUND_ROBIN);
+        List<Member> members = join(group, 3);
+
+        for (int i = 0; i < OBJECTS; i++)
+            group.takeObject(new byte[] { (byte) i });
+
+        // Every member must receive an equal share
+        for (Member member : members)
+            assertEquals(OBJECTS / 3, member.objects.size());
+    }
+
+    @Test
+    public void testHashRebalance() {
+        ConsumerGroup group = new ConsumerGroup("test", ConsumerGroup.HASH);
+        List<Member> members = join(group, 4);
+
+        Map<Integer, Member> before = deliver(group, members);
+
+        // Every member must receive some share
+        for (Member member : members)
+            assertTrue(member.objects.size() > OBJECTS / 8);
+
+        // Equal objects must reach the same member
+        assertEquals(before, deliver(group, members));
+
+        Member gone = members.remove(1);
+        assertTrue(group.leave(gone));
+        assertEquals(3, group.size());
+
+        // Only the departed member's objects may move
+        Map<Integer, Member> after = deliver(group, members);
+        for (int i = 0; i < OBJECTS; i++) {
+            if (before.get(i) != gone)
+                assertTrue(before.get(i) == after.get(i));
+            else
+                assertTrue(after.get(i) != gone);
+        }
+    }
+
+    @Test
+    public void testEmptyGroup() {
+        ConsumerGroup group = new ConsumerGroup("test", ConsumerGroup.HASH);
+
+        // Must drop objects without members
+        group.takeObject(new byte[] { 1 });
+        assertEquals(0, group.size());
+    }
+
+    @Test
+    public void testChannelGroups() {
+        ObjectChannel channel = new ObjectChannel();
+        Member broadcast = new Member();
+        Member first = new Member();
+        Member second = new Member();
+
+        channel.addListener(broadcast);
+        channel.joinGroup("g", ConsumerGroup.ROUND_ROBIN, first);
+        channel.joinGroup("g", ConsumerGroup.ROUND_ROBIN, second);
+
+        for (int i = 0; i < 10; i++)
+            channel.takeObject(new byte[] { (byte) i });
+
+        // Broadcast listeners see everything, group members share
+        assertEquals(10, broadcast.objects.size());
+        assertEquals(5, first.objects.size());
+        assertEquals(5, second.objects.size());
+
+        channel.leaveGroup("g", first);
+        channel.takeObject(new byte[] { 10 });
+        assertEquals(6, second.objects.size());
+    }
+
+    private static List<Member> join(ConsumerGroup group, int count) {
+        List<Member> members = new ArrayList<Member>();
+        for (int i = 0; i < count; i++) {
+            Member member = new Member();
+            group.join(member);
+            members.add(member);
+        }
+        return members;
+    }
+
+    private static Map<Integer, Member> deliver(ConsumerGroup group,
+            List<Member> members) {
+
+        for (Member member : members)
+            member.objects.clear();
+
+        for (int i = 0; i < OBJECTS; i++)
+            group.takeObject(key(i));
+
+        Map<Integer, Member> owners = new HashMap<Integer, Member>();
+        for (Member member : members) {
+            for (byte[] object : member.objects)
+                owners.put(((object[0] & 0xFF) << 8) | (object[1] & 0xFF),
+                        member);
+        }
+
+        assertEquals(OBJECTS, owners.size());
+        return owners;
+    }
+
+    private static byte[] key(int i) {
+        return new byte[] { (byte) (i >> 8), (byte) i };
+    }
+
+    private static class Member implements ObjectListener {
+        public final List<byte[]> objects = new ArrayList<byte[]>();
+
+        @Override
+        public void takeObject(byte[] body) {
+            objects.add(body);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.netpipe;
+
+import static org.dnikulin.codon.misc.TimeTools.sleepFor;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dnikulin.codon.log.CountingLogger;
+import org.dnikulin.codon.misc.StatusToken;
+import org.dnikulin.codon.net.util.ConnectStatus;
+import org.dnikulin.codon.netpipe.packet.ChannelObjectReader;
+import org.dnikulin.codon.netpipe.packet.ChannelObjectWriter;
+import org.dnikulin.codon.netpipe.packet.ObjectListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DurableObjectChannelTest {
+    public static final int PORT = 37163;
+    public static final int COUNT = 1000;
+
+    private File dir;
+
+    @Before
+    public void makeDirectory() throws IOException {
+        dir = File.createTempFile("codon-durable", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+    }
+
+    @After
+    public void removeDirectory() {
+        for (File file : dir.listFiles())
+            file.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testRecover() throws IOException {
+        File file = new File(dir, "test.log");
+        DurableObjectChannel channel = new DurableObjectChannel(file);
+
+        for (int i = 0; i < COUNT; i++)
+            channel.takeObject(makeObject(i));
+
+        long end = channel.getEndOffset();
+        assertEquals(expectedOffset(COUNT), end);
+        channel.close();
+
+        // Simulate a crash while appending
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(end);
+        raf.writeInt(100);
+        raf.write(new byte[10]);
+        raf.close();
+
+        // Incomplete record must be discarded
+        channel = new DurableObjectChannel(file);
+        assertEquals(end, channel.getEndOffset());
+        assertEquals(end, file.length());
+        channel.close();
+    }
+
+    @Test
+    public void testCatchUp() throws IOException {
+        DurableObjectChannel channel = new DurableObjectChannel(new File(dir,
+                "test.log"));
+
+        for (int i = 0; i < COUNT; i++)
+            channel.takeObject(makeObject(i));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelObjectWriter writer = new ChannelObjectWriter(Channels
+                .newChannel(out));
+
+        // Start from the middle, then continue live
+        int start = COUNT / 2;
+        channel.addListener(writer, writer, expectedOffset(start));
+
+        for (int i = COUNT; i < COUNT + 10; i++)
+            channel.takeObject(makeObject(i));
+
+        while (writer.getWriteDelay() >= 0)
+            writer.flush();
+
+        List<byte[]> objects = readObjects(out.toByteArray());
+
+        // Must receive logged then live objects, without gaps
+        assertEquals(COUNT + 10 - start, objects.size());
+        for (int i = start; i < COUNT + 10; i++)
+            assertArrayEquals(makeObject(i), objects.get(i - start));
+
+        channel.close();
+    }
+
+    @Test
+    public void testMisalignedOffset() throws IOException {
+        CountingLogger log = new CountingLogger();
+        DurableObjectChannel channel = new DurableObjectChannel(new File(dir,
+                "test.log"), log);
+
+        // Enough records to use several index entries
+        int count = DurableObjectChannel.INDEX_INTERVAL * 3;
+        for (int i = 0; i < count; i++)
+            channel.takeObject(makeObject(i));
+
+        // Must find the record containing any offset
+        int middle = DurableObjectChannel.INDEX_INTERVAL * 2 + 7;
+        long header = expectedOffset(middle);
+        assertEquals(header, channel.alignOffset(header));
+        assertEquals(header, channel.alignOffset(header + 1));
+        assertEquals(header, channel.alignOffset(expectedOffset(middle + 1)
+                - 1));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelObjectWriter writer = new ChannelObjectWriter(Channels
+                .newChannel(out));
+
+        // Must start from the whole record and log the misalignment
+        channel.addListener(writer, writer, header + 1);
+        assertEquals(1, log.count());
+
+        while (writer.getWriteDelay() >= 0)
+            writer.flush();
+
+        List<byte[]> objects = readObjects(out.toByteArray());
+        assertEquals(count - middle, objects.size());
+        for (int i = middle; i < count; i++)
+            assertArrayEquals(makeObject(i), objects.get(i - middle));
+
+        channel.close();
+    }
+
+    @Test
+    public void testLoopback() throws IOException {
+        List<byte[]> objects = catchUp(PORT, 0);
+
+        synchronized (objects) {
+            assertEquals(COUNT, objects.size());
+            assertArrayEquals(makeObject(COUNT - 1), objects.get(COUNT - 1));
+        }
+    }
+
+    @Test
+    public void testLoopbackMisaligned() throws IOException {
+        // Server must tell the client it started from the whole record
+        int middle = COUNT / 2;
+        long header = expectedOffset(middle);
+        List<byte[]> objects = catchUp(PORT + 1, header + 1);
+
+        synchronized (objects) {
+            assertEquals(COUNT - middle, objects.size());
+            assertArrayEquals(makeObject(middle), objects.get(0));
+        }
+    }
+
+    private List<byte[]> catchUp(int port, long offset)
+            throws IOException {
+
+        NetPipes netPipes = new NetPipes();
+
+        try {
+            PipeServer server = netPipes.serve(port, dir, null);
+            DurableObjectChannel channel = (DurableObjectChannel) server
+                    .makeChannel("durable");
+
+            // Objects sent before any subscriber connects
+            for (int i = 0; i < COUNT; i++)
+                channel.takeObject(makeObject(i));
+
+            final List<byte[]> objects = new ArrayList<byte[]>();
+            PipeClientToServerLink link = new PipeClientToServerLink(
+                    "durable", false, true);
+            link.setStartOffset(offset);
+            link.setListener(new ObjectListener() {
+                @Override
+                public void takeObject(byte[] body) {
+                    synchronized (objects) {
+                        objects.add(body);
+                    }
+                }
+            });
+
+            StatusToken<ConnectStatus> status = ConnectStatus.make();
+            netPipes.getSelectorThread().connect("localhost", port, link,
+                    status);
+            status.waitForAny(ConnectStatus.CONNECTED, ConnectStatus.FAILED);
+
+            long end = expectedOffset(COUNT);
+            for (int i = 0; (i < 1000) && (link.getOffset() < end); i++)
+                sleepFor(10);
+
+            // Must catch up on every logged object
+            assertEquals(end, link.getOffset());
+            return objects;
+        } finally {
+            netPipes.shutdown();
+        }
+    }
+
+    private static List<byte[]> readObjects(byte[] bytes) throws IOException {
+        final List<byte[]> objects = new ArrayList<byte[]>();
+        ChannelObjectReader reader = new ChannelObjectReader(Channels
+                .newChannel(new ByteArrayInputStream(bytes)),
+                new ObjectListener() {
+                    @Override
+                    public void takeObject(byte[] body) {
+                        objects.add(body);
+                    }
+                });
+
+        try {
+            while (true)
+                reader.consume();
+        } catch (EOFException ex) {
+            // Reached end of stream
+        }
+
+        return objects;
+    }
+
+    private static byte[] makeObject(int i) {
+        byte[] object = new byte[i % 50];
+        for (int j = 0; j < object.length; j++)
+            object[j] = (byte) (i * j);
+        return object;
+    }
+
+    private static long expectedOffset(int count) {
+        long offset = 0;
+        for (int i = 0; i < count; i++)
+            offset += 4 + makeObject(i).length;
+        return offset;
+    }
+}
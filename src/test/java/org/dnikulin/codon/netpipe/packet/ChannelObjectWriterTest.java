@@ -0,0 +1,363 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.netpipe.packet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dnikulin.codon.misc.AllocationMeter;
+import org.junit.Test;
+
+public class ChannelObjectWriterTest {
+    public static final int OBJECTS = 2000;
+
+    @Test
+    public void testPlainRoundTrip() throws IOException {
+        List<byte[]> objects = makeObjects();
+        byte[] wire = write(objects, FlushPolicy.DEFAULT, false);
+
+        // Plain frames carry a 4-byte header per object
+        assertEquals(totalBytes(objects) + (4 * objects.size()), wire.length);
+        assertObjects(objects, read(wire, objects.size()));
+    }
+
+    @Test
+    public void testBatchRoundTrip() throws IOException {
+        List<byte[]> objects = makeObjects();
+        byte[] plain = write(objects, FlushPolicy.DEFAULT, false);
+        byte[] wire = write(objects, FlushPolicy.DEFAULT, true);
+
+        // Batch frames must be smaller than plain frames
+        assertTrue(wire.length < plain.length);
+        assertObjects(objects, read(wire, objects.size()));
+    }
+
+    @Test
+    public void testBatchLimits() throws IOException {
+        List<byte[]> objects = makeObjects();
+        FlushPolicy policy = new FlushPolicy(100, 3, 0);
+        byte[] wire = write(objects, policy, true);
+
+        assertObjects(objects, read(wire, objects.size()));
+    }
+
+    @Test
+    public void testFramesBeforeObjects() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelObjectWriter writer = new ChannelObjectWriter(Channels
+                .newChannel(out));
+
+        writer.takeObject(new byte[] { 1, 2, 3 });
+        writer.takeFrame(Frames.makeFrame(Frames.ACCEPT,
+                new byte[] { Frames.FEATURE_BATCH }));
+        drain(writer);
+
+        final List<Integer> types = new ArrayList<Integer>();
+        final List<byte[]> objects = new ArrayList<byte[]>();
+
+        ChannelObjectReader reader = new ChannelObjectReader(Channels
+                .newChannel(new ByteArrayInputStream(out.toByteArray())),
+                new ObjectListener() {
+                    @Override
+                    public void takeObject(byte[] body) {
+                        types.add(-1);
+                        objects.add(body);
+                    }
+                }, new NullFrameListener() {
+                    @Override
+                    public void takeFrame(int type, byte[] frame, int offset,
+                            int length) {
+                        assertEquals(1, length);
+                        assertEquals(Frames.FEATURE_BATCH, frame[offset]);
+                        types.add(type);
+                    }
+                });
+
+        consumeAll(reader);
+
+        // Frame must be delivered first, then the object
+        assertEquals(2, types.size());
+        assertEquals(Frames.ACCEPT, (int) types.get(0));
+        assertEquals(-1, (int) types.get(1));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, objects.get(0));
+    }
+
+    @Test
+    public void testChannelRoundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelObjectWriter writer = new ChannelObjectWriter(Channels
+                .newChannel(out));
+
+        writer.setBatching(true);
+
+        List<byte[]> objects = makeObjects();
+        for (int i = 0; i < objects.size(); i++)
+            writer.takeChannelObject(i % 3, objects.get(i));
+
+        // Plain objects share the round-robin with channels
+        writer.takeObject(new byte[] { 9 });
+        drain(writer);
+
+        final List<List<byte[]>> received = new ArrayList<List<byte[]>>();
+        for (int i = 0; i < 4; i++)
+            received.add(new ArrayList<byte[]>());
+
+        ChannelObjectReader reader = new ChannelObjectReader(Channels
+                .newChannel(new ByteArrayInputStream(out.toByteArray())),
+                new ObjectListener() {
+                    @Override
+                    public void takeObject(byte[] body) {
+                        received.get(3).add(body);
+                    }
+                }, new NullFrameListener() {
+                    @Override
+                    public void takeChannelObject(int channel, byte[] body) {
+                        received.get(channel).add(body);
+                    }
+                });
+
+        consumeAll(reader);
+
+        for (int channel = 0; channel < 3; channel++) {
+            List<byte[]> expected = new ArrayList<byte[]>();
+            for (int i = channel; i < objects.size(); i += 3)
+                expected.add(objects.get(i));
+
+            // Each channel must receive its objects in order
+            assertObjects(expected, received.get(channel));
+        }
+
+        assertEquals(1, received.get(3).size());
+    }
+
+    @Test
+    public void testChannelFairness() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelObjectWriter writer = new ChannelObjectWriter(Channels
+                .newChannel(out));
+
+        // Flood one channel before another has a single object
+        for (int i = 0; i < 100; i++)
+            writer.takeChannelObject(1, new byte[1000]);
+        writer.takeChannelObject(2, new byte[] { 2 });
+        drain(writer);
+
+        final List<Integer> order = new ArrayList<Integer>();
+
+        ChannelObjectReader reader = new ChannelObjectReader(Channels
+                .newChannel(new ByteArrayInputStream(out.toByteArray())),
+                NullObjectListener.INSTANCE, new NullFrameListener() {
+                    @Override
+                    public void takeChannelObject(int channel, byte[] body) {
+                        order.add(channel);
+                    }
+                });
+
+        consumeAll(reader);
+
+        // Second channel must be served on the second turn
+        assertEquals(101, order.size());
+        assertEquals(2, (int) order.get(1));
+    }
+
+    @Test
+    public void testRemoveChannel() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelObjectWriter writer = new ChannelObjectWriter(Channels
+                .newChannel(out));
+
+        writer.takeChannelObject(5, new byte[] { 1 });
+        assertEquals(0, writer.getWriteDelay());
+
+        // Discarded objects must not be written
+        writer.removeChannel(5);
+        assertEquals(-1, writer.getWriteDelay());
+    }
+
+    @Test
+    public void testWriteDelay() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelObjectWriter writer = new ChannelObjectWriter(Channels
+                .newChannel(out));
+
+        writer.setPolicy(new FlushPolicy(1024, 4, 60000));
+
+        // Nothing to write
+        assertEquals(-1, writer.getWriteDelay());
+
+        // Objects must linger until a threshold is reached
+        for (int i = 0; i < 3; i++) {
+            writer.takeObject(new byte[] { (byte) i });
+            assertTrue(writer.getWriteDelay() > 0);
+            assertTrue(!writer.wantsWrite());
+        }
+
+        writer.takeObject(new byte[] { 3 });
+        assertEquals(0, writer.getWriteDelay());
+        assertTrue(writer.wantsWrite());
+    }
+
+    @Test
+    public void testPrepareAllocation() {
+        WritableByteChannel discard = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int count = src.remaining();
+                src.position(src.limit());
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        final ChannelObjectWriter writer = new ChannelObjectWriter(discard);
+        final byte[] object = new byte[100];
+
+        Runnable operation = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 4; i++) {
+                        writer.takeChannelObject(i, object);
+                        writer.takeChannelObject(i, object);
+                    }
+                    writer.flush();
+                } catch (IOException ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+        };
+
+        // Framing queued objects must not allocate, with or without batches
+        AllocationMeter.assertNoAllocation("ChannelObjectWriter.prepare",
+                operation);
+
+        writer.setBatching(true);
+        AllocationMeter.assertNoAllocation("ChannelObjectWriter.prepare",
+                operation);
+    }
+
+    private static List<byte[]> makeObjects() {
+        List<byte[]> objects = new ArrayList<byte[]>();
+
+        for (int i = 0; i < OBJECTS; i++) {
+            byte[] object = new byte[i % 300];
+            for (int j = 0; j < object.length; j++)
+                object[j] = (byte) (i + j);
+            objects.add(object);
+        }
+
+        return objects;
+    }
+
+    private static int totalBytes(List<byte[]> objects) {
+        int total = 0;
+        for (byte[] object : objects)
+            total += object.length;
+        return total;
+    }
+
+    private static byte[] write(List<byte[]> objects, FlushPolicy policy,
+            boolean batching) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelObjectWriter writer = new ChannelObjectWriter(Channels
+                .newChannel(out));
+
+        writer.setPolicy(policy);
+        writer.setBatching(batching);
+
+        for (byte[] object : objects)
+            writer.takeObject(object);
+
+        drain(writer);
+        return out.toByteArray();
+    }
+
+    private static void drain(ChannelObjectWriter writer) throws IOException {
+        while (writer.getWriteDelay() >= 0)
+            writer.flush();
+    }
+
+    private static List<byte[]> read(byte[] wire, int count)
+            throws IOException {
+
+        final List<byte[]> objects = new ArrayList<byte[]>();
+        ReadableByteChannel channel = Channels
+                .newChannel(new ByteArrayInputStream(wire));
+
+        ChannelObjectReader reader = new ChannelObjectReader(channel,
+                new ObjectListener() {
+                    @Override
+                    public void takeObject(byte[] body) {
+                        objects.add(body);
+                    }
+                });
+
+        consumeAll(reader);
+        assertEquals(count, objects.size());
+        return objects;
+    }
+
+    private static void consumeAll(ChannelObjectReader reader)
+            throws IOException {
+        try {
+            for (int i = 0; i < 10000; i++)
+                reader.consume();
+        } catch (EOFException ex) {
+            // Reached end of stream
+            return;
+        }
+
+        fail("Reader did not report end of stream");
+    }
+
+    private static void assertObjects(List<byte[]> expected,
+            List<byte[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertArrayEquals(expected.get(i), actual.get(i));
+    }
+}
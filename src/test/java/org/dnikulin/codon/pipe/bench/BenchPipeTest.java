@@ -0,0 +1,113 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.bench;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.dnikulin.codon.log.ListLogger;
+import org.dnikulin.codon.misc.TimeTools;
+import org.dnikulin.codon.pipe.test.TestPipe;
+import org.dnikulin.codon.timer.TimerWheel;
+import org.junit.Test;
+
+public class BenchPipeTest {
+    @Test
+    public void testValueStamps() {
+        ValueStamps stamps = new ValueStamps(5);
+        Object first = new Object();
+        Object second = new Object();
+
+        stamps.put(first, 10);
+        assertEquals(ValueStamps.NONE, stamps.take(second));
+        assertEquals(10, stamps.take(first));
+
+        // Must take each stamp only once
+        assertEquals(ValueStamps.NONE, stamps.take(first));
+    }
+
+    @Test
+    public void testCountPassReset() {
+        TimerWheel timer = new TimerWheel();
+        ValueStamps stamps = new ValueStamps();
+        ListLogger log = new ListLogger();
+
+        try {
+            BenchPipe bench = new BenchPipe(timer, stamps, 60000);
+            bench.setLineLogger(log);
+            TestPipe sink = new TestPipe();
+            bench.addConsumer(sink);
+
+            for (int i = 0; i < 100; i++) {
+                Object value = "value-" + i;
+                if (i % 2 == 0)
+                    stamps.put(value, System.nanoTime());
+                bench.consume(value);
+            }
+
+            // Must count and pass every object
+            assertEquals(100, bench.getCount());
+            assertEquals(100, sink.count());
+            assertEquals(0, log.size());
+
+            // Must report the interval and the total on reset
+            bench.reset();
+            assertEquals(2, log.size());
+            assertTrue(log.get(0).startsWith("Interval: 100 objects"));
+            assertTrue(log.get(1).startsWith("Total: 100 objects"));
+            assertTrue(log.get(1).contains("latency"));
+            assertEquals(0, bench.getCount());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    public void testIdleSummary() {
+        TimerWheel timer = new TimerWheel();
+        ListLogger log = new ListLogger();
+
+        try {
+            BenchPipe bench = new BenchPipe(timer, new ValueStamps(), 20);
+            bench.setLineLogger(log);
+            bench.consume("unstamped");
+
+            // Must report once, then summarise after an idle interval
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((log.size() < 2) && (System.currentTimeMillis() < deadline))
+                TimeTools.sleepFor(10);
+
+            assertEquals(2, log.size());
+            assertTrue(log.get(1).startsWith("Total: 1 objects"));
+            assertTrue(log.get(1).endsWith("no latency stamps"));
+
+            // Must not report again until more objects arrive
+            TimeTools.sleepFor(100);
+            assertEquals(2, log.size());
+        } finally {
+            timer.stop();
+        }
+    }
+}
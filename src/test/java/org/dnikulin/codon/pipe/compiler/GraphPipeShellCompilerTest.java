@@ -0,0 +1,338 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.dnikulin.codon.command.EffectCommand;
+import org.dnikulin.codon.commands.limit.FilterCommand;
+import org.dnikulin.codon.commands.record.RecordCommand;
+import org.dnikulin.codon.daemon.DaemonProcess;
+import org.dnikulin.codon.daemon.thread.DaemonThreads;
+import org.dnikulin.codon.format.primitive.IntegerObjectFormat;
+import org.dnikulin.codon.format.registry.ObjectFormats;
+import org.dnikulin.codon.log.LineLogger;
+import org.dnikulin.codon.log.NullLogger;
+import org.dnikulin.codon.pipe.BlockingPipe;
+import org.dnikulin.codon.pipe.Pipe;
+import org.dnikulin.codon.pipe.command.PipeCommand;
+import org.dnikulin.codon.pipe.command.registry.PipeCommands;
+import org.dnikulin.codon.pipe.except.PipeException;
+import org.dnikulin.codon.pipe.except.PipeFactoryException;
+import org.dnikulin.codon.pipe.except.PipeNameInUseException;
+import org.dnikulin.codon.pipe.except.PipeNotFoundException;
+import org.dnikulin.codon.pipe.except.PipeSyntaxException;
+import org.dnikulin.codon.pipe.except.PipeTypeException;
+import org.dnikulin.codon.pipe.limit.FilterPipe;
+import org.dnikulin.codon.pipe.simple.CompoundPipe;
+import org.dnikulin.codon.pipe.simple.FusedPipe;
+import org.dnikulin.codon.pipe.test.TestPipe;
+import org.dnikulin.codon.pipe.test.TestPipeCommand;
+import org.junit.Test;
+
+public class GraphPipeShellCompilerTest {
+    public static final String[] EMPTY = new String[] {};
+
+    private static final String INTS =
+            "test java.lang.Integer java.lang.Integer";
+
+    @Test
+    public void testCorrectSyntax() throws PipeException {
+        PipeCommands commands = makeTestCommands();
+        PipeLinker linker = new PipeLinker();
+
+        GraphPipeShellCompiler compiler = new GraphPipeShellCompiler(
+                commands, linker);
+
+        // Must associate commands and linker correctly
+        assertSame(commands, compiler.getPipeCommands());
+        assertSame(linker, compiler.getPipeLinker());
+
+        compiler.startCompile();
+
+        compiler.takePipeName("single1");
+        compiler.takeCommand("test", EMPTY);
+        compiler.takePipeLink();
+
+        compiler.takePipeName("group1");
+        compiler.takeGroupStart();
+        compiler.takeCommand("test", EMPTY);
+        compiler.takePipeLink();
+        compiler.takeCommand("test", EMPTY);
+
+        // Must not create pipes before the line is complete
+        assertTrue(linker.getPipeNames().isEmpty());
+
+        compiler.stopCompile();
+
+        // Must implicitly close groups
+        assertTrue(linker.getPipe("single1") instanceof TestPipe);
+        assertTrue(linker.getPipe("group1") instanceof CompoundPipe);
+
+        // Must link to a pipe named earlier in the same line
+        compile(linker, "~single2 test | ~single2");
+        assertTrue(linker.getPipe("single2").hasConsumer());
+    }
+
+    @Test
+    public void testNoEffectOnError() throws Exception {
+        PipeCommands commands = makeTestCommands();
+        PipeLinker linker = new PipeLinker();
+        CountingEffect effect = new CountingEffect();
+        commands.add(effect);
+
+        // Type error after an effect
+        try {
+            compile(linker, commands, "effect | ~a test | [ " + INTS + " ]");
+            fail();
+        } catch (PipeTypeException ex) {
+            // Correct
+        }
+
+        // Missing name reference after an effect
+        try {
+            compile(linker, commands, "effect | ~a test | ~missing");
+            fail();
+        } catch (PipeNotFoundException ex) {
+            // Correct
+        }
+
+        // Type error after a record pipe
+        File file = File.createTempFile("codon-record", ".rec");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+
+        try {
+            compile(linker, commands, "effect | record i32 " + file.getPath()
+                    + " | test java.lang.String java.lang.String");
+            fail();
+        } catch (PipeTypeException ex) {
+            // Correct
+        }
+
+        // Must not have run effects, registered names or touched the file
+        assertEquals(0, effect.count.get());
+        assertTrue(linker.getPipeNames().isEmpty());
+        assertEquals(3, file.length());
+
+        compile(linker, commands, "effect | ~a test");
+        assertEquals(1, effect.count.get());
+        assertTrue(linker.getPipeNames().contains("a"));
+
+        // Must truncate the file once the line is committed, even if the
+        // pipe never receives an object
+        compile(linker, commands, "record -raw i32 " + file.getPath());
+        assertEquals(0, file.length());
+    }
+
+    @Test
+    public void testNameTakenDuringCompile() throws PipeException {
+        PipeCommands commands = makeTestCommands();
+        final PipeLinker linker = new PipeLinker();
+        CountingEffect effect = new CountingEffect();
+        commands.add(effect);
+
+        // Takes a name as another session would, after it is checked
+        commands.add("steal", new TestPipeCommand() {
+            @Override
+            public Pipe makePipe(String[] args, LineLogger log)
+                    throws PipeFactoryException {
+
+                try {
+                    linker.addPipe("b", new TestPipe());
+                } catch (PipeException ex) {
+                    throw new PipeFactoryException(ex);
+                }
+                return new TestPipe();
+            }
+        });
+
+        try {
+            compile(linker, commands, "effect | ~a test | ~b steal");
+            fail();
+        } catch (PipeNameInUseException ex) {
+            // Correct
+        }
+
+        // Must not have run effects or kept the other names
+        assertEquals(0, effect.count.get());
+        assertEquals(1, linker.getPipeNames().size());
+        compile(linker, commands, "~a test");
+    }
+
+    @Test
+    public void testEmptyGroup() throws PipeException {
+        try {
+            compile(new PipeLinker(), "[ ]");
+            fail();
+        } catch (PipeSyntaxException ex) {
+            // Correct
+        }
+    }
+
+    @Test
+    public void testFuseStateless() throws PipeException {
+        PipeLinker linker = new PipeLinker();
+        compile(linker, "~src " + INTS + " | ~range [ filter i32 > 1"
+                + " | filter i32 < 5 | filter i32 != 3 ] | ~sink " + INTS);
+
+        // Must fuse adjacent stateless pipes
+        Pipe range = linker.getPipe("range");
+        assertTrue(range instanceof FusedPipe);
+        assertEquals(3, ((FusedPipe) range).getStageCount());
+
+        TestPipe src = (TestPipe) linker.getPipe("src");
+        TestPipe sink = (TestPipe) linker.getPipe("sink");
+        src.setPass(true);
+
+        for (int i = 0; i < 10; i++)
+            src.consume(i);
+
+        assertEquals(2, sink.count());
+        assertEquals(4, sink.last());
+    }
+
+    @Test
+    public void testDropDeadTail() throws PipeException {
+        PipeLinker linker = new PipeLinker();
+        compile(linker, "~src " + INTS);
+
+        // Must not link stateless pipes nothing can consume
+        compile(linker, "~src | filter i32 > 1 | [ filter i32 < 5 ]");
+        assertFalse(linker.getPipe("src").hasConsumer());
+
+        // Must keep named stateless pipes
+        compile(linker, "~src | ~big filter i32 > 1");
+        assertTrue(linker.getPipe("src").hasConsumer());
+        assertTrue(linker.getPipe("big") instanceof FilterPipe);
+    }
+
+    @Test
+    public void testAsyncBoundary() throws Exception {
+        PipeCommands commands = makeTestCommands();
+        commands.add("slow", new SlowPipeCommand());
+
+        PipeLinker linker = new PipeLinker();
+        DaemonThreads threads = new DaemonThreads(DaemonThreads.THREAD_MODE);
+
+        GraphPipeShellCompiler compiler = new GraphPipeShellCompiler(
+                NullLogger.INSTANCE, commands, linker, threads);
+        new PipeShellParser(compiler).feed("~src test | ~slow slow");
+
+        TestPipe src = (TestPipe) linker.getPipe("src");
+        SlowPipe slow = (SlowPipe) linker.getPipe("slow");
+        src.setPass(true);
+        src.consume("test");
+
+        // Must consume from the async pipe's daemon
+        for (int i = 0; (i < 500) && (slow.count() == 0); i++)
+            Thread.sleep(10);
+
+        assertEquals(1, slow.count());
+        assertEquals(1, threads.get().size());
+        assertNotSame(Thread.currentThread(), slow.thread.get());
+
+        for (DaemonProcess process : threads.get())
+            process.cancel();
+    }
+
+    private static void compile(PipeLinker linker, String line)
+            throws PipeException {
+
+        compile(linker, makeTestCommands(), line);
+    }
+
+    private static void compile(PipeLinker linker, PipeCommands commands,
+            String line) throws PipeException {
+
+        new PipeShellParser(new GraphPipeShellCompiler(commands, linker))
+                .feed(line);
+    }
+
+    private static PipeCommands makeTestCommands() throws PipeException {
+        ObjectFormats formats = new ObjectFormats();
+        formats.add(IntegerObjectFormat.INSTANCE);
+
+        PipeCommands commands = new PipeCommands();
+        commands.add("test", TestPipeCommand.INSTANCE);
+        commands.add(new FilterCommand(formats));
+        commands.add(new RecordCommand(formats));
+        return commands;
+    }
+
+    private static class CountingEffect implements EffectCommand {
+        public final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void execute(String[] args, LineLogger log) {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public String getCommandTopic() {
+            return "test";
+        }
+
+        @Override
+        public String getCommandName() {
+            return "effect";
+        }
+
+        @Override
+        public String getCommandUsage() {
+            return "";
+        }
+    }
+
+    private static class SlowPipe extends TestPipe implements BlockingPipe {
+        public final AtomicReference<Thread> thread =
+                new AtomicReference<Thread>();
+
+        @Override
+        public synchronized void consume(Object value) {
+            thread.set(Thread.currentThread());
+            super.consume(value);
+        }
+    }
+
+    private static class SlowPipeCommand extends TestPipeCommand {
+        @Override
+        public Pipe makePipe(String[] args, LineLogger log) {
+            return new SlowPipe();
+        }
+    }
+}
@@ -32,6 +32,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
 import java.util.Set;
 
 import org.dnikulin.codon.pipe.Consumer;
@@ -159,6 +160,50 @@ public class PipeLinkerTest {
         }
     }
 
+    @Test
+    public void testReservePipes() throws PipeException {
+        PipeLinker linker = new PipeLinker();
+        Pipe pipe = new TestPipe();
+        linker.addPipe("c", pipe);
+
+        try {
+            // Must fail if any name is in use
+            linker.reservePipes(Arrays.asList("a", "b", "c"));
+            fail();
+        } catch (PipeNameInUseException ex) {
+            // Correct
+        }
+
+        // Must not keep any of the names
+        assertEquals(1, linker.getPipeNames().size());
+        linker.reservePipes(Arrays.asList("a", "b"));
+
+        try {
+            // Must not find a reserved name
+            linker.getPipe("a");
+            fail();
+        } catch (PipeNotFoundException ex) {
+            // Correct
+        }
+
+        try {
+            // Must not add under a reserved name
+            linker.addPipe("a", pipe);
+            fail();
+        } catch (PipeNameInUseException ex) {
+            // Correct
+        }
+
+        // Must register a filled name
+        linker.fillPipe("a", pipe);
+        assertSame(pipe, linker.getPipe("a"));
+        assertEquals(2, linker.getPipeNames().size());
+
+        // Must release both reserved and filled names
+        linker.releasePipes(Arrays.asList("a", "b"));
+        linker.reservePipes(Arrays.asList("a", "b"));
+    }
+
     @Test
     public void testLinkPipes() {
         TestPipe pipe1 = new TestPipe(Object.class, Pipe.class);
@@ -0,0 +1,106 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.limit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dnikulin.codon.pipe.Pipe;
+import org.dnikulin.codon.pipe.except.PipeTypeException;
+import org.dnikulin.codon.pipe.predicate.Comparison;
+import org.dnikulin.codon.pipe.simple.CompoundPipe;
+import org.dnikulin.codon.pipe.test.TestPipe;
+import org.junit.Test;
+
+public class LimitPipesTest {
+    @Test
+    public void testHead() {
+        HeadPipe head = new HeadPipe(Object.class, 3);
+        TestPipe sink = new TestPipe();
+        assertTrue(head.addConsumer(sink));
+
+        for (int i = 0; i < 2; i++)
+            head.consume(i);
+        assertFalse(head.isCancelled());
+
+        // Must cancel on reaching the limit
+        head.consume(2);
+        assertTrue(head.isCancelled());
+
+        // Must drop anything beyond the limit
+        head.consume(3);
+        assertEquals(3, sink.count());
+        assertEquals(2, sink.last());
+
+        // Must pass again after reset
+        head.reset();
+        assertFalse(head.isCancelled());
+    }
+
+    @Test
+    public void testTakeWhile() {
+        TakeWhilePipe take = new TakeWhilePipe(Object.class, Comparison
+                .parse("<", "5"));
+        TestPipe sink = new TestPipe();
+        assertTrue(take.addConsumer(sink));
+
+        take.consume(3L);
+        take.consume(4L);
+        assertFalse(take.isCancelled());
+
+        // Must stop at the first failing value, even if later ones pass
+        take.consume(7L);
+        take.consume(1L);
+        assertTrue(take.isCancelled());
+        assertEquals(2, sink.count());
+        assertEquals(4L, sink.last());
+    }
+
+    @Test
+    public void testPropagation() throws PipeTypeException {
+        TestPipe first = new TestPipe();
+        first.setPass(true);
+
+        HeadPipe head = new HeadPipe(Object.class, 1);
+
+        List<Pipe> pipes = new ArrayList<Pipe>();
+        pipes.add(first);
+        pipes.add(head);
+        CompoundPipe compound = new CompoundPipe(pipes);
+
+        // Must not cancel without consumers downstream of a pass-through
+        assertFalse(compound.isCancelled());
+
+        compound.consume("a");
+
+        // Must see cancellation at the start of the compound pipe
+        assertTrue(first.isCancelled());
+        assertTrue(compound.isCancelled());
+    }
+}
@@ -0,0 +1,173 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.netpipe;
+
+import static org.dnikulin.codon.misc.TimeTools.sleepFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.dnikulin.codon.format.ObjectFormat;
+import org.dnikulin.codon.format.primitive.IntegerObjectFormat;
+import org.dnikulin.codon.log.NullLogger;
+import org.dnikulin.codon.netpipe.ConsumerGroup;
+import org.dnikulin.codon.netpipe.NetPipes;
+import org.dnikulin.codon.netpipe.PipeMultiplexLink;
+import org.dnikulin.codon.netpipe.packet.Frames;
+import org.dnikulin.codon.pipe.test.TestPipe;
+import org.junit.Test;
+
+public class NetSendReceiveTest {
+    public static final int PORT = 37159;
+    public static final int COUNT = 10000;
+
+    private static final ObjectFormat FORMAT = IntegerObjectFormat.INSTANCE;
+
+    @Test
+    public void testLoopback() throws IOException {
+        NetPipes netPipes = new NetPipes();
+
+        try {
+            netPipes.serve(PORT);
+            PipeMultiplexLink link = netPipes.connect("localhost", PORT);
+
+            // Must share one connection per server
+            assertTrue(link == netPipes.connect("localhost", PORT));
+
+            TestPipe received = new TestPipe(Integer.class, Integer.class);
+            NetReceivePipe recv = new NetReceivePipe(link, "test", FORMAT,
+                    NullLogger.INSTANCE);
+            assertTrue(recv.addConsumer(received));
+
+            TestPipe passed = new TestPipe(Integer.class, Integer.class);
+            NetSendPipe send = new NetSendPipe(link, "test", FORMAT);
+            assertTrue(send.addConsumer(passed));
+
+            for (int i = 0; i < COUNT; i++)
+                send.consume(i);
+
+            // Must pass every value through locally
+            assertEquals(COUNT, passed.count());
+
+            for (int i = 0; (i < 1000) && (received.count() < COUNT); i++)
+                sleepFor(10);
+
+            // Must receive every value, in order
+            assertEquals(COUNT, received.count());
+            assertEquals(COUNT - 1, received.last());
+
+            // Must have been accepted with multiplexing
+            assertFalse(link.isMultiplexRefused());
+
+            // Must stop receiving once the consumer is removed
+            recv.removeConsumer(received);
+            for (int i = 0; i < COUNT; i++)
+                send.consume(i);
+
+            sleepFor(200);
+
+            assertEquals(COUNT, received.count());
+        } finally {
+            netPipes.shutdown();
+        }
+    }
+
+    @Test
+    public void testTrackConsumers() throws IOException {
+        PipeMultiplexLink link = new PipeMultiplexLink();
+        NetReceivePipe recv = new NetReceivePipe(link, "test", FORMAT,
+                NullLogger.INSTANCE);
+        TestPipe first = new TestPipe(Integer.class, Integer.class);
+        TestPipe second = new TestPipe(Integer.class, Integer.class);
+
+        assertFalse(recv.hasConsumer());
+        assertTrue(recv.addConsumer(first));
+        assertTrue(recv.addConsumer(second));
+
+        // Must report consumers and reject a duplicate
+        assertFalse(recv.addConsumer(first));
+        assertEquals(2, recv.getConsumers().size());
+        assertTrue(recv.getConsumers().get(0) == first);
+
+        recv.removeConsumer(first);
+        assertEquals(1, recv.getConsumers().size());
+
+        // Must close every channel on reset
+        recv.reset();
+        assertFalse(recv.hasConsumer());
+    }
+
+    @Test
+    public void testMultiplexRefused() throws IOException {
+        PipeMultiplexLink link = new PipeMultiplexLink();
+        assertFalse(link.isMultiplexRefused());
+
+        // Must record an accept without the multiplex feature
+        byte[] frame = new byte[] { 0 };
+        link.takeFrame(Frames.ACCEPT, frame, 0, frame.length);
+        assertTrue(link.isMultiplexRefused());
+
+        frame[0] = (byte) Frames.FEATURE_MULTIPLEX;
+        link.takeFrame(Frames.ACCEPT, frame, 0, frame.length);
+        assertFalse(link.isMultiplexRefused());
+    }
+
+    @Test
+    public void testConsumerGroup() throws IOException {
+        NetPipes netPipes = new NetPipes();
+
+        try {
+            netPipes.serve(PORT + 1);
+            PipeMultiplexLink link = netPipes.connect("localhost", PORT + 1);
+
+            NetReceivePipe recv = new NetReceivePipe(link, "test", FORMAT,
+                    NullLogger.INSTANCE);
+            recv.setGroup("workers", ConsumerGroup.ROUND_ROBIN);
+
+            TestPipe first = new TestPipe(Integer.class, Integer.class);
+            TestPipe second = new TestPipe(Integer.class, Integer.class);
+            assertTrue(recv.addConsumer(first));
+            assertTrue(recv.addConsumer(second));
+
+            NetSendPipe send = new NetSendPipe(link, "test", FORMAT);
+            for (int i = 0; i < COUNT; i++)
+                send.consume(i);
+
+            for (int i = 0; i < 1000; i++) {
+                if (first.count() + second.count() >= COUNT)
+                    break;
+                sleepFor(10);
+            }
+
+            // Each value must be consumed by exactly one member
+            assertEquals(COUNT / 2, first.count());
+            assertEquals(COUNT / 2, second.count());
+        } finally {
+            netPipes.shutdown();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.predicate;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ComparisonTest {
+    @Test
+    public void testNumeric() {
+        // Must compare numbers numerically, not as strings
+        assertTrue(Comparison.parse("<", "10").accept(9L));
+        assertFalse(Comparison.parse("<", "10").accept(10));
+        assertTrue(Comparison.parse("<=", "10").accept(10.0));
+        assertTrue(Comparison.parse(">", "2.5").accept(3.0f));
+        assertTrue(Comparison.parse(">=", "-1").accept(-1));
+        assertTrue(Comparison.parse("==", "7").accept(7L));
+        assertTrue(Comparison.parse("!=", "7").accept(8L));
+    }
+
+    @Test
+    public void testString() {
+        assertTrue(Comparison.parse("==", "abc").accept("abc"));
+        assertTrue(Comparison.parse("<", "b").accept("abc"));
+        assertFalse(Comparison.parse(">", "b").accept("abc"));
+
+        // Must compare strings by string order even with numeric operand
+        assertTrue(Comparison.parse("<", "9").accept("10"));
+    }
+
+    @Test
+    public void testParse() {
+        assertNull(Comparison.parse("=~", "x"));
+    }
+}
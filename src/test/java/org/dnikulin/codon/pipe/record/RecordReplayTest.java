@@ -29,14 +29,20 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
-import org.dnikulin.codon.daemon.Daemon;
-import org.dnikulin.codon.daemon.except.DaemonException;
+import org.dnikulin.codon.daemon.StepDaemon;
 import org.dnikulin.codon.format.ObjectFormat;
+import org.dnikulin.codon.format.primitive.IntegerObjectFormat;
 import org.dnikulin.codon.format.primitive.StringObjectFormat;
 import org.dnikulin.codon.log.LineLogger;
 import org.dnikulin.codon.log.NullLogger;
+import org.dnikulin.codon.misc.AllocationMeter;
+import org.dnikulin.codon.pipe.limit.HeadPipe;
 import org.dnikulin.codon.pipe.test.TestPipe;
 import org.junit.Test;
 
@@ -51,13 +57,141 @@ public class RecordReplayTest {
         replay(strings, bytes);
     }
 
+    @Test
+    public void testCompressionLevels() throws IOException {
+        String[] strings = makeStrings();
+
+        // Raw, fastest and best recordings must all replay
+        byte[] raw = record(strings, 64, RecordPipe.NO_COMPRESSION);
+        byte[] fast = record(strings, 64, 1);
+        byte[] best = record(strings, 64, 9);
+
+        replay(strings, raw);
+        replay(strings, fast);
+        replay(strings, best);
+
+        // Raw recordings must hold every byte
+        assertTrue(raw.length > fast.length);
+        assertTrue(raw.length > best.length);
+    }
+
+    @Test
+    public void testCheckpointResume() throws IOException {
+        String[] strings = makeStrings();
+        File file = File.createTempFile("codon-replay", ".rec");
+        ReplayCheckpoint checkpoint = new ReplayCheckpoint(file);
+
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(record(strings));
+            out.close();
+
+            // Must start from zero without a checkpoint
+            assertEquals(0, checkpoint.load());
+
+            // Replay part of the recording, then cancel
+            TestPipe first = new TestPipe();
+            ReplayDaemon daemon = new ReplayDaemon(first, LOG, FORMAT,
+                    new FileInputStream(file), "Test file", checkpoint, 0);
+            assertEquals(StepDaemon.CONTINUE, daemon.step(50));
+            daemon.cancel();
+
+            // Must have saved the position on cancel
+            assertEquals(50, first.count());
+            assertEquals(50, checkpoint.load());
+
+            // Resume must skip what was already replayed
+            TestPipe second = new TestPipe();
+            daemon = new ReplayDaemon(second, LOG, FORMAT, new FileInputStream(
+                    file), "Test file", checkpoint, checkpoint.load());
+            runDaemon(daemon);
+
+            assertEquals(strings.length - 50, second.count());
+            assertEquals(strings[strings.length - 1], second.last());
+            assertEquals(strings.length, checkpoint.load());
+        } finally {
+            checkpoint.delete();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCancelledConsumer() throws IOException {
+        String[] strings = makeStrings();
+        ByteArrayInputStream in = new ByteArrayInputStream(record(strings));
+
+        HeadPipe head = new HeadPipe(Object.class, 10);
+        TestPipe sink = new TestPipe();
+        head.addConsumer(sink);
+
+        ReplayDaemon daemon = new ReplayDaemon(head, LOG, FORMAT, in,
+                "Test stream");
+
+        // Must stop reading soon after the consumer is cancelled
+        runDaemon(daemon);
+        assertEquals(10, sink.count());
+        assertTrue(daemon.getIndex() < strings.length);
+    }
+
+    @Test
+    public void testConsumeAllocation() throws IOException {
+        OutputStream discard = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        final RecordPipe ints = new RecordPipe(LOG,
+                IntegerObjectFormat.INSTANCE, discard,
+                RecordPipe.DEFAULT_BUFFER_SIZE, RecordPipe.NO_COMPRESSION);
+        final RecordPipe strings = new RecordPipe(LOG, FORMAT, discard,
+                RecordPipe.DEFAULT_BUFFER_SIZE, RecordPipe.NO_COMPRESSION);
+        final Integer value = 123456;
+
+        // Stream formats must be recorded without allocation
+        AllocationMeter.assertNoAllocation("RecordPipe.consume(i32)",
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        ints.consume(value);
+                    }
+                });
+
+        // Other formats allocate only their encoding
+        AllocationMeter.assertAllocatesAtMost("RecordPipe.consume(string)",
+                64, new Runnable() {
+                    @Override
+                    public void run() {
+                        strings.consume("test-123456");
+                    }
+                });
+    }
+
     private static byte[] record(String[] strings) throws IOException {
+        return record(strings, RecordPipe.DEFAULT_BUFFER_SIZE,
+                RecordPipe.DEFAULT_COMPRESSION);
+    }
+
+    private static byte[] record(String[] strings, int bufferSize,
+            int compression) throws IOException {
+
         ByteArrayOutputStream stream = new ByteArrayOutputStream();
 
-        RecordPipe recorder = new RecordPipe(LOG, FORMAT, stream);
+        RecordPipe recorder = new RecordPipe(LOG, FORMAT, stream, bufferSize,
+                compression);
 
-        for (String string : strings)
+        long expected = 0;
+        for (String string : strings) {
             recorder.consume(string);
+            expected += 4 + FORMAT.encode(string).length;
+        }
+
+        // Must count bytes before compression
+        assertEquals(expected, recorder.getRecordedBytes());
 
         // Force flush
         recorder.reset();
@@ -88,12 +222,13 @@ public class RecordReplayTest {
         assertEquals(strings[strings.length - 1], pipe.last());
     }
 
-    private static void runDaemon(Daemon daemon) {
-        try {
-            while (true)
-                daemon.resumeDaemon();
-        } catch (DaemonException ex) {
-            // Ignore
+    private static void runDaemon(ReplayDaemon daemon) {
+        // Must complete without aborting
+        while (true) {
+            int status = daemon.step(7);
+            if (status == StepDaemon.DONE)
+                return;
+            assertEquals(StepDaemon.CONTINUE, status);
         }
     }
 
@@ -33,6 +33,7 @@ import static org.junit.Assert.fail;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.dnikulin.codon.misc.AllocationMeter;
 import org.dnikulin.codon.pipe.Consumer;
 import org.dnikulin.codon.pipe.Pipe;
 import org.dnikulin.codon.pipe.except.PipeTypeException;
@@ -138,4 +139,26 @@ public class CompoundPipeTest {
         assertTrue(pipe3.hasConsumer());
         assertFalse(pipe4.hasConsumer());
     }
+
+    @Test
+    public void testConsumeAllocation() throws PipeTypeException {
+        List<Pipe> pipes = new ArrayList<Pipe>();
+        for (int i = 0; i < 3; i++) {
+            TestPipe pipe = new TestPipe();
+            pipe.setPass(true);
+            pipes.add(pipe);
+        }
+
+        final CompoundPipe cpipe = new CompoundPipe(pipes);
+        cpipe.addConsumer(new TestPipe());
+
+        // Passing a value through every stage must not allocate
+        AllocationMeter.assertNoAllocation("CompoundPipe.consume",
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        cpipe.consume(cpipe);
+                    }
+                });
+    }
 }
@@ -0,0 +1,60 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.pipe.simple;
+
+import static org.junit.Assert.assertEquals;
+
+import org.dnikulin.codon.pipe.test.TestPipe;
+import org.junit.Test;
+
+public class TypedPipeTest {
+    /** consume() must dispatch to consumeValue(). */
+    @Test
+    public void testConsumeDispatch() {
+        TypedPipe<String> pipe = new TypedPipe<String>() {
+            @Override
+            public Class<?> getInputType() {
+                return String.class;
+            }
+
+            @Override
+            public Class<?> getOutputType() {
+                return Integer.class;
+            }
+
+            @Override
+            public void consumeValue(String value) {
+                produce(value.length());
+            }
+        };
+
+        TestPipe sink = new TestPipe(Integer.class, Integer.class);
+        pipe.addConsumer(sink);
+
+        pipe.consume("four");
+        assertEquals(1, sink.count());
+        assertEquals(4, sink.last());
+    }
+}
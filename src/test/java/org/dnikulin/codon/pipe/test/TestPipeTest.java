@@ -33,9 +33,11 @@ import java.util.List;
 
 import org.dnikulin.codon.log.CountingLogger;
 import org.dnikulin.codon.log.NullLogger;
+import org.dnikulin.codon.misc.AllocationMeter;
 import org.dnikulin.codon.pipe.Consumer;
 import org.dnikulin.codon.pipe.Pipe;
 import org.dnikulin.codon.pipe.Producer;
+import org.dnikulin.codon.pipe.simple.PipeEdge;
 import org.junit.Test;
 
 public class TestPipeTest {
@@ -185,4 +187,52 @@ public class TestPipeTest {
         assertEquals(pipe2B.count(), log2B.count() + 1);
         assertEquals(0, log3.count());
     }
+
+    @Test
+    public void testEdges() {
+        TestPipe pipe = new TestPipe();
+        TestPipe sink1 = new TestPipe();
+        TestPipe sink2 = new TestPipe();
+        pipe.setPass(true);
+        pipe.addConsumer(sink1);
+        pipe.addConsumer(sink2);
+
+        // Must list consumers in order
+        List<Consumer> consumers = pipe.getConsumers();
+        assertEquals(2, consumers.size());
+        assertSame(sink1, consumers.get(0));
+        assertSame(sink2, consumers.get(1));
+
+        for (int i = 0; i < 100; i++)
+            pipe.consume(pipe);
+
+        // Must count every object and time one in every interval
+        List<PipeEdge> edges = pipe.getEdges();
+        assertEquals(2, edges.size());
+        assertSame(sink2, edges.get(1).getConsumer());
+        assertEquals(100, edges.get(1).getCount());
+        assertEquals(2, edges.get(1).getSamples());
+
+        // Must forget removed consumers
+        pipe.removeConsumer(sink1);
+        assertEquals(1, pipe.getConsumers().size());
+        assertSame(sink2, pipe.getEdges().get(0).getConsumer());
+    }
+
+    @Test
+    public void testProduceAllocation() {
+        final TestPipe pipe = new TestPipe();
+        pipe.setPass(true);
+        for (int i = 0; i < 3; i++)
+            pipe.addConsumer(new TestPipe());
+
+        // Passing a value to consumers must not allocate
+        AllocationMeter.assertNoAllocation("SimplePipe.produce",
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        pipe.consume(pipe);
+                    }
+                });
+    }
 }
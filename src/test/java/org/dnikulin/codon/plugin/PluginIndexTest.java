@@ -0,0 +1,147 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.dnikulin.codon.log.CountingLogger;
+import org.junit.Test;
+
+public class PluginIndexTest {
+    private static final String NODE_CLASS = "test.TestPluginNode";
+    private static final String JAR = "bin/codon-testplugin.jar";
+
+    /** Must persist records and forget them once the jar changes. */
+    @Test
+    public void testSaveLoad() throws IOException {
+        File file = tempFile("index");
+        File jar = tempFile("plugin.jar");
+        writeBytes(jar, 7);
+
+        PluginIndex index = new PluginIndex(file);
+        index.load();
+        assertEquals(0, index.size());
+        assertNull(index.get(jar));
+
+        Map<String, List<String>> nodes = new TreeMap<String, List<String>>();
+        nodes.put("a.APluginNode", Arrays.asList("a.ANode", "b.BNode"));
+        index.put(jar, nodes);
+        index.save();
+
+        PluginIndex loaded = new PluginIndex(file);
+        loaded.load();
+        assertEquals(1, loaded.size());
+
+        PluginIndex.Entry entry = loaded.get(jar);
+        assertNotNull(entry);
+        assertEquals(nodes, entry.getNodes());
+
+        // A changed jar must no longer match
+        writeBytes(jar, 9);
+        assertNull(loaded.get(jar));
+    }
+
+    /** Must record node classes and the interfaces they implement. */
+    @Test
+    public void testScanRecordsNodes() throws IOException {
+        File file = tempFile("index");
+        File jar = new File(JAR);
+        assertTrue(jar.isFile());
+
+        PluginIndex index = new PluginIndex(file);
+        PluginLoader loader = new PluginLoader(new CountingLogger());
+        loader.setPluginIndex(index);
+        loader.importTree(jar);
+
+        assertTrue(file.isFile());
+        PluginIndex.Entry entry = index.get(jar);
+        assertNotNull(entry);
+        assertEquals(Collections.singleton(NODE_CLASS), entry.getNodes()
+                .keySet());
+
+        List<String> ifaces = entry.getNodes().get(NODE_CLASS);
+        assertTrue(ifaces.contains(PluginNode.class.getName()));
+        assertFalse(ifaces.contains(NODE_CLASS));
+
+        // A second loader must install the node from the index alone
+        PluginIndex reloaded = new PluginIndex(file);
+        reloaded.load();
+
+        PluginLoader loader2 = new PluginLoader(new CountingLogger());
+        loader2.setPluginIndex(reloaded);
+        loader2.importTree(jar);
+
+        PluginLinker linker = new PluginLinker();
+        loader2.givePluginLinkerNodes(linker);
+        assertEquals(1, linker.getPluginNodes().size());
+    }
+
+    /** Must trust a current record instead of scanning the jar. */
+    @Test
+    public void testIndexSkipsScan() throws IOException {
+        File jar = new File(JAR);
+
+        PluginIndex index = new PluginIndex(tempFile("index"));
+        Map<String, List<String>> none = Collections.emptyMap();
+        index.put(jar, none);
+
+        PluginLoader loader = new PluginLoader(new CountingLogger());
+        loader.setPluginIndex(index);
+        loader.importTree(jar);
+
+        PluginLinker linker = new PluginLinker();
+        loader.givePluginLinkerNodes(linker);
+        assertTrue(linker.getPluginNodes().isEmpty());
+    }
+
+    private static File tempFile(String name) throws IOException {
+        File file = File.createTempFile("codon-", "-" + name);
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void writeBytes(File file, int count) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[count]);
+        } finally {
+            out.close();
+        }
+    }
+}
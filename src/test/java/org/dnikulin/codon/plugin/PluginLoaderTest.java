@@ -31,12 +31,15 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
 
@@ -337,6 +340,54 @@ public class PluginLoaderTest {
         });
     }
 
+    /**
+     * Must define each class once when loaded from many threads, and drop
+     * in-memory class bytes once defined.
+     */
+    @Test
+    public void testParallelLoad() throws Exception {
+        final String className = "test.TestPluginNode";
+        String path = "test/" + NODE_FILE;
+
+        final PluginLoader loader = new PluginLoader(new CountingLogger());
+        File file = new File("bin/testplugin/" + path);
+        InputStream stream = new FileInputStream(file);
+        try {
+            loader.importStream(stream, path);
+        } finally {
+            stream.close();
+        }
+
+        final Class<?>[] loaded = new Class<?>[8];
+        Thread[] threads = new Thread[loaded.length];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        loaded[index] = loader.loadClass(className);
+                    } catch (ClassNotFoundException ex) {
+                        // Leave null
+                    }
+                }
+            };
+        }
+
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+
+        assertNotNull(loaded[0]);
+        for (Class<?> klass : loaded)
+            assertSame(loaded[0], klass);
+
+        // Must have dropped the bytes
+        assertNull(loader.getBytes(path));
+    }
+
     /**
      * Must throw when loading corrupted class files.
      */
@@ -372,8 +423,9 @@ public class PluginLoaderTest {
         assertNotNull(nodeBytes);
         assertTrue(nodeBytes.length > 0);
 
-        // Corrupt bytes
+        // Corrupt bytes, replacing the lazy jar entry
         Arrays.fill(nodeBytes, (byte) 7);
+        loader.importStream(new ByteArrayInputStream(nodeBytes), nodePath);
         boolean threw = false;
 
         try {
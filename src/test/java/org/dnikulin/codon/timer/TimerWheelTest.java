@@ -0,0 +1,180 @@
+// Copyright (c) 2009 Dmitri Nikulin
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+//
+// 1. Redistributions of source code must retain the above copyright
+// notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+// notice, this list of conditions and the following disclaimer in the
+// documentation and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+// IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+// OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+// IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+// INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+// NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+// THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package org.dnikulin.codon.timer;
+
+import static org.dnikulin.codon.misc.TimeTools.sleepFor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dnikulin.codon.misc.Cancellable;
+import org.junit.Test;
+
+public class TimerWheelTest {
+    @Test
+    public void testSchedule() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        Timeout timeout = wheel.schedule(new LatchTask(latch), 20);
+        assertEquals(Timeout.PENDING, timeout.getState());
+
+        // Must run, and not before its deadline
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= 20 * 1000 * 1000);
+        assertEquals(Timeout.EXPIRED, timeout.getState());
+
+        // Must not cancel after expiry
+        assertFalse(timeout.cancel());
+        wheel.stop();
+    }
+
+    @Test
+    public void testRounds() throws InterruptedException {
+        // Deadlines several turns away must wait out their rounds
+        TimerWheel wheel = new TimerWheel(1, 4);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        wheel.schedule(new LatchTask(latch), 30);
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= 30 * 1000 * 1000);
+        wheel.stop();
+    }
+
+    @Test
+    public void testCancel() {
+        TimerWheel wheel = new TimerWheel();
+        AtomicInteger runs = new AtomicInteger();
+
+        Timeout timeout = wheel.schedule(new CountTask(runs), 10);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(Timeout.CANCELLED, timeout.getState());
+
+        // Must never run
+        sleepFor(50);
+        assertEquals(0, runs.get());
+        wheel.stop();
+    }
+
+    @Test
+    public void testMany() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel(1, 64);
+        int count = 10000;
+        CountDownLatch latch = new CountDownLatch(count);
+
+        for (int i = 0; i < count; i++)
+            wheel.schedule(new LatchTask(latch), i % 100);
+
+        // Must run every task
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        wheel.stop();
+    }
+
+    @Test
+    public void testRepeating() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel();
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(3);
+
+        Cancellable repeat = wheel.scheduleRepeating(new CountTask(runs,
+                latch), 5);
+
+        // Must repeat until cancelled
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        repeat.cancel();
+
+        int done = runs.get();
+        sleepFor(50);
+        assertTrue(runs.get() <= done + 1);
+        wheel.stop();
+    }
+
+    @Test
+    public void testStop() {
+        TimerWheel wheel = new TimerWheel();
+        AtomicInteger runs = new AtomicInteger();
+        Runnable task = new CountTask(runs);
+
+        wheel.schedule(task, 60 * 1000);
+        sleepFor(10);
+
+        // Must return pending tasks without running them
+        List<Runnable> pending = wheel.stop();
+        assertEquals(1, pending.size());
+        assertTrue(pending.get(0) == task);
+        assertEquals(0, runs.get());
+
+        try {
+            // Must not accept tasks once stopped
+            wheel.schedule(task, 0);
+            fail();
+        } catch (IllegalStateException ex) {
+            // Correct
+        }
+    }
+
+    private static class LatchTask implements Runnable {
+        private final CountDownLatch latch;
+
+        public LatchTask(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            latch.countDown();
+        }
+    }
+
+    private static class CountTask implements Runnable {
+        private final AtomicInteger runs;
+        private final CountDownLatch latch;
+
+        public CountTask(AtomicInteger runs, CountDownLatch latch) {
+            this.runs = runs;
+            this.latch = latch;
+        }
+
+        public CountTask(AtomicInteger runs) {
+            this(runs, new CountDownLatch(0));
+        }
+
+        @Override
+        public void run() {
+            runs.incrementAndGet();
+            latch.countDown();
+        }
+    }
+}